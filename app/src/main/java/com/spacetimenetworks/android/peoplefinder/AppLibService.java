@@ -28,28 +28,29 @@ import android.util.Log;
 
 import com.spacetimenetworks.android.peoplefinder.database.DataModel;
 import com.spacetimenetworks.android.peoplefinder.database.DatabaseController;
+import com.spacetimenetworks.android.peoplefinder.metrics.Counter;
+import com.spacetimenetworks.android.peoplefinder.metrics.MetricsRegistry;
+import com.spacetimenetworks.android.peoplefinder.metrics.StartupTrace;
+import com.spacetimenetworks.android.peoplefinder.metrics.TraceBuffer;
+import com.spacetimenetworks.android.peoplefinder.metrics.TraceEvent;
+import com.spacetimenetworks.android.peoplefinder.router.AppLibRouter;
+import com.spacetimenetworks.android.peoplefinder.router.InboundJournal;
+import com.spacetimenetworks.android.peoplefinder.router.JournalReplayer;
+import com.spacetimenetworks.android.peoplefinder.router.Router;
+import com.spacetimenetworks.android.peoplefinder.router.RouterMessage;
 
-import fi.tkk.netlab.dtn.scampi.applib.ApiException;
-import fi.tkk.netlab.dtn.scampi.applib.AppLib;
-import fi.tkk.netlab.dtn.scampi.applib.AppLibLifecycleListener;
-import fi.tkk.netlab.dtn.scampi.applib.MessageReceivedCallback;
-import fi.tkk.netlab.dtn.scampi.applib.SCAMPIMessage;
 import fi.tkk.netlab.net.Util;
 
-import java.io.ByteArrayOutputStream;
-import java.io.Closeable;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.util.Collection;
-import java.util.LinkedList;
 import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * <p> Service that handles communicating the SCAMPI router. Tries to connect to
@@ -60,6 +61,14 @@ import java.util.concurrent.TimeUnit;
  * application database and SCAMPI router. However, the Intent starting this
  * service must include {@link #INTENT_EXTRA_PIC_DIR_PATH} extra containing a
  * filesystem path as a String where received photos will be written to. </p>
+ * <p/> <p> For reproducing ingest problems, the service can record the
+ * records it receives to an {@link InboundJournal} given in the {@link
+ * #INTENT_EXTRA_JOURNAL_PATH} extra, and replay a journal given in the
+ * {@link #INTENT_EXTRA_REPLAY_PATH} extra through the same inbound handling,
+ * e.g.: </p>
+ * <pre>
+ * adb shell am startservice -n .../.AppLibService --es journalPath /sdcard/in.journal
+ * </pre>
  *
  * @author teemuk
  */
@@ -67,7 +76,7 @@ public class AppLibService
 extends Service
 implements DatabaseController.OnInsertedPerson,
            DatabaseController.OnInsertedNote,
-           AppLibLifecycleListener, MessageReceivedCallback {
+           Router.LifecycleListener, Router.MessageListener {
   // TODO:
   // - Synchronize the db instance variable
 
@@ -76,20 +85,35 @@ implements DatabaseController.OnInsertedPerson,
   //==========================================================================//
   /** SCAMPI pub/sub service name ({@value}). */
   public static final String PEOPLE_FINDER_SERVICE
-      = "PeopleFinder";
+      = RecordMessages.SERVICE;
   /** Log tag for messages generated by this class ({@value}). */
   public static final String TAG
       = AppLibService.class.getSimpleName();
   /** Default lifetime for posted messages in seconds ({@value}). */
   public static final long MSG_LIFETIME
-      = 60 * 60 * 24 * 30;
-  // 30 days
+      = RecordMessages.LIFETIME;
   /**
    * Intent extra containing a filesystem path where received photos are
    * written
    * to.
    */
   public static final String INTENT_EXTRA_PIC_DIR_PATH = "picDirPath";
+  /**
+   * Optional intent extra containing a filesystem path where the records of
+   * received messages are journaled to.
+   */
+  public static final String INTENT_EXTRA_JOURNAL_PATH = "journalPath";
+  /**
+   * Optional intent extra containing a filesystem path of a journal to
+   * replay as received messages.
+   */
+  public static final String INTENT_EXTRA_REPLAY_PATH = "replayPath";
+  /**
+   * Optional intent extra containing the speed of the replay as a float,
+   * relative to the original traffic. 0 replays without delays, the default
+   * is 1.
+   */
+  public static final String INTENT_EXTRA_REPLAY_SPEED = "replaySpeed";
   /** Time to wait between trying to connect AppLib (milliseconds). */
   public static final long RECONNECT_PERIOD = 8000;
   //==========================================================================//
@@ -103,19 +127,20 @@ implements DatabaseController.OnInsertedPerson,
 
 
   //==========================================================================//
-  // Definitions of the SCAMPIMessage fields
+  // Definitions of the message fields
   //==========================================================================//
   /**
    * Message field that contains the serialized records for a person as a
    * {@link
    * DataModel.SerializablePerson}.
    */
-  public static final String MSG_RECORDS_FIELD = "records";
+  public static final String MSG_RECORDS_FIELD
+      = RecordMessages.RECORDS_FIELD;
   /**
    * Message field that contains a photo for the person record. May not exists
    * if no photo is attached to the record.
    */
-  public static final String MSG_PHOTO_FIELD = "photo";
+  public static final String MSG_PHOTO_FIELD = RecordMessages.PHOTO_FIELD;
   //==========================================================================//
 
 
@@ -130,20 +155,38 @@ implements DatabaseController.OnInsertedPerson,
   private final IBinder binder = new AppLibService.AppLibBinder();
   /** Database where incoming messages are to be stored */
   private volatile DatabaseController db;
-  /** AppLib connection to the router */
-  private volatile AppLib appLib;
+  /** Connection to the router */
+  private volatile Router router;
   /** Service connection to the database */
   private ServiceConnection databaseConnection;
   private final Random RNG
       = new Random();
   /**
-   * Holds messages received from the AppLib before the database controller has
-   * connected.
+   * Lock for waiting until the database controller has connected. Messages
+   * received before that wait on the AppLib thread.
    */
-  private final Collection<SCAMPIMessage> preconnectBuffer
-      = new LinkedList<>();
+  private final Object dbLock = new Object();
+  /** Set when the service is destroyed to stop waiting for the database. */
+  private volatile boolean destroyed;
+  /** Journal for received records, or {@code null} if not recording. */
+  private volatile InboundJournal.Writer journal;
+  /** Thread replaying a journal, or {@code null}. */
+  private Thread replayThread;
+  /** Messages and record bytes received and published. */
+  private final Counter messagesIn
+      = MetricsRegistry.get().counter( "router.in.messages" );
+  private final Counter bytesIn
+      = MetricsRegistry.get().counter( "router.in.bytes" );
+  private final Counter messagesOut
+      = MetricsRegistry.get().counter( "router.out.messages" );
+  private final Counter bytesOut
+      = MetricsRegistry.get().counter( "router.out.bytes" );
   /** Task executor for connecting AppLib. */
   private ScheduledExecutorService scheduledExecutor;
+  /** Whether a query for un-routed records is running. */
+  private final AtomicBoolean routingRunning = new AtomicBoolean( false );
+  /** Whether routing was triggered again while the query was running. */
+  private final AtomicBoolean routingRequested = new AtomicBoolean( false );
   //==========================================================================//
 
 
@@ -160,12 +203,13 @@ implements DatabaseController.OnInsertedPerson,
   @Override
   public void onCreate() {
     super.onCreate();
+    long start = StartupTrace.beginSection( "applib-create" );
 
     this.scheduledExecutor = Executors.newSingleThreadScheduledExecutor();
 
-    // Create applib
-    this.appLib = this.getAppLib();
-    this.appLib.start();
+    // Create the router connection
+    this.router = this.getRouter();
+    this.router.start();
     // Connect from a worker thread or Android complains about networking in
     // main thread.
     this.scheduleConnect( 0, TimeUnit.MILLISECONDS );
@@ -175,6 +219,7 @@ implements DatabaseController.OnInsertedPerson,
 
     AppLibService.isRunning = true;
 
+    StartupTrace.endSection( "applib-create", start );
     Log.d( TAG, "onCreate()" );
   }
 
@@ -182,12 +227,24 @@ implements DatabaseController.OnInsertedPerson,
   public void onDestroy() {
     super.onDestroy();
 
+    // Release threads waiting for the database
+    synchronized ( this.dbLock ) {
+      this.destroyed = true;
+      this.dbLock.notifyAll();
+    }
+
     this.scheduledExecutor.shutdownNow();
 
+    // Stop recording and replaying
+    if ( this.replayThread != null ) {
+      this.replayThread.interrupt();
+    }
+    this.closeJournal();
+
     // Unbind from the database
     this.doUnbindDatabaseService();
 
-    this.appLib.stop();
+    this.router.stop();
 
     this.hasStarted = false;
     AppLibService.isRunning = false;
@@ -235,6 +292,17 @@ implements DatabaseController.OnInsertedPerson,
       }
     }
 
+    // Record and replay received messages if requested
+    String journalPath = intent.getStringExtra( INTENT_EXTRA_JOURNAL_PATH );
+    if ( journalPath != null && journalPath.length() > 0 ) {
+      this.openJournal( new File( journalPath ) );
+    }
+    String replayPath = intent.getStringExtra( INTENT_EXTRA_REPLAY_PATH );
+    if ( replayPath != null && replayPath.length() > 0 ) {
+      this.startReplay( new File( replayPath ),
+          intent.getFloatExtra( INTENT_EXTRA_REPLAY_SPEED, 1f ) );
+    }
+
     return START_REDELIVER_INTENT;
   }
   //==========================================================================//
@@ -243,86 +311,106 @@ implements DatabaseController.OnInsertedPerson,
   //==========================================================================//
   // Private - Incoming message handling
   //==========================================================================//
-  private void handleIncomingMessage( SCAMPIMessage msg )
+  private void handleIncomingMessage( RouterMessage msg )
   throws Exception {
-    Log.d( TAG, "Handling incoming message." );
-
     // Precondition check
     boolean hasRecords = msg.hasBinary( MSG_RECORDS_FIELD );
     if ( !hasRecords ) {
       throw new IOException( "Invalid message, no records found." );
     }
-
-    // If database is not connected, add the message to pre-connect buffer
-    if ( this.db == null ) {
-      synchronized ( this.preconnectBuffer ) {
-        if ( this.db == null ) { // Need to check again,
-          // since it might have been set while
-          // blocking in synchronized
-          this.preconnectBuffer.add( msg );
-          return;
-        }
-      }
+    long size = msg.getBinarySize( MSG_RECORDS_FIELD );
+    this.messagesIn.increment();
+    this.bytesIn.add( size );
+
+    // Journal the records with the arrival time, before waiting for the
+    // database
+    byte[] payload = this.journalRecords( msg );
+
+    // If database is not connected, wait for it. This holds up the AppLib
+    // thread, so the router stops delivering until we can store messages.
+    DatabaseController db = this.awaitDatabase();
+    if ( db == null ) {
+      Log.d( TAG, "Service destroyed, dropping message." );
+      return;
     }
 
     // Read the person record
     DataModel.SerializablePerson personRecord =
-        this.readPerson( msg );
-    Log.d( TAG, "Read person: " + personRecord.person.metadata.recordID +
-                " (" + personRecord.person.identity.name.fullName +
-                ") with " + personRecord.notes.size() + " note(s)." );
+        this.readPerson( msg, payload );
+    TraceBuffer.record( TraceEvent.MESSAGE_HANDLED, size,
+        personRecord.notes.size() );
 
     // Get the message picture
     // TODO: Picture handling
     //File picFile = msg.getAsFile( MSG_PHOTO_FIELD );
 
     // Insert into the database
-    this.insertIntoDatabase( personRecord, null );
+    this.insertIntoDatabase( db, personRecord, null );
   }
 
+  /**
+   * Blocks until the database controller is connected.
+   *
+   * @return the database, or {@code null} if the service was destroyed
+   */
+  private DatabaseController awaitDatabase()
+  throws InterruptedException {
+    synchronized ( this.dbLock ) {
+      while ( this.db == null && !this.destroyed ) {
+        this.dbLock.wait();
+      }
+      return this.db;
+    }
+  }
+
+  /**
+   * Reads the records of the message, or decodes them from the given bytes
+   * if they were already read from the message.
+   */
   private DataModel.SerializablePerson readPerson(
-      SCAMPIMessage msg )
-  throws IOException, ApiException {
-    // Precondition check
-    if ( !msg.hasBinary( MSG_RECORDS_FIELD ) ) {
-      throw new IOException( "Invalid message, no '"
-                              + MSG_RECORDS_FIELD + "' field found." );
+      RouterMessage msg, byte[] payload )
+  throws IOException {
+    try {
+      return ( payload != null )
+          ? ( RecordMessages.decode( new ByteArrayInputStream( payload ) ) )
+          : ( RecordMessages.read( msg ) );
+    } catch ( IOException e ) {
+      Log.e( TAG, "Couldn't deserialize message (" + e.getMessage() + ")." );
+      throw e;
     }
+  }
 
-    InputStream in = null;
-    ObjectInputStream oin = null;
+  /**
+   * Writes the records of the message to the journal if recording.
+   *
+   * @return the records read from the message, or {@code null} if not
+   * recording
+   */
+  private byte[] journalRecords( RouterMessage msg )
+  throws IOException {
+    InboundJournal.Writer journal = this.journal;
+    if ( journal == null ) {
+      return null;
+    }
+
+    byte[] payload = msg.getBinaryBuffer( MSG_RECORDS_FIELD );
     try {
-      // Get the correct message field
-      in = msg.getBinary( MSG_RECORDS_FIELD );
-
-      // Read the record from the stream
-      oin = new ObjectInputStream( in );
-      Object o = oin.readObject();
-      if ( !( o instanceof DataModel.SerializablePerson ) ) {
-        Log.e( TAG, "Couldn't deserialize message. Incorrect class type." );
-        throw new IOException( "Unknown record class found." );
-      }
-      return ( DataModel.SerializablePerson ) ( o );
-    } catch ( ClassNotFoundException e ) {
-      Log.d( TAG, "Couldn't deserialize message. Class not found (" +
-                  e.getMessage() + ")." );
-      throw new IOException( e );
-    } finally {
-      if ( oin != null ) {
-        try {
-          oin.close();
-        } catch ( IOException e ) {
-        }
-      } else if ( in != null ) {
-        try {
-          in.close();
-        } catch ( IOException e ) {
-        }
-      }
+      journal.append( msg.getAppTag(), payload );
+    } catch ( IOException e ) {
+      Log.e( TAG, "Failed to write the journal, stopped recording ("
+                  + e.getMessage() + ")." );
+      this.closeJournal();
     }
+    return payload;
   }
 
-  private void insertIntoDatabase(
+  /**
+   * Inserts a received record as background ingest. The ingest queue of the
+   * database is bounded, so this blocks the AppLib thread when the database
+   * falls behind. That pauses consumption from the router instead of
+   * buffering an unbounded number of records in memory.
+   */
+  private void insertIntoDatabase( DatabaseController db,
       DataModel.SerializablePerson record, File photo ) {
     // First copy the photo to correct place if necessary
     String photoPath = null;
@@ -343,48 +431,114 @@ implements DatabaseController.OnInsertedPerson,
     DataModel.LocalPerson row
         = new DataModel.LocalPerson( record.person, photoPath,
         true /* routed */ );
-    this.db.insertPerson( row, null ); // Don't care about callback here
+    db.insertPerson( row, DatabaseController.Priority.BACKGROUND_INGEST,
+        null ); // Don't care about callback here
 
     // Insert all notes
     for ( DataModel.Note note : record.notes ) {
       DataModel.LocalNote noteRow =
           new DataModel.LocalNote( note, null, true );
-      this.db.insertNote( noteRow, null ); // Don't care about callback here
+      db.insertNote( noteRow, DatabaseController.Priority.BACKGROUND_INGEST,
+          null ); // Don't care about callback here
     }
   }
   //==========================================================================//
 
 
+  //==========================================================================//
+  // Private - Record and replay
+  //==========================================================================//
+  private void openJournal( File file ) {
+    try {
+      this.journal = new InboundJournal.Writer( file );
+      Log.d( TAG, "Journaling received records to '"
+                  + file.getAbsolutePath() + "'." );
+    } catch ( IOException e ) {
+      Log.e( TAG, "Failed to create journal '" + file.getAbsolutePath()
+                  + "' (" + e.getMessage() + ")." );
+    }
+  }
+
+  private void closeJournal() {
+    InboundJournal.Writer journal = this.journal;
+    this.journal = null;
+    if ( journal == null ) {
+      return;
+    }
+
+    try {
+      journal.close();
+      Log.d( TAG, "Journaled " + journal.getBytes() + " bytes of records." );
+    } catch ( IOException e ) {
+      Log.e( TAG, "Failed to close journal (" + e.getMessage() + ")." );
+    }
+  }
+
+  /**
+   * Replays the journal on a background thread through the same handling
+   * as messages from the router.
+   */
+  private void startReplay( final File file, float speed ) {
+    final JournalReplayer replayer
+        = new JournalReplayer( file, Math.max( 0f, speed ) );
+    this.replayThread = new Thread( () -> {
+      try {
+        JournalReplayer.Result result = replayer.replay( this );
+        Log.d( TAG, "Replayed " + result.messages + " messages ("
+                    + result.bytes + " bytes) in "
+                    + TimeUnit.NANOSECONDS.toMillis( result.elapsed )
+                    + " ms, max lag "
+                    + TimeUnit.NANOSECONDS.toMillis( result.maxLag )
+                    + " ms." );
+      } catch ( IOException e ) {
+        Log.e( TAG, "Failed to replay journal '" + file.getAbsolutePath()
+                    + "' (" + e.getMessage() + ")." );
+      }
+    }, "journal-replay" );
+    this.replayThread.start();
+  }
+  //==========================================================================//
+
+
   //==========================================================================//
   // AppLib handling
   //==========================================================================//
-  private AppLib getAppLib() {
-    AppLib applib = new AppLib();
+  private Router getRouter() {
+    Router router = this.createRouter();
 
     // Lifecycle listener
-    applib.addLifecycleListener( this );
+    router.addLifecycleListener( this );
 
     // Setup subscription to the service
-    applib.addMessageReceivedCallback( PEOPLE_FINDER_SERVICE, this );
     try {
-      applib.subscribe( PEOPLE_FINDER_SERVICE );
+      router.subscribe( PEOPLE_FINDER_SERVICE, this );
     } catch ( InterruptedException e ) {
       Log.d( TAG, "Subscribing failed (" + e.getMessage() + ")" );
     }
 
-    return applib;
+    return router;
+  }
+
+  /**
+   * Creates the connection to the router. Connects to the router of the
+   * Liberouter app, override to use another {@link Router}.
+   *
+   * @return new router, not yet started
+   */
+  protected Router createRouter() {
+    return new AppLibRouter();
   }
 
   //--------------------------------------------------------------------------//
-  // MessageReceivedCallback
+  // MessageListener
   //--------------------------------------------------------------------------//
   @Override
-  public void messageReceived( SCAMPIMessage scampiMessage, String service ) {
-    Log.d( TAG, "AppLib message received." );
+  public void messageReceived( RouterMessage message, String service ) {
+    TraceBuffer.record( TraceEvent.MESSAGE_RECEIVED );
 
     if ( PEOPLE_FINDER_SERVICE.equals( service ) ) {
       try {
-        this.handleIncomingMessage( scampiMessage );
+        this.handleIncomingMessage( message );
       } catch ( Exception e ) {
         Log.e( TAG, "Invalid SCAMPI message (" + e.getMessage() + ").", e );
       }
@@ -442,9 +596,13 @@ implements DatabaseController.OnInsertedPerson,
       }
 
       // Create and publish SCAMPI message
+      long size;
       try {
-        SCAMPIMessage msg = this.createMessage( record, picPath );
-        this.appLib.publish( msg, PEOPLE_FINDER_SERVICE );
+        RouterMessage msg = this.createMessage( record, picPath );
+        this.router.publish( msg, PEOPLE_FINDER_SERVICE );
+        size = msg.getBinarySize( MSG_RECORDS_FIELD );
+        this.messagesOut.increment();
+        this.bytesOut.add( size );
       } catch ( Exception e ) {
         Log.d( TAG, "Failed to publish SCAMPI message (" +
                     e.getMessage() + ")." );
@@ -454,59 +612,38 @@ implements DatabaseController.OnInsertedPerson,
       // Set the routed status of the record
       this.db.setRouted( record );
 
-      Log.d( TAG, "Published record for person: " +
-                  record.person.metadata.recordID + " (" +
-                  record.person.identity.name.fullName + ")" );
+      TraceBuffer.record( TraceEvent.RECORD_PUBLISHED, size,
+          record.notes.size() );
     }
   }
 
   /**
-   * Creates a {@code SCAMPIMessage} for the records.
+   * Creates a message for the records.
    *
    * @param records
    *     records to send
    * @param picPath
    *     path to a picture to attach or {@code null}.
    *
-   * @return {@link SCAMPIMessage} containing the given records
+   * @return {@link RouterMessage} containing the given records
    */
-  private SCAMPIMessage createMessage(
+  private RouterMessage createMessage(
       DataModel.SerializablePerson records, String picPath )
   throws IOException {
-    // Use the person record ID as AppTag. This causes the router to
-    // replace older version of the same person's message with the new one.
-    SCAMPIMessage msg = new SCAMPIMessage( records.person.metadata.recordID );
-    msg.setLifetime( MSG_LIFETIME );
-
-    // Serialize the records
-    ByteArrayOutputStream bout = null;
-    ObjectOutputStream out = null;
-    byte[] serializedRecords;
-    try {
-      bout = new ByteArrayOutputStream();
-      out = new ObjectOutputStream( bout );
-      out.writeObject( records );
-      serializedRecords = bout.toByteArray();
-    } finally {
-      close( out );
-      close( bout );
-    }
-
-    // Set the serialized records
-    msg.putBinary( MSG_RECORDS_FIELD, serializedRecords );
-
-    // Set the picture if one exists
+    // Check the picture
+    File pic = null;
     if ( picPath != null && picPath.length() > 0 ) {
-      File pic = new File( picPath );
-      if ( pic.isFile() ) {
-        msg.putBinary( MSG_PHOTO_FIELD, pic );
-      } else {
+      pic = new File( picPath );
+      if ( !pic.isFile() ) {
         Log.d( TAG, "Provided picture '" + pic.getAbsolutePath() + "' " +
                     "does not exist or is not a file." );
+        pic = null;
       }
     }
 
-    return msg;
+    // The person record ID is the AppTag, so the router replaces older
+    // versions of the same person's message with the new one
+    return RecordMessages.create( records, pic, MSG_LIFETIME );
   }
   //==========================================================================//
 
@@ -532,29 +669,46 @@ implements DatabaseController.OnInsertedPerson,
     this.triggerRouting();
   }
 
+  /**
+   * Publishes all un-routed records. Triggers that arrive while the
+   * un-routed records are being queried are coalesced into a single query
+   * that runs once the current one finishes, so a batch of insertions
+   * doesn't query the database once per record.
+   */
   private void triggerRouting() {
-    Log.d( TAG, "Routing triggered." );
-
     // Do nothing if AppLib is not connected.
     // When the AppLib does connect we will query the database for all
     // un-routed message and publish them in batch.
-    if ( this.appLib == null ||
-          this.appLib.getLifecycleState() != AppLib.State.CONNECTED ) {
-      Log.d( TAG, "No connected AppLib instance, cannot route." );
+    if ( this.router == null ||
+          this.router.getLifecycleState() != Router.State.CONNECTED ) {
+      return;
+    }
+
+    // Only one query at a time, the running one will pick up the request
+    this.routingRequested.set( true );
+    if ( !this.routingRunning.compareAndSet( false, true ) ) {
       return;
     }
+    this.routingRequested.set( false );
 
     // Query the database for all un-routed records and then publish them
     this.db.getAllUnrouted(
         ( records, picPaths ) -> {
           // TODO: Should probably not do this from the database thread
-          Log.d( TAG, "Got " + records.size() + " un-routed records:" );
-
-          publishRecords( records, picPaths );
+          TraceBuffer.record( TraceEvent.UNROUTED_QUERIED, records.size(),
+              0 );
+
+          try {
+            publishRecords( records, picPaths );
+          } finally {
+            // Run again if more records came in while we were querying
+            routingRunning.set( false );
+            if ( routingRequested.get() ) {
+              triggerRouting();
+            }
+          }
         }
     );
-
-    Log.d( TAG, "triggerRouting() done" );
   }
   //==========================================================================//
 
@@ -569,25 +723,25 @@ implements DatabaseController.OnInsertedPerson,
   //------------------------------------------------------------------------//
   private void scheduleConnect( long delay, TimeUnit unit ) {
     Log.d( TAG, "Scheduling applib connect in: " + delay + " " + unit );
-    this.scheduledExecutor.schedule( new ReconnectTask( this.appLib ),
+    this.scheduledExecutor.schedule( new ReconnectTask( this.router ),
         delay, unit );
   }
 
   private static class ReconnectTask
   implements Runnable {
-    private final AppLib appLib;
+    private final Router router;
 
-    public ReconnectTask( AppLib appLib ) {
-      this.appLib = appLib;
+    public ReconnectTask( Router router ) {
+      this.router = router;
     }
 
     @Override
     public void run() {
-      AppLib.State state = this.appLib.getLifecycleState();
-      if ( state == AppLib.State.IDLE
-           || state == AppLib.State.NEW ) {
+      Router.State state = this.router.getLifecycleState();
+      if ( state == Router.State.IDLE
+           || state == Router.State.NEW ) {
         Log.d( TAG, "Trying to connect appLib" );
-        this.appLib.connect();
+        this.router.connect();
       } else {
         Log.d( TAG, "Can't connect, lifecycle state: " + state );
       }
@@ -627,15 +781,18 @@ implements DatabaseController.OnInsertedPerson,
         // Setup the database
         DatabaseController.DatabaseBinder binder =
             ( DatabaseController.DatabaseBinder ) iBinder;
-        AppLibService.this.db = binder.getService();
+        synchronized ( AppLibService.this.dbLock ) {
+          AppLibService.this.db = binder.getService();
+          AppLibService.this.dbLock.notifyAll();
+        }
         AppLibService.this.db
             .addOnInsertedNoteCallback( AppLibService.this );
         AppLibService.this.db
             .addOnInsertedPersonCallback( AppLibService.this );
 
         // Trigger routing of un-routed messages if the AppLib is connected
-        if ( appLib != null
-              && appLib.getLifecycleState() == AppLib.State.CONNECTED ) {
+        if ( router != null
+              && router.getLifecycleState() == Router.State.CONNECTED ) {
           triggerRouting();
         }
       }
@@ -666,17 +823,4 @@ implements DatabaseController.OnInsertedPerson,
     }
   }
   //==========================================================================//
-
-
-  //==========================================================================//
-  // Private - utilities
-  //==========================================================================//
-  private static void close( final Closeable object ) {
-    if ( object != null ) {
-      try {
-        object.close();
-      } catch ( IOException e ) { /* Ignore, can't recover. */ }
-    }
-  }
-  //==========================================================================//
 }
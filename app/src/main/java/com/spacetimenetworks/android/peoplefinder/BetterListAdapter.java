@@ -18,35 +18,40 @@
 package com.spacetimenetworks.android.peoplefinder;
 
 import android.content.Context;
-import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.BaseAdapter;
 
+import com.spacetimenetworks.android.peoplefinder.metrics.TraceBuffer;
+import com.spacetimenetworks.android.peoplefinder.metrics.TraceEvent;
+
 import java.util.List;
 
 /**
  * <p> Adapter for items in a list view. The user provides the context, layout
  * resource and a list of items to use for populating the layout. The sub class
- * implements {@link #populateView} to populate the layout with the data from an
- * item. </p> <p/> <p> Items can be changed at any time by calling {@link
- * #setItems}, which needs to be called from the GUI thread in order for the
- * attached list view to update. </p>
+ * implements {@link #createViewHolder} to look up the views in a newly
+ * inflated layout once, and {@link #bindView} to populate the views held by
+ * the holder with the data from an item. </p> <p/> <p> Items can be changed at
+ * any time by calling {@link #setItems}, which needs to be called from the GUI
+ * thread in order for the attached list view to update. </p> <p/> <p> The
+ * items are kept in an immutable snapshot array that is swapped in through a
+ * single volatile reference, so the methods called for every visible row
+ * while scrolling never take a lock. Item IDs are derived from a stable key of
+ * the item provided by the sub class in {@link #getItemKey}. </p>
  *
  * @author teemuk
  */
-public abstract class BetterListAdapter<T>
+public abstract class BetterListAdapter<T, H>
     extends BaseAdapter {
-  // TODO:
-  // - Could be made into a generic
   static final String TAG = BetterListAdapter.class.getSimpleName();
 
   //==========================================================================//
   // Instance vars
   //==========================================================================//
-  private final Object itemsLock = new Object();
-  private volatile List<T> items;
+  /** Immutable snapshot of the items, never modified after publishing. */
+  private volatile Object[] items;
   private final Context context;
   private final int rowResourceId;
   //==========================================================================//
@@ -61,7 +66,7 @@ public abstract class BetterListAdapter<T>
 
     this.context = context;
     this.rowResourceId = rowResourceId;
-    this.items = items;
+    this.items = items.toArray();
   }
 
   /**
@@ -72,19 +77,21 @@ public abstract class BetterListAdapter<T>
    *     list of items
    */
   public void setItems( List<T> items ) {
-    // Switch the dataset
-    synchronized ( this.itemsLock ) {
-      this.items = items;
-    }
+    // Switch the dataset, copying so that later changes to the list don't
+    // show through the snapshot
+    int previous = this.items.length;
+    this.items = items.toArray();
 
-    Log.d( TAG, "New data set, notifying super." );
+    TraceBuffer.record( TraceEvent.LIST_ITEMS_SET, this.items.length,
+        previous );
 
     // Notify the observers that the data changed
     super.notifyDataSetChanged();
   }
 
+  @SuppressWarnings( "unchecked" )
   public T getItemAtPosition( int position ) {
-    return this.items.get( position );
+    return ( T ) this.items[ position ];
   }
   //==========================================================================//
 
@@ -96,17 +103,39 @@ public abstract class BetterListAdapter<T>
   //==========================================================================//
 
   /**
-   * Asks the sub class to populate the given view with the given item. The
-   * view
-   * is an instance of the layout whose resource id is provided in the
-   * constructor.
+   * Asks the sub class to create a holder for the views in the given layout.
+   * The layout is a newly inflated instance of the layout whose resource id is
+   * provided in the constructor. The holder is reused whenever the layout is
+   * recycled for another item.
    *
    * @param layout
-   *     the layout to populate
+   *     the newly inflated layout
+   * @return holder for the views in the layout
+   */
+  protected abstract H createViewHolder( final View layout );
+
+  /**
+   * Asks the sub class to populate the views held by the given holder with
+   * the given item. Called on the GUI thread for every row scrolled into
+   * view, so should not do any work beyond setting the views.
+   *
+   * @param holder
+   *     the holder of the views to populate
    * @param item
-   *     the item to use for populating the layout
+   *     the item to use for populating the views
    */
-  protected abstract void populateView( final View layout, final T item );
+  protected abstract void bindView( final H holder, final T item );
+
+  /**
+   * Asks the sub class for a key that identifies the given item across data
+   * sets, e.g., the record ID. The item ID reported to the list view is
+   * derived from the key.
+   *
+   * @param item
+   *     the item
+   * @return stable key of the item
+   */
+  protected abstract String getItemKey( final T item );
   //==========================================================================//
 
 
@@ -115,23 +144,17 @@ public abstract class BetterListAdapter<T>
   //==========================================================================//
   @Override
   public int getCount() {
-    synchronized ( this.itemsLock ) {
-      return items.size();
-    }
+    return this.items.length;
   }
 
   @Override
   public Object getItem( int position ) {
-    synchronized ( this.itemsLock ) {
-      return this.items.get( position );
-    }
+    return this.items[ position ];
   }
 
   @Override
   public long getItemId( int position ) {
-    synchronized ( this.itemsLock ) {
-      return this.items.get( position ).hashCode();
-    }
+    return stableId( this.getItemKey( this.getItemAtPosition( position ) ) );
   }
 
   @Override
@@ -140,29 +163,54 @@ public abstract class BetterListAdapter<T>
   }
 
   @Override
+  @SuppressWarnings( "unchecked" )
   public View getView( int position, View convertView, ViewGroup parent ) {
     // Setup the view that we will bind the data to
     View rowLayout;
+    H holder;
     if ( convertView != null ) {
       rowLayout = convertView;
+      holder = ( H ) rowLayout.getTag();
     } else {
       LayoutInflater inflater =
           ( LayoutInflater ) context
               .getSystemService( Context.LAYOUT_INFLATER_SERVICE );
       rowLayout = inflater.inflate( this.rowResourceId, parent, false );
+      holder = this.createViewHolder( rowLayout );
+      rowLayout.setTag( holder );
     }
 
     // Get the item
-    T item;
-    synchronized ( this.itemsLock ) {
-      item = this.items.get( position );
-    }
+    T item = this.getItemAtPosition( position );
 
     // Populate the elements
-    this.populateView( rowLayout, item );
+    this.bindView( holder, item );
 
     return rowLayout;
   }
   //==========================================================================//
 
+
+  //==========================================================================//
+  // Private
+  //==========================================================================//
+  /**
+   * 64-bit FNV-1a hash of the key. Unlike {@link Object#hashCode()}, the hash
+   * is the same for equal keys in different item instances, and 64 bits make
+   * collisions between record IDs practically impossible.
+   */
+  private static long stableId( String key ) {
+    if ( key == null ) {
+      return 0;
+    }
+
+    long hash = 0xcbf29ce484222325L;
+    for ( int i = 0; i < key.length(); i++ ) {
+      hash ^= key.charAt( i );
+      hash *= 0x100000001b3L;
+    }
+    return hash;
+  }
+  //==========================================================================//
+
 }
@@ -0,0 +1,179 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder;
+
+import android.app.Activity;
+import android.os.Bundle;
+import android.os.Handler;
+import android.util.Log;
+import android.widget.Button;
+import android.widget.CheckBox;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import com.spacetimenetworks.android.peoplefinder.metrics.MetricsRegistry;
+import com.spacetimenetworks.android.peoplefinder.metrics.TraceBuffer;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Hidden activity that shows the runtime metrics from the {@link
+ * MetricsRegistry} and exports them as JSON for debugging in the field. Also
+ * toggles the {@link TraceBuffer} and dumps it into a file. Opened by long
+ * pressing the title of {@link ImportActivity}. The metrics are refreshed
+ * every second while the activity is visible.
+ *
+ * @author teemuk
+ */
+public class DiagnosticsActivity
+    extends Activity {
+  private static final String TAG = DiagnosticsActivity.class.getSimpleName();
+
+  /** Interval of refreshing the metrics (ms). */
+  private static final long REFRESH_INTERVAL_MS = 1000;
+
+  //=========================================================================//
+  // GUI
+  //=========================================================================//
+  private TextView metricsText;
+  private Button exportButton;
+  private CheckBox traceCheck;
+  private Button dumpTraceButton;
+  //=========================================================================//
+
+
+  //=========================================================================//
+  // Instance vars
+  //=========================================================================//
+  private final Handler handler = new Handler();
+  private final Runnable refreshRunnable = this::refreshMetrics;
+  //=========================================================================//
+
+
+  //=========================================================================//
+  // Lifecycle
+  //=========================================================================//
+  @Override
+  public void onCreate( Bundle savedInstanceState ) {
+    super.onCreate( savedInstanceState );
+
+    super.setContentView( R.layout.diagnostics_view );
+
+    this.metricsText = super.findViewById( R.id.diagnosticsViewMetricsText );
+    this.exportButton = super.findViewById( R.id.diagnosticsViewExportButton );
+    this.traceCheck = super.findViewById( R.id.diagnosticsViewTraceCheck );
+    this.dumpTraceButton
+        = super.findViewById( R.id.diagnosticsViewDumpTraceButton );
+
+    this.exportButton.setOnClickListener(
+        view -> DiagnosticsActivity.this.exportButtonPushed()
+    );
+    this.traceCheck.setChecked( TraceBuffer.isEnabled() );
+    this.traceCheck.setOnClickListener(
+        view -> TraceBuffer.setEnabled( this.traceCheck.isChecked() )
+    );
+    this.dumpTraceButton.setOnClickListener(
+        view -> DiagnosticsActivity.this.dumpTraceButtonPushed()
+    );
+  }
+
+  @Override
+  public void onResume() {
+    super.onResume();
+
+    this.refreshMetrics();
+  }
+
+  @Override
+  public void onPause() {
+    super.onPause();
+
+    this.handler.removeCallbacks( this.refreshRunnable );
+  }
+  //=========================================================================//
+
+
+  //=========================================================================//
+  // GUI callbacks
+  //=========================================================================//
+  protected void exportButtonPushed() {
+    Log.d( TAG, "exportButtonPushed()" );
+
+    // The gauges may take locks
+    this.writeInBackground( "metrics-", ".json", file -> {
+      try ( Writer out = new FileWriter( file ) ) {
+        MetricsRegistry.get().writeJson( out );
+      }
+    } );
+  }
+
+  protected void dumpTraceButtonPushed() {
+    Log.d( TAG, "dumpTraceButtonPushed()" );
+
+    this.writeInBackground( "trace-", ".txt", TraceBuffer::writeTo );
+  }
+  //=========================================================================//
+
+
+  //=========================================================================//
+  // Private
+  //=========================================================================//
+  /**
+   * Writes a new file in the external files dir from a background thread
+   * and tells the user where it is.
+   */
+  private void writeInBackground( String prefix, String suffix,
+                                  final FileTask task ) {
+    File dir = super.getExternalFilesDir( null );
+    if ( dir == null ) {
+      dir = super.getFilesDir();
+    }
+    final File file = new File( dir,
+        prefix + System.currentTimeMillis() + suffix );
+
+    new Thread( () -> {
+      String message;
+      try {
+        task.write( file );
+        message = "Written to " + file.getAbsolutePath();
+      } catch ( IOException e ) {
+        Log.w( TAG, "Couldn't write " + file, e );
+        message = "Writing failed: " + e.getMessage();
+      }
+
+      final String text = message;
+      runOnUiThread( () -> Toast.makeText( DiagnosticsActivity.this, text,
+          Toast.LENGTH_LONG ).show() );
+    }, "diagnostics-write" ).start();
+  }
+
+  private interface FileTask {
+    void write( File file ) throws IOException;
+  }
+
+  /** Shows the metrics and schedules the next refresh. */
+  private void refreshMetrics() {
+    this.handler.removeCallbacks( this.refreshRunnable );
+    this.metricsText.setText( MetricsRegistry.get().toText() );
+    this.handler.postDelayed( this.refreshRunnable, REFRESH_INTERVAL_MS );
+  }
+  //=========================================================================//
+}
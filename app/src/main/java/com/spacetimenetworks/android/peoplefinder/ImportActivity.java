@@ -0,0 +1,411 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder;
+
+import android.app.Activity;
+import android.content.ComponentName;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.Bundle;
+import android.os.Environment;
+import android.os.Handler;
+import android.os.IBinder;
+import android.util.Log;
+import android.widget.Button;
+import android.widget.CheckBox;
+import android.widget.EditText;
+import android.widget.ProgressBar;
+import android.widget.TextView;
+
+import com.spacetimenetworks.android.peoplefinder.pfif.PfifImporter;
+
+import java.io.File;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Activity for importing a PFIF file into the database and for exporting the
+ * database into one. Starts {@link PfifImportService} or {@link
+ * PfifExportService} and shows the progress.
+ *
+ * @author teemuk
+ */
+public class ImportActivity
+    extends Activity {
+  private static final String TAG = ImportActivity.class.getSimpleName();
+
+  /** Optional Intent extra with the path to prefill. */
+  public static final String INTENT_EXTRA_PATH = "path";
+
+  private static final String ROOT_DIR = "PeopleFinder";
+  private static final String DEFAULT_FILE = "import.xml";
+  /** Interval of progress updates (ms). */
+  private static final long PROGRESS_INTERVAL_MS = 500;
+  private static final long SECONDS_PER_DAY = 24 * 60 * 60;
+
+  //=========================================================================//
+  // GUI
+  //=========================================================================//
+  private TextView titleText;
+  private EditText pathText;
+  private CheckBox publishCheck;
+  private EditText cityText;
+  private EditText daysText;
+  private ProgressBar progressBar;
+  private TextView statusText;
+  private Button importButton;
+  private Button exportButton;
+  private Button stopButton;
+  //=========================================================================//
+
+
+  //=========================================================================//
+  // Instance vars
+  //=========================================================================//
+  private PfifImportService importService;
+  private ServiceConnection importConnection;
+  private PfifExportService exportService;
+  private ServiceConnection exportConnection;
+  private final Handler handler = new Handler();
+  private final Runnable progressRunnable = this::refreshProgress;
+  //=========================================================================//
+
+
+  //=========================================================================//
+  // Lifecycle
+  //=========================================================================//
+  @Override
+  public void onCreate( Bundle savedInstanceState ) {
+    super.onCreate( savedInstanceState );
+
+    super.setContentView( R.layout.import_view );
+
+    // Setup GUI
+    this.setupGuiReferences();
+    this.setupGuiCallbacks();
+    this.setupGuiElements();
+  }
+
+  @Override
+  public void onStart() {
+    super.onStart();
+
+    Log.d( TAG, "onStart()" );
+
+    // Follow an import or export that is already running
+    this.doBindImportService();
+    this.doBindExportService();
+  }
+
+  @Override
+  public void onStop() {
+    super.onStop();
+
+    Log.d( TAG, "onStop()" );
+
+    this.handler.removeCallbacks( this.progressRunnable );
+    this.doUnbindImportService();
+    this.doUnbindExportService();
+  }
+  //=========================================================================//
+
+
+  //=========================================================================//
+  // GUI callbacks
+  //=========================================================================//
+  protected void importButtonPushed() {
+    Log.d( TAG, "importButtonPushed()" );
+
+    String path = this.pathText.getText().toString().trim();
+    if ( !new File( path ).isFile() ) {
+      this.statusText.setText( "File not found: " + path );
+      return;
+    }
+
+    // The service keeps running while the activity is gone. Binding is
+    // redone so that the connection is to the new import.
+    Intent intent = new Intent( this, PfifImportService.class );
+    intent.putExtra( PfifImportService.INTENT_EXTRA_PATH, path );
+    intent.putExtra( PfifImportService.INTENT_EXTRA_PUBLISH,
+        this.publishCheck.isChecked() );
+    super.startService( intent );
+
+    this.statusText.setText( "Importing..." );
+    this.doUnbindImportService();
+    this.doBindImportService();
+  }
+
+  protected void exportButtonPushed() {
+    Log.d( TAG, "exportButtonPushed()" );
+
+    String path = this.pathText.getText().toString().trim();
+    if ( path.length() == 0 ) {
+      this.statusText.setText( "No file to export to." );
+      return;
+    }
+
+    Intent intent = new Intent( this, PfifExportService.class );
+    intent.putExtra( PfifExportService.INTENT_EXTRA_PATH, path );
+    String city = this.cityText.getText().toString().trim();
+    if ( city.length() > 0 ) {
+      intent.putExtra( PfifExportService.INTENT_EXTRA_HOME_CITY, city );
+    }
+    String days = this.daysText.getText().toString().trim();
+    if ( days.length() > 0 ) {
+      try {
+        long since = System.currentTimeMillis() / 1000
+                     - Long.parseLong( days ) * SECONDS_PER_DAY;
+        intent.putExtra( PfifExportService.INTENT_EXTRA_SINCE, since );
+      } catch ( NumberFormatException e ) {
+        this.statusText.setText( "Invalid number of days: " + days );
+        return;
+      }
+    }
+    super.startService( intent );
+
+    this.statusText.setText( "Exporting..." );
+    this.doUnbindExportService();
+    this.doBindExportService();
+  }
+
+  protected void stopButtonPushed() {
+    Log.d( TAG, "stopButtonPushed()" );
+
+    if ( this.importService != null ) {
+      this.importService.cancel();
+    }
+    if ( this.exportService != null ) {
+      this.exportService.cancel();
+    }
+  }
+
+  protected void titleLongPushed() {
+    Log.d( TAG, "titleLongPushed()" );
+
+    super.startActivity( new Intent( this, DiagnosticsActivity.class ) );
+  }
+  //=========================================================================//
+
+
+  //=========================================================================//
+  // Private - GUI
+  //=========================================================================//
+  private void setupGuiReferences() {
+    this.titleText = super.findViewById( R.id.importViewTitleText );
+    this.pathText = super.findViewById( R.id.importViewPathText );
+    this.publishCheck = super.findViewById( R.id.importViewPublishCheck );
+    this.cityText = super.findViewById( R.id.importViewCityText );
+    this.daysText = super.findViewById( R.id.importViewDaysText );
+    this.progressBar = super.findViewById( R.id.importViewProgress );
+    this.statusText = super.findViewById( R.id.importViewStatusText );
+    this.importButton = super.findViewById( R.id.importViewImportButton );
+    this.exportButton = super.findViewById( R.id.importViewExportButton );
+    this.stopButton = super.findViewById( R.id.importViewStopButton );
+  }
+
+  private void setupGuiCallbacks() {
+    // Hidden entry to the diagnostics
+    this.titleText.setOnLongClickListener( view -> {
+      ImportActivity.this.titleLongPushed();
+      return true;
+    } );
+
+    this.importButton.setOnClickListener(
+        view -> ImportActivity.this.importButtonPushed()
+    );
+
+    this.exportButton.setOnClickListener(
+        view -> ImportActivity.this.exportButtonPushed()
+    );
+
+    this.stopButton.setOnClickListener(
+        view -> ImportActivity.this.stopButtonPushed()
+    );
+  }
+
+  private void setupGuiElements() {
+    String path = super.getIntent().getStringExtra( INTENT_EXTRA_PATH );
+    if ( path == null ) {
+      File dir = Environment.getExternalStoragePublicDirectory(
+          Environment.DIRECTORY_DOWNLOADS );
+      path = new File( new File( dir, ROOT_DIR ), DEFAULT_FILE )
+          .getAbsolutePath();
+    }
+    this.pathText.setText( path );
+  }
+
+  /** Shows the progress and schedules the next update. */
+  private void refreshProgress() {
+    this.handler.removeCallbacks( this.progressRunnable );
+    boolean running = this.refreshImportProgress();
+    running = this.refreshExportProgress() || running;
+    if ( running ) {
+      this.handler.postDelayed( this.progressRunnable, PROGRESS_INTERVAL_MS );
+    }
+  }
+
+  /** Shows the progress of the import, returns whether it is running. */
+  private boolean refreshImportProgress() {
+    PfifImportService service = this.importService;
+    if ( service == null ) {
+      return false;
+    }
+
+    PfifImporter.Progress progress = service.getProgress();
+    if ( progress != null ) {
+      if ( progress.totalBytes > 0 ) {
+        this.progressBar.setProgress( ( int ) ( 1000 * progress.bytesRead
+                                                / progress.totalBytes ) );
+      }
+      this.statusText.setText( progress.records + " records read, "
+                               + progress.persons + " persons and "
+                               + progress.notes + " notes added." );
+    }
+
+    if ( !service.isFinished() ) {
+      return true;
+    }
+
+    Exception failure = service.getFailure();
+    if ( failure instanceof CancellationException ) {
+      this.statusText.append( "\nStopped, import again to resume." );
+    } else if ( failure != null ) {
+      this.statusText.append( "\nFailed: " + failure.getMessage() );
+    } else {
+      this.progressBar.setProgress( this.progressBar.getMax() );
+      this.statusText.append( "\nDone." );
+    }
+    return false;
+  }
+
+  /** Shows the progress of the export, returns whether it is running. */
+  private boolean refreshExportProgress() {
+    PfifExportService service = this.exportService;
+    if ( service == null ) {
+      return false;
+    }
+
+    this.statusText.setText( service.getPersons() + " persons and "
+                             + service.getNotes() + " notes exported." );
+    if ( !service.isFinished() ) {
+      return true;
+    }
+
+    Exception failure = service.getFailure();
+    if ( failure instanceof CancellationException ) {
+      this.statusText.append( "\nStopped, no file written." );
+    } else if ( failure != null ) {
+      this.statusText.append( "\nFailed: " + failure.getMessage() );
+    } else {
+      this.statusText.append( "\nDone." );
+    }
+    return false;
+  }
+  //=========================================================================//
+
+
+  //=========================================================================//
+  // Binding to PfifImportService
+  //=========================================================================//
+  private void doBindImportService() {
+    this.importConnection = this.getImportServiceConnection();
+    // Don't create the service, only connect to a running import
+    super.bindService( new Intent( this, PfifImportService.class ),
+        this.importConnection, 0 );
+  }
+
+  private void doUnbindImportService() {
+    if ( this.importConnection != null ) {
+      super.unbindService( this.importConnection );
+      this.importConnection = null;
+      this.importService = null;
+    }
+  }
+
+  private ServiceConnection getImportServiceConnection() {
+    return new ServiceConnection() {
+      @Override
+      public void onServiceConnected( ComponentName componentName,
+                                      IBinder iBinder ) {
+        if ( !( iBinder instanceof PfifImportService.ImportBinder ) ) {
+          Log.e( TAG, "Wrong type of binder in onServiceConnected()" );
+          return;
+        }
+
+        Log.d( TAG, "Import service connected" );
+
+        PfifImportService.ImportBinder binder =
+            ( PfifImportService.ImportBinder ) iBinder;
+        ImportActivity.this.importService = binder.getService();
+        ImportActivity.this.refreshProgress();
+      }
+
+      @Override
+      public void onServiceDisconnected( ComponentName componentName ) {
+        Log.d( TAG, "Import service disconnected" );
+        ImportActivity.this.importService = null;
+      }
+    };
+  }
+  //=========================================================================//
+
+
+  //=========================================================================//
+  // Binding to PfifExportService
+  //=========================================================================//
+  private void doBindExportService() {
+    this.exportConnection = this.getExportServiceConnection();
+    // Don't create the service, only connect to a running export
+    super.bindService( new Intent( this, PfifExportService.class ),
+        this.exportConnection, 0 );
+  }
+
+  private void doUnbindExportService() {
+    if ( this.exportConnection != null ) {
+      super.unbindService( this.exportConnection );
+      this.exportConnection = null;
+      this.exportService = null;
+    }
+  }
+
+  private ServiceConnection getExportServiceConnection() {
+    return new ServiceConnection() {
+      @Override
+      public void onServiceConnected( ComponentName componentName,
+                                      IBinder iBinder ) {
+        if ( !( iBinder instanceof PfifExportService.ExportBinder ) ) {
+          Log.e( TAG, "Wrong type of binder in onServiceConnected()" );
+          return;
+        }
+
+        Log.d( TAG, "Export service connected" );
+
+        PfifExportService.ExportBinder binder =
+            ( PfifExportService.ExportBinder ) iBinder;
+        ImportActivity.this.exportService = binder.getService();
+        ImportActivity.this.refreshProgress();
+      }
+
+      @Override
+      public void onServiceDisconnected( ComponentName componentName ) {
+        Log.d( TAG, "Export service disconnected" );
+        ImportActivity.this.exportService = null;
+      }
+    };
+  }
+  //=========================================================================//
+}
@@ -63,9 +63,6 @@ public class MainActivity
     // GUI
     this.setupGuiReferences();
     this.setupGuiCallbacks();
-
-    // Services
-    this.startServices();
   }
 
 
@@ -155,14 +152,6 @@ public class MainActivity
   //=========================================================================//
 
 
-  //=========================================================================//
-  // Private - Service handling
-  //=========================================================================//
-  private void startServices() {
-    super.startService( new Intent( this, DatabaseController.class ) );
-  }
-  //=========================================================================//
-
   //=========================================================================//
   // Binding to DatabaseController
   //------------------------------------------------------------------------//
@@ -22,36 +22,124 @@ import android.view.View;
 import android.widget.EditText;
 import android.widget.TextView;
 
-import com.spacetimenetworks.android.peoplefinder.database.DataModel;
+import com.spacetimenetworks.android.peoplefinder.database.NoteColumns;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
 /**
- * Adapter for items in the persons list view.
+ * <p> Adapter for items in the notes list view. </p> <p/> <p> The adapter
+ * shows {@link NoteRow}s, which are light handles to a row of a {@link
+ * NoteColumns} query result. The rows are created with {@link #toRows} on
+ * the thread the query results arrive on, which also formats the dates and
+ * creates the texts, shortening the long ones, so binding a row doesn't
+ * format or allocate anything. </p>
  *
  * @author teemuk
  */
 public class NoteListAdapter
-    extends BetterListAdapter<DataModel.LocalNote> {
-  static final String TAG = PersonsListAdapter.class.getSimpleName();
+    extends BetterListAdapter<NoteListAdapter.NoteRow,
+                              NoteListAdapter.ViewHolder> {
+  static final String TAG = NoteListAdapter.class.getSimpleName();
 
   //==========================================================================//
-  // Instance vars
+  // Constants
   //==========================================================================//
   // Formatting of the timestamp in list items
-  private final String datePattern = "HH:mm:ss d.M.yyyy";
-  private final SimpleDateFormat timeformatter = new SimpleDateFormat( datePattern );
+  private static final String DATE_PATTERN = "HH:mm:ss d.M.yyyy";
+  /** The content field shows a few lines, longer texts are cut. */
+  private static final int MAX_CONTENT_LENGTH = 500;
   //==========================================================================//
 
+
   //==========================================================================//
   // API
   //==========================================================================//
   public NoteListAdapter( Context context, int rowResourceId,
-                          List<DataModel.LocalNote> items ) {
+                          List<NoteRow> items ) {
     super( context, rowResourceId, items );
   }
+
+  /**
+   * Creates the rows for the given notes. Can be called from any thread, and
+   * should be called off the GUI thread since it formats the dates and
+   * creates the texts.
+   *
+   * @param notes
+   *     the notes to display
+   * @return rows of the notes in the same order
+   */
+  public static List<NoteRow> toRows( NoteColumns notes ) {
+    SimpleDateFormat timeFormatter = new SimpleDateFormat( DATE_PATTERN );
+    Date date = new Date();
+
+    List<NoteRow> rows = new ArrayList<>( notes.size() );
+    for ( int i = 0; i < notes.size(); i++ ) {
+      String formattedDate = null;
+      long entryDate = notes.getEntryDate( i );
+      if ( entryDate != NoteColumns.NO_DATE ) {
+        date.setTime( entryDate * 1000 );
+        formattedDate = timeFormatter.format( date );
+      }
+
+      String content;
+      if ( notes.getTextLength( i ) > MAX_CONTENT_LENGTH ) {
+        content = notes.getTextPrefix( i, MAX_CONTENT_LENGTH ) + "\u2026";
+      } else {
+        String text = notes.getText( i );
+        content = ( text != null ) ? ( text ) : ( "" );
+      }
+
+      rows.add( new NoteRow( notes, i, formattedDate, content ) );
+    }
+    return rows;
+  }
+
+  /**
+   * A row of the notes list. Fields that are {@code null} are hidden together
+   * with their titles.
+   */
+  public static final class NoteRow {
+    private final NoteColumns notes;
+    private final int row;
+    private final String date;
+    /** The text to show, shortened if the text is too long. */
+    private final String content;
+
+    NoteRow( NoteColumns notes, int row, String date, String content ) {
+      this.notes = notes;
+      this.row = row;
+      this.date = date;
+      this.content = content;
+    }
+
+    public String getRecordID() {
+      return this.notes.getRecordID( this.row );
+    }
+
+    public String getAuthorName() {
+      return emptyToNull( this.notes.getAuthorName( this.row ) );
+    }
+
+    public String getStatus() {
+      return emptyToNull( this.notes.getStatus( this.row ) );
+    }
+
+    public String getLocation() {
+      return emptyToNull( this.notes.getLastKnownLocation( this.row ) );
+    }
+
+    public String getDate() {
+      return this.date;
+    }
+
+    /** Returns the text of the note, shortened if it is too long. */
+    public String getContent() {
+      return this.content;
+    }
+  }
   //==========================================================================//
 
 
@@ -59,35 +147,51 @@ public class NoteListAdapter
   // BetterListAdapter implementation
   //==========================================================================//
   @Override
-  protected void populateView( View rowLayout,
-                               DataModel.LocalNote item ) {
-    // Get the elements
-    TextView authorNameTitle = rowLayout.findViewById( R.id.noteRowAuthorTitle );
-    TextView authorNameText = rowLayout.findViewById( R.id.noteRowAuthorText );
-
-    TextView dateText = rowLayout.findViewById( R.id.noteRowDateText );
-
-    EditText contentText = rowLayout.findViewById( R.id.noteRowContentText );
+  protected ViewHolder createViewHolder( View rowLayout ) {
+    return new ViewHolder( rowLayout );
+  }
 
-    TextView statusTitle = rowLayout.findViewById( R.id.noteRowStatusTitle );
-    TextView statusText = rowLayout.findViewById( R.id.noteRowStatusText );
+  @Override
+  protected void bindView( ViewHolder holder, NoteRow item ) {
+    setOrHide( holder.authorNameTitle, holder.authorNameText,
+        item.getAuthorName() );
+    setOrHide( holder.dateText, item.getDate() );
+    holder.contentText.setText( item.getContent() );
+    setOrHide( holder.statusTitle, holder.statusText, item.getStatus() );
+    setOrHide( holder.locationTitle, holder.locationText,
+        item.getLocation() );
+  }
 
-    TextView locationTitle = rowLayout.findViewById( R.id.noteRowLocationTitle );
-    TextView locationText = rowLayout.findViewById( R.id.noteRowLocationText );
+  @Override
+  protected String getItemKey( NoteRow item ) {
+    return item.getRecordID();
+  }
+  //==========================================================================//
 
 
-    // Populate the elements
-    this.setOrHide( authorNameTitle, authorNameText,
-        item.note.metadata.authorName );
-    String date = this.timeformatter.format(
-        new Date( item.note.metadata.entryDate * 1000 ) );
-    this.setOrHide( dateText, date );
-    if ( item.note.status.text != null ) {
-      contentText.setText( item.note.status.text );
+  //==========================================================================//
+  // View holder
+  //==========================================================================//
+  static final class ViewHolder {
+    final TextView authorNameTitle;
+    final TextView authorNameText;
+    final TextView dateText;
+    final EditText contentText;
+    final TextView statusTitle;
+    final TextView statusText;
+    final TextView locationTitle;
+    final TextView locationText;
+
+    ViewHolder( View rowLayout ) {
+      this.authorNameTitle = rowLayout.findViewById( R.id.noteRowAuthorTitle );
+      this.authorNameText = rowLayout.findViewById( R.id.noteRowAuthorText );
+      this.dateText = rowLayout.findViewById( R.id.noteRowDateText );
+      this.contentText = rowLayout.findViewById( R.id.noteRowContentText );
+      this.statusTitle = rowLayout.findViewById( R.id.noteRowStatusTitle );
+      this.statusText = rowLayout.findViewById( R.id.noteRowStatusText );
+      this.locationTitle = rowLayout.findViewById( R.id.noteRowLocationTitle );
+      this.locationText = rowLayout.findViewById( R.id.noteRowLocationText );
     }
-    this.setOrHide( statusTitle, statusText, item.note.status.status );
-    this.setOrHide( locationTitle, locationText,
-        item.note.status.lastKnownLocation );
   }
   //==========================================================================//
 
@@ -95,23 +199,24 @@ public class NoteListAdapter
   //==========================================================================//
   // Private
   //==========================================================================//
-  private void setOrHide( TextView titleView, TextView contentView,
-                          String content ) {
-    if ( content != null && content.length() > 0 ) {
-      contentView.setText( content );
-    } else {
-      titleView.setVisibility( View.GONE );
-      contentView.setVisibility( View.GONE );
-    }
+  // Rows are recycled, so views hidden for one item must be shown again for
+  // the next one.
+  private static void setOrHide( TextView titleView, TextView contentView,
+                                 String content ) {
+    int visibility = ( content != null ) ? ( View.VISIBLE ) : ( View.GONE );
+    titleView.setVisibility( visibility );
+    contentView.setVisibility( visibility );
+    contentView.setText( content );
   }
 
-  private void setOrHide( TextView contentView,
-                          String content ) {
-    if ( content != null && content.length() > 0 ) {
-      contentView.setText( content );
-    } else {
-      contentView.setVisibility( View.GONE );
-    }
+  private static void setOrHide( TextView contentView, String content ) {
+    contentView.setVisibility(
+        ( content != null ) ? ( View.VISIBLE ) : ( View.GONE ) );
+    contentView.setText( content );
+  }
+
+  private static String emptyToNull( String s ) {
+    return ( s != null && s.length() > 0 ) ? ( s ) : ( null );
   }
   //==========================================================================//
 }
@@ -30,10 +30,14 @@ import android.widget.Button;
 import android.widget.ListView;
 import android.widget.TextView;
 
-import com.spacetimenetworks.android.peoplefinder.database.DataModel;
 import com.spacetimenetworks.android.peoplefinder.database.DatabaseController;
+import com.spacetimenetworks.android.peoplefinder.database.LiveQuery;
+import com.spacetimenetworks.android.peoplefinder.database.Projection;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
 
 /**
  * Activity that displays notes for a given person. The person ID is passed in
@@ -42,8 +46,7 @@ import java.util.ArrayList;
  * @author teemuk
  */
 public class NoteViewActivity
-    extends Activity
-    implements DatabaseController.OnInsertedNote {
+    extends Activity {
   private static final String TAG = PeopleViewActivity.class.getSimpleName();
 
   public static final String INTENT_EXTRA_PERSON_ID = "personID";
@@ -53,6 +56,8 @@ public class NoteViewActivity
   //=========================================================================//
   private DatabaseController db;
   private ServiceConnection databaseConnection;
+  /** Live queries keeping the notes and the name up to date. */
+  private final List<LiveQuery> liveQueries = new ArrayList<>( 2 );
   private NoteListAdapter adapter;
   private String personID;
   //=========================================================================//
@@ -128,10 +133,8 @@ public class NoteViewActivity
 
     Log.d( TAG, "onStop()" );
 
-    // Remove callbacks
-    if ( this.db != null ) {
-      this.db.removeOnInsertedNoteCallback( this );
-    }
+    // Stop listening for changes
+    this.closeLiveQueries();
 
     this.doUnbindDatabaseService();
   }
@@ -161,20 +164,6 @@ public class NoteViewActivity
   //=========================================================================//
 
 
-  //=========================================================================//
-  // DatabaseController callbacks
-  //-------------------------------------------------------------------------//
-  // Listen for notes inserted into the database and update the GUI.
-  //=========================================================================//
-  @Override
-  public void onInserted( long id, DataModel.LocalNote note ) {
-    if ( this.personID.equals( note.note.metadata.personID ) ) {
-      this.refreshListViewFromDatabase();
-    }
-  }
-  //=========================================================================//
-
-
   //=========================================================================//
   // Private - GUI
   //=========================================================================//
@@ -208,24 +197,42 @@ public class NoteViewActivity
   }
 
   /**
-   * Runs a database query and updates the list view adapter with the results.
+   * Starts live queries for the notes and the name of the person, which run
+   * now and again whenever notes of the person or the person record change.
    */
-  private void refreshListViewFromDatabase() {
-    if ( this.db == null ) {
-      Log.d( TAG, "Couldn't update list view. No database connection." );
-      return;
-    }
+  private void observeDatabase() {
     if ( this.personID == null || this.personID.length() == 0 ) {
       Log.d( TAG, "Couldn't update list view. No person ID found." );
       return;
     }
 
+    List<String> keys = Collections.singletonList( this.personID );
+    this.liveQueries.add( this.db.observe(
+        EnumSet.of( LiveQuery.Table.NOTE ), keys, this::refreshNotes ) );
+    this.liveQueries.add( this.db.observe(
+        EnumSet.of( LiveQuery.Table.PERSON ), keys, this::refreshName ) );
+  }
+
+  private void closeLiveQueries() {
+    for ( LiveQuery liveQuery : this.liveQueries ) {
+      liveQuery.close();
+    }
+    this.liveQueries.clear();
+  }
+
+  /**
+   * Runs a database query and updates the list view adapter with the results.
+   */
+  private void refreshNotes( DatabaseController db ) {
     // Run a query
-    this.db.getNotesForPerson(
+    db.getNoteColumnsForPerson(
         // Person ID to get notes for
         this.personID,
         // Callback after results arrive
-        rows -> {
+        notes -> {
+          // Create the rows here, off the GUI thread
+          List<NoteListAdapter.NoteRow> rows = NoteListAdapter.toRows( notes );
+
           // Must run this on the GUI thread
           runOnUiThread(
               () -> {
@@ -235,12 +242,18 @@ public class NoteViewActivity
           );
         }
     );
+  }
 
-    // Fetch the name from the database
-    // Query database for person details
-    this.db.getPersonDetails(
+  /**
+   * Fetches the name of the person from the database.
+   */
+  private void refreshName( DatabaseController db ) {
+    // Query database for the name only
+    db.queryPerson(
         // Person ID to query
         this.personID,
+        // Columns to read
+        Projection.PERSON_NAME,
         // Result handling
         row -> {
           // Precondition check
@@ -251,7 +264,7 @@ public class NoteViewActivity
           }
 
           // Update the fields from the GUI thread
-          runOnUiThread( () -> nameText.setText( row.person.identity.name.fullName ) );
+          runOnUiThread( () -> nameText.setText( row.fullName ) );
         }
     );
   }
@@ -295,17 +308,14 @@ public class NoteViewActivity
             ( DatabaseController.DatabaseBinder ) iBinder;
         NoteViewActivity.this.db = binder.getService();
 
-        // Populate the list view
-        NoteViewActivity.this.refreshListViewFromDatabase();
-
-        // Set us as a listener for updates
-        NoteViewActivity.this.db
-            .addOnInsertedNoteCallback( NoteViewActivity.this );
+        // Populate the list view and keep it up to date
+        NoteViewActivity.this.observeDatabase();
       }
 
       @Override
       public void onServiceDisconnected( ComponentName componentName ) {
         NoteViewActivity.this.db = null;
+        NoteViewActivity.this.closeLiveQueries();
       }
     };
   }
@@ -20,11 +20,18 @@ package com.spacetimenetworks.android.peoplefinder;
 import android.app.Activity;
 import android.app.Application;
 import android.content.Intent;
+import android.os.Build;
 import android.os.Bundle;
 import android.os.Environment;
+import android.os.Process;
+import android.os.SystemClock;
 import android.util.Log;
 
+import com.spacetimenetworks.android.peoplefinder.metrics.StartupTrace;
+import com.spacetimenetworks.android.peoplefinder.metrics.TraceBuffer;
+
 import java.io.File;
+import java.io.IOException;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -45,6 +52,25 @@ extends Application {
   private static final String TAG = PeopleFinderApplication.class.getSimpleName();
   private static final String ROOT_DIR = "PeopleFinder";
   private static final String PIC_DIR = "pics";
+  /** File the trace is dumped into if the app crashes. */
+  public static final String CRASH_TRACE_FILE = "trace-crash.txt";
+  //=========================================================================//
+
+
+  //=========================================================================//
+  // Startup timing
+  //=========================================================================//
+  /** When the process started, in {@link SystemClock#elapsedRealtime}. */
+  private static long startedAt;
+  /** Time from process start to the first row of the people list (ms). */
+  private static long timeToFirstRow = -1;
+  //=========================================================================//
+
+
+  //=========================================================================//
+  // Instance vars
+  //=========================================================================//
+  private StartupCoordinator startup;
   //=========================================================================//
 
 
@@ -56,6 +82,24 @@ extends Application {
     Log.d( TAG, "onCreate()" );
     super.onCreate();
 
+    // The process start time is only known from N on, before that the
+    // application creation is the closest we get.
+    startedAt = ( Build.VERSION.SDK_INT >= Build.VERSION_CODES.N )
+        ? ( Process.getStartElapsedRealtime() )
+        : ( SystemClock.elapsedRealtime() );
+    StartupTrace.setOrigin( startedAt );
+    long start = StartupTrace.beginSection( "application-create" );
+
+    this.startTracing();
+
+    // Open the database while the first activity is created, and connect
+    // to the router only after it has been drawn.
+    this.startup = new StartupCoordinator( this );
+    this.startup.start();
+    this.startup.defer( "start-applib", () -> {
+      if ( !AppLibService.isRunning ) this.startAppLibService();
+    } );
+
     super.registerActivityLifecycleCallbacks( new ActivityLifecycleCallbacks() {
       @Override
       public void onActivityCreated( @NonNull Activity activity, @Nullable Bundle savedInstanceState ) {
@@ -66,13 +110,18 @@ extends Application {
       public void onActivityStarted( @NonNull Activity activity ) {
         Log.d( TAG, "onActivityStarted() " + activity.getLocalClassName() );
         Log.d( TAG, "AppLibService.isRunning: " + AppLibService.isRunning );
-        if ( !AppLibService.isRunning ) PeopleFinderApplication.this.startAppLibService();
+        // Until the first frame the deferred startup takes care of it
+        if ( PeopleFinderApplication.this.startup.isFirstFrameDrawn()
+             && !AppLibService.isRunning ) {
+          PeopleFinderApplication.this.startAppLibService();
+        }
       }
 
       @Override
       public void onActivityResumed( @NonNull Activity activity ) {
         Log.d( TAG, "onActivityResumed() " + activity.getLocalClassName() );
         Log.d( TAG, "AppLibService.isRunning: " + AppLibService.isRunning );
+        PeopleFinderApplication.this.startup.onActivityResumed();
       }
 
       @Override
@@ -95,6 +144,76 @@ extends Application {
         Log.d( TAG, "onActivityDestroyed() " + activity.getLocalClassName() );
       }
     } );
+
+    StartupTrace.endSection( "application-create", start );
+  }
+  //=========================================================================//
+
+
+  //=========================================================================//
+  // Tracing
+  //=========================================================================//
+  /**
+   * Records the hot path events in the trace buffer in debug builds, and
+   * dumps them into {@link #CRASH_TRACE_FILE} if the app crashes. Release
+   * builds don't allocate the buffer or record anything unless tracing is
+   * enabled on the diagnostics screen.
+   */
+  private void startTracing() {
+    TraceBuffer.setEnabled( BuildConfig.DEBUG );
+
+    final Thread.UncaughtExceptionHandler previous
+        = Thread.getDefaultUncaughtExceptionHandler();
+    Thread.setDefaultUncaughtExceptionHandler( ( thread, e ) -> {
+      if ( TraceBuffer.isEnabled() ) {
+        File dir = this.getExternalFilesDir( null );
+        if ( dir == null ) {
+          dir = this.getFilesDir();
+        }
+        try {
+          TraceBuffer.writeTo( new File( dir, CRASH_TRACE_FILE ) );
+        } catch ( IOException dumpFailed ) {
+          Log.w( TAG, "Couldn't dump the trace.", dumpFailed );
+        }
+      }
+
+      if ( previous != null ) {
+        previous.uncaughtException( thread, e );
+      }
+    } );
+  }
+  //=========================================================================//
+
+
+  //=========================================================================//
+  // Startup timing
+  //=========================================================================//
+  /**
+   * Records that the first row of the people list has been drawn. Only the
+   * first call in a process is recorded, so this measures cold starts.
+   *
+   * @param source
+   *     where the rows came from, e.g., the snapshot or the database
+   */
+  void firstRowShown( String source ) {
+    if ( timeToFirstRow >= 0 ) {
+      return;
+    }
+    timeToFirstRow = SystemClock.elapsedRealtime() - startedAt;
+    Log.i( TAG, "Time to first row: " + timeToFirstRow + " ms (from "
+                + source + ")" );
+    StartupTrace.mark( "first-row-" + source );
+    this.startup.onFirstRowShown();
+  }
+
+  /**
+   * Returns the time from process start to the first drawn row of the people
+   * list.
+   *
+   * @return the time in milliseconds, or -1 if no row has been drawn yet
+   */
+  static long getTimeToFirstRow() {
+    return timeToFirstRow;
   }
   //=========================================================================//
 
@@ -102,11 +221,19 @@ extends Application {
   //=========================================================================//
   // Service handling
   //=========================================================================//
-  private void startAppLibService() {
+  /**
+   * Returns the directory of the photos of the persons, each named by the
+   * record ID of its person.
+   */
+  static File getPicDir() {
     File picDir = Environment.getExternalStoragePublicDirectory(
         Environment.DIRECTORY_DOWNLOADS );
     picDir = new File( picDir, ROOT_DIR );
-    picDir = new File( picDir, PIC_DIR );
+    return new File( picDir, PIC_DIR );
+  }
+
+  private void startAppLibService() {
+    File picDir = getPicDir();
     final Intent i = new Intent( super.getApplicationContext(), AppLibService.class );
     i.putExtra( AppLibService.INTENT_EXTRA_PIC_DIR_PATH,
         picDir.getAbsolutePath() );
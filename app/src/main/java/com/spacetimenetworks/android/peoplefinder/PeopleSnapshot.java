@@ -0,0 +1,270 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder;
+
+import android.util.Log;
+
+import com.spacetimenetworks.android.peoplefinder.database.DataModel;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p> A compact binary copy of the first rows of the persons list, kept so
+ * that the list can be shown at cold start before the database service has
+ * started and opened the database. The snapshot is read through a memory
+ * mapped file on the GUI thread, it is small enough that this takes well
+ * under a frame. </p> <p/> <p> The file holds a header with a magic number,
+ * a version and a row count, followed by the rows. Each row is the record
+ * ID, the full name, the latest status, the entry date and the given name.
+ * Strings are written as a length followed by the UTF-8 bytes, a negative
+ * length marks a {@code null} string. </p> <p/> <p> Writes are coalesced and
+ * run on a background thread, only the latest rows passed to {@link #save}
+ * are written. A new snapshot is written to a temporary file and renamed
+ * over the old one, so a crash never leaves a partial snapshot behind. </p>
+ *
+ * @author teemuk
+ */
+public class PeopleSnapshot {
+  private static final String TAG = PeopleSnapshot.class.getSimpleName();
+
+  //==========================================================================//
+  // Constants
+  //==========================================================================//
+  /** Maximum number of rows kept in the snapshot. */
+  public static final int MAX_ROWS = PersonsPager.PAGE_SIZE;
+
+  private static final int MAGIC = 0x504c5331; // "PLS1"
+  private static final int VERSION = 1;
+  private static final Charset UTF_8 = Charset.forName( "UTF-8" );
+
+  /** Writes all snapshots, one at a time. */
+  private static final Executor WRITER = Executors.newSingleThreadExecutor(
+      task -> new Thread( task, "people-snapshot" ) );
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Instance vars
+  //==========================================================================//
+  private final File file;
+  /** Rows waiting to be written, {@code null} if no write is pending. */
+  private final AtomicReference<List<DataModel.PersonName>> pending
+      = new AtomicReference<>();
+  /** Rows last loaded or saved, used to skip writing unchanged rows. */
+  private List<DataModel.PersonName> current = Collections.emptyList();
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // API
+  //==========================================================================//
+  /**
+   * Creates a snapshot stored in the given file.
+   *
+   * @param file
+   *     the snapshot file
+   */
+  public PeopleSnapshot( File file ) {
+    this.file = file;
+  }
+
+  /**
+   * Reads the rows from the snapshot file. A missing, unreadable or
+   * outdated snapshot reads as an empty list, and a corrupt file is deleted.
+   *
+   * @return immutable list of the rows in the snapshot
+   */
+  public List<DataModel.PersonName> load() {
+    if ( !this.file.exists() ) {
+      return Collections.emptyList();
+    }
+
+    long start = System.nanoTime();
+    List<DataModel.PersonName> rows;
+    try ( RandomAccessFile raf = new RandomAccessFile( this.file, "r" ) ) {
+      FileChannel channel = raf.getChannel();
+      ByteBuffer buffer = channel.map( FileChannel.MapMode.READ_ONLY,
+          0, channel.size() );
+      rows = read( buffer );
+    } catch ( IOException | BufferUnderflowException
+        | IllegalArgumentException e ) {
+      Log.w( TAG, "Discarding unreadable snapshot " + this.file, e );
+      if ( !this.file.delete() ) {
+        Log.w( TAG, "Couldn't delete " + this.file );
+      }
+      rows = Collections.emptyList();
+    }
+
+    Log.d( TAG, "Loaded " + rows.size() + " rows in "
+                + ( System.nanoTime() - start ) / 1000 + " us." );
+    this.current = rows;
+    return rows;
+  }
+
+  /**
+   * Replaces the snapshot with the first {@link #MAX_ROWS} of the given
+   * rows. The rows must be the start of the persons list. Does nothing if the
+   * rows are the same as the ones last loaded or saved. Must be called from
+   * the GUI thread.
+   *
+   * @param rows
+   *     immutable list of rows from the start of the persons list
+   */
+  public void save( List<DataModel.PersonName> rows ) {
+    if ( rows.size() > MAX_ROWS ) {
+      rows = rows.subList( 0, MAX_ROWS );
+    }
+    if ( sameRows( rows, this.current ) ) {
+      return;
+    }
+    this.current = rows;
+
+    // Only schedule a write if none is pending, the pending write will pick
+    // up the latest rows when it runs.
+    if ( this.pending.getAndSet( rows ) == null ) {
+      WRITER.execute( this::writePending );
+    }
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Private
+  //==========================================================================//
+  private void writePending() {
+    List<DataModel.PersonName> rows = this.pending.getAndSet( null );
+    if ( rows == null ) {
+      return;
+    }
+
+    File tmp = new File( this.file.getPath() + ".tmp" );
+    try ( DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream( new FileOutputStream( tmp ) ) ) ) {
+      write( out, rows );
+    } catch ( IOException e ) {
+      Log.w( TAG, "Couldn't write snapshot " + tmp, e );
+      return;
+    }
+    if ( !tmp.renameTo( this.file ) ) {
+      Log.w( TAG, "Couldn't replace snapshot " + this.file );
+      return;
+    }
+    Log.d( TAG, "Wrote " + rows.size() + " rows." );
+  }
+
+  private static void write( DataOutputStream out,
+                             List<DataModel.PersonName> rows )
+      throws IOException {
+    out.writeInt( MAGIC );
+    out.writeInt( VERSION );
+    out.writeInt( rows.size() );
+    for ( DataModel.PersonName row : rows ) {
+      writeString( out, row.recordID );
+      writeString( out, row.fullName );
+      writeString( out, row.status );
+      out.writeLong( row.entryDate );
+      writeString( out, row.givenName );
+    }
+  }
+
+  private static List<DataModel.PersonName> read( ByteBuffer buffer ) {
+    if ( buffer.getInt() != MAGIC || buffer.getInt() != VERSION ) {
+      throw new IllegalArgumentException( "Not a version " + VERSION
+                                          + " snapshot." );
+    }
+    int count = buffer.getInt();
+    if ( count < 0 || count > MAX_ROWS ) {
+      throw new IllegalArgumentException( "Bad row count " + count );
+    }
+
+    List<DataModel.PersonName> rows = new ArrayList<>( count );
+    for ( int i = 0; i < count; i++ ) {
+      String recordID = readString( buffer );
+      String fullName = readString( buffer );
+      String status = readString( buffer );
+      long entryDate = buffer.getLong();
+      String givenName = readString( buffer );
+      rows.add( new DataModel.PersonName( recordID, fullName, status,
+          entryDate, givenName ) );
+    }
+    return Collections.unmodifiableList( rows );
+  }
+
+  private static void writeString( DataOutputStream out, String value )
+      throws IOException {
+    if ( value == null ) {
+      out.writeInt( -1 );
+      return;
+    }
+    byte[] bytes = value.getBytes( UTF_8 );
+    out.writeInt( bytes.length );
+    out.write( bytes );
+  }
+
+  private static String readString( ByteBuffer buffer ) {
+    int length = buffer.getInt();
+    if ( length < 0 ) {
+      return null;
+    }
+    if ( length > buffer.remaining() ) {
+      throw new IllegalArgumentException( "Bad string length " + length );
+    }
+    byte[] bytes = new byte[ length ];
+    buffer.get( bytes );
+    return new String( bytes, UTF_8 );
+  }
+
+  private static boolean sameRows( List<DataModel.PersonName> a,
+                                   List<DataModel.PersonName> b ) {
+    if ( a.size() != b.size() ) {
+      return false;
+    }
+    for ( int i = 0; i < a.size(); i++ ) {
+      DataModel.PersonName x = a.get( i );
+      DataModel.PersonName y = b.get( i );
+      if ( !equal( x.recordID, y.recordID )
+           || !equal( x.fullName, y.fullName )
+           || !equal( x.status, y.status )
+           || x.entryDate != y.entryDate
+           || !equal( x.givenName, y.givenName ) ) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean equal( String a, String b ) {
+    return ( a == null ) ? ( b == null ) : ( a.equals( b ) );
+  }
+  //==========================================================================//
+}
@@ -23,17 +23,29 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.ServiceConnection;
 import android.os.Bundle;
+import android.os.Handler;
 import android.os.IBinder;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.Log;
 import android.view.View;
-import android.widget.AdapterView;
 import android.widget.Button;
-import android.widget.ListView;
+import android.widget.EditText;
+import android.widget.TextView;
 
 import com.spacetimenetworks.android.peoplefinder.database.DataModel;
 import com.spacetimenetworks.android.peoplefinder.database.DatabaseController;
+import com.spacetimenetworks.android.peoplefinder.database.LiveQuery;
+import com.spacetimenetworks.android.peoplefinder.metrics.StartupTrace;
+import com.spacetimenetworks.android.peoplefinder.metrics.TraceBuffer;
+import com.spacetimenetworks.android.peoplefinder.metrics.TraceEvent;
 
-import java.util.ArrayList;
+import java.io.File;
+import java.util.EnumSet;
+import java.util.List;
+
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
 
 /**
@@ -42,27 +54,50 @@ import java.util.ArrayList;
  * @author teemuk
  */
 public class PeopleViewActivity
-extends Activity
-implements DatabaseController.OnInsertedNote,
-    DatabaseController.OnInsertedPerson {
+extends Activity {
   private static final String TAG = PeopleViewActivity.class.getSimpleName();
 
   private static final String ROOT_DIR = "PeopleFinder";
   private static final String PIC_DIR = "pics";
 
+  /** Wait this long after the last keystroke before searching (ms). */
+  private static final long SEARCH_DEBOUNCE_MS = 40;
+  /** Maximum number of search results shown. */
+  private static final int SEARCH_RESULT_LIMIT = 200;
+  /** Snapshot of the start of the list in the cache dir. */
+  private static final String SNAPSHOT_FILE = "people-list.snapshot";
+
   //=========================================================================//
   // Instance vars
   //=========================================================================//
   private DatabaseController db;
   private ServiceConnection databaseConnection;
+  /** When the database was bound, for the startup trace. */
+  private long bindStart;
+  /** Re-runs the list queries when persons or notes are inserted. */
+  private LiveQuery liveQuery;
+  /** Shows or hides the stalled notice. */
+  private final DatabaseController.OnStalledChanged stalledCallback
+      = stalled -> this.databaseStalledChanged();
   private PersonsListAdapter adapter;
+  private PersonsPager pager;
+  /** Start of the list from the last run, shown until the database is up. */
+  private PeopleSnapshot snapshot;
+  private List<DataModel.PersonName> snapshotRows;
+  private boolean firstRowShown = false;
+  /** Current search text, or {@code null} when showing the whole list. */
+  private String searchText;
+  private final Handler handler = new Handler();
+  private final Runnable searchRunnable = this::runSearch;
   //=========================================================================//
 
 
   //=========================================================================//
   // GUI elements
   //=========================================================================//
-  private ListView nameList;
+  private RecyclerView nameList;
+  private EditText searchField;
+  private TextView stalledText;
   private Button addButton;
   //=========================================================================//
 
@@ -73,6 +108,7 @@ implements DatabaseController.OnInsertedNote,
   @Override
   public void onCreate( Bundle savedInstanceState ) {
     super.onCreate( savedInstanceState );
+    long start = StartupTrace.beginSection( "people-view-create" );
 
     super.setContentView( R.layout.people_view );
 
@@ -81,8 +117,14 @@ implements DatabaseController.OnInsertedNote,
     this.setupGuiCallbacks();
     this.setupGuiElements();
 
-    // Start services (this is the main activity)
-    this.startServices();
+    // Show the list from the snapshot right away, it is replaced with the
+    // rows from the database once the database service is bound.
+    this.snapshot = new PeopleSnapshot(
+        new File( super.getCacheDir(), SNAPSHOT_FILE ) );
+    this.snapshotRows = this.snapshot.load();
+    this.pager.showSnapshot( this.snapshotRows );
+
+    StartupTrace.endSection( "people-view-create", start );
   }
 
   @Override
@@ -122,11 +164,13 @@ implements DatabaseController.OnInsertedNote,
 
     Log.d( TAG, "onStop()" );
 
-    // Remove callbacks
+    // Stop listening for changes
+    this.closeLiveQuery();
     if ( this.db != null ) {
-      this.db.removeOnInsertedNoteCallback( this );
-      this.db.removeOnInsertedPersonCallback( this );
+      this.db.removeOnStalledChangedCallback( this.stalledCallback );
     }
+    this.pager.setDatabase( null );
+    this.handler.removeCallbacks( this.searchRunnable );
 
     this.doUnbindDatabaseService();
   }
@@ -152,14 +196,34 @@ implements DatabaseController.OnInsertedNote,
     super.startActivity( intent );
   }
 
-  protected void listElementPushed( AdapterView<?> adapterView,
-                                    View view, int position, long id ) {
-    Log.d( TAG, "listElementPushed() position = " + position );
+  protected void addButtonLongPushed() {
+    Log.d( TAG, "addButtonLongPushed()" );
+
+    // Import records from a file
+    Intent intent = new Intent();
+    intent.setClass( this, ImportActivity.class );
+    super.startActivity( intent );
+  }
 
-    // Grab the clicked item
-    DataModel.PersonName name =
-        ( DataModel.PersonName ) ( this.adapter
-            .getItem( position ) );
+  protected void searchTextChanged( String text ) {
+    // Restart the debounce timer
+    this.handler.removeCallbacks( this.searchRunnable );
+
+    String trimmed = text.trim();
+    if ( trimmed.length() == 0 ) {
+      // Back to the whole list
+      this.searchText = null;
+      this.adapter.submitList( this.pager.getWindow() );
+    } else {
+      this.searchText = trimmed;
+      this.handler.postDelayed( this.searchRunnable, SEARCH_DEBOUNCE_MS );
+    }
+  }
+
+  protected void listElementPushed( DataModel.PersonName name ) {
+    Log.d( TAG, "listElementPushed()" );
+
+    // Check the clicked item
     if ( name == null ) {
       Log.d( TAG, "Couldn't get the requested row. Aborting" );
       return;
@@ -176,29 +240,13 @@ implements DatabaseController.OnInsertedNote,
   //=========================================================================//
 
 
-  //=========================================================================//
-  // DatabaseController callbacks
-  //-------------------------------------------------------------------------//
-  // Listen for notes and people inserted into the database and update the
-  // GUI.
-  //=========================================================================//
-  @Override
-  public void onInserted( long id, DataModel.LocalNote note ) {
-    this.refreshListViewFromDatabase();
-  }
-
-  @Override
-  public void onInserted( long id, DataModel.LocalPerson person ) {
-    this.refreshListViewFromDatabase();
-  }
-  //=========================================================================//
-
-
   //=========================================================================//
   // Private - GUI
   //=========================================================================//
   private void setupGuiReferences() {
     this.nameList = super.findViewById( R.id.peopleViewList );
+    this.searchField = super.findViewById( R.id.peopleViewSearchText );
+    this.stalledText = super.findViewById( R.id.peopleViewStalledText );
     this.addButton = super.findViewById( R.id.peopleViewAddButton );
   }
 
@@ -207,11 +255,28 @@ implements DatabaseController.OnInsertedNote,
     this.addButton.setOnClickListener(
         view -> PeopleViewActivity.this.addButtonPushed()
     );
+    this.addButton.setOnLongClickListener( view -> {
+      PeopleViewActivity.this.addButtonLongPushed();
+      return true;
+    } );
 
-    // People view list
-    this.nameList.setOnItemClickListener(
-        PeopleViewActivity.this::listElementPushed
-    );
+    // Search as the user types
+    this.searchField.addTextChangedListener( new TextWatcher() {
+      @Override
+      public void beforeTextChanged( CharSequence s, int start, int count,
+                                     int after ) {
+      }
+
+      @Override
+      public void onTextChanged( CharSequence s, int start, int before,
+                                 int count ) {
+      }
+
+      @Override
+      public void afterTextChanged( Editable s ) {
+        PeopleViewActivity.this.searchTextChanged( s.toString() );
+      }
+    } );
   }
 
   private void setupGuiElements() {
@@ -219,47 +284,93 @@ implements DatabaseController.OnInsertedNote,
   }
 
   private void setupListView() {
-    // Create adapter for the list
+    // Create adapter for the list, clicks on rows open the details
     this.adapter =
         new PersonsListAdapter(
-            this, R.layout.name_list_row,
-            new ArrayList<>( 0 ) );
+            R.layout.name_list_row,
+            PeopleViewActivity.this::listElementPushed );
 
     // Set the adapter
+    final LinearLayoutManager layoutManager = new LinearLayoutManager( this );
+    this.nameList.setLayoutManager( layoutManager );
     this.nameList.setAdapter( this.adapter );
-    this.adapter.notifyDataSetChanged();
+
+    // The list is loaded a page at a time as the user scrolls. The adapter
+    // diffs each new window against the shown list off the GUI thread and
+    // only updates the rows that changed.
+    this.pager = new PersonsPager( this::runOnUiThread,
+        window -> {
+          // Search results replace the list while searching
+          if ( this.searchText == null ) {
+            this.adapter.submitList( window );
+            this.reportFirstRow( window );
+          }
+
+          // Keep the snapshot up to date with the start of the list
+          if ( this.pager.isAtStart() && window != this.snapshotRows ) {
+            this.snapshot.save( window );
+          }
+        } );
+    this.nameList.addOnScrollListener( new RecyclerView.OnScrollListener() {
+      @Override
+      public void onScrolled( RecyclerView recyclerView, int dx, int dy ) {
+        if ( PeopleViewActivity.this.searchText != null ) {
+          return;
+        }
+        PeopleViewActivity.this.pager.onVisibleRange(
+            layoutManager.findFirstVisibleItemPosition(),
+            layoutManager.findLastVisibleItemPosition() );
+      }
+    } );
   }
 
   /**
-   * Runs a database query and updates the list view adapter with the results.
+   * Reports the time to the first row once the first non-empty list has been
+   * laid out, i.e., when the posted task runs after the next traversal.
    */
-  private void refreshListViewFromDatabase() {
-    if ( this.db == null ) {
-      Log.d( TAG, "Couldn't update list view. No database connection." );
+  private void reportFirstRow( List<DataModel.PersonName> window ) {
+    if ( this.firstRowShown || window.isEmpty() ) {
       return;
     }
+    this.firstRowShown = true;
 
-    // Run a query
-    this.db.findAllPersons(
-        names -> {
-          // Must run this on the GUI thread
-          runOnUiThread(
-              () -> {
-                Log.d( TAG, "Setting items in adapter." );
-                adapter.setItems( names );
-              }
-          );
-        }
-    );
+    final String source = ( window == this.snapshotRows )
+        ? ( "snapshot" ) : ( "database" );
+    final PeopleFinderApplication application =
+        ( PeopleFinderApplication ) super.getApplication();
+    this.nameList.post( () -> application.firstRowShown( source ) );
   }
-  //=========================================================================//
 
-  //=========================================================================//
-  // Private - Service handling
-  //=========================================================================//
-  private void startServices() {
-    // Start database
-    super.startService( new Intent( this, DatabaseController.class ) );
+  /**
+   * Reloads the list and the search results. Run by the live query when it
+   * is registered and every time persons or notes are inserted.
+   */
+  private void databaseChanged() {
+    this.pager.refresh();
+    if ( this.searchText != null ) {
+      this.runSearch();
+    }
+  }
+
+  /**
+   * Runs a search for the current search text. The database drops or
+   * cancels any earlier search that hasn't finished yet, so only the
+   * results for the latest text arrive.
+   */
+  private void runSearch() {
+    final String text = this.searchText;
+    if ( this.db == null || text == null ) {
+      return;
+    }
+
+    this.db.searchPersons( text, SEARCH_RESULT_LIMIT,
+        names -> runOnUiThread( () -> {
+          // Ignore results if the search was cleared in the meantime
+          if ( text.equals( this.searchText ) ) {
+            TraceBuffer.record( TraceEvent.SEARCH_SHOWN, names.size(), 0 );
+            this.adapter.submitList( names );
+          }
+        } ) );
   }
   //=========================================================================//
 
@@ -270,6 +381,7 @@ implements DatabaseController.OnInsertedNote,
   // received messages and to publish newly generated messages.
   //=========================================================================//
   private void doBindDatabaseService() {
+    this.bindStart = StartupTrace.now();
     this.databaseConnection = this.getServiceConnection();
     super.bindService( new Intent( this, DatabaseController.class ),
         this.databaseConnection, Context.BIND_AUTO_CREATE );
@@ -290,28 +402,56 @@ implements DatabaseController.OnInsertedNote,
         }
 
         Log.d( TAG, "Database connected" );
+        StartupTrace.record( "bind-database",
+            PeopleViewActivity.this.bindStart );
 
         // Set references
         DatabaseController.DatabaseBinder binder =
             ( DatabaseController.DatabaseBinder ) iBinder;
         PeopleViewActivity.this.db = binder.getService();
 
-        // Populate the list view
-        PeopleViewActivity.this.refreshListViewFromDatabase();
+        // Populate the list view and keep it up to date
+        PeopleViewActivity.this.pager.setDatabase( PeopleViewActivity.this.db );
+        PeopleViewActivity.this.liveQuery = PeopleViewActivity.this.db.observe(
+            EnumSet.of( LiveQuery.Table.PERSON, LiveQuery.Table.NOTE ), null,
+            db -> PeopleViewActivity.this.databaseChanged() );
 
-        // Set listeners
-        PeopleViewActivity.this.db
-            .addOnInsertedNoteCallback( PeopleViewActivity.this );
-        PeopleViewActivity.this.db
-            .addOnInsertedPersonCallback( PeopleViewActivity.this );
+        // Tell the user if the database stops responding
+        PeopleViewActivity.this.db.addOnStalledChangedCallback(
+            PeopleViewActivity.this.stalledCallback );
+        PeopleViewActivity.this.databaseStalledChanged();
       }
 
       @Override
       public void onServiceDisconnected( ComponentName componentName ) {
         Log.d( TAG, "Database disconnected" );
         PeopleViewActivity.this.db = null;
+        PeopleViewActivity.this.pager.setDatabase( null );
+        PeopleViewActivity.this.closeLiveQuery();
+        PeopleViewActivity.this.databaseStalledChanged();
       }
     };
   }
+
+  /**
+   * Shows a notice while a database task has stalled, since the list can't
+   * be updated until it finishes. Called from any thread. The state is read
+   * on the GUI thread rather than passed in, so that changes delivered out
+   * of order still end up showing the current state.
+   */
+  private void databaseStalledChanged() {
+    super.runOnUiThread( () -> {
+      boolean stalled = ( this.db != null ) && this.db.isStalled();
+      this.stalledText.setVisibility(
+          ( stalled ) ? ( View.VISIBLE ) : ( View.GONE ) );
+    } );
+  }
+
+  private void closeLiveQuery() {
+    if ( this.liveQuery != null ) {
+      this.liveQuery.close();
+      this.liveQuery = null;
+    }
+  }
   //=========================================================================//
 }
@@ -31,8 +31,13 @@ import android.widget.Button;
 import android.widget.EditText;
 import android.widget.TextView;
 
-import com.spacetimenetworks.android.peoplefinder.database.DataModel;
 import com.spacetimenetworks.android.peoplefinder.database.DatabaseController;
+import com.spacetimenetworks.android.peoplefinder.database.LiveQuery;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
 
 
 /**
@@ -42,8 +47,7 @@ import com.spacetimenetworks.android.peoplefinder.database.DatabaseController;
  * @author teemuk
  */
 public class PersonDetailActivity
-    extends Activity
-    implements DatabaseController.OnInsertedNote {
+    extends Activity {
   // TODO:
   // - Should this take the parsed record or query the database?
   //    -> probably should only take the record since dealing with failure,
@@ -85,6 +89,8 @@ public class PersonDetailActivity
   private DatabaseController db;
   private ServiceConnection databaseConnection;
   private String personID;
+  /** Live queries keeping the details and the note count up to date. */
+  private final List<LiveQuery> liveQueries = new ArrayList<>( 2 );
   //=========================================================================//
 
 
@@ -149,10 +155,8 @@ public class PersonDetailActivity
 
     Log.d( TAG, "onStop()" );
 
-    // Remove callback
-    if ( this.db != null ) {
-      this.db.removeOnInsertedNoteCallback( this );
-    }
+    // Stop listening for changes
+    this.closeLiveQueries();
 
     this.doUnbindDatabaseService();
   }
@@ -193,21 +197,6 @@ public class PersonDetailActivity
   //=========================================================================//
 
 
-  //=========================================================================//
-  // DatabaseController.OnInsertedNote
-  //-------------------------------------------------------------------------//
-  // Listen for notes inserted into the database and refresh the count shown
-  // in the GUI if note on this person arrives.
-  //=========================================================================//
-  @Override
-  public void onInserted( long id, DataModel.LocalNote note ) {
-    if ( this.personID.equals( note.note.metadata.personID ) ) {
-      this.refreshNoteCount();
-    }
-  }
-  //=========================================================================//
-
-
   //=========================================================================//
   // Private - GUI
   //=========================================================================//
@@ -253,21 +242,36 @@ public class PersonDetailActivity
   }
 
   /**
-   * Loads the record from the database and refreshes the GUI.
+   * Starts live queries for the record and the note count, which run now and
+   * again whenever the record or the notes of the person change.
    */
-  private void refreshView() {
+  private void observeDatabase() {
     // Precondition check
-    if ( this.db == null ) {
-      Log.d( TAG, "Couldn't refresh view, no database connection." );
-      return;
-    }
     if ( this.personID == null || this.personID.length() == 0 ) {
       Log.d( TAG, "Couldn't refresh view, no person ID found." );
       return;
     }
 
+    List<String> keys = Collections.singletonList( this.personID );
+    this.liveQueries.add( this.db.observe(
+        EnumSet.of( LiveQuery.Table.PERSON ), keys, this::refreshView ) );
+    this.liveQueries.add( this.db.observe(
+        EnumSet.of( LiveQuery.Table.NOTE ), keys, this::refreshNoteCount ) );
+  }
+
+  private void closeLiveQueries() {
+    for ( LiveQuery liveQuery : this.liveQueries ) {
+      liveQuery.close();
+    }
+    this.liveQueries.clear();
+  }
+
+  /**
+   * Loads the record from the database and refreshes the GUI.
+   */
+  private void refreshView( DatabaseController db ) {
     // Query database for person details
-    this.db.getPersonDetails(
+    db.getPersonDetails(
         // Person ID to query
         this.personID,
         // Result handling
@@ -305,19 +309,17 @@ public class PersonDetailActivity
           } );
         }
     );
-
-    this.refreshNoteCount();
   }
 
-  private void refreshNoteCount() {
-    // Query database for note count
-    this.db.getNotesForPerson(
+  private void refreshNoteCount( DatabaseController db ) {
+    // Count the notes without reading them
+    db.countNotesForPerson(
         // Person to query
         this.personID,
         // Callback
-        rows -> {
+        count -> {
           // Update the fields from the GUI thread
-          runOnUiThread( () -> noteCountText.setText( "" + rows.size() ) );
+          runOnUiThread( () -> noteCountText.setText( "" + count ) );
         }
     );
   }
@@ -373,17 +375,14 @@ public class PersonDetailActivity
             ( DatabaseController.DatabaseBinder ) iBinder;
         PersonDetailActivity.this.db = binder.getService();
 
-        // Refresh the view
-        PersonDetailActivity.this.refreshView();
-
-        // Set us as a listener for updates
-        PersonDetailActivity.this.db
-            .addOnInsertedNoteCallback( PersonDetailActivity.this );
+        // Refresh the view and keep it up to date
+        PersonDetailActivity.this.observeDatabase();
       }
 
       @Override
       public void onServiceDisconnected( ComponentName componentName ) {
         PersonDetailActivity.this.db = null;
+        PersonDetailActivity.this.closeLiveQueries();
       }
     };
   }
@@ -17,8 +17,9 @@
  */
 package com.spacetimenetworks.android.peoplefinder;
 
-import android.content.Context;
+import android.view.LayoutInflater;
 import android.view.View;
+import android.view.ViewGroup;
 import android.widget.TextView;
 
 import com.spacetimenetworks.android.peoplefinder.database.DataModel;
@@ -27,13 +28,22 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
 
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.RecyclerView;
+
 /**
- * Adapter for items in the persons list view.
+ * <p> Adapter for items in the persons list view. </p> <p/> <p> New results
+ * are handed in with {@link #submitList}. The difference to the currently
+ * shown list is computed on a background thread by an {@link
+ * AsyncListDiffer}, so that only the rows that actually changed are rebound
+ * and the scroll position is kept. Rows are matched by their record ID. </p>
  *
  * @author teemuk
  */
 public class PersonsListAdapter
-    extends BetterListAdapter<DataModel.PersonName> {
+    extends RecyclerView.Adapter<PersonsListAdapter.ViewHolder> {
   static final String TAG = PersonsListAdapter.class.getSimpleName();
 
 
@@ -43,36 +53,132 @@ public class PersonsListAdapter
   // Formatting of the timestamp in list items
   private final String datePattern = "HH:mm:ss d.M.yyyy";
   private final SimpleDateFormat timeformatter = new SimpleDateFormat( datePattern );
+
+  private final AsyncListDiffer<DataModel.PersonName> differ
+      = new AsyncListDiffer<>( this, DIFF_CALLBACK );
+  private final int rowResourceId;
+  private final OnItemClickListener clickListener;
   //==========================================================================//
 
 
   //==========================================================================//
   // API
   //==========================================================================//
-  public PersonsListAdapter( Context context, int rowResourceId,
-                             List<DataModel.PersonName> items ) {
-    super( context, rowResourceId, items );
+  public PersonsListAdapter( int rowResourceId,
+                             OnItemClickListener clickListener ) {
+    super();
+
+    this.rowResourceId = rowResourceId;
+    this.clickListener = clickListener;
+  }
+
+  /**
+   * Swap in a new list of items. The list must not be modified after it has
+   * been submitted. Needs to be called from the GUI thread.
+   *
+   * @param items
+   *     list of items
+   */
+  public void submitList( List<DataModel.PersonName> items ) {
+    this.differ.submitList( items );
+  }
+
+  public DataModel.PersonName getItem( int position ) {
+    return this.differ.getCurrentList().get( position );
+  }
+
+  /** Interface for callbacks invoked when a row is clicked. */
+  public interface OnItemClickListener {
+    void onItemClicked( DataModel.PersonName item );
   }
   //==========================================================================//
 
 
   //==========================================================================//
-  // BetterListAdapter implementation
+  // RecyclerView.Adapter implementation
   //==========================================================================//
+  @NonNull
+  @Override
+  public ViewHolder onCreateViewHolder( @NonNull ViewGroup parent,
+                                        int viewType ) {
+    View rowLayout = LayoutInflater.from( parent.getContext() )
+        .inflate( this.rowResourceId, parent, false );
+    return new ViewHolder( rowLayout );
+  }
+
   @Override
-  protected void populateView( View rowLayout,
-                               DataModel.PersonName item ) {
-    // Get the elements
-    TextView nameText = rowLayout.findViewById( R.id.nameRowName );
-    TextView statusText = rowLayout.findViewById( R.id.nameRowStatus );
-    TextView dateText = rowLayout.findViewById( R.id.nameRowDate );
+  public void onBindViewHolder( @NonNull ViewHolder holder, int position ) {
+    DataModel.PersonName item = this.getItem( position );
 
     // Populate the elements
-    nameText.setText( item.fullName );
-    statusText.setText( item.status );
-    dateText.setText(
+    holder.nameText.setText( item.fullName );
+    holder.statusText.setText( item.status );
+    holder.dateText.setText(
         this.timeformatter.format( new Date( item.entryDate * 1000 ) )
     );
   }
+
+  @Override
+  public int getItemCount() {
+    return this.differ.getCurrentList().size();
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // View holder
+  //==========================================================================//
+  class ViewHolder
+      extends RecyclerView.ViewHolder {
+    final TextView nameText;
+    final TextView statusText;
+    final TextView dateText;
+
+    ViewHolder( View rowLayout ) {
+      super( rowLayout );
+
+      this.nameText = rowLayout.findViewById( R.id.nameRowName );
+      this.statusText = rowLayout.findViewById( R.id.nameRowStatus );
+      this.dateText = rowLayout.findViewById( R.id.nameRowDate );
+
+      rowLayout.setOnClickListener( view -> {
+        int position = this.getBindingAdapterPosition();
+        if ( position != RecyclerView.NO_POSITION
+             && clickListener != null ) {
+          clickListener.onItemClicked( getItem( position ) );
+        }
+      } );
+    }
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Diffing
+  //==========================================================================//
+  /**
+   * Rows are the same item if they have the same record ID. The contents are
+   * the same if everything shown in the row is unchanged.
+   */
+  private static final DiffUtil.ItemCallback<DataModel.PersonName>
+      DIFF_CALLBACK = new DiffUtil.ItemCallback<DataModel.PersonName>() {
+    @Override
+    public boolean areItemsTheSame( @NonNull DataModel.PersonName oldItem,
+                                    @NonNull DataModel.PersonName newItem ) {
+      return oldItem.recordID.equals( newItem.recordID );
+    }
+
+    @Override
+    public boolean areContentsTheSame( @NonNull DataModel.PersonName oldItem,
+                                       @NonNull DataModel.PersonName newItem ) {
+      return equals( oldItem.fullName, newItem.fullName )
+             && equals( oldItem.status, newItem.status )
+             && oldItem.entryDate == newItem.entryDate;
+    }
+
+    private boolean equals( Object a, Object b ) {
+      return ( a == null ) ? ( b == null ) : ( a.equals( b ) );
+    }
+  };
   //==========================================================================//
 }
@@ -0,0 +1,295 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder;
+
+import com.spacetimenetworks.android.peoplefinder.database.DataModel;
+import com.spacetimenetworks.android.peoplefinder.database.DatabaseController;
+import com.spacetimenetworks.android.peoplefinder.database.PeopleStore;
+import com.spacetimenetworks.android.peoplefinder.metrics.TraceBuffer;
+import com.spacetimenetworks.android.peoplefinder.metrics.TraceEvent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * <p> Keeps a bounded window of the persons list in memory and loads more
+ * pages from the database as the user scrolls towards either end of the
+ * window. Pages are loaded with keyset pagination relative to the first or
+ * last row in the window. When the window grows beyond {@link #MAX_ROWS}, rows
+ * are dropped from the end away from the scroll direction. </p> <p/> <p> All
+ * methods must be called from the GUI thread, and the listener is invoked on
+ * the GUI thread with an immutable snapshot of the window every time it
+ * changes. Only one query runs at a time, requests made while a query is
+ * running are served once it finishes. </p>
+ *
+ * @author teemuk
+ */
+public class PersonsPager {
+  //==========================================================================//
+  // Constants
+  //==========================================================================//
+  /** Number of rows loaded in one query. */
+  public static final int PAGE_SIZE = 50;
+  /** Maximum number of rows kept in memory. */
+  public static final int MAX_ROWS = 5 * PAGE_SIZE;
+  /** Load the next page when the visible rows get this close to the edge. */
+  public static final int PREFETCH_DISTANCE = PAGE_SIZE / 2;
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Instance vars
+  //==========================================================================//
+  private final Executor guiExecutor;
+  private final Listener listener;
+  private DatabaseController db;
+
+  /** Current window, never modified after being published. */
+  private List<DataModel.PersonName> window
+      = Collections.emptyList();
+  /** Whether the window starts at the first row of the whole list. */
+  private boolean atStart = true;
+  /** Whether the window ends at the last row of the whole list. */
+  private boolean atEnd = false;
+
+  /** Whether a query is running. */
+  private boolean loading = false;
+  /** Whether the window should be reloaded once the current query ends. */
+  private boolean refreshRequested = false;
+  /** Last visible rows reported through {@link #onVisibleRange}. */
+  private int firstVisible = 0;
+  private int lastVisible = 0;
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // API
+  //==========================================================================//
+  /**
+   * Creates a new pager.
+   *
+   * @param guiExecutor
+   *     executor that runs tasks on the GUI thread
+   * @param listener
+   *     listener notified when the window changes
+   */
+  public PersonsPager( Executor guiExecutor, Listener listener ) {
+    this.guiExecutor = guiExecutor;
+    this.listener = listener;
+  }
+
+  /**
+   * Sets the database to load pages from. Call {@link #refresh} to load the
+   * window from the new database.
+   *
+   * @param db
+   *     the database or {@code null} if disconnected
+   */
+  public void setDatabase( DatabaseController db ) {
+    this.db = db;
+  }
+
+  /**
+   * Shows rows from a {@link PeopleSnapshot} until the first page has been
+   * loaded from the database. Does nothing if the window already has rows.
+   * The rows are replaced by the next {@link #refresh}, which loads from the
+   * start of the list.
+   *
+   * @param rows
+   *     immutable list of rows from the start of the list
+   */
+  public void showSnapshot( List<DataModel.PersonName> rows ) {
+    if ( !this.window.isEmpty() || rows.isEmpty() ) {
+      return;
+    }
+
+    this.window = rows;
+    this.atStart = true;
+    this.atEnd = false;
+    this.listener.onWindowChanged( this.window );
+  }
+
+  /**
+   * Reloads the rows in the current window, e.g., after the database has
+   * changed. The window keeps its position in the list so the rows the user
+   * is looking at stay in place.
+   */
+  public void refresh() {
+    this.refreshRequested = true;
+    this.loadIfNeeded();
+  }
+
+  /**
+   * Tells the pager which rows are visible. Loads more rows if the visible
+   * rows are close to either end of the window.
+   *
+   * @param first
+   *     position of the first visible row
+   * @param last
+   *     position of the last visible row
+   */
+  public void onVisibleRange( int first, int last ) {
+    this.firstVisible = first;
+    this.lastVisible = last;
+    this.loadIfNeeded();
+  }
+
+  /**
+   * Returns the rows currently in the window.
+   *
+   * @return immutable list of the rows in the window
+   */
+  public List<DataModel.PersonName> getWindow() {
+    return this.window;
+  }
+
+  /**
+   * Returns whether the window starts at the first row of the whole list.
+   *
+   * @return {@code true} if the window starts at the first row
+   */
+  public boolean isAtStart() {
+    return this.atStart;
+  }
+
+  /** Listener for changes to the window. */
+  public interface Listener {
+    /**
+     * The window has changed.
+     *
+     * @param window
+     *     immutable list of the rows in the window
+     */
+    void onWindowChanged( List<DataModel.PersonName> window );
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Private
+  //==========================================================================//
+  private void loadIfNeeded() {
+    if ( this.db == null || this.loading ) {
+      return;
+    }
+
+    if ( this.refreshRequested ) {
+      this.refreshRequested = false;
+      this.loadRefresh();
+    } else if ( !this.atEnd
+                && this.lastVisible >= this.window.size() - PREFETCH_DISTANCE ) {
+      this.loadAfter();
+    } else if ( !this.atStart
+                && this.firstVisible < PREFETCH_DISTANCE ) {
+      this.loadBefore();
+    }
+  }
+
+  private void loadRefresh() {
+    // Reload from the first row of the window, or from the beginning if the
+    // window is at the start so that rows inserted before it show up.
+    final DataModel.PersonName from = ( this.atStart || this.window.isEmpty() )
+        ? ( null ) : ( this.window.get( 0 ) );
+    final int limit = Math.max( PAGE_SIZE,
+        Math.min( this.window.size(), MAX_ROWS ) );
+
+    this.query( from, PeopleStore.PageDirection.STARTING_AT, limit,
+        page -> {
+          this.window = Collections.unmodifiableList( page.names );
+          this.atStart = ( from == null );
+          this.atEnd = page.reachedEnd;
+        } );
+  }
+
+  private void loadAfter() {
+    final DataModel.PersonName from = this.window.isEmpty()
+        ? ( null ) : ( this.window.get( this.window.size() - 1 ) );
+
+    this.query( from, PeopleStore.PageDirection.AFTER, PAGE_SIZE,
+        page -> {
+          List<DataModel.PersonName> rows
+              = new ArrayList<>( this.window.size() + page.names.size() );
+          rows.addAll( this.window );
+          rows.addAll( page.names );
+
+          // Drop rows from the start if over the limit
+          int drop = Math.max( 0, rows.size() - MAX_ROWS );
+          if ( drop > 0 ) {
+            rows = new ArrayList<>( rows.subList( drop, rows.size() ) );
+            this.atStart = false;
+            this.firstVisible -= drop;
+            this.lastVisible -= drop;
+          }
+
+          this.window = Collections.unmodifiableList( rows );
+          this.atEnd = page.reachedEnd;
+        } );
+  }
+
+  private void loadBefore() {
+    final DataModel.PersonName from = this.window.get( 0 );
+
+    this.query( from, PeopleStore.PageDirection.BEFORE, PAGE_SIZE,
+        page -> {
+          List<DataModel.PersonName> rows
+              = new ArrayList<>( this.window.size() + page.names.size() );
+          rows.addAll( page.names );
+          rows.addAll( this.window );
+
+          // Drop rows from the end if over the limit
+          int drop = Math.max( 0, rows.size() - MAX_ROWS );
+          if ( drop > 0 ) {
+            rows = new ArrayList<>( rows.subList( 0, rows.size() - drop ) );
+            this.atEnd = false;
+          }
+          this.firstVisible += page.names.size();
+          this.lastVisible += page.names.size();
+
+          this.window = Collections.unmodifiableList( rows );
+          this.atStart = page.reachedEnd;
+        } );
+  }
+
+  /**
+   * Runs a page query and applies the result on the GUI thread, then
+   * publishes the new window and checks whether more rows are needed.
+   */
+  private void query( DataModel.PersonName from,
+                      PeopleStore.PageDirection direction, int limit,
+                      final PageHandler handler ) {
+    this.loading = true;
+    this.db.findPersonsPage( from, direction, limit,
+        page -> this.guiExecutor.execute( () -> {
+          this.loading = false;
+          handler.apply( page );
+
+          TraceBuffer.record( TraceEvent.PAGE_LOADED, page.names.size(),
+              this.window.size() );
+          this.listener.onWindowChanged( this.window );
+
+          this.loadIfNeeded();
+        } ) );
+  }
+
+  private interface PageHandler {
+    void apply( DataModel.PersonsPage page );
+  }
+  //==========================================================================//
+}
@@ -0,0 +1,289 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder;
+
+import android.app.Service;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.Binder;
+import android.os.IBinder;
+import android.util.Log;
+
+import com.spacetimenetworks.android.peoplefinder.database.DatabaseController;
+import com.spacetimenetworks.android.peoplefinder.database.RecordFilter;
+import com.spacetimenetworks.android.peoplefinder.pfif.BundleWriter;
+import com.spacetimenetworks.android.peoplefinder.pfif.PfifExporter;
+import com.spacetimenetworks.android.peoplefinder.pfif.Transfer;
+
+import java.io.File;
+
+/**
+ * <p> Service that exports the database into a PFIF file with a {@link
+ * PfifExporter}, or into a bundle with a {@link BundleWriter}. The Intent starting the service must include {@link
+ * #INTENT_EXTRA_PATH} with the path of the file, and may include {@link
+ * #INTENT_EXTRA_SINCE} and {@link #INTENT_EXTRA_HOME_CITY} to export a subset
+ * of the records. The service stops itself when the export ends. </p> <p/>
+ * <p> Activities can bind to the service to follow the progress. </p>
+ *
+ * @author teemuk
+ */
+public class PfifExportService
+extends Service
+implements PfifExporter.Listener {
+  //==========================================================================//
+  // Constants
+  //==========================================================================//
+  /** Log tag for messages generated by this class ({@value}). */
+  public static final String TAG
+      = PfifExportService.class.getSimpleName();
+  /** Intent extra containing the path of the PFIF file to write. */
+  public static final String INTENT_EXTRA_PATH = "path";
+  /**
+   * Intent extra containing the earliest entry date of the exported records
+   * in seconds since the epoch, as a long.
+   */
+  public static final String INTENT_EXTRA_SINCE = "since";
+  /** Intent extra containing the home city of the exported persons. */
+  public static final String INTENT_EXTRA_HOME_CITY = "homeCity";
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Instance vars
+  //==========================================================================//
+  /** Binder for activities */
+  private final IBinder binder = new PfifExportService.ExportBinder();
+  /** Service connection to the database */
+  private ServiceConnection databaseConnection;
+  /** File being written, {@code null} when idle. */
+  private volatile File target;
+  private volatile RecordFilter filter;
+  private volatile Transfer exporter;
+  /** Records written so far. */
+  private volatile long persons;
+  private volatile long notes;
+  /** Whether the export has ended, and the failure if it failed. */
+  private volatile boolean finished;
+  private volatile Exception failure;
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // API
+  //==========================================================================//
+  /**
+   * Returns the number of persons written so far.
+   *
+   * @return the number of persons
+   */
+  public long getPersons() {
+    return this.persons;
+  }
+
+  /**
+   * Returns the number of notes written so far.
+   *
+   * @return the number of notes
+   */
+  public long getNotes() {
+    return this.notes;
+  }
+
+  /**
+   * Returns whether the export has ended.
+   *
+   * @return {@code true} if the export has finished or failed
+   */
+  public boolean isFinished() {
+    return this.finished;
+  }
+
+  /**
+   * Returns the failure that ended the export.
+   *
+   * @return the failure or {@code null} if the export hasn't failed
+   */
+  public Exception getFailure() {
+    return this.failure;
+  }
+
+  /** Stops the export, no file is written. */
+  public void cancel() {
+    Transfer exporter = this.exporter;
+    if ( exporter != null ) {
+      exporter.cancel();
+    }
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Lifecycle
+  //==========================================================================//
+  @Override
+  public IBinder onBind( Intent intent ) {
+    Log.d( TAG, "onBind()" );
+
+    return this.binder;
+  }
+
+  @Override
+  public int onStartCommand( Intent intent, int flags, int startId ) {
+    super.onStartCommand( intent, flags, startId );
+    Log.d( TAG, "onStartCommand()" );
+
+    // One export at a time
+    if ( this.target != null ) {
+      Log.d( TAG, "Export already running, ignoring." );
+      return START_NOT_STICKY;
+    }
+
+    String path = ( intent == null )
+        ? ( null ) : ( intent.getStringExtra( INTENT_EXTRA_PATH ) );
+    if ( path == null || path.length() == 0 ) {
+      Log.d( TAG, "No file to export to." );
+      super.stopSelf();
+      return START_NOT_STICKY;
+    }
+    this.target = new File( path );
+    this.filter = new RecordFilter(
+        intent.hasExtra( INTENT_EXTRA_SINCE )
+            ? ( intent.getLongExtra( INTENT_EXTRA_SINCE, 0 ) ) : ( null ),
+        intent.getStringExtra( INTENT_EXTRA_HOME_CITY ) );
+
+    // The export starts once the database is connected
+    this.doBindDatabaseService();
+
+    return START_NOT_STICKY;
+  }
+
+  @Override
+  public void onDestroy() {
+    super.onDestroy();
+
+    this.cancel();
+    if ( this.databaseConnection != null ) {
+      this.doUnbindDatabaseService();
+    }
+
+    Log.d( TAG, "onDestroy()" );
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // PfifExporter.Listener
+  //==========================================================================//
+  @Override
+  public void onProgress( long persons, long notes ) {
+    this.persons = persons;
+    this.notes = notes;
+  }
+
+  @Override
+  public void onFinished( long persons, long notes ) {
+    this.persons = persons;
+    this.notes = notes;
+    this.finished = true;
+    super.stopSelf();
+  }
+
+  @Override
+  public void onFailed( Exception cause ) {
+    this.failure = cause;
+    this.finished = true;
+    super.stopSelf();
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Private
+  //==========================================================================//
+  private void startExport( DatabaseController db ) {
+    Log.d( TAG, "Exporting to '" + this.target.getAbsolutePath() + "' ("
+                + this.filter + ")." );
+
+    File dir = this.target.getParentFile();
+    if ( dir != null && !dir.isDirectory() && !dir.mkdirs() ) {
+      Log.d( TAG, "Failed to create directory '" + dir + "'." );
+    }
+
+    this.exporter = BundleWriter.isBundle( this.target )
+        ? ( new BundleWriter( db, this.target, this.filter, this ) )
+        : ( new PfifExporter( db, this.target, this.filter, this ) );
+    this.exporter.start();
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Binding to DatabaseController
+  //==========================================================================//
+  private void doBindDatabaseService() {
+    this.databaseConnection = this.getServiceConnection();
+    super.bindService( new Intent( this, DatabaseController.class ),
+        this.databaseConnection, Context.BIND_AUTO_CREATE );
+  }
+
+  private void doUnbindDatabaseService() {
+    super.unbindService( this.databaseConnection );
+  }
+
+  private ServiceConnection getServiceConnection() {
+    return new ServiceConnection() {
+      @Override
+      public void onServiceConnected( ComponentName componentName,
+                                      IBinder iBinder ) {
+        if ( !( iBinder instanceof DatabaseController.DatabaseBinder ) ) {
+          Log.e( TAG, "Wrong type of binder in onServiceConnected()" );
+          return;
+        }
+
+        Log.d( TAG, "Database connected" );
+
+        DatabaseController.DatabaseBinder binder =
+            ( DatabaseController.DatabaseBinder ) iBinder;
+        if ( PfifExportService.this.exporter == null ) {
+          PfifExportService.this.startExport( binder.getService() );
+        }
+      }
+
+      @Override
+      public void onServiceDisconnected( ComponentName componentName ) {
+        Log.d( TAG, "Database disconnected" );
+        PfifExportService.this.cancel();
+      }
+    };
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Binder
+  //==========================================================================//
+  public class ExportBinder
+      extends Binder {
+    public PfifExportService getService() {
+      return PfifExportService.this;
+    }
+  }
+  //==========================================================================//
+}
@@ -0,0 +1,276 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder;
+
+import android.app.Service;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.Binder;
+import android.os.IBinder;
+import android.util.Log;
+
+import com.spacetimenetworks.android.peoplefinder.database.DatabaseController;
+import com.spacetimenetworks.android.peoplefinder.pfif.BundleReader;
+import com.spacetimenetworks.android.peoplefinder.pfif.BundleWriter;
+import com.spacetimenetworks.android.peoplefinder.pfif.PfifImporter;
+import com.spacetimenetworks.android.peoplefinder.pfif.Transfer;
+
+import java.io.File;
+
+/**
+ * <p> Service that imports a PFIF file into the database with a {@link
+ * PfifImporter}, or a bundle with a {@link BundleReader}. The Intent starting
+ * the service must include {@link #INTENT_EXTRA_PATH} with the path of the
+ * file. The service stops itself when the import ends. </p> <p/> <p> An
+ * interrupted import resumes from its checkpoint, or by skipping the records
+ * it has read in the case of a bundle, when the service is started again on
+ * the same file. Activities can bind to the service to follow the progress.
+ * </p>
+ *
+ * @author teemuk
+ */
+public class PfifImportService
+extends Service
+implements PfifImporter.Listener {
+  //==========================================================================//
+  // Constants
+  //==========================================================================//
+  /** Log tag for messages generated by this class ({@value}). */
+  public static final String TAG
+      = PfifImportService.class.getSimpleName();
+  /** Intent extra containing the path of the PFIF file to import. */
+  public static final String INTENT_EXTRA_PATH = "path";
+  /**
+   * Intent extra containing a boolean telling whether the imported records
+   * are published to the network. Defaults to {@code false}.
+   */
+  public static final String INTENT_EXTRA_PUBLISH = "publish";
+  /** Name of the checkpoint file in the private files directory. */
+  private static final String CHECKPOINT_FILE = "pfif-import.checkpoint";
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Instance vars
+  //==========================================================================//
+  /** Binder for activities */
+  private final IBinder binder = new PfifImportService.ImportBinder();
+  /** Service connection to the database */
+  private ServiceConnection databaseConnection;
+  /** File being imported, {@code null} when idle. */
+  private volatile File source;
+  private volatile boolean publish;
+  private volatile Transfer importer;
+  /** Latest progress of the import. */
+  private volatile PfifImporter.Progress progress;
+  /** Whether the import has ended, and the failure if it failed. */
+  private volatile boolean finished;
+  private volatile Exception failure;
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // API
+  //==========================================================================//
+  /**
+   * Returns the latest progress of the import.
+   *
+   * @return the progress or {@code null} if no batch has been committed yet
+   */
+  public PfifImporter.Progress getProgress() {
+    return this.progress;
+  }
+
+  /**
+   * Returns whether the import has ended.
+   *
+   * @return {@code true} if the import has finished or failed
+   */
+  public boolean isFinished() {
+    return this.finished;
+  }
+
+  /**
+   * Returns the failure that ended the import.
+   *
+   * @return the failure or {@code null} if the import hasn't failed
+   */
+  public Exception getFailure() {
+    return this.failure;
+  }
+
+  /** Stops the import, it can be resumed later. */
+  public void cancel() {
+    Transfer importer = this.importer;
+    if ( importer != null ) {
+      importer.cancel();
+    }
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Lifecycle
+  //==========================================================================//
+  @Override
+  public IBinder onBind( Intent intent ) {
+    Log.d( TAG, "onBind()" );
+
+    return this.binder;
+  }
+
+  @Override
+  public int onStartCommand( Intent intent, int flags, int startId ) {
+    super.onStartCommand( intent, flags, startId );
+    Log.d( TAG, "onStartCommand()" );
+
+    // One import at a time
+    if ( this.source != null ) {
+      Log.d( TAG, "Import already running, ignoring." );
+      return START_NOT_STICKY;
+    }
+
+    String path = ( intent == null )
+        ? ( null ) : ( intent.getStringExtra( INTENT_EXTRA_PATH ) );
+    if ( path == null || path.length() == 0 ) {
+      Log.d( TAG, "No file to import." );
+      super.stopSelf();
+      return START_NOT_STICKY;
+    }
+    this.source = new File( path );
+    this.publish = intent.getBooleanExtra( INTENT_EXTRA_PUBLISH, false );
+
+    // The import starts once the database is connected
+    this.doBindDatabaseService();
+
+    return START_NOT_STICKY;
+  }
+
+  @Override
+  public void onDestroy() {
+    super.onDestroy();
+
+    this.cancel();
+    if ( this.databaseConnection != null ) {
+      this.doUnbindDatabaseService();
+    }
+
+    Log.d( TAG, "onDestroy()" );
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // PfifImporter.Listener
+  //==========================================================================//
+  @Override
+  public void onProgress( PfifImporter.Progress progress ) {
+    this.progress = progress;
+  }
+
+  @Override
+  public void onFinished( PfifImporter.Progress progress ) {
+    this.progress = progress;
+    this.finished = true;
+    super.stopSelf();
+  }
+
+  @Override
+  public void onFailed( PfifImporter.Progress progress, Exception cause ) {
+    this.progress = progress;
+    this.failure = cause;
+    this.finished = true;
+    super.stopSelf();
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Private
+  //==========================================================================//
+  private void startImport( DatabaseController db ) {
+    Log.d( TAG, "Importing '" + this.source.getAbsolutePath() + "'." );
+
+    if ( BundleWriter.isBundle( this.source ) ) {
+      this.importer = new BundleReader( db, this.source,
+          PeopleFinderApplication.getPicDir(), this.publish, this );
+    } else {
+      File checkpoint = new File( super.getFilesDir(), CHECKPOINT_FILE );
+      this.importer = new PfifImporter( db, this.source, checkpoint,
+          this.publish, this );
+    }
+    this.importer.start();
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Binding to DatabaseController
+  //==========================================================================//
+  private void doBindDatabaseService() {
+    this.databaseConnection = this.getServiceConnection();
+    super.bindService( new Intent( this, DatabaseController.class ),
+        this.databaseConnection, Context.BIND_AUTO_CREATE );
+  }
+
+  private void doUnbindDatabaseService() {
+    super.unbindService( this.databaseConnection );
+  }
+
+  private ServiceConnection getServiceConnection() {
+    return new ServiceConnection() {
+      @Override
+      public void onServiceConnected( ComponentName componentName,
+                                      IBinder iBinder ) {
+        if ( !( iBinder instanceof DatabaseController.DatabaseBinder ) ) {
+          Log.e( TAG, "Wrong type of binder in onServiceConnected()" );
+          return;
+        }
+
+        Log.d( TAG, "Database connected" );
+
+        DatabaseController.DatabaseBinder binder =
+            ( DatabaseController.DatabaseBinder ) iBinder;
+        if ( PfifImportService.this.importer == null ) {
+          PfifImportService.this.startImport( binder.getService() );
+        }
+      }
+
+      @Override
+      public void onServiceDisconnected( ComponentName componentName ) {
+        Log.d( TAG, "Database disconnected" );
+        PfifImportService.this.cancel();
+      }
+    };
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Binder
+  //==========================================================================//
+  public class ImportBinder
+      extends Binder {
+    public PfifImportService getService() {
+      return PfifImportService.this;
+    }
+  }
+  //==========================================================================//
+}
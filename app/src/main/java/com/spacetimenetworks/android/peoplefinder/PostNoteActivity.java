@@ -34,6 +34,7 @@ import android.widget.TextView;
 
 import com.spacetimenetworks.android.peoplefinder.database.DataModel;
 import com.spacetimenetworks.android.peoplefinder.database.DatabaseController;
+import com.spacetimenetworks.android.peoplefinder.database.Projection;
 
 import java.util.Random;
 
@@ -309,10 +310,12 @@ public class PostNoteActivity
     }
 
     // Fetch the name from the database
-    // Query database for person details
-    this.db.getPersonDetails(
+    // Query database for the name only
+    this.db.queryPerson(
         // Person ID to query
         this.personID,
+        // Columns to read
+        Projection.PERSON_NAME,
         // Result handling
         row -> {
           // Precondition check
@@ -323,7 +326,7 @@ public class PostNoteActivity
           }
 
           // Update the fields from the GUI thread
-          runOnUiThread( () -> nameText.setText( row.person.identity.name.fullName ) );
+          runOnUiThread( () -> nameText.setText( row.fullName ) );
         }
     );
   }
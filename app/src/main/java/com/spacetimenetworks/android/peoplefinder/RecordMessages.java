@@ -0,0 +1,176 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder;
+
+import com.spacetimenetworks.android.peoplefinder.database.DataModel;
+import com.spacetimenetworks.android.peoplefinder.metrics.LatencyHistogram;
+import com.spacetimenetworks.android.peoplefinder.metrics.MetricsRegistry;
+import com.spacetimenetworks.android.peoplefinder.router.RouterMessage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * <p> Encoding of person records into router messages and back. A message
+ * carries a person and its notes as a serialized {@link
+ * DataModel.SerializablePerson} in the {@link #RECORDS_FIELD} field, and
+ * optionally a photo of the person in the {@link #PHOTO_FIELD} field. </p>
+ * <p/> <p> The time spent encoding and decoding is recorded in the {@link
+ * MetricsRegistry}. Doesn't depend on Android, so that the encoding can be
+ * run on a plain JVM. </p>
+ *
+ * @author teemuk
+ */
+public final class RecordMessages {
+  private RecordMessages() {}
+
+  //==========================================================================//
+  // Constants
+  //==========================================================================//
+  /** SCAMPI pub/sub service of the records ({@value}). */
+  public static final String SERVICE = "PeopleFinder";
+  /** Default lifetime of the messages in seconds, 30 days ({@value}). */
+  public static final long LIFETIME = 60 * 60 * 24 * 30;
+  /** Message field that contains the serialized records ({@value}). */
+  public static final String RECORDS_FIELD = "records";
+  /** Message field that contains the photo of the person ({@value}). */
+  public static final String PHOTO_FIELD = "photo";
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Globals
+  //==========================================================================//
+  private static final LatencyHistogram encodeLatency
+      = MetricsRegistry.get().histogram( "records.encode" );
+  private static final LatencyHistogram decodeLatency
+      = MetricsRegistry.get().histogram( "records.decode" );
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // API
+  //==========================================================================//
+  /**
+   * Creates a message for the records. The person record ID is used as the
+   * AppTag, which makes the router replace older versions of the same
+   * person's message with the new one.
+   *
+   * @param records
+   *     records to send
+   * @param photo
+   *     photo to attach, or {@code null}
+   * @param lifetime
+   *     lifetime of the message in seconds
+   * @return the message
+   * @throws IOException
+   *     if the records can't be serialized
+   */
+  public static RouterMessage create( DataModel.SerializablePerson records,
+                                      File photo, long lifetime )
+      throws IOException {
+    RouterMessage msg = new RouterMessage( records.person.metadata.recordID,
+        lifetime );
+    msg.putBinary( RECORDS_FIELD, encode( records ) );
+    if ( photo != null ) {
+      msg.putBinary( PHOTO_FIELD, photo );
+    }
+    return msg;
+  }
+
+  /**
+   * Reads the records from a message.
+   *
+   * @param msg
+   *     the message
+   * @return the records
+   * @throws IOException
+   *     if the message has no records or they can't be deserialized
+   */
+  public static DataModel.SerializablePerson read( RouterMessage msg )
+      throws IOException {
+    // Precondition check
+    if ( !msg.hasBinary( RECORDS_FIELD ) ) {
+      throw new IOException( "Invalid message, no '"
+                             + RECORDS_FIELD + "' field found." );
+    }
+
+    InputStream in = msg.getBinary( RECORDS_FIELD );
+    try {
+      return decode( in );
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Serializes the records.
+   *
+   * @param records
+   *     records to serialize
+   * @return the serialized records
+   * @throws IOException
+   *     if serializing fails
+   */
+  public static byte[] encode( DataModel.SerializablePerson records )
+      throws IOException {
+    long start = System.nanoTime();
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    ObjectOutputStream out = new ObjectOutputStream( bout );
+    try {
+      out.writeObject( records );
+    } finally {
+      out.close();
+    }
+    encodeLatency.recordSince( start );
+    return bout.toByteArray();
+  }
+
+  /**
+   * Deserializes records written by {@link #encode}. Doesn't close the
+   * stream.
+   *
+   * @param in
+   *     stream to read from
+   * @return the records
+   * @throws IOException
+   *     if the stream doesn't contain serialized records
+   */
+  public static DataModel.SerializablePerson decode( InputStream in )
+      throws IOException {
+    long start = System.nanoTime();
+    ObjectInputStream oin = new ObjectInputStream( in );
+    Object o;
+    try {
+      o = oin.readObject();
+    } catch ( ClassNotFoundException e ) {
+      throw new IOException( "Unknown class in records ("
+                             + e.getMessage() + ").", e );
+    }
+    decodeLatency.recordSince( start );
+    if ( !( o instanceof DataModel.SerializablePerson ) ) {
+      throw new IOException( "Unknown record class found." );
+    }
+    return ( DataModel.SerializablePerson ) ( o );
+  }
+  //==========================================================================//
+}
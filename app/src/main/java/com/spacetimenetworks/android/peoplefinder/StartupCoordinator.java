@@ -0,0 +1,202 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.Choreographer;
+
+import com.spacetimenetworks.android.peoplefinder.database.DatabaseController;
+import com.spacetimenetworks.android.peoplefinder.metrics.StartupTrace;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p> Orders the work done when the process starts so that the first frame
+ * doesn't wait for work it doesn't need. The database service is started
+ * right away and opens the database on its own thread while the first
+ * activity is inflated. Everything else, e.g., starting the AppLib service
+ * that connects to the router and publishes the un-routed records, is
+ * deferred until the first frame has been drawn. </p> <p/> <p> The phases
+ * are recorded with {@link StartupTrace}, and the trace is written to
+ * {@value #TRACE_FILE} in the external files dir once the first frame and
+ * the first row of the people list have been drawn. It can be pulled with
+ * {@code adb pull /sdcard/Android/data/<package>/files/startup-trace.log}.
+ * </p> <p/> <p> All methods must be called from the GUI thread. </p>
+ *
+ * @author teemuk
+ */
+final class StartupCoordinator {
+  private static final String TAG = StartupCoordinator.class.getSimpleName();
+
+  //==========================================================================//
+  // Constants
+  //==========================================================================//
+  /** Name of the file the startup trace is written to ({@value}). */
+  static final String TRACE_FILE = "startup-trace.log";
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Instance vars
+  //==========================================================================//
+  private final Context context;
+  private final Handler handler = new Handler( Looper.getMainLooper() );
+  /** Tasks waiting for the first frame. */
+  private final List<DeferredTask> deferred = new ArrayList<>();
+  private boolean frameCallbackPosted = false;
+  private boolean firstFrameDrawn = false;
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // API
+  //==========================================================================//
+  StartupCoordinator( Context context ) {
+    this.context = context;
+  }
+
+  /**
+   * Starts the work the first activity needs, i.e., the database. Called
+   * from {@link android.app.Application#onCreate}.
+   */
+  void start() {
+    long start = StartupTrace.beginSection( "start-database" );
+    try {
+      this.context.startService(
+          new Intent( this.context, DatabaseController.class ) );
+    } catch ( IllegalStateException e ) {
+      // From O on a background process can't start services, e.g., when the
+      // system restarts a sticky service. Binding still creates it.
+      Log.d( TAG, "Couldn't start the database service: " + e.getMessage() );
+    } finally {
+      StartupTrace.endSection( "start-database", start );
+    }
+  }
+
+  /**
+   * Runs the task once the first frame has been drawn, or right away if it
+   * already has been.
+   *
+   * @param name
+   *     name of the task in the startup trace
+   * @param task
+   *     the task to run on the GUI thread
+   */
+  void defer( String name, Runnable task ) {
+    if ( this.firstFrameDrawn ) {
+      runTraced( name, task );
+    } else {
+      this.deferred.add( new DeferredTask( name, task ) );
+    }
+  }
+
+  /**
+   * Returns whether the first frame has been drawn and the deferred tasks
+   * have run.
+   *
+   * @return {@code true} if the startup is done
+   */
+  boolean isFirstFrameDrawn() {
+    return this.firstFrameDrawn;
+  }
+
+  /**
+   * Tells the coordinator that an activity has been resumed, i.e., that
+   * its first frame is about to be drawn.
+   */
+  void onActivityResumed() {
+    if ( this.firstFrameDrawn || this.frameCallbackPosted ) {
+      return;
+    }
+    this.frameCallbackPosted = true;
+
+    // The frame callback runs before the next frame is drawn, a message
+    // posted from it runs after the frame.
+    Choreographer.getInstance().postFrameCallback(
+        frameTimeNanos -> this.handler.post( this::onFirstFrameDrawn ) );
+  }
+
+  /**
+   * Tells the coordinator that the first row of the people list has been
+   * drawn, which completes the startup.
+   */
+  void onFirstRowShown() {
+    this.writeTrace();
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Private
+  //==========================================================================//
+  private void onFirstFrameDrawn() {
+    StartupTrace.mark( "first-frame" );
+    this.firstFrameDrawn = true;
+
+    for ( DeferredTask task : this.deferred ) {
+      runTraced( task.name, task.task );
+    }
+    this.deferred.clear();
+
+    this.writeTrace();
+  }
+
+  private static void runTraced( String name, Runnable task ) {
+    long start = StartupTrace.beginSection( name );
+    try {
+      task.run();
+    } finally {
+      StartupTrace.endSection( name, start );
+    }
+  }
+
+  /** Writes the trace file from a background thread. */
+  private void writeTrace() {
+    File dir = this.context.getExternalFilesDir( null );
+    if ( dir == null ) {
+      dir = this.context.getFilesDir();
+    }
+    final File file = new File( dir, TRACE_FILE );
+
+    new Thread( () -> {
+      try {
+        StartupTrace.writeTo( file );
+      } catch ( IOException e ) {
+        Log.w( TAG, "Couldn't write startup trace to " + file, e );
+      }
+    }, "startup-trace" ).start();
+  }
+
+  private static final class DeferredTask {
+    final String name;
+    final Runnable task;
+
+    DeferredTask( String name, Runnable task ) {
+      this.name = name;
+      this.task = task;
+    }
+  }
+  //==========================================================================//
+}
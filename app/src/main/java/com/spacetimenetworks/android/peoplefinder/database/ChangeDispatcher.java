@@ -0,0 +1,278 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.database;
+
+import android.util.Log;
+
+import com.spacetimenetworks.android.peoplefinder.metrics.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * <p> Delivers committed changes to listeners off the database thread. Each
+ * listener has its own executor and its own queue of pending changes, so a
+ * slow listener delays neither the database nor the other listeners. </p>
+ * <p/> <p> Changes that pile up while a listener is busy are delivered as one
+ * batch. The queue is conflated by record ID, i.e., a record changed again
+ * before the listener saw the previous change is only delivered once, with
+ * the latest values. The queue is also bounded; if a listener falls further
+ * behind than that, the oldest changes are dropped and the drop is logged.
+ * </p>
+ * <p/> <p> A listener has at most one batch scheduled or being delivered at
+ * a time, so its changes arrive in order even on a multi-threaded executor.
+ * </p>
+ *
+ * @param <L>
+ *     type of the listeners
+ * @param <T>
+ *     type of the changed records
+ *
+ * @author teemuk
+ */
+class ChangeDispatcher<L, T> {
+  private static final String TAG = ChangeDispatcher.class.getSimpleName();
+
+  //==========================================================================//
+  // Instance vars
+  //==========================================================================//
+  private final String name;
+  private final int capacity;
+  private final Deliverer<L, T> deliverer;
+  private final LatencyHistogram latency;
+  private final Map<L, Subscription> subscriptions
+      = new ConcurrentHashMap<>();
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // API
+  //==========================================================================//
+  /**
+   * Creates a new dispatcher.
+   *
+   * @param name
+   *     name for logging and thread names
+   * @param capacity
+   *     maximum number of pending changes per listener
+   * @param deliverer
+   *     invokes a listener for a change
+   * @param latency
+   *     histogram recording how long listeners take per change
+   */
+  ChangeDispatcher( String name, int capacity, Deliverer<L, T> deliverer,
+                    LatencyHistogram latency ) {
+    this.name = name;
+    this.capacity = capacity;
+    this.deliverer = deliverer;
+    this.latency = latency;
+  }
+
+  /**
+   * Adds a listener that is invoked on its own single thread executor.
+   *
+   * @param listener
+   *     listener to add
+   */
+  void addListener( L listener ) {
+    this.addListener( listener, null );
+  }
+
+  /**
+   * Adds a listener that is invoked on the given executor.
+   *
+   * @param listener
+   *     listener to add
+   * @param executor
+   *     executor to invoke the listener on, or {@code null} to create one
+   */
+  void addListener( L listener, Executor executor ) {
+    Subscription subscription = new Subscription( listener, executor );
+    if ( this.subscriptions.putIfAbsent( listener, subscription ) != null ) {
+      // Already added, release the executor created for the duplicate
+      subscription.close();
+    }
+  }
+
+  /**
+   * Removes a listener. Pending changes are dropped, a batch that is already
+   * being delivered finishes.
+   *
+   * @param listener
+   *     listener to remove
+   */
+  void removeListener( L listener ) {
+    Subscription subscription = this.subscriptions.remove( listener );
+    if ( subscription != null ) {
+      subscription.close();
+    }
+  }
+
+  /**
+   * Queues a change for all listeners. Never blocks, so can be called from
+   * the database thread.
+   *
+   * @param key
+   *     record ID of the changed record, used for conflation
+   * @param id
+   *     row ID of the change
+   * @param record
+   *     the changed record
+   */
+  void dispatch( String key, long id, T record ) {
+    Change<T> change = new Change<>( id, record );
+    for ( Subscription subscription : this.subscriptions.values() ) {
+      subscription.offer( key, change );
+    }
+  }
+
+  /** Removes all listeners. */
+  void shutdown() {
+    Iterator<Subscription> it = this.subscriptions.values().iterator();
+    while ( it.hasNext() ) {
+      it.next().close();
+      it.remove();
+    }
+  }
+
+  /** Invokes a listener for a change. */
+  interface Deliverer<L, T> {
+    void deliver( L listener, long id, T record );
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Private
+  //==========================================================================//
+  private static final class Change<T> {
+    final long id;
+    final T record;
+
+    Change( long id, T record ) {
+      this.id = id;
+      this.record = record;
+    }
+  }
+
+  /** Queue and executor of a single listener. */
+  private final class Subscription
+      implements Runnable {
+    private final L listener;
+    private final Executor executor;
+    /** Executor created for this listener, shut down on close. */
+    private final ExecutorService ownExecutor;
+
+    // Guarded by this
+    private final LinkedHashMap<String, Change<T>> pending
+        = new LinkedHashMap<>();
+    /** Whether a batch is scheduled or being delivered. */
+    private boolean scheduled = false;
+    private boolean closed = false;
+    private long dropped = 0;
+
+    Subscription( L listener, Executor executor ) {
+      this.listener = listener;
+      if ( executor == null ) {
+        this.ownExecutor = Executors.newSingleThreadExecutor(
+            runnable -> new Thread( runnable, name + "-listener" ) );
+        this.executor = this.ownExecutor;
+      } else {
+        this.ownExecutor = null;
+        this.executor = executor;
+      }
+    }
+
+    synchronized void offer( String key, Change<T> change ) {
+      if ( this.closed ) {
+        return;
+      }
+
+      // Conflate, the latest change goes to the back of the queue
+      this.pending.remove( key );
+      this.pending.put( key, change );
+
+      // Drop the oldest change if over capacity
+      if ( this.pending.size() > capacity ) {
+        Iterator<Change<T>> it = this.pending.values().iterator();
+        it.next();
+        it.remove();
+        this.dropped++;
+      }
+
+      if ( !this.scheduled ) {
+        this.scheduled = true;
+        this.executor.execute( this );
+      }
+    }
+
+    synchronized void close() {
+      this.closed = true;
+      this.pending.clear();
+      if ( this.ownExecutor != null ) {
+        this.ownExecutor.shutdown();
+      }
+    }
+
+    @Override
+    public void run() {
+      // Take the whole batch
+      List<Change<T>> batch;
+      long droppedNow;
+      synchronized ( this ) {
+        batch = new ArrayList<>( this.pending.values() );
+        this.pending.clear();
+        droppedNow = this.dropped;
+        this.dropped = 0;
+      }
+
+      if ( droppedNow > 0 ) {
+        Log.w( TAG, name + ": listener fell behind, dropped " + droppedNow +
+                    " changes." );
+      }
+
+      // Deliver outside the lock so new changes can be queued meanwhile
+      for ( Change<T> change : batch ) {
+        long start = System.nanoTime();
+        try {
+          deliverer.deliver( this.listener, change.id, change.record );
+        } catch ( RuntimeException e ) {
+          Log.e( TAG, name + ": listener failed.", e );
+        }
+        latency.recordSince( start );
+      }
+
+      // Schedule the next batch only now, so batches never overlap
+      synchronized ( this ) {
+        if ( !this.pending.isEmpty() && !this.closed ) {
+          this.executor.execute( this );
+        } else {
+          this.scheduled = false;
+        }
+      }
+    }
+  }
+  //==========================================================================//
+}
@@ -19,6 +19,7 @@ package com.spacetimenetworks.android.peoplefinder.database;
 
 import java.io.Serializable;
 import java.util.LinkedList;
+import java.util.List;
 
 public final class DataModel {
   private DataModel() {}
@@ -32,14 +33,59 @@ public final class DataModel {
     public final String recordID;
     public final String fullName;
     public final String status;
-    public final Long entryDate;
+    public final long entryDate;
+    /** Given name, the list sort key. May be {@code null} if not queried. */
+    public final String givenName;
 
     public PersonName( String recordID, String fullName,
-                       String status, Long entryDate ) {
+                       String status, long entryDate ) {
+      this( recordID, fullName, status, entryDate, null );
+    }
+
+    public PersonName( String recordID, String fullName,
+                       String status, long entryDate, String givenName ) {
       this.recordID = recordID;
       this.fullName = fullName;
       this.status = status;
       this.entryDate = entryDate;
+      this.givenName = givenName;
+    }
+  }
+
+  /**
+   * A page of persons in list order, i.e., ordered by given name and record
+   * ID.
+   */
+  public static final class PersonsPage {
+    /** Persons on the page, in list order. */
+    public final List<PersonName> names;
+    /**
+     * Whether there are no more rows beyond this page in the direction it
+     * was loaded.
+     */
+    public final boolean reachedEnd;
+
+    public PersonsPage( List<PersonName> names, boolean reachedEnd ) {
+      this.names = names;
+      this.reachedEnd = reachedEnd;
+    }
+  }
+
+  /** Note's IDs, author and status from the database, without the text. */
+  public static final class NoteHeader {
+    public final String recordID;
+    public final String personID;
+    public final long entryDate;
+    public final String authorName;
+    public final String status;
+
+    public NoteHeader( String recordID, String personID, long entryDate,
+                       String authorName, String status ) {
+      this.recordID = recordID;
+      this.personID = personID;
+      this.entryDate = entryDate;
+      this.authorName = authorName;
+      this.status = status;
     }
   }
 
@@ -18,26 +18,34 @@
 package com.spacetimenetworks.android.peoplefinder.database;
 
 import android.app.Service;
-import android.content.ContentValues;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.content.Intent;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.os.Binder;
+import android.os.CancellationSignal;
 import android.os.IBinder;
+import android.os.OperationCanceledException;
 import android.util.Log;
+import android.util.LruCache;
+
+import com.spacetimenetworks.android.peoplefinder.metrics.LatencyHistogram;
+import com.spacetimenetworks.android.peoplefinder.metrics.MetricsRegistry;
+import com.spacetimenetworks.android.peoplefinder.metrics.StartupTrace;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class encapsulates an SQLite database and provides a convenient way to
@@ -55,23 +63,74 @@ public class DatabaseController
 
 
 
+  //=========================================================================//
+  // Constants
+  //=========================================================================//
+  /** Maximum number of insertions queued for a slow callback. */
+  private static final int LISTENER_QUEUE_CAPACITY = 1024;
+  /** Number of person records kept in the detail cache. */
+  private static final int PERSON_CACHE_SIZE = 64;
+  /** Number of per-person note lists kept in the note cache. */
+  private static final int NOTES_CACHE_SIZE = 32;
+  //=========================================================================//
+
+
   //=========================================================================//
   // Instance vars
   //=========================================================================//
   /** Binder for activities */
   private final IBinder binder
       = new DatabaseController.DatabaseBinder();
-  /** Task executor */
-  private ExecutorService executor;
+  /** Task scheduler, runs all tasks on a single worker thread */
+  private PriorityTaskScheduler scheduler;
   /** The database encapsulated by this controller */
   private SQLiteDatabase database;
+  /** Store on top of the database, for the operations it covers */
+  private SQLitePeopleStore store;
 
-  /** Callbacks for database person insertions. */
-  private final Collection<OnInsertedPerson> onInsertedPersonCallbacks
+  /** Generation of the latest search, older searches are stale. */
+  private final AtomicLong searchGeneration = new AtomicLong();
+  /** Cancellation signal of the search that is running, if any. */
+  private volatile CancellationSignal searchSignal;
+
+  /**
+   * Recently queried person records by record ID. Written to only from the
+   * database thread, where every write to a person updates or evicts its
+   * entry. Trimmed from the main thread in {@link #onTrimMemory}.
+   */
+  private final LruCache<String, DataModel.LocalPerson> personCache
+      = new LruCache<>( PERSON_CACHE_SIZE );
+  /** Recently queried note lists by person record ID, like personCache. */
+  private final LruCache<String, NoteColumns> notesCache
+      = new LruCache<>( NOTES_CACHE_SIZE );
+
+  /** Live queries to invalidate after writes. */
+  private final Collection<LiveQuery> liveQueries
       = new CopyOnWriteArraySet<>();
 
+  /** Time spent in insert tasks on the database thread. */
+  private final LatencyHistogram insertLatency
+      = MetricsRegistry.get().histogram( "db.insert" );
+  /** Time spent in insertion listeners, off the database thread. */
+  private final LatencyHistogram listenerLatency
+      = MetricsRegistry.get().histogram( "db.listeners" );
+
+  /** Callbacks for database person insertions. */
+  private final ChangeDispatcher<OnInsertedPerson, DataModel.LocalPerson>
+      onInsertedPersonCallbacks = new ChangeDispatcher<>(
+          "persons", LISTENER_QUEUE_CAPACITY,
+          ( listener, id, person ) -> listener.onInserted( id, person ),
+          this.listenerLatency );
+
   /** Callbacks for database note insertions. */
-  private final Collection<OnInsertedNote> onInsertedNoteCallbacks
+  private final ChangeDispatcher<OnInsertedNote, DataModel.LocalNote>
+      onInsertedNoteCallbacks = new ChangeDispatcher<>(
+          "notes", LISTENER_QUEUE_CAPACITY,
+          ( listener, id, note ) -> listener.onInserted( id, note ),
+          this.listenerLatency );
+
+  /** Callbacks for the database stalling and recovering. */
+  private final Collection<OnStalledChanged> onStalledChangedCallbacks
       = new CopyOnWriteArraySet<>();
   //=========================================================================//
 
@@ -81,8 +140,9 @@ public class DatabaseController
   //-------------------------------------------------------------------------//
   // Public API for the service. Since database operations can take
   // arbitrary time to execute, the API is asynchronous. All commands are
-  // executed in FIFO order by the controller thread,
-  // which also invokes any appropriate callbacks.
+  // executed by the controller thread, which also invokes any appropriate
+  // callbacks. Commands run in order of their priority class, and in FIFO
+  // order within a class.
   //=========================================================================//
 
   /**
@@ -96,18 +156,19 @@ public class DatabaseController
    */
   public void findPersons( final String name,
                            final FindPersonsQueryFinished callback ) {
-    // Build query
-    final String query = DatabaseModel.SQL_SELECT_PERSONS.replace( "[NAME]", name );
+    // Build query, a negative limit means no limit in SQLite
+    final String query = DatabaseModel.SQL_SELECT_PERSONS
+        .replace( "[LIMIT]", "-1" );
 
     // Submit the query
-    this.executor.submit(
+    this.scheduler.submit( Priority.INTERACTIVE_READ,
         new QueryTask(
             // Query to execute
-            query,
+            query, new String[]{ StoreQueries.likePattern( name ) },
             // Callback invoked after execution
             cursor -> {
               final List<DataModel.PersonName> results
-                  = personNameCursorToList( cursor );
+                  = SQLitePeopleStore.readNames( cursor );
               cursor.close();
               callback.queryFinished( results );
             }
@@ -115,6 +176,34 @@ public class DatabaseController
     );
   }
 
+  /**
+   * Searches the database for persons whose full name contains the given
+   * text, for search-as-you-type. Like {@link #findPersons}, but each call
+   * supersedes the previous search: if the previous search is still queued
+   * it is dropped, and if it is running it is cancelled. The callback of a
+   * superseded search is never invoked.
+   *
+   * @param name
+   *     text to search for
+   * @param limit
+   *     maximum number of results
+   * @param callback
+   *     callback invoked with the results, unless the search was superseded
+   */
+  public void searchPersons( final String name, final int limit,
+                             final FindPersonsQueryFinished callback ) {
+    // New generation, interrupt the running search if any
+    final long generation = this.searchGeneration.incrementAndGet();
+    final CancellationSignal running = this.searchSignal;
+    if ( running != null ) {
+      running.cancel();
+    }
+
+    // Submit the search
+    this.scheduler.submit( Priority.INTERACTIVE_READ,
+        new SearchTask( generation, name, limit, callback ) );
+  }
+
   /**
    * Query the database for all persons.
    *
@@ -126,14 +215,14 @@ public class DatabaseController
     final String query = DatabaseModel.SQL_SELECT_ALL_PERSONS_WITH_STATUS;
 
     // Submit the query
-    this.executor.submit(
+    this.scheduler.submit( Priority.INTERACTIVE_READ,
         new QueryTask(
             // Query to execute
             query,
             // Callback invoked after execution
             cursor -> {
               final List<DataModel.PersonName> results
-                  = personNameCursorToList( cursor );
+                  = SQLitePeopleStore.readNames( cursor );
               cursor.close();
               callback.queryFinished( results );
             }
@@ -141,6 +230,105 @@ public class DatabaseController
     );
   }
 
+  /**
+   * Queries the database for one page of persons in list order, i.e.,
+   * ordered by given name and record ID. Uses keyset pagination, so loading
+   * a page costs the same regardless of how deep into the list it is.
+   *
+   * @param from
+   *     the person whose key (given name and record ID) the page is relative
+   *     to, or {@code null} to load the first page
+   * @param direction
+   *     which rows relative to {@code from} to load
+   * @param limit
+   *     maximum number of rows on the page
+   * @param callback
+   *     callback invoked with the page, rows are always in list order
+   */
+  public void findPersonsPage( final DataModel.PersonName from,
+                               final PeopleStore.PageDirection direction,
+                               final int limit,
+                               final FindPersonsPageQueryFinished callback ) {
+    this.scheduler.submit( Priority.INTERACTIVE_READ,
+        new StoreTask<>(
+            // Operation to run
+            store -> store.findPersonsPage( from, direction, limit ),
+            // Result without a database
+            new DataModel.PersonsPage(
+                new ArrayList<DataModel.PersonName>( 0 ), true ),
+            // Callback invoked with the result
+            callback::queryFinished
+        )
+    );
+  }
+
+  /**
+   * Priority classes of database tasks, highest first. Queued tasks of a
+   * higher class run before lower ones. A class that has had no turn for
+   * longer than its maximum wait gets to run one task ahead of the higher
+   * classes, after which it waits again.
+   */
+  public enum Priority {
+    /** Writes made by the user, e.g., posting a note. */
+    INTERACTIVE_WRITE( 50, 0 ),
+    /** Queries for the GUI. */
+    INTERACTIVE_READ( 50, 0 ),
+    /**
+     * Records received from the network or imported. The queue is bounded,
+     * submitting to a full queue blocks the producer until there is room.
+     */
+    BACKGROUND_INGEST( 250, 256 ),
+    /** Routing scans and routed flag updates. */
+    MAINTENANCE( 1000, 0 );
+
+    /**
+     * Time after which a waiting class runs one task ahead of higher
+     * classes (ms).
+     */
+    final long maxWaitMs;
+    /** Maximum number of queued tasks, or 0 for unbounded. */
+    final int capacity;
+
+    Priority( long maxWaitMs, int capacity ) {
+      this.maxWaitMs = maxWaitMs;
+      this.capacity = capacity;
+    }
+
+    /**
+     * Returns the maximum number of queued tasks of this class.
+     *
+     * @return the capacity, or 0 if the queue is unbounded
+     */
+    public int getCapacity() {
+      return this.capacity;
+    }
+  }
+
+  /**
+   * Returns the number of tasks of the given class waiting in the queue.
+   *
+   * @param priority
+   *     the class
+   *
+   * @return number of queued tasks
+   */
+  public int getQueueSize( Priority priority ) {
+    return this.scheduler.getQueueSize( priority );
+  }
+
+  /**
+   * Returns the histogram of the time tasks of the given class wait in the
+   * queue before they run.
+   *
+   * @param priority
+   *     the class
+   *
+   * @return the histogram
+   */
+  public LatencyHistogram getQueueLatency( Priority priority ) {
+    return this.scheduler.getQueueLatency( priority );
+  }
+
   /**
    * Queries the database for the detail record of a given person.
    *
@@ -153,47 +341,238 @@ public class DatabaseController
                                 final GetPersonDetailsQueryFinished callback
   ) {
     // Build query
-    final String query = DatabaseModel.SQL_SELECT_PERSON_DETAILS.replace( "[PERSON_ID]",
-        recordID );
+    final String query = Projection.PERSON_RECORD.select(
+        DatabaseModel.SQL_SELECT_PERSON_DETAILS );
+
+    // Submit query, the record is served from the cache if possible
+    this.scheduler.submit( Priority.INTERACTIVE_READ,
+        new CachedQueryTask<>(
+            this.personCache, recordID,
+            // Query to execute on a miss
+            query, new String[]{ recordID },
+            // Result from the cursor
+            Projection.PERSON_RECORD::readFirst,
+            // Callback invoked with the result
+            callback::queryFinished
+        )
+    );
+  }
+
+  public void getNotesForPerson( final String personID,
+                                 final GetNotesQueryFinished callback ) {
+    this.queryNotesForPerson( personID, Projection.NOTE_RECORD,
+        callback::queryFinished );
+  }
+
+  /**
+   * Queries the notes attached to a person for display in a list. The notes
+   * are returned column by column, which takes far less memory than full
+   * note records when a person has many notes.
+   *
+   * @param personID
+   *     record ID of the person
+   * @param callback
+   *     callback invoked with the notes
+   */
+  public void getNoteColumnsForPerson( final String personID,
+                                       final GetNoteColumnsQueryFinished callback ) {
+    // Build query
+    final String query = DatabaseModel.SQL_SELECT_NOTES_FOR_PERSON
+        .replace( "[COLUMNS]", NoteColumns.SELECT_LIST );
+
+    // Submit query, the notes are served from the cache if possible
+    this.scheduler.submit( Priority.INTERACTIVE_READ,
+        new CachedQueryTask<>(
+            this.notesCache, personID,
+            // Query to execute on a miss
+            query, new String[]{ personID },
+            // Result from the cursor
+            NoteColumns::read,
+            // Callback invoked with the result
+            callback::queryFinished
+        )
+    );
+  }
 
-    // Submit query
-    this.executor.submit(
+  /**
+   * Queries the given columns of a person record. Reads only the columns of
+   * the projection, e.g., {@link Projection#PERSON_NAME} when only the name
+   * is needed. Unlike {@link #getPersonDetails}, the result is not cached.
+   *
+   * @param recordID
+   *     record ID of the person
+   * @param projection
+   *     projection of the PERSON table
+   * @param callback
+   *     callback invoked with the result, or {@code null} if no such person
+   *     exists
+   */
+  public <T> void queryPerson( final String recordID,
+                               final Projection<T> projection,
+                               final ProjectionQueryFinished<T> callback ) {
+    requireTable( projection, LiveQuery.Table.PERSON );
+
+    this.scheduler.submit( Priority.INTERACTIVE_READ,
         new QueryTask(
             // Query to execute
-            query,
+            projection.select( DatabaseModel.SQL_SELECT_PERSON_DETAILS ),
+            new String[]{ recordID },
             // Callback invoked after execution
             cursor -> {
-              final DataModel.LocalPerson record =
-                  personRecordFromCursor( cursor );
-              cursor.close();
-              callback.queryFinished( record );
+              final T result = projection.readFirst( cursor );
+              if ( cursor != null ) cursor.close();
+              callback.queryFinished( result );
             }
         )
     );
   }
 
-  public void getNotesForPerson( final String personID,
-                                 final GetNotesQueryFinished callback ) {
-    // Build query
-    final String query = DatabaseModel.SQL_SELECT_NOTES_FOR_PERSON.replace( "[PERSON_ID]",
-        personID );
+  /**
+   * Queries the given columns of the notes attached to a person, e.g., {@link
+   * Projection#NOTE_HEADER} to list the notes without reading their text.
+   * Unlike {@link #getNoteColumnsForPerson}, the result is not cached.
+   *
+   * @param personID
+   *     record ID of the person
+   * @param projection
+   *     projection of the NOTE table
+   * @param callback
+   *     callback invoked with the results
+   */
+  public <T> void queryNotesForPerson(
+      final String personID, final Projection<T> projection,
+      final ProjectionListQueryFinished<T> callback ) {
+    requireTable( projection, LiveQuery.Table.NOTE );
 
-    // Submit query
-    this.executor.submit(
+    this.scheduler.submit( Priority.INTERACTIVE_READ,
         new QueryTask(
             // Query to execute
-            query,
+            projection.select( DatabaseModel.SQL_SELECT_NOTES_FOR_PERSON ),
+            new String[]{ personID },
             // Callback invoked after execution
             cursor -> {
-              final List<DataModel.LocalNote> notes =
-                  notesCursorToList( cursor );
-              cursor.close();
-              callback.queryFinished( notes );
+              final List<T> results = projection.readAll( cursor );
+              if ( cursor != null ) cursor.close();
+              callback.queryFinished( results );
             }
         )
     );
   }
 
+  /**
+   * Reads a chunk of a whole table in record ID order, e.g., for an export.
+   * Reading the next chunk after the last record ID of the previous one
+   * reads through the table with memory bounded by the chunk size, and
+   * without holding the database thread for the whole table. Runs as
+   * maintenance so that the GUI queries go first.
+   *
+   * @param projection
+   *     projection of the table to read
+   * @param filter
+   *     filter for the records
+   * @param afterRecordID
+   *     record ID the chunk starts after, or {@code null} for the first chunk
+   * @param limit
+   *     maximum number of records in the chunk
+   * @param callback
+   *     callback invoked with the records, fewer than {@code limit} at the
+   *     end of the table, or with {@code null} if the database is not open
+   *     or the query failed
+   */
+  public <T> void scanRecords( final Projection<T> projection,
+                               final RecordFilter filter,
+                               final String afterRecordID,
+                               final int limit,
+                               final ProjectionListQueryFinished<T> callback ) {
+    // Build query
+    final LiveQuery.Table table = projection.getTable();
+    final List<String> args = new ArrayList<>( 3 );
+    args.add( ( afterRecordID == null ) ? ( "" ) : ( afterRecordID ) );
+    final String where = filter.where( table, args );
+    final String query = projection.select(
+        ( table == LiveQuery.Table.NOTE )
+            ? ( DatabaseModel.SQL_SELECT_NOTES_CHUNK )
+            : ( DatabaseModel.SQL_SELECT_PERSONS_CHUNK ) )
+        .replace( "[WHERE]", where )
+        .replace( "[LIMIT]", Integer.toString( limit ) );
+
+    this.scheduler.submit( Priority.MAINTENANCE,
+        new ScanTask<>( query, args.toArray( new String[ 0 ] ), projection,
+            callback ) );
+  }
+
+  /**
+   * Reads the notes of the persons in a record ID range, e.g., of a chunk
+   * read with {@link #scanRecords}. The notes are ordered by their person.
+   * Runs as maintenance like {@link #scanRecords}.
+   *
+   * @param projection
+   *     projection of the NOTE table
+   * @param afterPersonID
+   *     record ID the range starts after, or {@code null} for the start
+   * @param lastPersonID
+   *     last record ID in the range
+   * @param callback
+   *     callback invoked with the notes, or with {@code null} if the
+   *     database is not open or the query failed
+   */
+  public <T> void scanNotesForPersons(
+      final Projection<T> projection, final String afterPersonID,
+      final String lastPersonID,
+      final ProjectionListQueryFinished<T> callback ) {
+    requireTable( projection, LiveQuery.Table.NOTE );
+
+    this.scheduler.submit( Priority.MAINTENANCE,
+        new ScanTask<>(
+            projection.select(
+                DatabaseModel.SQL_SELECT_NOTES_FOR_PERSON_RANGE ),
+            new String[]{
+                ( afterPersonID == null ) ? ( "" ) : ( afterPersonID ),
+                lastPersonID },
+            projection, callback ) );
+  }
+
+  /**
+   * Finds which of the given record IDs exist in a table, e.g., to skip
+   * records that are already in the database before decoding them. Runs as
+   * background ingest, so it blocks while that queue is full.
+   *
+   * @param table
+   *     table to look in
+   * @param recordIDs
+   *     record IDs to look for
+   * @param callback
+   *     callback invoked with the IDs that exist
+   */
+  public void findExistingRecordIDs( final LiveQuery.Table table,
+                                     final List<String> recordIDs,
+                                     final RecordIDsQueryFinished callback ) {
+    this.scheduler.submit( Priority.BACKGROUND_INGEST,
+        new ExistingIDsTask( table, recordIDs, callback ) );
+  }
+
+  /**
+   * Counts the notes attached to a person without reading them.
+   *
+   * @param personID
+   *     record ID of the person
+   * @param callback
+   *     callback invoked with the count
+   */
+  public void countNotesForPerson( final String personID,
+                                   final CountQueryFinished callback ) {
+    this.scheduler.submit( Priority.INTERACTIVE_READ,
+        new StoreTask<>(
+            // Operation to run
+            store -> store.countNotesForPerson( personID ),
+            // Result without a database
+            0,
+            // Callback invoked with the result
+            callback::queryFinished
+        )
+    );
+  }
+
   /**
    * Inserts a person into the database
    *
@@ -204,6 +583,25 @@ public class DatabaseController
    */
   public void insertPerson( final DataModel.LocalPerson person,
                             final OnInsertedPerson callback ) {
+    this.insertPerson( person, Priority.INTERACTIVE_WRITE, callback );
+  }
+
+  /**
+   * Inserts a person into the database with the given priority, e.g.,
+   * {@link Priority#BACKGROUND_INGEST} for records received from the network.
+   * Blocks while the queue of a bounded class is full, so must not be called
+   * from the GUI thread with such a class.
+   *
+   * @param person
+   *     person to insert
+   * @param priority
+   *     priority of the insertion
+   * @param callback
+   *     callback to be invoked after insertion
+   */
+  public void insertPerson( final DataModel.LocalPerson person,
+                            final Priority priority,
+                            final OnInsertedPerson callback ) {
     // Precondition check
     if ( person.person.metadata.recordID == null ||
          person.person.metadata.recordID.length() == 0 ) {
@@ -213,7 +611,7 @@ public class DatabaseController
     }
 
     // Submit a new insertion task
-    this.executor.submit( new PersonInsertTask( person, callback ) );
+    this.scheduler.submit( priority, new PersonInsertTask( person, callback ) );
   }
 
   /**
@@ -227,6 +625,26 @@ public class DatabaseController
    */
   public void insertNote( final DataModel.LocalNote note,
                           final OnInsertedNote callback ) {
+    this.insertNote( note, Priority.INTERACTIVE_WRITE, callback );
+  }
+
+  /**
+   * Inserts a note into the database with the given priority, e.g., {@link
+   * Priority#BACKGROUND_INGEST} for records received from the network. Note
+   * must have record ID and person ID set. Blocks while the queue of a
+   * bounded class is full, so must not be called from the GUI thread with
+   * such a class.
+   *
+   * @param note
+   *     note to insert
+   * @param priority
+   *     priority of the insertion
+   * @param callback
+   *     callback invoked after insertion
+   */
+  public void insertNote( final DataModel.LocalNote note,
+                          final Priority priority,
+                          final OnInsertedNote callback ) {
     // Precondition Check
     if ( note.note.metadata.recordID == null ||
          note.note.metadata.recordID.length() == 0 ) {
@@ -242,17 +660,46 @@ public class DatabaseController
     }
 
     // Submit a new insertion task
-    this.executor.submit( new NoteInsertTask( note, callback ) );
+    this.scheduler.submit( priority, new NoteInsertTask( note, callback ) );
+  }
+
+  /**
+   * Inserts a batch of persons and notes in a single transaction, e.g.,
+   * records from a bulk import. Records whose record ID already exists are
+   * skipped. The insertion callbacks and live queries are notified of every
+   * inserted record like with single insertions. Blocks while the queue of a
+   * bounded class is full, so must not be called from the GUI thread with
+   * such a class.
+   *
+   * @param persons
+   *     persons to insert, each with a record ID
+   * @param notes
+   *     notes to insert, each with a record ID and a person ID
+   * @param priority
+   *     priority of the insertion
+   * @param callback
+   *     callback invoked after the transaction, or {@code null}
+   */
+  public void insertBatch( final List<DataModel.LocalPerson> persons,
+                           final List<DataModel.LocalNote> notes,
+                           final Priority priority,
+                           final BatchInsertFinished callback ) {
+    this.scheduler.submit( priority,
+        new BatchInsertTask( persons, notes, callback ) );
   }
 
   /**
    * Callback invoked every time a new person is inserted into the database.
+   * The callback runs on its own thread, never on the database thread.
+   * Insertions made while the callback is busy are delivered afterwards in
+   * one batch, with repeated insertions of the same record conflated. If
+   * the callback falls far behind, the oldest insertions are dropped.
    *
    * @param callback
    *     callback to invoke
    */
   public void addOnInsertedPersonCallback( OnInsertedPerson callback ) {
-    this.onInsertedPersonCallbacks.add( callback );
+    this.onInsertedPersonCallbacks.addListener( callback );
   }
 
   /**
@@ -262,17 +709,18 @@ public class DatabaseController
    *     callback to remove
    */
   public void removeOnInsertedPersonCallback( OnInsertedPerson callback ) {
-    this.onInsertedPersonCallbacks.remove( callback );
+    this.onInsertedPersonCallbacks.removeListener( callback );
   }
 
   /**
    * Callback invoked every time a new note is inserted into the database.
+   * Delivered like the callbacks of {@link #addOnInsertedPersonCallback}.
    *
    * @param callback
    *     callback to invoke
    */
   public void addOnInsertedNoteCallback( OnInsertedNote callback ) {
-    this.onInsertedNoteCallbacks.add( callback );
+    this.onInsertedNoteCallbacks.addListener( callback );
   }
 
   /**
@@ -282,7 +730,133 @@ public class DatabaseController
    *     callback to remove
    */
   public void removeOnInsertedNoteCallback( OnInsertedNote callback ) {
-    this.onInsertedNoteCallbacks.remove( callback );
+    this.onInsertedNoteCallbacks.removeListener( callback );
+  }
+
+  /**
+   * Add a callback to be invoked when a task has run so long that the
+   * database is stalled, and again when it recovers. The callback is invoked
+   * from a background thread, in the order of the changes, and must not
+   * block.
+   *
+   * @param callback
+   *     callback to invoke
+   */
+  public void addOnStalledChangedCallback( OnStalledChanged callback ) {
+    this.onStalledChangedCallbacks.add( callback );
+  }
+
+  /**
+   * Remove a previously added callback.
+   *
+   * @param callback
+   *     callback to remove
+   */
+  public void removeOnStalledChangedCallback( OnStalledChanged callback ) {
+    this.onStalledChangedCallbacks.remove( callback );
+  }
+
+  /**
+   * Returns whether a task has been running so long that the database is
+   * considered stalled. Queued queries will not run until it finishes.
+   *
+   * @return {@code true} if stalled
+   */
+  public boolean isStalled() {
+    return this.scheduler.isStalled();
+  }
+
+  /**
+   * Returns whether the database has been shut down. The tasks queued at
+   * that point are dropped without invoking their callbacks, so a thread
+   * waiting for a callback should poll this while it waits.
+   *
+   * @return {@code true} if shut down
+   */
+  public boolean isShutDown() {
+    return this.scheduler.isShutdown();
+  }
+
+  /**
+   * Returns the number of person detail queries served from the cache.
+   *
+   * @return number of cache hits
+   */
+  public int getPersonCacheHits() {
+    return this.personCache.hitCount();
+  }
+
+  /**
+   * Returns the number of person detail queries that missed the cache.
+   *
+   * @return number of cache misses
+   */
+  public int getPersonCacheMisses() {
+    return this.personCache.missCount();
+  }
+
+  /**
+   * Returns the number of note list queries served from the cache.
+   *
+   * @return number of cache hits
+   */
+  public int getNotesCacheHits() {
+    return this.notesCache.hitCount();
+  }
+
+  /**
+   * Returns the number of note list queries that missed the cache.
+   *
+   * @return number of cache misses
+   */
+  public int getNotesCacheMisses() {
+    return this.notesCache.missCount();
+  }
+
+  /**
+   * Returns the histogram of the time insertions take on the database
+   * thread.
+   *
+   * @return the histogram
+   */
+  public LatencyHistogram getInsertLatency() {
+    return this.insertLatency;
+  }
+
+  /**
+   * Returns the histogram of the time insertion callbacks take. Measured
+   * separately from {@link #getInsertLatency()} since the callbacks run on
+   * their own threads.
+   *
+   * @return the histogram
+   */
+  public LatencyHistogram getListenerLatency() {
+    return this.listenerLatency;
+  }
+
+  /**
+   * Registers a live query that is run now and re-run on the GUI thread
+   * whenever a write to the given tables is committed. If keys are given,
+   * only writes concerning those persons (the person record itself or notes
+   * attached to it) re-run the query. Bursts of writes are coalesced into at
+   * most one re-run per frame.
+   *
+   * @param tables
+   *     the tables the query reads
+   * @param keys
+   *     person record IDs the query is limited to, or {@code null} for all
+   * @param query
+   *     the query to run
+   *
+   * @return handle for closing the live query
+   */
+  public LiveQuery observe( Collection<LiveQuery.Table> tables,
+                            Collection<String> keys,
+                            LiveQuery.Query query ) {
+    LiveQuery liveQuery = new LiveQuery( this, tables, keys, query );
+    this.liveQueries.add( liveQuery );
+    liveQuery.start();
+    return liveQuery;
   }
 
   /**
@@ -296,7 +870,11 @@ public class DatabaseController
   public void setPersonRouted( String personID, ExecuteFinished callback ) {
     String query = DatabaseModel.SQL_UPDATE_PERSON_ROUTED.replace( "[PERSON_ID]",
         personID );
-    this.executor.submit( new ExecuteForCallbackTask( query, callback ) );
+    this.scheduler.submit( Priority.MAINTENANCE, new ExecuteForCallbackTask( query,
+        () -> {
+          personCache.remove( personID );
+          if ( callback != null ) callback.executeFinished();
+        } ) );
   }
 
   /**
@@ -310,13 +888,18 @@ public class DatabaseController
   public void setNoteRouted( String noteID, ExecuteFinished callback ) {
     String query = DatabaseModel.SQL_UPDATE_NOTE_ROUTED.replace( "[NOTE_ID]",
         noteID );
-    this.executor.submit( new ExecuteForCallbackTask( query, callback ) );
+    this.scheduler.submit( Priority.MAINTENANCE, new ExecuteForCallbackTask( query,
+        () -> {
+          // The person of the note is unknown here, drop all note lists
+          notesCache.evictAll();
+          if ( callback != null ) callback.executeFinished();
+        } ) );
   }
 
   /** Marks the person and all attached notes as routed. */
   public void setRouted( DataModel.SerializablePerson person ) {
     // TODO: Does this need a callback?
-    this.executor.submit( new SetRoutedTask( person ) );
+    this.scheduler.submit( Priority.MAINTENANCE, new SetRoutedTask( person ) );
   }
 
   /**
@@ -326,15 +909,16 @@ public class DatabaseController
    *     callback to invoke after the query finishes
    */
   public void getUnroutedPersons( final FindPersonsQueryFinished callback ) {
-    this.executor.submit(
+    this.scheduler.submit( Priority.MAINTENANCE,
         new QueryTask(
             // Query to execute
-            DatabaseModel.SQL_SELECT_UNROUTED_PERSONS,
+            Projection.PERSON_NAME.select(
+                DatabaseModel.SQL_SELECT_UNROUTED_PERSONS ),
             // Callback invoked after execution
             cursor -> {
               final List<DataModel.PersonName> results
-                  = personNameCursorToList( cursor );
-              cursor.close();
+                  = Projection.PERSON_NAME.readAll( cursor );
+              if ( cursor != null ) cursor.close();
               callback.queryFinished( results );
             }
         )
@@ -348,15 +932,16 @@ public class DatabaseController
    *     callback to invoke after the query finishes
    */
   public void getUnroutedNotes( final GetNotesQueryFinished callback ) {
-    this.executor.submit(
+    this.scheduler.submit( Priority.MAINTENANCE,
         new QueryTask(
             // Query to execute
-            DatabaseModel.SQL_SELECT_UNROUTED_NOTES,
+            Projection.NOTE_RECORD.select(
+                DatabaseModel.SQL_SELECT_UNROUTED_NOTES ),
             // Callback invoked after execution
             cursor -> {
               final List<DataModel.LocalNote> results
-                  = notesCursorToList( cursor );
-              cursor.close();
+                  = Projection.NOTE_RECORD.readAll( cursor );
+              if ( cursor != null ) cursor.close();
               callback.queryFinished( results );
             }
         )
@@ -373,7 +958,7 @@ public class DatabaseController
    */
   public void getAllUnrouted( final GetAllUnroutedQueryFinished callback ) {
     if ( callback != null ) {
-      this.executor.submit( new GetAllUnroutedTask( callback ) );
+      this.scheduler.submit( Priority.MAINTENANCE, new GetAllUnroutedTask( callback ) );
     }
   }
 
@@ -392,6 +977,19 @@ public class DatabaseController
     void queryFinished( List<DataModel.PersonName> names );
   }
 
+  /**
+   * Interface for callbacks invoked after {@link #findPersonsPage} finishes.
+   */
+  public interface FindPersonsPageQueryFinished {
+    /**
+     * The query has been executed.
+     *
+     * @param page
+     *     the requested page
+     */
+    void queryFinished( DataModel.PersonsPage page );
+  }
+
   /**
    * Interface for callbacks invoked after {@link #getPersonDetails} finishes.
    */
@@ -412,6 +1010,20 @@ public class DatabaseController
     void queryFinished( List<DataModel.LocalNote> notes );
   }
 
+  /**
+   * Interface for callbacks invoked after {@link #getNoteColumnsForPerson}
+   * finishes.
+   */
+  public interface GetNoteColumnsQueryFinished {
+    /**
+     * The query has been executed.
+     *
+     * @param notes
+     *     notes for the person
+     */
+    void queryFinished( NoteColumns notes );
+  }
+
   /**
    * Interface for callbacks invoked after {@link #getAllUnrouted}.
    */
@@ -464,6 +1076,93 @@ public class DatabaseController
     void onInserted( long id, DataModel.LocalNote note );
   }
 
+  /**
+   * Interface for callbacks registered with {@link
+   * #addOnStalledChangedCallback}.
+   */
+  public interface OnStalledChanged {
+    /**
+     * The database has stalled or recovered.
+     *
+     * @param stalled
+     *     whether the database is stalled
+     */
+    void stalledChanged( boolean stalled );
+  }
+
+  /**
+   * Interface for callbacks invoked after {@link #queryPerson} finishes.
+   */
+  public interface ProjectionQueryFinished<T> {
+    /**
+     * The query has been executed.
+     *
+     * @param result
+     *     the projected row or {@code null} if there was no match
+     */
+    void queryFinished( T result );
+  }
+
+  /**
+   * Interface for callbacks invoked after {@link #queryNotesForPerson}
+   * finishes.
+   */
+  public interface ProjectionListQueryFinished<T> {
+    /**
+     * The query has been executed.
+     *
+     * @param results
+     *     the projected rows
+     */
+    void queryFinished( List<T> results );
+  }
+
+  /**
+   * Interface for callbacks invoked after {@link #findExistingRecordIDs}
+   * finishes.
+   */
+  public interface RecordIDsQueryFinished {
+    /**
+     * The query has been executed.
+     *
+     * @param recordIDs
+     *     the record IDs that exist
+     */
+    void queryFinished( Set<String> recordIDs );
+  }
+
+  /**
+   * Interface for callbacks invoked after {@link #countNotesForPerson}
+   * finishes.
+   */
+  public interface CountQueryFinished {
+    /**
+     * The query has been executed.
+     *
+     * @param count
+     *     number of matching rows
+     */
+    void queryFinished( int count );
+  }
+
+  /**
+   * Interface for callbacks invoked after {@link #insertBatch} finishes.
+   */
+  public interface BatchInsertFinished {
+    /**
+     * The batch has been inserted, or the transaction failed and nothing was
+     * inserted.
+     *
+     * @param success
+     *     whether the transaction was committed
+     * @param persons
+     *     number of new persons inserted
+     * @param notes
+     *     number of new notes inserted
+     */
+    void batchInserted( boolean success, int persons, int notes );
+  }
+
   /** Interface for callbacks when query has finished. */
   public interface QueryFinished {
     /**
@@ -495,13 +1194,18 @@ public class DatabaseController
   @Override
   public void onCreate() {
     super.onCreate();
+    long start = StartupTrace.beginSection( "database-create" );
 
-    // Create the executor
-    this.executor = Executors.newSingleThreadExecutor();
+    // Create the scheduler
+    this.scheduler = new PriorityTaskScheduler( "database",
+        this::stalledChanged );
 
-    // Initialize the database
-    this.executor.submit( new InitDatabaseTask() );
+    // Initialize the database before anything else runs
+    this.scheduler.submitFirst( new InitDatabaseTask() );
 
+    this.registerGauges();
+
+    StartupTrace.endSection( "database-create", start );
     Log.d( TAG, "onCreate()" );
   }
 
@@ -509,17 +1213,44 @@ public class DatabaseController
   public void onDestroy() {
     super.onDestroy();
 
-    // Shut down the executor
-    this.executor.shutdownNow();
+    // Shut down the scheduler
+    this.unregisterGauges();
+    this.scheduler.shutdownNow();
+    this.onInsertedPersonCallbacks.shutdown();
+    this.onInsertedNoteCallbacks.shutdown();
+    Log.d( TAG, this.insertLatency.toString() );
+    Log.d( TAG, this.listenerLatency.toString() );
+    for ( Priority priority : Priority.values() ) {
+      Log.d( TAG, this.scheduler.getQueueLatency( priority ).toString() );
+    }
 
     // Close the database
-    if ( this.database != null ) {
-      this.database.close();
+    if ( this.store != null ) {
+      this.store.close();
     }
 
     Log.d( TAG, "onDestroy()" );
   }
 
+  @Override
+  public void onTrimMemory( int level ) {
+    super.onTrimMemory( level );
+
+    // Drop the caches entirely when the system is running out of memory,
+    // halve them when we're merely in the background.
+    if ( level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE
+         || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL ) {
+      this.personCache.evictAll();
+      this.notesCache.evictAll();
+    } else if ( level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW ) {
+      this.personCache.trimToSize( PERSON_CACHE_SIZE / 2 );
+      this.notesCache.trimToSize( NOTES_CACHE_SIZE / 2 );
+    }
+
+    Log.d( TAG, "onTrimMemory( " + level + " )" );
+  }
+
   @Override
   public void onRebind( Intent intent ) {
     super.onRebind( intent );
@@ -542,167 +1273,100 @@ public class DatabaseController
   // Private
   //=========================================================================//
 
-  /**
-   * Reads the data from the cursor starting from the beginning and creates a
-   * list from the entries.
-   * <p/>
-   * Assumes first column is a record id as a string and second the full
-   * name as
-   * a string.
-   * <p/>
-   * Has no side effects on the cursor after returning (position won't be
-   * changed and cursor won't be closed).
-   *
-   * @param cursor
-   *     the cursor to read from
-   *
-   * @return list of entries from the cursor
-   */
-  private List<DataModel.PersonName> personNameCursorToList( final Cursor cursor ) {
-    // Create the list
-    int listSize = ( cursor == null ) ? ( 0 ) : ( cursor.getCount() );
-    List<DataModel.PersonName> items = new ArrayList<>( listSize );
-
-    // Add the items from the cursor to the list
-    if ( cursor != null ) {
-      int start = cursor.getPosition();
-      cursor.moveToPosition( -1 );
-      while ( cursor.moveToNext() ) {
-        // Pull out the fields
-        String id = cursor.getString( 0 );
-        String fullName = cursor.getString( 1 );
-        String status = cursor.getString( 2 );
-        Long entryDate = cursor.getLong( 3 );
-
-        // Create a new item
-        DataModel.PersonName item = new DataModel.PersonName( id, fullName, status, entryDate );
-        items.add( item );
-      }
-      cursor.moveToPosition( start );
-    }
-
-    return items;
+  /** Removes a closed live query. */
+  void removeLiveQuery( LiveQuery liveQuery ) {
+    this.liveQueries.remove( liveQuery );
   }
 
   /**
-   * Reads the data from the cursor starting from the beginning and creates a
-   * list from the entries.
-   * <p/>
-   * Has no side effects on the cursor after returning (position won't be
-   * changed and cursor won't be closed).
+   * Invalidates the live queries that depend on the given write. Called from
+   * the database thread after the write has been committed.
    *
-   * @param cursor
-   *     the cursor to read from
-   *
-   * @return list of entries from the cursor
-   */
-  private List<DataModel.LocalNote> notesCursorToList( final Cursor cursor ) {
-    // Create the list
-    int listSize = ( cursor == null ) ? ( 0 ) : ( cursor.getCount() );
-    List<DataModel.LocalNote> items = new ArrayList<>( listSize );
-
-    // Add the items from the cursor to the list
-    if ( cursor != null ) {
-      int start = cursor.getPosition();
-      cursor.moveToPosition( -1 );
-      while ( cursor.moveToNext() ) {
-        // Pull out the fields
-        String recordID = cursor.getString( 0 );
-        String personID = cursor.getString( 1 );
-        String linkedPersonID = cursor.getString( 2 );
-        Long entryDate = cursor.getLong( 3 );
-        String authorName = cursor.getString( 4 );
-        String authorEmail = cursor.getString( 5 );
-        String authorPhone = cursor.getString( 6 );
-        Long sourceDate = cursor.getLong( 7 );
-        String contact = cursor.getString( 8 );
-        String status = cursor.getString( 9 );
-        String personEmail = cursor.getString( 10 );
-        String personPhone = cursor.getString( 11 );
-        String lastLocation = cursor.getString( 12 );
-        String text = cursor.getString( 13 );
-        String photoUrl = cursor.getString( 14 );
-        String photoPath = cursor.getString( 15 );
-        Boolean routed = ( cursor.getLong( 16 ) == 1 );
-
-        boolean madeContact = contact.equalsIgnoreCase( "true" );
-
-        // Create a new item
-        DataModel.Note note = new DataModel.Note( recordID, personID, linkedPersonID,
-            entryDate, authorName, authorEmail,
-            authorPhone, sourceDate, madeContact, status,
-            personEmail, personPhone, lastLocation,
-            text, photoUrl );
-        DataModel.LocalNote item = new DataModel.LocalNote( note, photoPath, routed );
-        items.add( item );
-      }
-      cursor.moveToPosition( start );
+   * @param table
+   *     table that was written to
+   * @param key
+   *     record ID of the person the write concerns
+   */
+  private void notifyLiveQueries( LiveQuery.Table table, String key ) {
+    for ( LiveQuery liveQuery : this.liveQueries ) {
+      liveQuery.onChanged( table, key );
     }
+  }
 
-    return items;
+  /** Invoked by the watchdog of the scheduler. */
+  private void stalledChanged( boolean stalled ) {
+    for ( OnStalledChanged callback : this.onStalledChangedCallbacks ) {
+      callback.stalledChanged( stalled );
+    }
   }
 
   /**
-   * Reads a person record from the cursor. Th cursor should contain one row
-   * with all the columns of the PERSON table. Leaves no side effects on the
-   * cursor after returning.
-   *
-   * @param cursor
-   *     the cursor to read from
+   * Tells the watchdog which SQL the running task executes. Called from the
+   * database thread before each query.
    *
-   * @return person record with the cursor data or {@code null}
-   */
-  private DataModel.LocalPerson personRecordFromCursor( final Cursor cursor ) {
-    DataModel.LocalPerson record = null;
-
-    if ( cursor != null ) {
-      int start = cursor.getPosition();
-      cursor.moveToPosition( -1 );
-      if ( cursor.moveToNext() ) {
-        DataModel.Person person = new DataModel.Person(
-            cursor.getString( 0 ),  // record ID
-            cursor.getLong( 1 ),  // entry date
-            cursor.getLong( 2 ),  // expiry date
-            cursor.getString( 3 ),  // author name
-            cursor.getString( 4 ),  // author email
-            cursor.getString( 5 ),  // author phone
-            cursor.getString( 6 ),  // source name
-            cursor.getLong( 7 ),  // source date
-            cursor.getString( 8 ),  // source URL
-            cursor.getString( 9 ),  // full name
-            cursor.getString( 10 ), // given name
-            cursor.getString( 11 ), // family name
-            cursor.getString( 12 ), // alternate names
-            cursor.getString( 13 ), // description
-            cursor.getString( 14 ), // sex
-            cursor.getString( 15 ), // date of birth
-            cursor.getLong( 16 ), // age
-            cursor.getString( 17 ), // home street
-            cursor.getString( 18 ), // home neighborhood
-            cursor.getString( 19 ), // home city
-            cursor.getString( 20 ), // home home state
-            cursor.getString( 21 ), // home zip
-            cursor.getString( 22 ), // home country
-            cursor.getString( 23 ), // photo url
-            cursor.getString( 24 )  // profile urls
-        );
-
-        record = new DataModel.LocalPerson(
-            person,
-            cursor.getString( 25 ),
-            // photo path
-            cursor.getLong( 26 ) == 1 // routed
-        );
+   * @param sql
+   *     the SQL, with parameters rather than values where possible
+   */
+  private void setCurrentSql( String sql ) {
+    this.scheduler.setCurrentSql( sql );
+  }
 
-      }
-      cursor.moveToPosition( start );
+  /**
+   * Registers the queue depths, the cache hits and the watchdog state in the
+   * metrics.
+   */
+  private void registerGauges() {
+    MetricsRegistry metrics = MetricsRegistry.get();
+    for ( final Priority priority : Priority.values() ) {
+      metrics.gauge( queueDepthGauge( priority ),
+          () -> this.scheduler.getQueueSize( priority ) );
     }
+    metrics.gauge( "db.stalled",
+        () -> ( this.scheduler.isStalled() ) ? ( 1 ) : ( 0 ) );
+    metrics.gauge( "db.watchdog.running_ms", this.scheduler::getRunningMillis );
+    this.registerCacheGauges( "db.cache.person", this.personCache );
+    this.registerCacheGauges( "db.cache.notes", this.notesCache );
+  }
 
-    return record;
+  private void registerCacheGauges( String name, final LruCache<?, ?> cache ) {
+    MetricsRegistry metrics = MetricsRegistry.get();
+    metrics.gauge( name + ".hits", cache::hitCount );
+    metrics.gauge( name + ".misses", cache::missCount );
+    metrics.gauge( name + ".hit_percent", () -> {
+      long hits = cache.hitCount();
+      long lookups = hits + cache.missCount();
+      return ( lookups == 0 ) ? ( 0 ) : ( hits * 100 / lookups );
+    } );
   }
 
-  //=========================================================================//
+  private void unregisterGauges() {
+    MetricsRegistry metrics = MetricsRegistry.get();
+    for ( Priority priority : Priority.values() ) {
+      metrics.remove( queueDepthGauge( priority ) );
+    }
+    metrics.remove( "db.stalled" );
+    metrics.remove( "db.watchdog.running_ms" );
+    for ( String cache : new String[]{ "db.cache.person", "db.cache.notes" } ) {
+      metrics.remove( cache + ".hits" );
+      metrics.remove( cache + ".misses" );
+      metrics.remove( cache + ".hit_percent" );
+    }
+  }
 
+  private static String queueDepthGauge( Priority priority ) {
+    return "db.queue." + priority.name().toLowerCase() + ".depth";
+  }
+
+  /**
+   * Throws if the projection is not of the given table.
+   */
+  private static void requireTable( final Projection<?> projection,
+                                    final LiveQuery.Table table ) {
+    if ( projection.getTable() != table ) {
+      throw new IllegalArgumentException( "Projection of table "
+          + projection.getTable() + " used in a query of " + table + "." );
+    }
+  }
 
   //=========================================================================//
   // Tasks
@@ -714,10 +1378,16 @@ public class DatabaseController
   private class QueryTask
       implements Runnable {
     private final String query;
+    private final String[] args;
     private final QueryFinished callback;
 
     public QueryTask( String query, QueryFinished callback ) {
+      this( query, null, callback );
+    }
+
+    public QueryTask( String query, String[] args, QueryFinished callback ) {
       this.query = query;
+      this.args = args;
       this.callback = callback;
     }
 
@@ -727,7 +1397,8 @@ public class DatabaseController
       SQLiteDatabase db = DatabaseController.this.database;
       Cursor results = null;
       if ( db != null ) {
-        results = db.rawQuery( this.query, null );
+        setCurrentSql( this.query );
+        results = db.rawQuery( this.query, this.args );
       } else {
         Log.e( TAG, "No database found. Cannot run query." );
       }
@@ -739,6 +1410,206 @@ public class DatabaseController
     }
   }
 
+  /**
+   * Serves a query result from a cache, or runs the query on a miss and
+   * caches the result. {@code null} results are not cached.
+   */
+  private class CachedQueryTask<T>
+      implements Runnable {
+    private final LruCache<String, T> cache;
+    private final String key;
+    private final String query;
+    private final String[] args;
+    private final CursorReader<T> reader;
+    private final ResultCallback<T> callback;
+
+    public CachedQueryTask( LruCache<String, T> cache, String key,
+                            String query, String[] args,
+                            CursorReader<T> reader,
+                            ResultCallback<T> callback ) {
+      this.cache = cache;
+      this.key = key;
+      this.query = query;
+      this.args = args;
+      this.reader = reader;
+      this.callback = callback;
+    }
+
+    @Override
+    public void run() {
+      T result = this.cache.get( this.key );
+      if ( result == null ) {
+        // Miss, run the query
+        SQLiteDatabase db = DatabaseController.this.database;
+        Cursor cursor = null;
+        if ( db != null ) {
+          setCurrentSql( this.query );
+          cursor = db.rawQuery( this.query, this.args );
+        } else {
+          Log.e( TAG, "No database found. Cannot run query." );
+        }
+
+        result = this.reader.read( cursor );
+        if ( cursor != null ) cursor.close();
+        if ( result != null ) {
+          this.cache.put( this.key, result );
+        }
+      }
+
+      if ( this.callback != null ) {
+        this.callback.resultReady( result );
+      }
+    }
+  }
+
+  /**
+   * Reads the rows of a query through a projection. Passes {@code null} to
+   * the callback if there is no database or the query fails, so that a scan
+   * can tell a failure from the end of the table.
+   */
+  private class ScanTask<T>
+      implements Runnable {
+    private final String query;
+    private final String[] args;
+    private final Projection<T> projection;
+    private final ProjectionListQueryFinished<T> callback;
+
+    public ScanTask( String query, String[] args, Projection<T> projection,
+                     ProjectionListQueryFinished<T> callback ) {
+      this.query = query;
+      this.args = args;
+      this.projection = projection;
+      this.callback = callback;
+    }
+
+    @Override
+    public void run() {
+      SQLiteDatabase db = DatabaseController.this.database;
+      List<T> results = null;
+      if ( db != null ) {
+        Cursor cursor = null;
+        try {
+          setCurrentSql( this.query );
+          cursor = db.rawQuery( this.query, this.args );
+          results = this.projection.readAll( cursor );
+        } catch ( RuntimeException e ) {
+          Log.e( TAG, "Scan failed.", e );
+        } finally {
+          if ( cursor != null ) cursor.close();
+        }
+      } else {
+        Log.e( TAG, "No database found. Cannot run query." );
+      }
+
+      this.callback.queryFinished( results );
+    }
+  }
+
+  /**
+   * Runs an operation of the store and passes the result to the callback, or
+   * the fallback result if there is no database.
+   */
+  private class StoreTask<T>
+      implements Runnable {
+    private final StoreOperation<T> operation;
+    private final T fallback;
+    private final ResultCallback<T> callback;
+
+    public StoreTask( StoreOperation<T> operation, T fallback,
+                      ResultCallback<T> callback ) {
+      this.operation = operation;
+      this.fallback = fallback;
+      this.callback = callback;
+    }
+
+    @Override
+    public void run() {
+      T result = this.fallback;
+      SQLitePeopleStore store = DatabaseController.this.store;
+      if ( store != null ) {
+        result = this.operation.run( store );
+      } else {
+        Log.e( TAG, "No database found. Cannot run query." );
+      }
+
+      if ( this.callback != null ) {
+        this.callback.resultReady( result );
+      }
+    }
+  }
+
+  private interface StoreOperation<T> {
+    T run( PeopleStore store );
+  }
+
+  private interface CursorReader<T> {
+    T read( Cursor cursor );
+  }
+
+  private interface ResultCallback<T> {
+    void resultReady( T result );
+  }
+
+  /**
+   * Runs a search started by {@link #searchPersons}. Searches that have been
+   * superseded before they start are dropped, and running ones are cancelled
+   * through a {@link CancellationSignal}.
+   */
+  private class SearchTask
+      implements Runnable {
+    private final long generation;
+    private final String text;
+    private final int limit;
+    private final FindPersonsQueryFinished callback;
+
+    public SearchTask( long generation, String text, int limit,
+                       FindPersonsQueryFinished callback ) {
+      this.generation = generation;
+      this.text = text;
+      this.limit = limit;
+      this.callback = callback;
+    }
+
+    @Override
+    public void run() {
+      // Drop if a newer search was started while this one was queued
+      AtomicLong latest = DatabaseController.this.searchGeneration;
+      if ( this.generation != latest.get() ) {
+        return;
+      }
+
+      SQLitePeopleStore store = DatabaseController.this.store;
+      if ( store == null ) {
+        Log.e( TAG, "No database found. Cannot run search." );
+        return;
+      }
+
+      // Publish the signal so that a newer search can interrupt this one,
+      // then check again in case it was started in between.
+      CancellationSignal signal = new CancellationSignal();
+      DatabaseController.this.searchSignal = signal;
+      if ( this.generation != latest.get() ) {
+        signal.cancel();
+      }
+
+      // Run the search
+      List<DataModel.PersonName> results;
+      try {
+        results = store.searchPersons( this.text, this.limit, signal );
+      } catch ( OperationCanceledException e ) {
+        Log.d( TAG, "Search cancelled." );
+        return;
+      } finally {
+        DatabaseController.this.searchSignal = null;
+      }
+
+      // Only deliver results that are still current
+      if ( this.generation == latest.get() && this.callback != null ) {
+        this.callback.queryFinished( results );
+      }
+    }
+  }
+
   /** Attempts to insert a person entry into the database. */
   private class PersonInsertTask
       implements Runnable {
@@ -753,72 +1624,32 @@ public class DatabaseController
 
     @Override
     public void run() {
-      // Content values to insert
-      ContentValues values = new ContentValues( 27 );
-      values.put( DatabaseModel.PERSON_COL_RECORD_ID,
-          this.person.person.metadata.recordID );
-      values.put( DatabaseModel.PERSON_COL_ENTRY_DATE,
-          this.person.person.metadata.entryDate );
-      values.put( DatabaseModel.PERSON_COL_EXPIRY_DATE,
-          this.person.person.metadata.expiryDate );
-      values.put( DatabaseModel.PERSON_COL_AUTHOR_NAME,
-          this.person.person.metadata.authorName );
-      values.put( DatabaseModel.PERSON_COL_AUTHOR_EMAIL,
-          this.person.person.metadata.authorEmail );
-      values.put( DatabaseModel.PERSON_COL_AUTHOR_PHONE,
-          this.person.person.metadata.authorPhone );
-      values.put( DatabaseModel.PERSON_COL_SOURCE_NAME,
-          this.person.person.metadata.sourceName );
-      values.put( DatabaseModel.PERSON_COL_SOURCE_DATE,
-          this.person.person.metadata.sourceDate );
-      values.put( DatabaseModel.PERSON_COL_SOURCE_URL,
-          this.person.person.metadata.sourceUrl );
-      values.put( DatabaseModel.PERSON_COL_FULL_NAME,
-          this.person.person.identity.name.fullName );
-      values.put( DatabaseModel.PERSON_COL_GIVEN_NAME,
-          this.person.person.identity.name.givenName );
-      values.put( DatabaseModel.PERSON_COL_FAMILY_NAME,
-          this.person.person.identity.name.familyName );
-      values.put( DatabaseModel.PERSON_COL_ALT_NAMES,
-          this.person.person.identity.name.alternateNames );
-      values.put( DatabaseModel.PERSON_COL_DESCRIPTION,
-          this.person.person.identity.description );
-      values.put( DatabaseModel.PERSON_COL_SEX, this.person.person.identity.sex );
-      values.put( DatabaseModel.PERSON_COL_DOB, this.person.person.identity.dateOfBirth );
-      values.put( DatabaseModel.PERSON_COL_AGE, this.person.person.identity.age );
-      values.put( DatabaseModel.PERSON_COL_HOME_STREET,
-          this.person.person.identity.home.street );
-      values.put( DatabaseModel.PERSON_COL_HOME_NGHBRHD,
-          this.person.person.identity.home.neighborhood );
-      values.put( DatabaseModel.PERSON_COL_HOME_CITY,
-          this.person.person.identity.home.city );
-      values.put( DatabaseModel.PERSON_COL_HOME_STATE,
-          this.person.person.identity.home.state );
-      values.put( DatabaseModel.PERSON_COL_HOME_ZIP,
-          this.person.person.identity.home.zip );
-      values.put( DatabaseModel.PERSON_COL_HOME_COUNTRY,
-          this.person.person.identity.home.country );
-      values.put( DatabaseModel.PERSON_COL_PHOTO_URL,
-          this.person.person.identity.photoUrl );
-      values.put( DatabaseModel.PERSON_COL_PHOTO_PATH, this.person.photoPath );
-      values.put( DatabaseModel.PERSON_COL_PROFILE_URLS,
-          this.person.person.identity.profileUrls );
-      values.put( DatabaseModel.PERSON_COL_ROUTED,
-          ( this.person.routed ) ? ( 1 ) : ( 0 ) );
+      long start = System.nanoTime();
 
       // Try to insert
-      long result;
-      result = database.insert( DatabaseModel.PERSON_TABLE_NAME, null, values );
+      long result = -1;
+      SQLitePeopleStore store = DatabaseController.this.store;
+      if ( store != null ) {
+        result = store.insertPerson( this.person );
+      } else {
+        Log.e( TAG, "No database found. Cannot insert person." );
+      }
+      if ( result != -1 ) {
+        // Write through, the inserted record is what a query would return
+        personCache.put( this.person.person.metadata.recordID, this.person );
+        notifyLiveQueries( LiveQuery.Table.PERSON,
+            this.person.person.metadata.recordID );
+      }
 
       // Invoke callback
       if ( this.onInserted != null ) {
         this.onInserted.onInserted( result, this.person );
       }
 
-      // Invoke other callbacks
-      for ( OnInsertedPerson cb : onInsertedPersonCallbacks ) {
-        cb.onInserted( result, this.person );
-      }
+      // Hand over to the other callbacks
+      onInsertedPersonCallbacks.dispatch(
+          this.person.person.metadata.recordID, result, this.person );
+      insertLatency.recordSince( start );
     }
   }
 
@@ -836,51 +1667,141 @@ public class DatabaseController
 
     @Override
     public void run() {
-      // Content values to insert
-      ContentValues values = new ContentValues( 17 );
-      values.put( DatabaseModel.NOTE_COL_RECORD_ID, this.note.note.metadata.recordID );
-      values.put( DatabaseModel.NOTE_COL_PERSON_ID, this.note.note.metadata.personID );
-      values.put( DatabaseModel.NOTE_COL_LNK_PERSON_ID,
-          this.note.note.metadata.linkedPersonID );
-      values.put( DatabaseModel.NOTE_COL_ENTRY_DATE, this.note.note.metadata.entryDate );
-      values.put( DatabaseModel.NOTE_COL_AUTHOR_NAME, this.note.note.metadata.authorName );
-      values.put( DatabaseModel.NOTE_COL_AUTHOR_EMAIL,
-          this.note.note.metadata.authorEmail );
-      values.put( DatabaseModel.NOTE_COL_AUTHOR_PHONE,
-          this.note.note.metadata.authorPhone );
-      values.put( DatabaseModel.NOTE_COL_SOURCE_DATE, this.note.note.metadata.sourceDate );
-      values.put( DatabaseModel.NOTE_COL_CONTACT,
-          ( this.note.note.status.authorMadeContact != null &&
-            this.note.note.status.authorMadeContact ) ?
-              ( "true" ) : ( "false" )
-      );
-      values.put( DatabaseModel.NOTE_COL_STATUS, this.note.note.status.status );
-      values.put( DatabaseModel.NOTE_COL_PERSON_EMAIL,
-          this.note.note.status.emailOfFoundPerson );
-      values.put( DatabaseModel.NOTE_COL_PERSON_PHONE,
-          this.note.note.status.phoneOfFoundPerson );
-      values.put( DatabaseModel.NOTE_COL_LAST_LOCATION,
-          this.note.note.status.lastKnownLocation );
-      values.put( DatabaseModel.NOTE_COL_TEXT, this.note.note.status.text );
-      values.put( DatabaseModel.NOTE_COL_PHOTO_URL, this.note.note.status.photoUrl );
-      values.put( DatabaseModel.NOTE_COL_PHOTO_PATH, this.note.photoPath );
-      values.put( DatabaseModel.NOTE_COL_ROUTED, ( this.note.routed ) ?
-          ( 1 ) : ( 0 ) );
-
+      long start = System.nanoTime();
 
       // Try to insert
-      long result;
-      result = database.insert( DatabaseModel.NOTE_TABLE_NAME, null, values );
+      long result = -1;
+      SQLitePeopleStore store = DatabaseController.this.store;
+      if ( store != null ) {
+        result = store.insertNote( this.note );
+      } else {
+        Log.e( TAG, "No database found. Cannot insert note." );
+      }
+      if ( result != -1 ) {
+        notesCache.remove( this.note.note.metadata.personID );
+        notifyLiveQueries( LiveQuery.Table.NOTE,
+            this.note.note.metadata.personID );
+      }
 
       // Invoke callback
       if ( this.onInserted != null ) {
         this.onInserted.onInserted( result, this.note );
       }
 
-      // Invoke other callbacks
-      for ( OnInsertedNote cb : onInsertedNoteCallbacks ) {
-        cb.onInserted( result, this.note );
+      // Hand over to the other callbacks
+      onInsertedNoteCallbacks.dispatch(
+          this.note.note.metadata.recordID, result, this.note );
+      insertLatency.recordSince( start );
+    }
+  }
+
+  /**
+   * Inserts persons and notes in one transaction through compiled
+   * statements. The caches, live queries and callbacks are only updated once
+   * the transaction has been committed.
+   */
+  private class BatchInsertTask
+      implements Runnable {
+    private final List<DataModel.LocalPerson> persons;
+    private final List<DataModel.LocalNote> notes;
+    private final BatchInsertFinished callback;
+
+    public BatchInsertTask( List<DataModel.LocalPerson> persons,
+                            List<DataModel.LocalNote> notes,
+                            BatchInsertFinished callback ) {
+      this.persons = persons;
+      this.notes = notes;
+      this.callback = callback;
+    }
+
+    @Override
+    public void run() {
+      long start = System.nanoTime();
+
+      SQLitePeopleStore store = DatabaseController.this.store;
+      if ( store == null ) {
+        Log.e( TAG, "No database found. Cannot insert batch." );
+        if ( this.callback != null ) {
+          this.callback.batchInserted( false, 0, 0 );
+        }
+        return;
+      }
+
+      // Row IDs of the inserts, -1 for records that already existed
+      long[] personIDs = null;
+      long[] noteIDs = null;
+      boolean success = false;
+      try {
+        PeopleStore.BatchResult result
+            = store.insertBatch( this.persons, this.notes );
+        personIDs = result.personRowIDs;
+        noteIDs = result.noteRowIDs;
+        success = true;
+      } catch ( Exception e ) {
+        Log.e( TAG, "Batch insert failed.", e );
       }
+
+      int insertedPersons = 0;
+      int insertedNotes = 0;
+      if ( success ) {
+        for ( int i = 0; i < personIDs.length; i++ ) {
+          DataModel.LocalPerson person = this.persons.get( i );
+          String recordID = person.person.metadata.recordID;
+          if ( personIDs[ i ] != -1 ) {
+            insertedPersons++;
+            personCache.remove( recordID );
+            notifyLiveQueries( LiveQuery.Table.PERSON, recordID );
+          }
+          onInsertedPersonCallbacks.dispatch( recordID, personIDs[ i ],
+              person );
+        }
+        for ( int i = 0; i < noteIDs.length; i++ ) {
+          DataModel.LocalNote note = this.notes.get( i );
+          if ( noteIDs[ i ] != -1 ) {
+            insertedNotes++;
+            notesCache.remove( note.note.metadata.personID );
+            notifyLiveQueries( LiveQuery.Table.NOTE,
+                note.note.metadata.personID );
+          }
+          onInsertedNoteCallbacks.dispatch( note.note.metadata.recordID,
+              noteIDs[ i ], note );
+        }
+      }
+
+      if ( this.callback != null ) {
+        this.callback.batchInserted( success, insertedPersons, insertedNotes );
+      }
+      insertLatency.recordSince( start );
+    }
+  }
+
+  /** Looks up which record IDs exist. */
+  private class ExistingIDsTask
+      implements Runnable {
+    private final LiveQuery.Table table;
+    private final List<String> recordIDs;
+    private final RecordIDsQueryFinished callback;
+
+    public ExistingIDsTask( LiveQuery.Table table, List<String> recordIDs,
+                            RecordIDsQueryFinished callback ) {
+      this.table = table;
+      this.recordIDs = recordIDs;
+      this.callback = callback;
+    }
+
+    @Override
+    public void run() {
+      SQLitePeopleStore store = DatabaseController.this.store;
+      if ( store == null ) {
+        Log.e( TAG, "No database found. Cannot run query." );
+        this.callback.queryFinished( new HashSet<String>() );
+        return;
+      }
+
+      Set<String> existing = ( this.table == LiveQuery.Table.NOTE )
+          ? ( store.findExistingNoteIDs( this.recordIDs ) )
+          : ( store.findExistingPersonIDs( this.recordIDs ) );
+      this.callback.queryFinished( existing );
     }
   }
 
@@ -898,6 +1819,7 @@ public class DatabaseController
     @Override
     public void run() {
       // Execute query
+      setCurrentSql( this.query );
       database.execSQL( this.query );
 
       // Callback
@@ -958,31 +1880,35 @@ public class DatabaseController
         Map<String, DataModel.SerializablePerson> resultMap
             = new LinkedHashMap<>();
 
-        // First get all unrouted Person records
-        Cursor cursor = db.rawQuery( DatabaseModel.SQL_SELECT_UNROUTED_PERSONS, null );
-        List<DataModel.PersonName> personNames = personNameCursorToList( cursor );
+        // First get the IDs of all unrouted Person records
+        String query = Projection.PERSON_ID.select(
+            DatabaseModel.SQL_SELECT_UNROUTED_PERSONS );
+        setCurrentSql( query );
+        Cursor cursor = db.rawQuery( query, null );
+        List<String> personIDs = Projection.PERSON_ID.readAll( cursor );
         cursor.close();
 
         // Create records for all unrouted persons
-        for ( DataModel.PersonName person : personNames ) {
-          if ( !resultMap.containsKey( person.recordID ) ) {
+        for ( String personID : personIDs ) {
+          if ( !resultMap.containsKey( personID ) ) {
             // Get the details for the unrouted person
-            this.addPersonDetails( person.recordID, resultMap,
-                picPaths, db );
+            this.addPersonDetails( personID, resultMap, picPaths, db );
           }
         }
 
-        // Get all unrouted notes
-        cursor = db.rawQuery( DatabaseModel.SQL_SELECT_UNROUTED_NOTES, null );
-        List<DataModel.LocalNote> notes = notesCursorToList( cursor );
+        // Get the persons of all unrouted notes
+        query = Projection.NOTE_PERSON_ID.select(
+            DatabaseModel.SQL_SELECT_UNROUTED_NOTES );
+        setCurrentSql( query );
+        cursor = db.rawQuery( query, null );
+        personIDs = Projection.NOTE_PERSON_ID.readAll( cursor );
         cursor.close();
 
         // Add persons of all unrouted notes to the results
-        for ( DataModel.LocalNote note : notes ) {
-          if ( !resultMap.containsKey( note.note.metadata.personID ) ) {
+        for ( String personID : personIDs ) {
+          if ( !resultMap.containsKey( personID ) ) {
             // Get the details for the unrouted person
-            this.addPersonDetails( note.note.metadata.personID,
-                resultMap, picPaths, db );
+            this.addPersonDetails( personID, resultMap, picPaths, db );
           }
         }
 
@@ -1017,12 +1943,16 @@ public class DatabaseController
                                    Map<String, DataModel.SerializablePerson> resultMap,
                                    Map<String, String> picPaths,
                                    SQLiteDatabase db ) {
-      Cursor cursor = db.rawQuery(
-          DatabaseModel.SQL_SELECT_PERSON_DETAILS
-              .replace( "[PERSON_ID]", recordID ),
-          null );
-      DataModel.LocalPerson record = personRecordFromCursor( cursor );
+      String query = Projection.PERSON_RECORD.select(
+          DatabaseModel.SQL_SELECT_PERSON_DETAILS );
+      setCurrentSql( query );
+      Cursor cursor = db.rawQuery( query, new String[]{ recordID } );
+      DataModel.LocalPerson record = Projection.PERSON_RECORD.readFirst( cursor );
       cursor.close();
+      if ( record == null ) {
+        Log.d( TAG, "No person record for '" + recordID + "'." );
+        return;
+      }
 
       // Add the result record
       DataModel.SerializablePerson resultRecord =
@@ -1038,11 +1968,11 @@ public class DatabaseController
 
     private void addAllNotes( String personID, List<DataModel.Note> notes,
                               SQLiteDatabase db ) {
-      Cursor cursor = db.rawQuery(
-          DatabaseModel.SQL_SELECT_NOTES_FOR_PERSON.replace( "[PERSON_ID]", personID ),
-          null
-      );
-      List<DataModel.LocalNote> foundNotes = notesCursorToList( cursor );
+      String query = Projection.NOTE_RECORD.select(
+          DatabaseModel.SQL_SELECT_NOTES_FOR_PERSON );
+      setCurrentSql( query );
+      Cursor cursor = db.rawQuery( query, new String[]{ personID } );
+      List<DataModel.LocalNote> foundNotes = Projection.NOTE_RECORD.readAll( cursor );
       cursor.close();
 
       for ( DataModel.LocalNote note : foundNotes ) {
@@ -1089,16 +2019,22 @@ public class DatabaseController
         db.setTransactionSuccessful();
       } finally {
         db.endTransaction();
+
+        // Drop the cached routed flags
+        personCache.remove( person.person.metadata.recordID );
+        notesCache.remove( person.person.metadata.recordID );
       }
     }
 
     private void setPersonRouted( String personID, SQLiteDatabase db ) {
+      setCurrentSql( DatabaseModel.SQL_UPDATE_PERSON_ROUTED );
       String query = DatabaseModel.SQL_UPDATE_PERSON_ROUTED.replace( "[PERSON_ID]",
           personID );
       db.execSQL( query );
     }
 
     private void setNoteRouted( String noteID, SQLiteDatabase db ) {
+      setCurrentSql( DatabaseModel.SQL_UPDATE_NOTE_ROUTED );
       String query = DatabaseModel.SQL_UPDATE_NOTE_ROUTED.replace( "[NOTE_ID]",
           noteID );
       db.execSQL( query );
@@ -1110,18 +2046,24 @@ public class DatabaseController
       implements Runnable {
     @Override
     public void run() {
-      // Get an SQLite database instance using a helper,
-      // which takes care of creating and upgrading the database.
-      // XXX: Can the helper be abandoned without closing since
-      // database.close() is called by the service?
-      DbHelper helper = new DbHelper( DatabaseController.this );
-      SQLiteDatabase database = helper.getWritableDatabase();
-
-      // Store the reference
-      if ( database != null ) {
-        DatabaseController.this.database = database;
-      } else {
-        Log.e( TAG, "Failed to get database instance." );
+      long start = StartupTrace.beginSection( "open-database" );
+      try {
+        // Get an SQLite database instance using a helper,
+        // which takes care of creating and upgrading the database.
+        // XXX: Can the helper be abandoned without closing since
+        // database.close() is called by the service?
+        DbHelper helper = new DbHelper( DatabaseController.this );
+        SQLiteDatabase database = helper.getWritableDatabase();
+
+        // Store the reference
+        if ( database != null ) {
+          DatabaseController.this.database = database;
+          DatabaseController.this.store = new SQLitePeopleStore( database );
+        } else {
+          Log.e( TAG, "Failed to get database instance." );
+        }
+      } finally {
+        StartupTrace.endSection( "open-database", start );
       }
     }
   }
@@ -1147,16 +2089,30 @@ public class DatabaseController
       // Generate the tables
       db.execSQL( DatabaseModel.SQL_CREATE_PERSON_TABLE );
       db.execSQL( DatabaseModel.SQL_CREATE_NOTE_TABLE );
+      this.createIndices( db );
     }
 
     @Override
     public void onUpgrade( SQLiteDatabase db, int oldVersion,
                            int newVersion ) {
-      // Just drop the old tables for now
-      db.execSQL( "DROP TABLE IF EXISTS " + DatabaseModel.PERSON_TABLE_NAME );
-      db.execSQL( "DROP TABLE IF EXISTS " + DatabaseModel.NOTE_TABLE_NAME );
+      if ( oldVersion < 2 ) {
+        // Just drop the old tables for pre-release schemas
+        db.execSQL( "DROP TABLE IF EXISTS " + DatabaseModel.PERSON_TABLE_NAME );
+        db.execSQL( "DROP TABLE IF EXISTS " + DatabaseModel.NOTE_TABLE_NAME );
+
+        onCreate( db );
+        return;
+      }
+
+      // Version 3 added indices, version 4 replaced the name index with one
+      // that covers the full name
+      db.execSQL( DatabaseModel.SQL_DROP_V3_PERSON_NAME_INDEX );
+      this.createIndices( db );
+    }
 
-      onCreate( db );
+    private void createIndices( SQLiteDatabase db ) {
+      db.execSQL( DatabaseModel.SQL_CREATE_PERSON_NAME_INDEX );
+      db.execSQL( DatabaseModel.SQL_CREATE_NOTE_PERSON_INDEX );
     }
   }
   //=========================================================================//
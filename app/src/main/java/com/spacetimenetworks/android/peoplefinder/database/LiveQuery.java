@@ -0,0 +1,161 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.database;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p> A query that is re-run whenever the data it depends on changes. Created
+ * with {@link DatabaseController#observe}, which takes the tables the query
+ * reads and optionally the person record IDs it is limited to. A committed
+ * write that touches one of the tables and, if keys were given, one of the
+ * keys invalidates the query. </p> <p/> <p> Invalidations are coalesced: the
+ * query is re-run on the GUI thread at most once per frame no matter how many
+ * writes arrive in between. The query typically submits one of the
+ * asynchronous {@link DatabaseController} queries and updates the GUI from its
+ * callback. </p>
+ *
+ * @author teemuk
+ */
+public final class LiveQuery
+    implements Runnable {
+
+  //==========================================================================//
+  // Constants
+  //==========================================================================//
+  /** Re-run at most once in this many ms, i.e., once per 60 Hz frame. */
+  private static final long FRAME_MS = 16;
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Instance vars
+  //==========================================================================//
+  private final DatabaseController controller;
+  private final Set<Table> tables;
+  /** Person record IDs, or {@code null} to depend on the whole tables. */
+  private final Set<String> keys;
+  private final Query query;
+  private final Handler handler = new Handler( Looper.getMainLooper() );
+
+  /** Whether a re-run has been scheduled but hasn't run yet. */
+  private final AtomicBoolean scheduled = new AtomicBoolean( false );
+  private volatile boolean closed = false;
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // API
+  //==========================================================================//
+  LiveQuery( DatabaseController controller, Collection<Table> tables,
+             Collection<String> keys, Query query ) {
+    this.controller = controller;
+    this.tables = Collections.unmodifiableSet( EnumSet.copyOf( tables ) );
+    this.keys = ( keys == null ) ? ( null )
+        : ( Collections.unmodifiableSet( new HashSet<>( keys ) ) );
+    this.query = query;
+  }
+
+  /**
+   * Stops re-running the query. A re-run that is already scheduled is
+   * dropped.
+   */
+  public void close() {
+    this.closed = true;
+    this.handler.removeCallbacks( this );
+    this.controller.removeLiveQuery( this );
+  }
+
+  /** Tables a live query can depend on. */
+  public enum Table {
+    PERSON,
+    NOTE
+  }
+
+  /** The query that is run when the data changes. */
+  public interface Query {
+    /**
+     * Runs the query. Called on the GUI thread.
+     *
+     * @param db
+     *     the database to query
+     */
+    void run( DatabaseController db );
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Package private
+  //==========================================================================//
+  /**
+   * Invalidates the query if it depends on the given table and key. Called by
+   * the database thread after a write has been committed.
+   *
+   * @param table
+   *     the table that was written to
+   * @param key
+   *     record ID of the person the write concerns
+   */
+  void onChanged( Table table, String key ) {
+    if ( !this.tables.contains( table ) ) {
+      return;
+    }
+    if ( this.keys != null && !this.keys.contains( key ) ) {
+      return;
+    }
+    this.invalidate();
+  }
+
+  /** Schedules the first run right away. */
+  void start() {
+    this.scheduled.set( true );
+    this.handler.post( this );
+  }
+
+  /** Schedules a re-run, unless one is already pending. */
+  void invalidate() {
+    if ( this.scheduled.compareAndSet( false, true ) ) {
+      this.handler.postDelayed( this, FRAME_MS );
+    }
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Runnable implementation
+  //==========================================================================//
+  @Override
+  public void run() {
+    // Clear the flag first so that writes committed while the query runs
+    // schedule another run.
+    this.scheduled.set( false );
+    if ( !this.closed ) {
+      this.query.run( this.controller );
+    }
+  }
+  //==========================================================================//
+}
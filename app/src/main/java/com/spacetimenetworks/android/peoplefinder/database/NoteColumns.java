@@ -0,0 +1,255 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.database;
+
+import android.database.CharArrayBuffer;
+import android.database.Cursor;
+import android.text.TextUtils;
+
+/**
+ * <p> The notes of a query stored column by column, for lists that may hold
+ * tens of thousands of notes. Instead of a {@link DataModel.LocalNote} and its
+ * parts per row, the result holds one array per column: entry dates as
+ * primitive longs, and author names, statuses and locations as shared
+ * instances from a {@link StringPool}. The texts are copied into one
+ * character array and a {@link String} is only created for the rows that are
+ * actually shown. </p> <p/> <p> Instances are immutable apart from the cache
+ * of created texts, and can be read from any thread. </p>
+ *
+ * @author teemuk
+ */
+public final class NoteColumns {
+
+  //==========================================================================//
+  // Constants
+  //==========================================================================//
+  /** Entry date of notes that have none. */
+  public static final long NO_DATE = Long.MIN_VALUE;
+
+  /** Columns selected for the result, in the order they are read. */
+  static final String[] COLUMNS = {
+      DatabaseModel.NOTE_COL_RECORD_ID,
+      DatabaseModel.NOTE_COL_ENTRY_DATE,
+      DatabaseModel.NOTE_COL_AUTHOR_NAME,
+      DatabaseModel.NOTE_COL_STATUS,
+      DatabaseModel.NOTE_COL_LAST_LOCATION,
+      DatabaseModel.NOTE_COL_TEXT };
+
+  /** The columns as an SQL select list. */
+  static final String SELECT_LIST = TextUtils.join( ", ", COLUMNS );
+
+  static final NoteColumns EMPTY = new NoteColumns( 0 );
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Instance vars
+  //==========================================================================//
+  private final int size;
+  private final String[] recordIDs;
+  private final long[] entryDates;
+  private final String[] authorNames;
+  private final String[] statuses;
+  private final String[] locations;
+
+  /** Characters of all texts, text i starts at textStarts[ i ]. */
+  private char[] textChars;
+  /** Start of each text, or -1 for NULL texts. */
+  private final int[] textStarts;
+  private final int[] textLengths;
+  /** Texts created so far. Racy, but Strings are safe to publish. */
+  private final String[] texts;
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // API
+  //==========================================================================//
+  /**
+   * Returns the number of notes.
+   *
+   * @return number of notes
+   */
+  public int size() {
+    return this.size;
+  }
+
+  public String getRecordID( int row ) {
+    return this.recordIDs[ row ];
+  }
+
+  /**
+   * Returns the entry date of a note.
+   *
+   * @param row
+   *     row of the note
+   *
+   * @return entry date in seconds since the epoch, or {@link #NO_DATE}
+   */
+  public long getEntryDate( int row ) {
+    return this.entryDates[ row ];
+  }
+
+  public String getAuthorName( int row ) {
+    return this.authorNames[ row ];
+  }
+
+  public String getStatus( int row ) {
+    return this.statuses[ row ];
+  }
+
+  public String getLastKnownLocation( int row ) {
+    return this.locations[ row ];
+  }
+
+  /**
+   * Returns the length of the text of a note without creating the text.
+   *
+   * @param row
+   *     row of the note
+   *
+   * @return length of the text, or -1 if the note has no text
+   */
+  public int getTextLength( int row ) {
+    return ( this.textStarts[ row ] < 0 ) ? ( -1 ) : ( this.textLengths[ row ] );
+  }
+
+  /**
+   * Returns the text of a note. The text is created on the first call and
+   * kept for later calls.
+   *
+   * @param row
+   *     row of the note
+   *
+   * @return the text or {@code null} if the note has no text
+   */
+  public String getText( int row ) {
+    String text = this.texts[ row ];
+    if ( text == null && this.textStarts[ row ] >= 0 ) {
+      text = new String( this.textChars, this.textStarts[ row ],
+          this.textLengths[ row ] );
+      this.texts[ row ] = text;
+    }
+    return text;
+  }
+
+  /**
+   * Returns at most the given number of characters from the start of the
+   * text of a note, without creating the whole text.
+   *
+   * @param row
+   *     row of the note
+   * @param maxLength
+   *     maximum number of characters
+   *
+   * @return start of the text or {@code null} if the note has no text
+   */
+  public String getTextPrefix( int row, int maxLength ) {
+    if ( this.textLengths[ row ] <= maxLength || this.texts[ row ] != null ) {
+      String text = this.getText( row );
+      return ( text == null || text.length() <= maxLength )
+          ? ( text ) : ( text.substring( 0, maxLength ) );
+    }
+    return new String( this.textChars, this.textStarts[ row ], maxLength );
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Package private
+  //==========================================================================//
+  /**
+   * Reads all rows of a cursor that has the columns in {@link #COLUMNS}.
+   * Has no side effects on the cursor after returning (position won't be
+   * changed and cursor won't be closed).
+   *
+   * @param cursor
+   *     the cursor to read from, may be {@code null}
+   *
+   * @return the notes
+   */
+  static NoteColumns read( Cursor cursor ) {
+    if ( cursor == null || cursor.getCount() == 0 ) {
+      return EMPTY;
+    }
+
+    int[] indexes = new int[ COLUMNS.length ];
+    for ( int i = 0; i < COLUMNS.length; i++ ) {
+      indexes[ i ] = cursor.getColumnIndexOrThrow( COLUMNS[ i ] );
+    }
+
+    NoteColumns notes = new NoteColumns( cursor.getCount() );
+    StringPool pool = new StringPool();
+    CharArrayBuffer buffer = new CharArrayBuffer( 256 );
+    int textEnd = 0;
+
+    int start = cursor.getPosition();
+    cursor.moveToPosition( -1 );
+    for ( int row = 0; row < notes.size && cursor.moveToNext(); row++ ) {
+      notes.recordIDs[ row ] = cursor.getString( indexes[ 0 ] );
+      notes.entryDates[ row ] = cursor.isNull( indexes[ 1 ] )
+          ? ( NO_DATE ) : ( cursor.getLong( indexes[ 1 ] ) );
+      notes.authorNames[ row ] = pool.get( cursor, indexes[ 2 ] );
+      notes.statuses[ row ] = pool.get( cursor, indexes[ 3 ] );
+      notes.locations[ row ] = pool.get( cursor, indexes[ 4 ] );
+
+      // Append the text to the shared characters
+      if ( cursor.isNull( indexes[ 5 ] ) ) {
+        notes.textStarts[ row ] = -1;
+        continue;
+      }
+      cursor.copyStringToBuffer( indexes[ 5 ], buffer );
+      int length = buffer.sizeCopied;
+      if ( textEnd + length > notes.textChars.length ) {
+        notes.textChars = grow( notes.textChars, textEnd + length );
+      }
+      System.arraycopy( buffer.data, 0, notes.textChars, textEnd, length );
+      notes.textStarts[ row ] = textEnd;
+      notes.textLengths[ row ] = length;
+      textEnd += length;
+    }
+    cursor.moveToPosition( start );
+
+    return notes;
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Private
+  //==========================================================================//
+  private NoteColumns( int size ) {
+    this.size = size;
+    this.recordIDs = new String[ size ];
+    this.entryDates = new long[ size ];
+    this.authorNames = new String[ size ];
+    this.statuses = new String[ size ];
+    this.locations = new String[ size ];
+    this.textChars = new char[ size * 64 ];
+    this.textStarts = new int[ size ];
+    this.textLengths = new int[ size ];
+    this.texts = new String[ size ];
+  }
+
+  private static char[] grow( char[] chars, int minLength ) {
+    char[] grown = new char[ Math.max( minLength, chars.length * 2 ) ];
+    System.arraycopy( chars, 0, grown, 0, chars.length );
+    return grown;
+  }
+  //==========================================================================//
+}
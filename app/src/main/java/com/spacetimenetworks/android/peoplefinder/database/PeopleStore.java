@@ -0,0 +1,151 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.database;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * <p> Synchronous access to the person and note tables. This is the storage
+ * layer under {@link DatabaseController}, which runs the store operations on
+ * its database thread and adds the scheduling, caching and change
+ * notifications on top. </p> <p/> <p> The interface and the SQL in {@link
+ * DatabaseModel} don't depend on Android, so the same queries can be run on
+ * a plain JVM, e.g., for benchmarks. {@link SQLitePeopleStore} is the
+ * Android implementation, and the {@code store-jvm} module has one on top of
+ * JDBC. </p> <p/> <p> Implementations are not thread safe, a store must only
+ * be used from one thread at a time. Failures in the underlying database are
+ * thrown as runtime exceptions. </p>
+ *
+ * @author teemuk
+ */
+public interface PeopleStore {
+
+  /**
+   * Inserts a person. Persons whose record ID already exists are ignored.
+   *
+   * @param person
+   *     person to insert, with a record ID
+   * @return row ID of the new row, or -1 if the person wasn't inserted
+   */
+  long insertPerson( DataModel.LocalPerson person );
+
+  /**
+   * Inserts a note. Notes whose record ID already exists are ignored.
+   *
+   * @param note
+   *     note to insert, with a record ID and a person ID
+   * @return row ID of the new row, or -1 if the note wasn't inserted
+   */
+  long insertNote( DataModel.LocalNote note );
+
+  /**
+   * Inserts persons and notes in a single transaction. Records whose record
+   * ID already exists are skipped. If any insert fails, the transaction is
+   * rolled back and the failure is thrown.
+   *
+   * @param persons
+   *     persons to insert, each with a record ID
+   * @param notes
+   *     notes to insert, each with a record ID and a person ID
+   * @return row IDs of the inserts
+   */
+  BatchResult insertBatch( List<DataModel.LocalPerson> persons,
+                           List<DataModel.LocalNote> notes );
+
+  /**
+   * Reads one page of persons in list order, i.e., ordered by given name and
+   * record ID, with the status of the latest note of each.
+   *
+   * @param from
+   *     the person whose key (given name and record ID) the page is relative
+   *     to, or {@code null} for the first page
+   * @param direction
+   *     which rows relative to {@code from} to read
+   * @param limit
+   *     maximum number of rows on the page
+   * @return the page, rows are always in list order
+   */
+  DataModel.PersonsPage findPersonsPage( DataModel.PersonName from,
+                                         PageDirection direction,
+                                         int limit );
+
+  /**
+   * Finds persons whose full name contains the given text, in list order.
+   *
+   * @param text
+   *     text to search for, LIKE wildcards in it match literally
+   * @param limit
+   *     maximum number of results
+   * @return the matching persons
+   */
+  List<DataModel.PersonName> searchPersons( String text, int limit );
+
+  /**
+   * Counts the notes attached to a person.
+   *
+   * @param personID
+   *     record ID of the person
+   * @return number of notes
+   */
+  int countNotesForPerson( String personID );
+
+  /**
+   * Finds which of the given person record IDs exist.
+   *
+   * @param recordIDs
+   *     record IDs to look for
+   * @return the record IDs that exist
+   */
+  Set<String> findExistingPersonIDs( List<String> recordIDs );
+
+  /**
+   * Finds which of the given note record IDs exist.
+   *
+   * @param recordIDs
+   *     record IDs to look for
+   * @return the record IDs that exist
+   */
+  Set<String> findExistingNoteIDs( List<String> recordIDs );
+
+  /** Closes the store and the database under it. */
+  void close();
+
+  /** Which rows relative to a key to read with {@link #findPersonsPage}. */
+  enum PageDirection {
+    /** Rows after the key. */
+    AFTER,
+    /** Rows before the key. */
+    BEFORE,
+    /** Rows after the key, including the key itself. */
+    STARTING_AT
+  }
+
+  /** Row IDs of the records inserted by {@link #insertBatch}. */
+  final class BatchResult {
+    /** Row ID of each person in order, -1 for those that existed. */
+    public final long[] personRowIDs;
+    /** Row ID of each note in order, -1 for those that existed. */
+    public final long[] noteRowIDs;
+
+    public BatchResult( long[] personRowIDs, long[] noteRowIDs ) {
+      this.personRowIDs = personRowIDs;
+      this.noteRowIDs = noteRowIDs;
+    }
+  }
+}
@@ -0,0 +1,411 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.database;
+
+import android.util.Log;
+
+import com.spacetimenetworks.android.peoplefinder.metrics.LatencyHistogram;
+import com.spacetimenetworks.android.peoplefinder.metrics.MetricsRegistry;
+import com.spacetimenetworks.android.peoplefinder.metrics.TraceBuffer;
+import com.spacetimenetworks.android.peoplefinder.metrics.TraceEvent;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p> Runs tasks on a single worker thread, like a single thread executor, but
+ * picks the next task by priority instead of in FIFO order. Tasks of the same
+ * priority run in submission order. </p> <p/> <p> Queued lower priority tasks
+ * would wait forever under a constant stream of interactive work, so each
+ * priority has a maximum wait. When the first task of a lower priority has
+ * waited longer than that, it runs ahead of higher priorities, but only if
+ * no task of its priority has run within the maximum wait either. A long
+ * backlog therefore gets one task per maximum wait while higher priorities
+ * are busy, and higher priorities never wait behind more than one such task.
+ * </p> <p/> <p> The time each task spends in the queue is recorded in a
+ * histogram per priority, and the time it runs in a histogram per task
+ * class, both in the {@link MetricsRegistry}. Every run is also recorded in
+ * the {@link TraceBuffer}, and watched by a {@link TaskWatchdog} that reports
+ * tasks running too long. </p> <p/> <p> Priorities with a capacity have a
+ * bounded queue. Submitting to a full bounded queue blocks until the worker
+ * has made room, which slows down the producer to the rate the database can
+ * keep up with instead of letting the queued tasks pile up on the heap. </p>
+ *
+ * @author teemuk
+ */
+class PriorityTaskScheduler {
+  private static final String TAG
+      = PriorityTaskScheduler.class.getSimpleName();
+
+  //==========================================================================//
+  // Instance vars
+  //==========================================================================//
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition notEmpty = this.lock.newCondition();
+  private final Condition notFull = this.lock.newCondition();
+  private final Thread worker;
+  private final TaskWatchdog watchdog;
+
+  // Guarded by lock
+  /** Tasks that run before anything else, e.g., opening the database. */
+  private final ArrayDeque<Task> urgent = new ArrayDeque<>();
+  /** Queues indexed by priority ordinal. */
+  private final ArrayDeque<Task>[] queues;
+  /** When a task of each priority last ran, indexed by priority ordinal. */
+  private final long[] lastRunNanos;
+  private boolean shutdown = false;
+
+  private final LatencyHistogram[] queueLatencies;
+  /** Task classes seen so far, only touched by the worker thread. */
+  private final Map<Class<?>, TaskType> taskTypes = new HashMap<>();
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // API
+  //==========================================================================//
+  /**
+   * Creates a scheduler and starts its worker thread.
+   *
+   * @param name
+   *     name of the worker thread
+   * @param stallListener
+   *     listener notified when a task stalls the worker and when it recovers
+   */
+  @SuppressWarnings( "unchecked" )
+  PriorityTaskScheduler( String name, TaskWatchdog.Listener stallListener ) {
+    DatabaseController.Priority[] priorities
+        = DatabaseController.Priority.values();
+    this.queues = new ArrayDeque[ priorities.length ];
+    this.queueLatencies = new LatencyHistogram[ priorities.length ];
+    this.lastRunNanos = new long[ priorities.length ];
+    long now = System.nanoTime();
+    for ( DatabaseController.Priority priority : priorities ) {
+      this.queues[ priority.ordinal() ] = new ArrayDeque<>();
+      this.lastRunNanos[ priority.ordinal() ] = now;
+      this.queueLatencies[ priority.ordinal() ] = MetricsRegistry.get()
+          .histogram( "db.queue." + priority.name().toLowerCase() );
+    }
+
+    this.worker = new Thread( this::workerLoop, name );
+    this.watchdog = new TaskWatchdog( this.worker, stallListener );
+    this.worker.start();
+  }
+
+  /**
+   * Queues a task. If the priority has a bounded queue and it is full, blocks
+   * until there is room.
+   *
+   * @param priority
+   *     priority of the task
+   * @param task
+   *     the task
+   *
+   * @throws RejectedExecutionException
+   *     if the scheduler has been shut down or the thread was interrupted
+   *     while waiting for room
+   */
+  void submit( DatabaseController.Priority priority, Runnable task ) {
+    this.enqueue( this.queues[ priority.ordinal() ], priority.capacity,
+        new Task( priority, task ) );
+  }
+
+  /**
+   * Queues a task that runs before all other queued tasks.
+   *
+   * @param task
+   *     the task
+   *
+   * @throws RejectedExecutionException
+   *     if the scheduler has been shut down
+   */
+  void submitFirst( Runnable task ) {
+    this.enqueue( this.urgent, 0, new Task( null, task ) );
+  }
+
+  /**
+   * Returns the number of queued tasks of the given priority.
+   *
+   * @param priority
+   *     the priority
+   *
+   * @return number of queued tasks
+   */
+  int getQueueSize( DatabaseController.Priority priority ) {
+    this.lock.lock();
+    try {
+      return this.queues[ priority.ordinal() ].size();
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the histogram of the time tasks of the given priority wait in
+   * the queue.
+   *
+   * @param priority
+   *     the priority
+   *
+   * @return the histogram
+   */
+  LatencyHistogram getQueueLatency( DatabaseController.Priority priority ) {
+    return this.queueLatencies[ priority.ordinal() ];
+  }
+
+  /**
+   * Tells the watchdog which SQL the running task executes, so that it can
+   * be reported if the task runs too long. Must be called from a task.
+   *
+   * @param sql
+   *     the SQL
+   */
+  void setCurrentSql( String sql ) {
+    this.watchdog.setSql( sql );
+  }
+
+  /**
+   * Returns whether the running task has run so long that the database is
+   * considered stalled.
+   *
+   * @return {@code true} if stalled
+   */
+  boolean isStalled() {
+    return this.watchdog.isStalled();
+  }
+
+  /**
+   * Returns how long the running task has run.
+   *
+   * @return time in milliseconds, or 0 if no task is running
+   */
+  long getRunningMillis() {
+    return this.watchdog.getRunningMillis();
+  }
+
+  /**
+   * Returns whether the scheduler has been shut down. Queued tasks are
+   * dropped on shutdown without running, so callers waiting for a task can
+   * poll this to stop waiting.
+   *
+   * @return {@code true} if shut down
+   */
+  boolean isShutdown() {
+    this.lock.lock();
+    try {
+      return this.shutdown;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * Drops all queued tasks and interrupts the running one. Tasks submitted
+   * after this are rejected.
+   */
+  void shutdownNow() {
+    this.lock.lock();
+    try {
+      this.shutdown = true;
+      this.urgent.clear();
+      for ( ArrayDeque<Task> queue : this.queues ) {
+        queue.clear();
+      }
+      this.notEmpty.signalAll();
+      this.notFull.signalAll();
+    } finally {
+      this.lock.unlock();
+    }
+    this.worker.interrupt();
+    this.watchdog.shutdown();
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Private
+  //==========================================================================//
+  private static final class Task {
+    final DatabaseController.Priority priority;
+    final Runnable runnable;
+    final long enqueuedNanos = System.nanoTime();
+
+    Task( DatabaseController.Priority priority, Runnable runnable ) {
+      this.priority = priority;
+      this.runnable = runnable;
+    }
+  }
+
+  private void enqueue( ArrayDeque<Task> queue, int capacity, Task task ) {
+    this.lock.lock();
+    try {
+      // Wait for room in a bounded queue
+      if ( capacity > 0 && queue.size() >= capacity && !this.shutdown ) {
+        long blocked = System.nanoTime();
+        while ( queue.size() >= capacity && !this.shutdown ) {
+          this.notFull.await();
+        }
+        TraceBuffer.record( TraceEvent.QUEUE_FULL, task.priority.ordinal(),
+            System.nanoTime() - blocked );
+      }
+
+      if ( this.shutdown ) {
+        throw new RejectedExecutionException( "Scheduler shut down." );
+      }
+      queue.addLast( task );
+      this.notEmpty.signal();
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+      throw new RejectedExecutionException( "Interrupted while waiting for " +
+                                            "room in the queue.", e );
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  private void workerLoop() {
+    while ( true ) {
+      Task task;
+      try {
+        task = this.take();
+      } catch ( InterruptedException e ) {
+        task = null;
+      }
+      if ( task == null ) {
+        Log.d( TAG, "Worker shutting down." );
+        return;
+      }
+
+      if ( task.priority != null ) {
+        this.queueLatencies[ task.priority.ordinal() ]
+            .recordSince( task.enqueuedNanos );
+      }
+
+      // Keep the worker alive if a task fails
+      TaskType type = this.typeOf( task.runnable );
+      this.watchdog.taskStarted( type.name, type.traceName );
+      long start = System.nanoTime();
+      try {
+        task.runnable.run();
+      } catch ( RuntimeException e ) {
+        Log.e( TAG, "Task failed.", e );
+      }
+      long elapsed = System.nanoTime() - start;
+      this.watchdog.taskFinished();
+      type.runLatency.record( elapsed );
+      TraceBuffer.record( TraceEvent.TASK_RUN, type.traceName, elapsed );
+    }
+  }
+
+  /** Metrics of the tasks of one class. */
+  private static final class TaskType {
+    final String name;
+    final LatencyHistogram runLatency;
+    /** Index of the class name in the trace. */
+    final int traceName;
+
+    TaskType( String name ) {
+      this.name = name;
+      this.runLatency = MetricsRegistry.get().histogram( "db.task." + name );
+      this.traceName = TraceBuffer.indexOf( name );
+    }
+  }
+
+  private TaskType typeOf( Runnable runnable ) {
+    Class<?> type = runnable.getClass();
+    TaskType taskType = this.taskTypes.get( type );
+    if ( taskType == null ) {
+      taskType = new TaskType( type.getSimpleName() );
+      this.taskTypes.put( type, taskType );
+    }
+    return taskType;
+  }
+
+  /**
+   * Blocks until a task is available and removes it from its queue.
+   *
+   * @return the next task or {@code null} if shut down
+   */
+  private Task take()
+  throws InterruptedException {
+    this.lock.lock();
+    try {
+      while ( true ) {
+        if ( this.shutdown ) {
+          return null;
+        }
+
+        Task task = this.urgent.pollFirst();
+        if ( task == null ) {
+          task = this.pollNext();
+          if ( task != null ) {
+            this.notFull.signalAll();
+          }
+        }
+        if ( task != null ) {
+          return task;
+        }
+
+        this.notEmpty.await();
+      }
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * Picks the next task: the first task of a lower priority that is overdue
+   * and whose priority hasn't run within its maximum wait, if any, otherwise
+   * the first task of the highest priority.
+   */
+  private Task pollNext() {
+    long now = System.nanoTime();
+
+    int highest = -1;
+    for ( int i = 0; i < this.queues.length; i++ ) {
+      Task head = this.queues[ i ].peekFirst();
+      if ( head == null ) {
+        continue;
+      }
+      if ( highest < 0 ) {
+        highest = i;
+        continue;
+      }
+
+      // Let a starving lower priority run one task
+      long maxWait = TimeUnit.MILLISECONDS.toNanos( head.priority.maxWaitMs );
+      if ( now - head.enqueuedNanos > maxWait
+           && now - this.lastRunNanos[ i ] > maxWait ) {
+        return this.poll( i, now );
+      }
+    }
+
+    return ( highest < 0 ) ? ( null ) : ( this.poll( highest, now ) );
+  }
+
+  private Task poll( int priority, long now ) {
+    this.lastRunNanos[ priority ] = now;
+    return this.queues[ priority ].pollFirst();
+  }
+  //==========================================================================//
+}
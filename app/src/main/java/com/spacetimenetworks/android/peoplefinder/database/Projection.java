@@ -0,0 +1,316 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.database;
+
+import android.database.Cursor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p> A typed view of the rows of one table: the columns to select and how to
+ * build a result object from them. Queries that take a projection select only
+ * its columns instead of {@code SELECT *}, so a screen that only shows a name
+ * doesn't pay for reading every text column of the record. </p> <p/> <p>
+ * Columns are looked up by name once per query, not by position, so the
+ * mappers don't depend on the column order of the table. The predefined
+ * projections cover the views used by the app. </p>
+ *
+ * @param <T>
+ *     type of the result objects
+ *
+ * @author teemuk
+ */
+public final class Projection<T> {
+
+  //==========================================================================//
+  // Predefined projections
+  //==========================================================================//
+  /** Name and entry date of a person, without the latest status. */
+  public static final Projection<DataModel.PersonName> PERSON_NAME
+      = new Projection<>( LiveQuery.Table.PERSON,
+      row -> new DataModel.PersonName(
+          row.getString( 0 ), row.getString( 1 ), null, row.getLong( 2 ),
+          row.getString( 3 ) ),
+      DatabaseModel.PERSON_COL_RECORD_ID,
+      DatabaseModel.PERSON_COL_FULL_NAME,
+      DatabaseModel.PERSON_COL_ENTRY_DATE,
+      DatabaseModel.PERSON_COL_GIVEN_NAME );
+
+  /** The full person record with its local state. */
+  public static final Projection<DataModel.LocalPerson> PERSON_RECORD
+      = new Projection<>( LiveQuery.Table.PERSON,
+      row -> new DataModel.LocalPerson(
+          new DataModel.Person(
+              row.getString( 0 ),  // record ID
+              row.getLong( 1 ),    // entry date
+              row.getLong( 2 ),    // expiry date
+              row.getString( 3 ),  // author name
+              row.getString( 4 ),  // author email
+              row.getString( 5 ),  // author phone
+              row.getString( 6 ),  // source name
+              row.getLong( 7 ),    // source date
+              row.getString( 8 ),  // source URL
+              row.getString( 9 ),  // full name
+              row.getString( 10 ), // given name
+              row.getString( 11 ), // family name
+              row.getString( 12 ), // alternate names
+              row.getString( 13 ), // description
+              row.getString( 14 ), // sex
+              row.getString( 15 ), // date of birth
+              row.getLong( 16 ),   // age
+              row.getString( 17 ), // home street
+              row.getString( 18 ), // home neighborhood
+              row.getString( 19 ), // home city
+              row.getString( 20 ), // home state
+              row.getString( 21 ), // home zip
+              row.getString( 22 ), // home country
+              row.getString( 23 ), // photo url
+              row.getString( 24 )  // profile urls
+          ),
+          row.getString( 25 ),     // photo path
+          row.getLong( 26 ) == 1   // routed
+      ),
+      DatabaseModel.PERSON_COL_RECORD_ID,
+      DatabaseModel.PERSON_COL_ENTRY_DATE,
+      DatabaseModel.PERSON_COL_EXPIRY_DATE,
+      DatabaseModel.PERSON_COL_AUTHOR_NAME,
+      DatabaseModel.PERSON_COL_AUTHOR_EMAIL,
+      DatabaseModel.PERSON_COL_AUTHOR_PHONE,
+      DatabaseModel.PERSON_COL_SOURCE_NAME,
+      DatabaseModel.PERSON_COL_SOURCE_DATE,
+      DatabaseModel.PERSON_COL_SOURCE_URL,
+      DatabaseModel.PERSON_COL_FULL_NAME,
+      DatabaseModel.PERSON_COL_GIVEN_NAME,
+      DatabaseModel.PERSON_COL_FAMILY_NAME,
+      DatabaseModel.PERSON_COL_ALT_NAMES,
+      DatabaseModel.PERSON_COL_DESCRIPTION,
+      DatabaseModel.PERSON_COL_SEX,
+      DatabaseModel.PERSON_COL_DOB,
+      DatabaseModel.PERSON_COL_AGE,
+      DatabaseModel.PERSON_COL_HOME_STREET,
+      DatabaseModel.PERSON_COL_HOME_NGHBRHD,
+      DatabaseModel.PERSON_COL_HOME_CITY,
+      DatabaseModel.PERSON_COL_HOME_STATE,
+      DatabaseModel.PERSON_COL_HOME_ZIP,
+      DatabaseModel.PERSON_COL_HOME_COUNTRY,
+      DatabaseModel.PERSON_COL_PHOTO_URL,
+      DatabaseModel.PERSON_COL_PROFILE_URLS,
+      DatabaseModel.PERSON_COL_PHOTO_PATH,
+      DatabaseModel.PERSON_COL_ROUTED );
+
+  /** IDs, author and status of a note, without the text. */
+  public static final Projection<DataModel.NoteHeader> NOTE_HEADER
+      = new Projection<>( LiveQuery.Table.NOTE,
+      row -> new DataModel.NoteHeader(
+          row.getString( 0 ), row.getString( 1 ), row.getLong( 2 ),
+          row.getString( 3 ), row.getString( 4 ) ),
+      DatabaseModel.NOTE_COL_RECORD_ID,
+      DatabaseModel.NOTE_COL_PERSON_ID,
+      DatabaseModel.NOTE_COL_ENTRY_DATE,
+      DatabaseModel.NOTE_COL_AUTHOR_NAME,
+      DatabaseModel.NOTE_COL_STATUS );
+
+  /** The full note with its local state. */
+  public static final Projection<DataModel.LocalNote> NOTE_RECORD
+      = new Projection<>( LiveQuery.Table.NOTE,
+      row -> new DataModel.LocalNote(
+          new DataModel.Note(
+              row.getString( 0 ),  // record ID
+              row.getString( 1 ),  // person ID
+              row.getString( 2 ),  // linked person ID
+              row.getLong( 3 ),    // entry date
+              row.getString( 4 ),  // author name
+              row.getString( 5 ),  // author email
+              row.getString( 6 ),  // author phone
+              row.getLong( 7 ),    // source date
+              "true".equalsIgnoreCase( row.getString( 8 ) ), // made contact
+              row.getString( 9 ),  // status
+              row.getString( 10 ), // person email
+              row.getString( 11 ), // person phone
+              row.getString( 12 ), // last location
+              row.getString( 13 ), // text
+              row.getString( 14 )  // photo url
+          ),
+          row.getString( 15 ),     // photo path
+          row.getLong( 16 ) == 1   // routed
+      ),
+      DatabaseModel.NOTE_COL_RECORD_ID,
+      DatabaseModel.NOTE_COL_PERSON_ID,
+      DatabaseModel.NOTE_COL_LNK_PERSON_ID,
+      DatabaseModel.NOTE_COL_ENTRY_DATE,
+      DatabaseModel.NOTE_COL_AUTHOR_NAME,
+      DatabaseModel.NOTE_COL_AUTHOR_EMAIL,
+      DatabaseModel.NOTE_COL_AUTHOR_PHONE,
+      DatabaseModel.NOTE_COL_SOURCE_DATE,
+      DatabaseModel.NOTE_COL_CONTACT,
+      DatabaseModel.NOTE_COL_STATUS,
+      DatabaseModel.NOTE_COL_PERSON_EMAIL,
+      DatabaseModel.NOTE_COL_PERSON_PHONE,
+      DatabaseModel.NOTE_COL_LAST_LOCATION,
+      DatabaseModel.NOTE_COL_TEXT,
+      DatabaseModel.NOTE_COL_PHOTO_URL,
+      DatabaseModel.NOTE_COL_PHOTO_PATH,
+      DatabaseModel.NOTE_COL_ROUTED );
+
+  /** Record ID of a person. */
+  static final Projection<String> PERSON_ID
+      = new Projection<>( LiveQuery.Table.PERSON,
+      row -> row.getString( 0 ),
+      DatabaseModel.PERSON_COL_RECORD_ID );
+
+  /** Record ID of the person a note is attached to. */
+  static final Projection<String> NOTE_PERSON_ID
+      = new Projection<>( LiveQuery.Table.NOTE,
+      row -> row.getString( 0 ),
+      DatabaseModel.NOTE_COL_PERSON_ID );
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Instance vars
+  //==========================================================================//
+  private final LiveQuery.Table table;
+  private final String[] columns;
+  /** The columns as an SQL select list. */
+  private final String selectList;
+  private final RowMapper<T> mapper;
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // API
+  //==========================================================================//
+  Projection( LiveQuery.Table table, RowMapper<T> mapper,
+              String... columns ) {
+    this.table = table;
+    this.mapper = mapper;
+    this.columns = columns;
+
+    StringBuilder selectList = new StringBuilder();
+    for ( String column : columns ) {
+      if ( selectList.length() > 0 ) selectList.append( ", " );
+      selectList.append( column );
+    }
+    this.selectList = selectList.toString();
+  }
+
+  /**
+   * Returns the table the projection selects from.
+   *
+   * @return the table
+   */
+  public LiveQuery.Table getTable() {
+    return this.table;
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Package private
+  //==========================================================================//
+  /**
+   * Replaces [COLUMNS] in a query template with the columns of this
+   * projection.
+   */
+  String select( String template ) {
+    return template.replace( "[COLUMNS]", this.selectList );
+  }
+
+  /**
+   * Maps all rows of the cursor. Has no side effects on the cursor after
+   * returning (position won't be changed and cursor won't be closed).
+   *
+   * @param cursor
+   *     the cursor to read from, may be {@code null}
+   *
+   * @return list of the mapped rows
+   */
+  List<T> readAll( Cursor cursor ) {
+    int listSize = ( cursor == null ) ? ( 0 ) : ( cursor.getCount() );
+    List<T> items = new ArrayList<>( listSize );
+
+    if ( cursor != null ) {
+      Row row = new Row( cursor, this.columns );
+      int start = cursor.getPosition();
+      cursor.moveToPosition( -1 );
+      while ( cursor.moveToNext() ) {
+        items.add( this.mapper.map( row ) );
+      }
+      cursor.moveToPosition( start );
+    }
+
+    return items;
+  }
+
+  /**
+   * Maps the first row of the cursor. Has no side effects on the cursor
+   * after returning.
+   *
+   * @param cursor
+   *     the cursor to read from, may be {@code null}
+   *
+   * @return the mapped row or {@code null} if the cursor has no rows
+   */
+  T readFirst( Cursor cursor ) {
+    T item = null;
+
+    if ( cursor != null ) {
+      int start = cursor.getPosition();
+      if ( cursor.moveToFirst() ) {
+        item = this.mapper.map( new Row( cursor, this.columns ) );
+      }
+      cursor.moveToPosition( start );
+    }
+
+    return item;
+  }
+
+  /** Builds a result object from the current row. */
+  interface RowMapper<T> {
+    T map( Row row );
+  }
+
+  /**
+   * Access to the current row of a cursor by the position of the column in
+   * the projection. The cursor indexes are resolved by name when the row is
+   * created.
+   */
+  static final class Row {
+    private final Cursor cursor;
+    private final int[] indexes;
+
+    Row( Cursor cursor, String[] columns ) {
+      this.cursor = cursor;
+      this.indexes = new int[ columns.length ];
+      for ( int i = 0; i < columns.length; i++ ) {
+        this.indexes[ i ] = cursor.getColumnIndexOrThrow( columns[ i ] );
+      }
+    }
+
+    String getString( int column ) {
+      return this.cursor.getString( this.indexes[ column ] );
+    }
+
+    /** Returns the value as a long, 0 for NULL like {@link Cursor#getLong}. */
+    long getLong( int column ) {
+      return this.cursor.getLong( this.indexes[ column ] );
+    }
+  }
+  //==========================================================================//
+}
@@ -0,0 +1,79 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.database;
+
+import java.util.List;
+
+/**
+ * <p> Selects a subset of the records for {@link
+ * DatabaseController#scanRecords}, e.g., for exporting the records of one
+ * city. A record passes if it matches every condition that is set. </p> <p/>
+ * <p> Notes are matched by the home city of their person, and by their own
+ * entry date. </p>
+ *
+ * @author teemuk
+ */
+public final class RecordFilter {
+  /** Filter that passes every record. */
+  public static final RecordFilter ALL = new RecordFilter( null, null );
+
+  /** Pass records entered at or after this time (s), {@code null} for all. */
+  public final Long since;
+  /** Pass records of persons with this home city, {@code null} for all. */
+  public final String homeCity;
+
+  /**
+   * Creates a new filter.
+   *
+   * @param since
+   *     earliest entry date in seconds since the epoch, or {@code null}
+   * @param homeCity
+   *     home city compared ignoring case, or {@code null}
+   */
+  public RecordFilter( Long since, String homeCity ) {
+    this.since = since;
+    this.homeCity = homeCity;
+  }
+
+  /**
+   * Returns the conditions for the [WHERE] placeholder of a chunk query and
+   * adds their arguments.
+   */
+  String where( LiveQuery.Table table, List<String> args ) {
+    boolean notes = ( table == LiveQuery.Table.NOTE );
+    StringBuilder where = new StringBuilder();
+    if ( this.since != null ) {
+      where.append( notes
+          ? ( DatabaseModel.SQL_AND_NOTE_SINCE )
+          : ( DatabaseModel.SQL_AND_PERSON_SINCE ) );
+      args.add( this.since.toString() );
+    }
+    if ( this.homeCity != null ) {
+      where.append( notes
+          ? ( DatabaseModel.SQL_AND_NOTE_HOME_CITY )
+          : ( DatabaseModel.SQL_AND_PERSON_HOME_CITY ) );
+      args.add( this.homeCity );
+    }
+    return where.toString();
+  }
+
+  @Override
+  public String toString() {
+    return "since " + this.since + ", home city " + this.homeCity;
+  }
+}
@@ -0,0 +1,306 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.CancellationSignal;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * {@link PeopleStore} on top of an Android {@link SQLiteDatabase}. The insert
+ * statements are compiled once and reused for every insert.
+ *
+ * @author teemuk
+ */
+public class SQLitePeopleStore
+    implements PeopleStore {
+
+  //==========================================================================//
+  // Instance vars
+  //==========================================================================//
+  private final SQLiteDatabase database;
+  /** Compiled inserts, created on first use. */
+  private SQLiteStatement personInsert;
+  private SQLiteStatement noteInsert;
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // API
+  //==========================================================================//
+  /**
+   * Creates a store on top of an open database with the schema of {@link
+   * DatabaseModel}.
+   *
+   * @param database
+   *     the database
+   */
+  public SQLitePeopleStore( SQLiteDatabase database ) {
+    this.database = database;
+  }
+
+  @Override
+  public long insertPerson( DataModel.LocalPerson person ) {
+    SQLiteStatement statement = this.getPersonInsert();
+    bind( statement, StoreQueries.personValues( person ) );
+    return statement.executeInsert();
+  }
+
+  @Override
+  public long insertNote( DataModel.LocalNote note ) {
+    SQLiteStatement statement = this.getNoteInsert();
+    bind( statement, StoreQueries.noteValues( note ) );
+    return statement.executeInsert();
+  }
+
+  @Override
+  public BatchResult insertBatch( List<DataModel.LocalPerson> persons,
+                                  List<DataModel.LocalNote> notes ) {
+    long[] personRowIDs = new long[ persons.size() ];
+    long[] noteRowIDs = new long[ notes.size() ];
+
+    this.database.beginTransaction();
+    try {
+      for ( int i = 0; i < personRowIDs.length; i++ ) {
+        personRowIDs[ i ] = this.insertPerson( persons.get( i ) );
+      }
+      for ( int i = 0; i < noteRowIDs.length; i++ ) {
+        noteRowIDs[ i ] = this.insertNote( notes.get( i ) );
+      }
+      this.database.setTransactionSuccessful();
+    } finally {
+      this.database.endTransaction();
+    }
+
+    return new BatchResult( personRowIDs, noteRowIDs );
+  }
+
+  @Override
+  public DataModel.PersonsPage findPersonsPage( DataModel.PersonName from,
+                                                PageDirection direction,
+                                                int limit ) {
+    Cursor cursor = this.database.rawQuery(
+        StoreQueries.pageQuery( from, direction, limit ),
+        StoreQueries.pageArgs( from ) );
+    try {
+      return StoreQueries.toPage( readPage( cursor ),
+          StoreQueries.isBackwards( from, direction ), limit );
+    } finally {
+      cursor.close();
+    }
+  }
+
+  @Override
+  public List<DataModel.PersonName> searchPersons( String text, int limit ) {
+    return this.searchPersons( text, limit, null );
+  }
+
+  /**
+   * Like {@link #searchPersons(String, int)}, but can be cancelled while it
+   * runs.
+   *
+   * @param text
+   *     text to search for
+   * @param limit
+   *     maximum number of results
+   * @param signal
+   *     signal for cancelling the search, or {@code null}
+   * @return the matching persons
+   * @throws android.os.OperationCanceledException
+   *     if the search was cancelled
+   */
+  public List<DataModel.PersonName> searchPersons( String text, int limit,
+                                                   CancellationSignal signal ) {
+    // The cursor is filled lazily, so read it before returning
+    Cursor cursor = this.database.rawQuery( StoreQueries.searchQuery( limit ),
+        new String[]{ StoreQueries.likePattern( text ) }, signal );
+    try {
+      return readNames( cursor );
+    } finally {
+      cursor.close();
+    }
+  }
+
+  @Override
+  public int countNotesForPerson( String personID ) {
+    Cursor cursor = this.database.rawQuery(
+        DatabaseModel.SQL_COUNT_NOTES_FOR_PERSON, new String[]{ personID } );
+    try {
+      return ( cursor.moveToFirst() ) ? ( cursor.getInt( 0 ) ) : ( 0 );
+    } finally {
+      cursor.close();
+    }
+  }
+
+  @Override
+  public Set<String> findExistingPersonIDs( List<String> recordIDs ) {
+    return this.findExisting( false, recordIDs );
+  }
+
+  @Override
+  public Set<String> findExistingNoteIDs( List<String> recordIDs ) {
+    return this.findExisting( true, recordIDs );
+  }
+
+  @Override
+  public void close() {
+    if ( this.personInsert != null ) this.personInsert.close();
+    if ( this.noteInsert != null ) this.noteInsert.close();
+    this.database.close();
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Package private
+  //==========================================================================//
+  /**
+   * Reads the persons from the rows of a person search, which have the record
+   * ID, the full name, the latest status and the entry date.
+   * <p/>
+   * The statuses are shared {@link StringPool} instances, since a large result
+   * only has a handful of distinct ones.
+   * <p/>
+   * Has no side effects on the cursor after returning (position won't be
+   * changed and cursor won't be closed).
+   *
+   * @param cursor
+   *     the cursor to read from, may be {@code null}
+   *
+   * @return list of entries from the cursor
+   */
+  static List<DataModel.PersonName> readNames( final Cursor cursor ) {
+    // Create the list
+    int listSize = ( cursor == null ) ? ( 0 ) : ( cursor.getCount() );
+    List<DataModel.PersonName> items = new ArrayList<>( listSize );
+
+    // Add the items from the cursor to the list
+    if ( cursor != null ) {
+      StringPool statuses = new StringPool();
+      int start = cursor.getPosition();
+      cursor.moveToPosition( -1 );
+      while ( cursor.moveToNext() ) {
+        // Pull out the fields
+        String id = cursor.getString( 0 );
+        String fullName = cursor.getString( 1 );
+        String status = statuses.get( cursor, 2 );
+        long entryDate = cursor.getLong( 3 );
+
+        // Create a new item
+        DataModel.PersonName item = new DataModel.PersonName( id, fullName, status, entryDate );
+        items.add( item );
+      }
+      cursor.moveToPosition( start );
+    }
+
+    return items;
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Private
+  //==========================================================================//
+  /**
+   * Like {@link #readNames}, but also reads the given name from the fifth
+   * column, as returned by {@code SQL_SELECT_PERSONS_PAGE}.
+   */
+  private static List<DataModel.PersonName> readPage( final Cursor cursor ) {
+    List<DataModel.PersonName> items = new ArrayList<>( cursor.getCount() );
+
+    StringPool statuses = new StringPool();
+    while ( cursor.moveToNext() ) {
+      // Pull out the fields
+      String id = cursor.getString( 0 );
+      String fullName = cursor.getString( 1 );
+      String status = statuses.get( cursor, 2 );
+      long entryDate = cursor.getLong( 3 );
+      String givenName = cursor.getString( 4 );
+
+      // Create a new item
+      items.add( new DataModel.PersonName( id, fullName, status, entryDate,
+          givenName ) );
+    }
+
+    return items;
+  }
+
+  /**
+   * Looks up which record IDs exist, binding at most {@link
+   * DatabaseModel#MAX_BOUND_IDS} IDs per query.
+   */
+  private Set<String> findExisting( boolean notes, List<String> recordIDs ) {
+    Set<String> existing = new HashSet<>();
+    for ( int start = 0; start < recordIDs.size();
+          start += DatabaseModel.MAX_BOUND_IDS ) {
+      int end = Math.min( recordIDs.size(),
+          start + DatabaseModel.MAX_BOUND_IDS );
+      String[] args = recordIDs.subList( start, end )
+          .toArray( new String[ 0 ] );
+
+      Cursor cursor = this.database.rawQuery(
+          StoreQueries.existingIDsQuery( notes, args.length ), args );
+      try {
+        while ( cursor.moveToNext() ) {
+          existing.add( cursor.getString( 0 ) );
+        }
+      } finally {
+        cursor.close();
+      }
+    }
+    return existing;
+  }
+
+  private SQLiteStatement getPersonInsert() {
+    if ( this.personInsert == null ) {
+      this.personInsert = this.database.compileStatement(
+          DatabaseModel.SQL_INSERT_PERSON );
+    }
+    return this.personInsert;
+  }
+
+  private SQLiteStatement getNoteInsert() {
+    if ( this.noteInsert == null ) {
+      this.noteInsert = this.database.compileStatement(
+          DatabaseModel.SQL_INSERT_NOTE );
+    }
+    return this.noteInsert;
+  }
+
+  /** Binds the values from {@link StoreQueries} to the statement. */
+  private static void bind( SQLiteStatement statement, Object[] values ) {
+    statement.clearBindings();
+    for ( int i = 0; i < values.length; i++ ) {
+      Object value = values[ i ];
+      if ( value == null ) {
+        statement.bindNull( i + 1 );
+      } else if ( value instanceof Long ) {
+        statement.bindLong( i + 1, ( Long ) value );
+      } else {
+        statement.bindString( i + 1, value.toString() );
+      }
+    }
+  }
+  //==========================================================================//
+}
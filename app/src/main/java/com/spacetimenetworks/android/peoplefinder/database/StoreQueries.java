@@ -0,0 +1,230 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.database;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Builds the queries and the bound values of the {@link PeopleStore}
+ * operations from the templates in {@link DatabaseModel}, so that every
+ * store implementation runs exactly the same SQL. Doesn't depend on Android.
+ *
+ * @author teemuk
+ */
+final class StoreQueries {
+  private StoreQueries() {}
+
+  //==========================================================================//
+  // Search
+  //==========================================================================//
+  /**
+   * Returns a LIKE pattern matching strings that contain the given text.
+   * LIKE wildcards in the text are escaped to match literally.
+   *
+   * @param text
+   *     text to match
+   *
+   * @return pattern for {@code LIKE ? ESCAPE '\'}
+   */
+  static String likePattern( final String text ) {
+    String escaped = text
+        .replace( "\\", "\\\\" )
+        .replace( "%", "\\%" )
+        .replace( "_", "\\_" );
+    return "%" + escaped + "%";
+  }
+
+  /**
+   * Returns the query for persons matching a {@link #likePattern}, with the
+   * given limit. A negative limit means no limit.
+   */
+  static String searchQuery( final int limit ) {
+    return DatabaseModel.SQL_SELECT_PERSONS
+        .replace( "[LIMIT]", Integer.toString( limit ) );
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Pages
+  //==========================================================================//
+  /**
+   * Returns the query for a page of persons relative to the given person.
+   * The rows are in reverse list order if {@link #isBackwards}.
+   */
+  static String pageQuery( final DataModel.PersonName from,
+                           final PeopleStore.PageDirection direction,
+                           final int limit ) {
+    String where = ( from == null )
+        ? ( "" ) : ( pageCondition( from, direction ) );
+    return DatabaseModel.SQL_SELECT_PERSONS_PAGE
+        .replace( "[WHERE]", where )
+        .replace( "[ORDER]", isBackwards( from, direction ) ? "DESC" : "ASC" )
+        .replace( "[LIMIT]", Integer.toString( limit ) );
+  }
+
+  /**
+   * Returns the arguments of {@link #pageQuery}, or {@code null} for the
+   * first page.
+   */
+  static String[] pageArgs( final DataModel.PersonName from ) {
+    if ( from == null ) {
+      return null;
+    }
+    return ( from.givenName == null )
+        ? ( new String[]{ from.recordID } )
+        : ( new String[]{ from.givenName, from.givenName, from.recordID } );
+  }
+
+  /** Whether {@link #pageQuery} reads the rows in reverse list order. */
+  static boolean isBackwards( final DataModel.PersonName from,
+                              final PeopleStore.PageDirection direction ) {
+    return ( from != null && direction == PeopleStore.PageDirection.BEFORE );
+  }
+
+  /**
+   * Builds the page from the rows read with {@link #pageQuery}, putting them
+   * back in list order.
+   */
+  static DataModel.PersonsPage toPage( final List<DataModel.PersonName> rows,
+                                       final boolean backwards,
+                                       final int limit ) {
+    if ( backwards ) {
+      Collections.reverse( rows );
+    }
+    return new DataModel.PersonsPage( rows, rows.size() < limit );
+  }
+
+  /**
+   * Returns the keyset condition for selecting a page relative to the given
+   * person.
+   */
+  private static String pageCondition( final DataModel.PersonName from,
+                                       final PeopleStore.PageDirection direction ) {
+    boolean nullName = ( from.givenName == null );
+    switch ( direction ) {
+      case BEFORE:
+        return nullName
+            ? DatabaseModel.SQL_WHERE_PERSONS_BEFORE_NULL_NAME
+            : DatabaseModel.SQL_WHERE_PERSONS_BEFORE;
+      case STARTING_AT:
+        return nullName
+            ? DatabaseModel.SQL_WHERE_PERSONS_STARTING_AT_NULL_NAME
+            : DatabaseModel.SQL_WHERE_PERSONS_STARTING_AT;
+      case AFTER:
+      default:
+        return nullName
+            ? DatabaseModel.SQL_WHERE_PERSONS_AFTER_NULL_NAME
+            : DatabaseModel.SQL_WHERE_PERSONS_AFTER;
+    }
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Existing records
+  //==========================================================================//
+  /**
+   * Returns the query for which of {@code count} bound record IDs exist, at
+   * most {@link DatabaseModel#MAX_BOUND_IDS}.
+   */
+  static String existingIDsQuery( final boolean notes, final int count ) {
+    String template = notes
+        ? ( DatabaseModel.SQL_SELECT_EXISTING_NOTE_IDS )
+        : ( DatabaseModel.SQL_SELECT_EXISTING_PERSON_IDS );
+    StringBuilder ids = new StringBuilder( 3 * count );
+    for ( int i = 0; i < count; i++ ) {
+      ids.append( ( i == 0 ) ? ( "?" ) : ( ", ?" ) );
+    }
+    return template.replace( "[IDS]", ids );
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Inserts
+  //==========================================================================//
+  /**
+   * Returns the values bound to {@link DatabaseModel#SQL_INSERT_PERSON}, in
+   * order. Each value is a {@code String}, a {@code Long} or {@code null}.
+   */
+  static Object[] personValues( final DataModel.LocalPerson record ) {
+    DataModel.Person.Metadata metadata = record.person.metadata;
+    DataModel.Person.Identity identity = record.person.identity;
+    return new Object[]{
+        metadata.recordID,
+        metadata.entryDate,
+        metadata.expiryDate,
+        metadata.authorName,
+        metadata.authorEmail,
+        metadata.authorPhone,
+        metadata.sourceName,
+        metadata.sourceDate,
+        metadata.sourceUrl,
+        identity.name.fullName,
+        identity.name.givenName,
+        identity.name.familyName,
+        identity.name.alternateNames,
+        identity.description,
+        identity.sex,
+        identity.dateOfBirth,
+        identity.age,
+        identity.home.street,
+        identity.home.neighborhood,
+        identity.home.city,
+        identity.home.state,
+        identity.home.zip,
+        identity.home.country,
+        identity.photoUrl,
+        record.photoPath,
+        identity.profileUrls,
+        ( record.routed ) ? ( 1L ) : ( 0L )
+    };
+  }
+
+  /**
+   * Returns the values bound to {@link DatabaseModel#SQL_INSERT_NOTE}, in
+   * order, like {@link #personValues}.
+   */
+  static Object[] noteValues( final DataModel.LocalNote record ) {
+    DataModel.Note.Metadata metadata = record.note.metadata;
+    DataModel.Note.Status status = record.note.status;
+    return new Object[]{
+        metadata.recordID,
+        metadata.personID,
+        metadata.linkedPersonID,
+        metadata.entryDate,
+        metadata.authorName,
+        metadata.authorEmail,
+        metadata.authorPhone,
+        metadata.sourceDate,
+        ( status.authorMadeContact != null && status.authorMadeContact )
+            ? ( "true" ) : ( "false" ),
+        status.status,
+        status.emailOfFoundPerson,
+        status.phoneOfFoundPerson,
+        status.lastKnownLocation,
+        status.text,
+        status.photoUrl,
+        record.photoPath,
+        ( record.routed ) ? ( 1L ) : ( 0L )
+    };
+  }
+  //==========================================================================//
+}
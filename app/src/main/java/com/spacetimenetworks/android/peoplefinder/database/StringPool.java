@@ -0,0 +1,134 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.database;
+
+import android.database.CharArrayBuffer;
+import android.database.Cursor;
+
+/**
+ * <p> Pool of canonical strings for columns with few distinct values, such as
+ * the note status or the author name. A column value is copied into a reused
+ * buffer and looked up by its characters, so only the first occurrence of
+ * each value gets a new {@link String} and the rows of a result share the
+ * instances. </p> <p/> <p> Not thread safe, use one pool per query. </p>
+ *
+ * @author teemuk
+ */
+final class StringPool {
+
+  //==========================================================================//
+  // Constants
+  //==========================================================================//
+  /** Initial number of slots, must be a power of two. */
+  private static final int INITIAL_CAPACITY = 16;
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Instance vars
+  //==========================================================================//
+  private final CharArrayBuffer buffer = new CharArrayBuffer( 64 );
+  /** Open addressing table with linear probing. */
+  private String[] slots = new String[ INITIAL_CAPACITY ];
+  private int size = 0;
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // API
+  //==========================================================================//
+  /**
+   * Returns the value of the given column in the current row of the cursor.
+   *
+   * @param cursor
+   *     cursor positioned on a row
+   * @param column
+   *     index of the column
+   *
+   * @return the canonical instance of the value, or {@code null} for NULL
+   */
+  String get( Cursor cursor, int column ) {
+    if ( cursor.isNull( column ) ) {
+      return null;
+    }
+
+    cursor.copyStringToBuffer( column, this.buffer );
+    char[] chars = this.buffer.data;
+    int length = this.buffer.sizeCopied;
+
+    // Same hash as String.hashCode() so that the table can be rebuilt from
+    // the strings when it grows
+    int hash = 0;
+    for ( int i = 0; i < length; i++ ) {
+      hash = 31 * hash + chars[ i ];
+    }
+
+    int mask = this.slots.length - 1;
+    for ( int i = mix( hash ) & mask; ; i = ( i + 1 ) & mask ) {
+      String s = this.slots[ i ];
+      if ( s == null ) {
+        // First occurrence
+        s = new String( chars, 0, length );
+        this.slots[ i ] = s;
+        if ( ++this.size * 2 > this.slots.length ) {
+          this.grow();
+        }
+        return s;
+      }
+      if ( equals( s, chars, length ) ) {
+        return s;
+      }
+    }
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Private
+  //==========================================================================//
+  private void grow() {
+    String[] old = this.slots;
+    this.slots = new String[ old.length * 2 ];
+    int mask = this.slots.length - 1;
+    for ( String s : old ) {
+      if ( s == null ) continue;
+      int i = mix( s.hashCode() ) & mask;
+      while ( this.slots[ i ] != null ) {
+        i = ( i + 1 ) & mask;
+      }
+      this.slots[ i ] = s;
+    }
+  }
+
+  private static int mix( int hash ) {
+    return hash ^ ( hash >>> 16 );
+  }
+
+  private static boolean equals( String s, char[] chars, int length ) {
+    if ( s.length() != length ) {
+      return false;
+    }
+    for ( int i = 0; i < length; i++ ) {
+      if ( s.charAt( i ) != chars[ i ] ) {
+        return false;
+      }
+    }
+    return true;
+  }
+  //==========================================================================//
+}
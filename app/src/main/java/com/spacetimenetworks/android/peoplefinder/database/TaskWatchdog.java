@@ -0,0 +1,285 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.database;
+
+import android.util.Log;
+
+import com.spacetimenetworks.android.peoplefinder.metrics.Counter;
+import com.spacetimenetworks.android.peoplefinder.metrics.EventLog;
+import com.spacetimenetworks.android.peoplefinder.metrics.MetricsRegistry;
+import com.spacetimenetworks.android.peoplefinder.metrics.TraceBuffer;
+import com.spacetimenetworks.android.peoplefinder.metrics.TraceEvent;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p> Watches the worker thread of a {@link PriorityTaskScheduler} for tasks
+ * that run too long. The worker tells the watchdog when each task starts
+ * and ends, and tasks tell which SQL they are executing. A checker thread
+ * looks at the running task a few times a second. </p> <p/> <p> A task that
+ * runs longer than {@link #SLOW_TASK_MS} has the stack of the worker
+ * captured, and is reported with the SQL and the stack once it ends. A task
+ * that runs longer than {@link #STALL_MS} is reported right away, and the
+ * database is considered stalled until the task ends, since no other task
+ * can run meanwhile. Reports go into the log and into the {@code
+ * db.watchdog.reports} event log of the {@link MetricsRegistry}. </p> <p/>
+ * <p> Starting and ending a task costs a couple of volatile writes on the
+ * worker thread. </p>
+ *
+ * @author teemuk
+ */
+final class TaskWatchdog {
+  private static final String TAG = TaskWatchdog.class.getSimpleName();
+
+  //==========================================================================//
+  // Constants
+  //==========================================================================//
+  /** Tasks running longer than this are reported as slow (ms). */
+  static final long SLOW_TASK_MS = 500;
+  /** The database is stalled while a task runs longer than this (ms). */
+  static final long STALL_MS = 5000;
+  /** Interval of checking the running task (ms). */
+  private static final long CHECK_INTERVAL_MS = 250;
+  /** Maximum number of stack frames in a report. */
+  private static final int MAX_STACK_FRAMES = 32;
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Instance vars
+  //==========================================================================//
+  private final Thread worker;
+  private final Listener listener;
+  private final ScheduledExecutorService checker;
+  private final Counter slowTasks
+      = MetricsRegistry.get().counter( "db.watchdog.slow_tasks" );
+  private final EventLog reports
+      = MetricsRegistry.get().eventLog( "db.watchdog.reports" );
+
+  /** The running task, or {@code null}. Only written by the worker. */
+  private volatile Running running;
+  /** SQL the running task is executing, or {@code null} if unknown. */
+  private volatile String sql;
+  private volatile boolean stalled;
+
+  // Guarded by this
+  /** Task whose stack was captured, and the stack and SQL at the time. */
+  private Running captured;
+  private String capturedStack;
+  private String capturedSql;
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // API
+  //==========================================================================//
+  /**
+   * Creates a watchdog and starts checking.
+   *
+   * @param worker
+   *     the thread running the tasks
+   * @param listener
+   *     listener notified when the database stalls and recovers
+   */
+  TaskWatchdog( Thread worker, Listener listener ) {
+    this.worker = worker;
+    this.listener = listener;
+    this.checker = Executors.newSingleThreadScheduledExecutor(
+        r -> new Thread( r, worker.getName() + "-watchdog" ) );
+    this.checker.scheduleWithFixedDelay( this::check, CHECK_INTERVAL_MS,
+        CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS );
+  }
+
+  /**
+   * A task starts on the worker thread.
+   *
+   * @param name
+   *     name of the task class
+   * @param traceName
+   *     index of the name in the trace
+   */
+  void taskStarted( String name, int traceName ) {
+    this.sql = null;
+    this.running = new Running( name, traceName, System.nanoTime() );
+  }
+
+  /**
+   * The running task executes an SQL statement. Called from the worker
+   * thread.
+   *
+   * @param sql
+   *     the SQL, with parameters rather than values where possible
+   */
+  void setSql( String sql ) {
+    this.sql = sql;
+  }
+
+  /** The running task has ended. Called from the worker thread. */
+  void taskFinished() {
+    Running task = this.running;
+    this.running = null;
+    if ( task == null ) {
+      return;
+    }
+
+    long elapsedMs = task.elapsedMillis();
+    if ( elapsedMs >= SLOW_TASK_MS || this.stalled ) {
+      this.finishSlow( task, elapsedMs );
+    }
+  }
+
+  /**
+   * Returns whether a task has been running longer than {@link #STALL_MS}.
+   *
+   * @return {@code true} if stalled
+   */
+  boolean isStalled() {
+    return this.stalled;
+  }
+
+  /**
+   * Returns how long the running task has run.
+   *
+   * @return time in milliseconds, or 0 if no task is running
+   */
+  long getRunningMillis() {
+    Running task = this.running;
+    return ( task == null ) ? ( 0 ) : ( task.elapsedMillis() );
+  }
+
+  /** Stops checking. */
+  void shutdown() {
+    this.checker.shutdownNow();
+  }
+
+  /** Listener for the stalled state. */
+  interface Listener {
+    /**
+     * The database has stalled or recovered. Called from the watchdog or
+     * the worker thread while holding the lock of the watchdog, so it must
+     * return quickly, e.g., by posting the change to another thread.
+     *
+     * @param stalled
+     *     whether the database is stalled
+     */
+    void stalledChanged( boolean stalled );
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Private
+  //==========================================================================//
+  private static final class Running {
+    final String name;
+    final int traceName;
+    final long startNanos;
+    /** Whether the stall has been reported, guarded by the watchdog. */
+    boolean stallReported;
+
+    Running( String name, int traceName, long startNanos ) {
+      this.name = name;
+      this.traceName = traceName;
+      this.startNanos = startNanos;
+    }
+
+    long elapsedMillis() {
+      return TimeUnit.NANOSECONDS.toMillis(
+          System.nanoTime() - this.startNanos );
+    }
+  }
+
+  /** Runs on the checker thread. */
+  private synchronized void check() {
+    Running task = this.running;
+    if ( task == null ) {
+      return;
+    }
+
+    long elapsedMs = task.elapsedMillis();
+    if ( elapsedMs >= SLOW_TASK_MS && this.captured != task ) {
+      this.captured = task;
+      this.capturedSql = this.sql;
+      this.capturedStack = stackOf( this.worker );
+    }
+
+    if ( elapsedMs >= STALL_MS && !task.stallReported ) {
+      task.stallReported = true;
+      this.report( task.name + " has run for " + elapsedMs + " ms, the "
+                   + "database is stalled.", task );
+      TraceBuffer.record( TraceEvent.TASK_STALLED, task.traceName,
+          elapsedMs );
+      this.setStalled( true );
+    }
+  }
+
+  /** Runs on the worker thread after a slow task. */
+  private synchronized void finishSlow( Running task, long elapsedMs ) {
+    if ( elapsedMs >= SLOW_TASK_MS ) {
+      this.slowTasks.increment();
+      this.report( task.name + " took " + elapsedMs + " ms.", task );
+    }
+    this.setStalled( false );
+  }
+
+  /**
+   * Changes the stalled state and notifies the listener. The listener is
+   * invoked under the lock so that a recovery racing with the stall can't
+   * be delivered before it.
+   */
+  private void setStalled( boolean stalled ) {
+    if ( this.stalled != stalled ) {
+      this.stalled = stalled;
+      this.listener.stalledChanged( stalled );
+    }
+  }
+
+  /** Reports a task with its SQL and stack, if known. */
+  private void report( String summary, Running task ) {
+    boolean hasCapture = ( this.captured == task );
+    String sql = ( hasCapture ) ? ( this.capturedSql ) : ( this.sql );
+
+    StringBuilder text = new StringBuilder( summary );
+    text.append( "\nSQL: " ).append( ( sql != null ) ? ( sql ) : ( "?" ) );
+    if ( hasCapture ) {
+      text.append( '\n' ).append( this.capturedStack );
+    }
+
+    this.reports.add( text.toString() );
+    Log.w( TAG, text.toString() );
+  }
+
+  private static String stackOf( Thread thread ) {
+    StackTraceElement[] frames = thread.getStackTrace();
+    StringBuilder stack = new StringBuilder();
+    int count = Math.min( frames.length, MAX_STACK_FRAMES );
+    for ( int i = 0; i < count; i++ ) {
+      if ( i > 0 ) {
+        stack.append( '\n' );
+      }
+      stack.append( "  at " ).append( frames[ i ] );
+    }
+    if ( frames.length > count ) {
+      stack.append( "\n  ..." );
+    }
+    return stack.toString();
+  }
+  //==========================================================================//
+}
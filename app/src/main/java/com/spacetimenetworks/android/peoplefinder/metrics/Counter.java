@@ -0,0 +1,66 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free counter that only goes up, e.g., the number of received
+ * messages. Can be incremented from any number of threads.
+ *
+ * @author teemuk
+ */
+public class Counter {
+
+  //==========================================================================//
+  // Instance vars
+  //==========================================================================//
+  private final String name;
+  private final AtomicLong value = new AtomicLong();
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // API
+  //==========================================================================//
+  public Counter( String name ) {
+    this.name = name;
+  }
+
+  public String getName() {
+    return this.name;
+  }
+
+  public void increment() {
+    this.value.incrementAndGet();
+  }
+
+  public void add( long delta ) {
+    this.value.addAndGet( delta );
+  }
+
+  public long get() {
+    return this.value.get();
+  }
+
+  @Override
+  public String toString() {
+    return this.name + ": " + this.get();
+  }
+  //==========================================================================//
+}
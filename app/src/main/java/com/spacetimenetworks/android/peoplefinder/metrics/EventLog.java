@@ -0,0 +1,105 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.metrics;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Log of the latest rare events worth a description, e.g., stalls, kept in
+ * the {@link MetricsRegistry} next to the numbers. Only the latest {@link
+ * #CAPACITY} entries are kept. Adding takes a lock, so this is not meant
+ * for hot paths. Thread safe.
+ *
+ * @author teemuk
+ */
+public class EventLog {
+
+  //==========================================================================//
+  // Constants
+  //==========================================================================//
+  /** Number of entries kept. */
+  public static final int CAPACITY = 16;
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Instance vars
+  //==========================================================================//
+  private final String name;
+  private final ArrayDeque<Entry> entries = new ArrayDeque<>( CAPACITY );
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // API
+  //==========================================================================//
+  public EventLog( String name ) {
+    this.name = name;
+  }
+
+  public String getName() {
+    return this.name;
+  }
+
+  /**
+   * Adds an entry, dropping the oldest one if the log is full.
+   *
+   * @param text
+   *     description of the event
+   */
+  public synchronized void add( String text ) {
+    if ( this.entries.size() >= CAPACITY ) {
+      this.entries.removeFirst();
+    }
+    this.entries.addLast( new Entry( System.currentTimeMillis(), text ) );
+  }
+
+  /**
+   * Returns the entries, oldest first.
+   *
+   * @return copy of the entries
+   */
+  public synchronized List<Entry> getEntries() {
+    return new ArrayList<>( this.entries );
+  }
+
+  /** An entry of the log. */
+  public static final class Entry {
+    /** Time of the event in milliseconds since the epoch. */
+    public final long time;
+    public final String text;
+
+    public Entry( long time, String text ) {
+      this.time = time;
+      this.text = text;
+    }
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder text = new StringBuilder( this.name ).append( ':' );
+    for ( Entry entry : this.getEntries() ) {
+      text.append( "\n  " ).append( entry.time ).append( ' ' )
+          .append( entry.text.replace( "\n", "\n    " ) );
+    }
+    return text.toString();
+  }
+  //==========================================================================//
+}
@@ -0,0 +1,34 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.metrics;
+
+/**
+ * A value that is read when the metrics are shown, e.g., the length of a
+ * queue. Called from the thread showing the metrics, so must be thread safe
+ * and cheap.
+ *
+ * @author teemuk
+ */
+public interface Gauge {
+  /**
+   * Returns the current value.
+   *
+   * @return the value
+   */
+  long read();
+}
@@ -0,0 +1,188 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p> Lock-free histogram of latencies. Samples are counted in log-linear
+ * buckets like in HdrHistogram: each power of two microseconds is split
+ * into {@link #SUB_BUCKETS} linear buckets, so recording is a couple of
+ * atomic increments and the percentiles are accurate to within 12.5%.
+ * Latencies below {@link #SUB_BUCKETS} microseconds are exact. </p> <p/>
+ * <p> Can be recorded to from any number of threads. Reads are not atomic
+ * snapshots, but never block the recording threads. </p>
+ *
+ * @author teemuk
+ */
+public class LatencyHistogram {
+
+  //==========================================================================//
+  // Constants
+  //==========================================================================//
+  /** Number of linear buckets per power of two, a power of two itself. */
+  public static final int SUB_BUCKETS = 8;
+  private static final int SUB_BUCKET_BITS
+      = Integer.numberOfTrailingZeros( SUB_BUCKETS );
+  /** Largest power of two with buckets of its own, 2^35 us is 9.5 hours. */
+  private static final int MAX_EXPONENT = 35;
+  /** Buckets up to 2^(MAX_EXPONENT + 1) us and one for everything above. */
+  private static final int BUCKET_COUNT
+      = ( MAX_EXPONENT - SUB_BUCKET_BITS + 2 ) * SUB_BUCKETS + 1;
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Instance vars
+  //==========================================================================//
+  private final String name;
+  private final AtomicLongArray buckets = new AtomicLongArray( BUCKET_COUNT );
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong totalMicros = new AtomicLong();
+  private final AtomicLong maxMicros = new AtomicLong();
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // API
+  //==========================================================================//
+  public LatencyHistogram( String name ) {
+    this.name = name;
+  }
+
+  public String getName() {
+    return this.name;
+  }
+
+  /**
+   * Records a sample.
+   *
+   * @param nanos
+   *     the latency in nanoseconds
+   */
+  public void record( long nanos ) {
+    long micros = Math.max( 0, nanos / 1000 );
+
+    this.buckets.incrementAndGet( bucketOf( micros ) );
+    this.count.incrementAndGet();
+    this.totalMicros.addAndGet( micros );
+
+    long max;
+    while ( micros > ( max = this.maxMicros.get() ) ) {
+      if ( this.maxMicros.compareAndSet( max, micros ) ) {
+        break;
+      }
+    }
+  }
+
+  /**
+   * Records the time elapsed since the given start time.
+   *
+   * @param startNanos
+   *     start time from {@link System#nanoTime()}
+   */
+  public void recordSince( long startNanos ) {
+    this.record( System.nanoTime() - startNanos );
+  }
+
+  public long getCount() {
+    return this.count.get();
+  }
+
+  public long getMeanMicros() {
+    long n = this.count.get();
+    return ( n == 0 ) ? ( 0 ) : ( this.totalMicros.get() / n );
+  }
+
+  public long getMaxMicros() {
+    return this.maxMicros.get();
+  }
+
+  /**
+   * Returns an upper bound for the given percentile of the samples.
+   *
+   * @param percentile
+   *     the percentile between 0 and 100
+   *
+   * @return upper bound in microseconds, or 0 if there are no samples
+   */
+  public long getPercentileMicros( double percentile ) {
+    long n = this.count.get();
+    if ( n == 0 ) {
+      return 0;
+    }
+
+    long rank = ( long ) Math.ceil( n * percentile / 100.0 );
+    long seen = 0;
+    for ( int i = 0; i < BUCKET_COUNT; i++ ) {
+      seen += this.buckets.get( i );
+      if ( seen >= rank ) {
+        return Math.min( upperBoundOf( i ), this.maxMicros.get() );
+      }
+    }
+    return this.maxMicros.get();
+  }
+
+  @Override
+  public String toString() {
+    return this.name + ": n=" + this.getCount() +
+           " mean=" + this.getMeanMicros() + "us" +
+           " p50<=" + this.getPercentileMicros( 50 ) + "us" +
+           " p90<=" + this.getPercentileMicros( 90 ) + "us" +
+           " p99<=" + this.getPercentileMicros( 99 ) + "us" +
+           " max=" + this.getMaxMicros() + "us";
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Private
+  //==========================================================================//
+  private static int bucketOf( long micros ) {
+    if ( micros < SUB_BUCKETS ) {
+      return ( int ) micros;
+    }
+
+    // Power of two below the value, and the linear bucket within it from
+    // the bits following the highest one
+    int exponent = 63 - Long.numberOfLeadingZeros( micros );
+    if ( exponent > MAX_EXPONENT ) {
+      return BUCKET_COUNT - 1;
+    }
+    int sub = ( int ) ( micros >>> ( exponent - SUB_BUCKET_BITS ) )
+              - SUB_BUCKETS;
+    return ( exponent - SUB_BUCKET_BITS + 1 ) * SUB_BUCKETS + sub;
+  }
+
+  /** Returns the smallest value above the bucket. */
+  private static long upperBoundOf( int bucket ) {
+    if ( bucket < SUB_BUCKETS ) {
+      return bucket + 1;
+    }
+    if ( bucket == BUCKET_COUNT - 1 ) {
+      return Long.MAX_VALUE;
+    }
+
+    int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+    int sub = bucket % SUB_BUCKETS;
+    return ( long ) ( SUB_BUCKETS + sub + 1 )
+           << ( exponent - SUB_BUCKET_BITS );
+  }
+  //==========================================================================//
+}
@@ -0,0 +1,273 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p> Registry of the runtime metrics of the app: {@link Counter}s, {@link
+ * Gauge}s, {@link LatencyHistogram}s and {@link EventLog}s by name. Names
+ * are dot separated paths, e.g., {@code db.queue.background_ingest}. </p>
+ * <p/> <p> Getting a metric creates it on first use. The hot paths keep the
+ * metrics they record to in fields, so recording never looks up the
+ * registry, and the metrics themselves are lock-free. The registry can be
+ * dumped as text for the diagnostics screen or as JSON. </p> <p/> <p>
+ * Doesn't depend on Android, so that the instrumented code can run on a
+ * plain JVM. Thread safe. </p>
+ *
+ * @author teemuk
+ */
+public final class MetricsRegistry {
+
+  //==========================================================================//
+  // Globals
+  //==========================================================================//
+  private static final MetricsRegistry INSTANCE = new MetricsRegistry();
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Instance vars
+  //==========================================================================//
+  private final ConcurrentMap<String, Object> metrics
+      = new ConcurrentHashMap<>();
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // API
+  //==========================================================================//
+  /**
+   * Returns the registry of the process.
+   *
+   * @return the registry
+   */
+  public static MetricsRegistry get() {
+    return INSTANCE;
+  }
+
+  /**
+   * Returns the counter with the given name, creating it if needed.
+   *
+   * @param name
+   *     name of the counter
+   * @return the counter
+   * @throws IllegalArgumentException
+   *     if another kind of metric has the name
+   */
+  public Counter counter( String name ) {
+    Object metric = this.metrics.get( name );
+    if ( metric == null ) {
+      Counter counter = new Counter( name );
+      metric = this.metrics.putIfAbsent( name, counter );
+      if ( metric == null ) {
+        return counter;
+      }
+    }
+    return cast( name, metric, Counter.class );
+  }
+
+  /**
+   * Returns the histogram with the given name, creating it if needed.
+   *
+   * @param name
+   *     name of the histogram
+   * @return the histogram
+   * @throws IllegalArgumentException
+   *     if another kind of metric has the name
+   */
+  public LatencyHistogram histogram( String name ) {
+    Object metric = this.metrics.get( name );
+    if ( metric == null ) {
+      LatencyHistogram histogram = new LatencyHistogram( name );
+      metric = this.metrics.putIfAbsent( name, histogram );
+      if ( metric == null ) {
+        return histogram;
+      }
+    }
+    return cast( name, metric, LatencyHistogram.class );
+  }
+
+  /**
+   * Returns the event log with the given name, creating it if needed.
+   *
+   * @param name
+   *     name of the log
+   * @return the log
+   * @throws IllegalArgumentException
+   *     if another kind of metric has the name
+   */
+  public EventLog eventLog( String name ) {
+    Object metric = this.metrics.get( name );
+    if ( metric == null ) {
+      EventLog log = new EventLog( name );
+      metric = this.metrics.putIfAbsent( name, log );
+      if ( metric == null ) {
+        return log;
+      }
+    }
+    return cast( name, metric, EventLog.class );
+  }
+
+  /**
+   * Registers a gauge, replacing any gauge with the same name. Gauges
+   * usually read the state of an object, which should remove its gauges
+   * with {@link #remove} once it is gone.
+   *
+   * @param name
+   *     name of the gauge
+   * @param gauge
+   *     the gauge
+   * @throws IllegalArgumentException
+   *     if another kind of metric has the name
+   */
+  public void gauge( String name, Gauge gauge ) {
+    Object previous = this.metrics.get( name );
+    if ( previous != null && !( previous instanceof Gauge ) ) {
+      throw new IllegalArgumentException( "Metric '" + name
+                                          + "' is not a gauge." );
+    }
+    this.metrics.put( name, gauge );
+  }
+
+  /**
+   * Removes a metric.
+   *
+   * @param name
+   *     name of the metric
+   */
+  public void remove( String name ) {
+    this.metrics.remove( name );
+  }
+
+  /**
+   * Returns the metrics as text, one per line in name order, for showing on
+   * screen.
+   *
+   * @return the metrics
+   */
+  public String toText() {
+    StringBuilder text = new StringBuilder();
+    for ( Map.Entry<String, Object> entry : this.sorted().entrySet() ) {
+      Object metric = entry.getValue();
+      if ( metric instanceof Gauge ) {
+        text.append( entry.getKey() ).append( ": " )
+            .append( ( ( Gauge ) metric ).read() );
+      } else {
+        text.append( metric.toString() );
+      }
+      text.append( '\n' );
+    }
+    return text.toString();
+  }
+
+  /**
+   * Writes the metrics as a JSON object with the time of the dump in
+   * milliseconds since the epoch and the metrics by name. Counters and
+   * gauges are numbers, histograms objects with the count and the
+   * percentiles in microseconds, and event logs arrays of objects with the
+   * time and the text.
+   *
+   * @param out
+   *     writer to write to, not closed
+   * @throws IOException
+   *     if writing fails
+   */
+  public void writeJson( Writer out )
+      throws IOException {
+    out.write( "{\n  \"time\": " + System.currentTimeMillis() + ",\n" );
+    out.write( "  \"metrics\": {" );
+    boolean first = true;
+    for ( Map.Entry<String, Object> entry : this.sorted().entrySet() ) {
+      out.write( ( first ) ? ( "\n    " ) : ( ",\n    " ) );
+      first = false;
+      writeString( out, entry.getKey() );
+      out.write( ": " );
+
+      Object metric = entry.getValue();
+      if ( metric instanceof Counter ) {
+        out.write( Long.toString( ( ( Counter ) metric ).get() ) );
+      } else if ( metric instanceof Gauge ) {
+        out.write( Long.toString( ( ( Gauge ) metric ).read() ) );
+      } else if ( metric instanceof EventLog ) {
+        out.write( "[" );
+        boolean firstEntry = true;
+        for ( EventLog.Entry logEntry : ( ( EventLog ) metric ).getEntries() ) {
+          out.write( ( firstEntry ) ? ( "\n      " ) : ( ",\n      " ) );
+          firstEntry = false;
+          out.write( "{\"time\": " + logEntry.time + ", \"text\": " );
+          writeString( out, logEntry.text );
+          out.write( "}" );
+        }
+        out.write( "]" );
+      } else {
+        LatencyHistogram histogram = ( LatencyHistogram ) metric;
+        out.write( "{\"count\": " + histogram.getCount()
+                   + ", \"mean_us\": " + histogram.getMeanMicros()
+                   + ", \"p50_us\": " + histogram.getPercentileMicros( 50 )
+                   + ", \"p90_us\": " + histogram.getPercentileMicros( 90 )
+                   + ", \"p99_us\": " + histogram.getPercentileMicros( 99 )
+                   + ", \"p999_us\": "
+                   + histogram.getPercentileMicros( 99.9 )
+                   + ", \"max_us\": " + histogram.getMaxMicros() + "}" );
+      }
+    }
+    out.write( "\n  }\n}\n" );
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Private
+  //==========================================================================//
+  private SortedMap<String, Object> sorted() {
+    return new TreeMap<>( this.metrics );
+  }
+
+  private static <T> T cast( String name, Object metric, Class<T> type ) {
+    if ( !type.isInstance( metric ) ) {
+      throw new IllegalArgumentException( "Metric '" + name + "' is not a "
+                                          + type.getSimpleName() + "." );
+    }
+    return type.cast( metric );
+  }
+
+  private static void writeString( Writer out, String value )
+      throws IOException {
+    out.write( '"' );
+    for ( int i = 0; i < value.length(); i++ ) {
+      char c = value.charAt( i );
+      if ( c == '"' || c == '\\' ) {
+        out.write( '\\' );
+        out.write( c );
+      } else if ( c < 0x20 ) {
+        out.write( String.format( "\\u%04x", ( int ) c ) );
+      } else {
+        out.write( c );
+      }
+    }
+    out.write( '"' );
+  }
+  //==========================================================================//
+}
@@ -0,0 +1,206 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.metrics;
+
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p> Records the phases of the application startup. Synchronous phases are
+ * also emitted as systrace sections so they show up in a system trace next
+ * to the framework's own sections, asynchronous phases that start on one
+ * thread and end on another are only recorded here. </p> <p/> <p> Phases are
+ * timed against the process start time set with {@link #setOrigin}. They are
+ * logged as they are recorded, and {@link #writeTo} writes them all to a
+ * file which can be pulled from the device. Only the first
+ * {@link #MAX_PHASES} phases are kept, so recording phases that repeat after
+ * startup costs nothing. </p> <p/> <p> Can be used from any thread. </p>
+ *
+ * @author teemuk
+ */
+public final class StartupTrace {
+  private StartupTrace() {}
+
+  private static final String TAG = StartupTrace.class.getSimpleName();
+
+  //==========================================================================//
+  // Constants
+  //==========================================================================//
+  /** Maximum number of phases kept. */
+  public static final int MAX_PHASES = 64;
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Globals
+  //==========================================================================//
+  /** Process start in {@link SystemClock#elapsedRealtimeNanos}. */
+  private static volatile long origin = SystemClock.elapsedRealtimeNanos();
+  private static final List<Phase> phases = new ArrayList<>( MAX_PHASES );
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // API
+  //==========================================================================//
+  /**
+   * Sets the time that phases are timed against.
+   *
+   * @param elapsedRealtimeMillis
+   *     process start time in {@link SystemClock#elapsedRealtime}
+   */
+  public static void setOrigin( long elapsedRealtimeMillis ) {
+    origin = elapsedRealtimeMillis * 1000000;
+  }
+
+  /**
+   * Returns the current time for starting a phase.
+   *
+   * @return the time in {@link SystemClock#elapsedRealtimeNanos}
+   */
+  public static long now() {
+    return SystemClock.elapsedRealtimeNanos();
+  }
+
+  /**
+   * Starts a synchronous phase and the matching systrace section. Must be
+   * followed by {@link #endSection} on the same thread.
+   *
+   * @param name
+   *     name of the phase
+   * @return the start time to pass to {@link #endSection}
+   */
+  public static long beginSection( String name ) {
+    Trace.beginSection( name );
+    return now();
+  }
+
+  /**
+   * Ends a phase started with {@link #beginSection}.
+   *
+   * @param name
+   *     name of the phase
+   * @param start
+   *     the start time returned by {@link #beginSection}
+   */
+  public static void endSection( String name, long start ) {
+    Trace.endSection();
+    record( name, start );
+  }
+
+  /**
+   * Records a phase that started at the given time and ends now.
+   *
+   * @param name
+   *     name of the phase
+   * @param start
+   *     the start time from {@link #now}
+   */
+  public static void record( String name, long start ) {
+    add( new Phase( name, Thread.currentThread().getName(), start, now() ) );
+  }
+
+  /**
+   * Records a point in time, e.g., the first frame.
+   *
+   * @param name
+   *     name of the milestone
+   */
+  public static void mark( String name ) {
+    long time = now();
+    add( new Phase( name, Thread.currentThread().getName(), time, time ) );
+  }
+
+  /**
+   * Writes the recorded phases into a file, one per line, replacing the
+   * file. Does file I/O, so should not be called from the GUI thread.
+   *
+   * @param file
+   *     the file to write to
+   * @throws IOException
+   *     if writing fails
+   */
+  public static void writeTo( File file )
+      throws IOException {
+    List<Phase> copy;
+    synchronized ( phases ) {
+      copy = new ArrayList<>( phases );
+    }
+
+    // One writer at a time so concurrent writes don't interleave
+    synchronized ( StartupTrace.class ) {
+      try ( Writer out = new FileWriter( file ) ) {
+        out.write( "# phase\tthread\tstart_ms\tduration_ms\n" );
+        for ( Phase phase : copy ) {
+          out.write( phase.toString() );
+          out.write( '\n' );
+        }
+      }
+    }
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Private
+  //==========================================================================//
+  private static void add( Phase phase ) {
+    synchronized ( phases ) {
+      if ( phases.size() >= MAX_PHASES ) {
+        return;
+      }
+      phases.add( phase );
+    }
+    Log.i( TAG, phase.toString() );
+  }
+
+  private static final class Phase {
+    final String name;
+    final String thread;
+    final long start;
+    final long end;
+
+    Phase( String name, String thread, long start, long end ) {
+      this.name = name;
+      this.thread = thread;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    public String toString() {
+      return this.name + "\t" + this.thread
+             + "\t" + millis( this.start - origin )
+             + "\t" + millis( this.end - this.start );
+    }
+
+    /** Milliseconds with one decimal. */
+    private static String millis( long nanos ) {
+      return String.valueOf( ( nanos / 100000 ) / 10.0 );
+    }
+  }
+  //==========================================================================//
+}
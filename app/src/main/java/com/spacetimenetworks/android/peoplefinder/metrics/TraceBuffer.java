@@ -0,0 +1,209 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.metrics;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p> Ring buffer of trace events for the hot paths, in place of building log
+ * lines. An event is a {@link TraceEvent}, the thread, a timestamp and two
+ * numbers, written into a preallocated array of longs, so recording doesn't
+ * allocate or format anything. Only the latest {@link #CAPACITY} events are
+ * kept. </p> <p/> <p> Recording is disabled until {@link #setEnabled} is
+ * called, and then costs a read of a flag. The buffer is allocated when
+ * tracing is first enabled. {@link #writeTo} dumps the events into a text
+ * file for post-mortem analysis. </p> <p/> <p> Can be recorded to from any
+ * thread without locking. An event being written while the buffer is dumped
+ * may show up garbled in the dump. Doesn't depend on Android. </p>
+ *
+ * @author teemuk
+ */
+public final class TraceBuffer {
+  private TraceBuffer() {}
+
+  //==========================================================================//
+  // Constants
+  //==========================================================================//
+  /** Number of events kept, a power of two. */
+  public static final int CAPACITY = 1 << 14;
+  /** Longs per event: thread and event, time, and the two values. */
+  private static final int FIELDS = 4;
+  private static final int EVENT_BITS = 16;
+  private static final TraceEvent[] EVENTS = TraceEvent.values();
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Globals
+  //==========================================================================//
+  private static volatile boolean enabled;
+  /** Allocated before enabled is first set. */
+  private static long[] events;
+  /** Sequence number of the next event. */
+  private static final AtomicLong next = new AtomicLong();
+  /** Names referred to by index in event values, e.g., task classes. */
+  private static final List<String> names = new ArrayList<>();
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // API
+  //==========================================================================//
+  /**
+   * Enables or disables recording. Events recorded earlier are kept.
+   *
+   * @param enable
+   *     whether to record events
+   */
+  public static synchronized void setEnabled( boolean enable ) {
+    if ( enable && events == null ) {
+      events = new long[ CAPACITY * FIELDS ];
+    }
+    enabled = enable;
+  }
+
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Returns an index for a name that can be recorded as an event value, and
+   * is resolved back to the name in the dump. Meant to be called once per
+   * name and the index kept, not on every event.
+   *
+   * @param name
+   *     the name
+   * @return index of the name
+   */
+  public static int indexOf( String name ) {
+    synchronized ( names ) {
+      int index = names.indexOf( name );
+      if ( index == -1 ) {
+        index = names.size();
+        names.add( name );
+      }
+      return index;
+    }
+  }
+
+  /**
+   * Records an event without values.
+   *
+   * @param event
+   *     the event
+   */
+  public static void record( TraceEvent event ) {
+    if ( enabled ) {
+      write( event, 0, 0 );
+    }
+  }
+
+  /**
+   * Records an event.
+   *
+   * @param event
+   *     the event
+   * @param a
+   *     first value, see the event for its meaning
+   * @param b
+   *     second value
+   */
+  public static void record( TraceEvent event, long a, long b ) {
+    if ( enabled ) {
+      write( event, a, b );
+    }
+  }
+
+  /**
+   * Writes the events into a file, oldest first, replacing the file. The
+   * times are milliseconds before the dump. Does file I/O, so should not be
+   * called from the GUI thread.
+   *
+   * @param file
+   *     the file to write to
+   * @throws IOException
+   *     if writing fails
+   */
+  public static void writeTo( File file )
+      throws IOException {
+    long[] copy;
+    long end;
+    long now;
+    synchronized ( TraceBuffer.class ) {
+      if ( events == null ) {
+        copy = new long[ 0 ];
+        end = 0;
+      } else {
+        end = next.get();
+        copy = events.clone();
+      }
+      now = System.nanoTime();
+    }
+    List<String> nameTable;
+    synchronized ( names ) {
+      nameTable = new ArrayList<>( names );
+    }
+
+    try ( Writer out = new FileWriter( file ) ) {
+      out.write( "# wall_clock_ms " + System.currentTimeMillis() + "\n" );
+      for ( int i = 0; i < nameTable.size(); i++ ) {
+        out.write( "# name " + i + " " + nameTable.get( i ) + "\n" );
+      }
+      out.write( "# seq\tms_ago\tthread\tevent\ta\tb\n" );
+
+      for ( long seq = Math.max( 0, end - CAPACITY ); seq < end; seq++ ) {
+        int i = ( int ) ( seq & ( CAPACITY - 1 ) ) * FIELDS;
+        long header = copy[ i ];
+        int event = ( int ) ( header & ( ( 1 << EVENT_BITS ) - 1 ) );
+        out.write( seq + "\t"
+                   + millis( now - copy[ i + 1 ] ) + "\t"
+                   + ( header >>> EVENT_BITS ) + "\t"
+                   + ( ( event < EVENTS.length )
+                       ? ( EVENTS[ event ].name() ) : ( "?" ) ) + "\t"
+                   + copy[ i + 2 ] + "\t" + copy[ i + 3 ] + "\n" );
+      }
+    }
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Private
+  //==========================================================================//
+  private static void write( TraceEvent event, long a, long b ) {
+    long[] buffer = events;
+    int i = ( int ) ( next.getAndIncrement() & ( CAPACITY - 1 ) ) * FIELDS;
+    buffer[ i ] = ( Thread.currentThread().getId() << EVENT_BITS )
+                  | event.ordinal();
+    buffer[ i + 1 ] = System.nanoTime();
+    buffer[ i + 2 ] = a;
+    buffer[ i + 3 ] = b;
+  }
+
+  /** Milliseconds with three decimals. */
+  private static String millis( long nanos ) {
+    return String.valueOf( ( nanos / 1000 ) / 1000.0 );
+  }
+  //==========================================================================//
+}
@@ -0,0 +1,63 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.metrics;
+
+/**
+ * Events recorded in the {@link TraceBuffer}, with the meaning of the two
+ * values recorded with each.
+ *
+ * @author teemuk
+ */
+public enum TraceEvent {
+  /** A message was delivered by the router, no values. */
+  MESSAGE_RECEIVED,
+  /** A received message was decoded, a: record bytes, b: notes. */
+  MESSAGE_HANDLED,
+  /** A record was published, a: record bytes, b: notes. */
+  RECORD_PUBLISHED,
+  /** A list adapter got new items, a: new count, b: previous count. */
+  LIST_ITEMS_SET,
+  /**
+   * A database task ran, a: name index of the task class, b: run time in
+   * nanoseconds. Recorded when the task ends.
+   */
+  TASK_RUN,
+  /**
+   * A database task has run longer than the stall threshold, a: name index
+   * of the task class, b: time it has run in milliseconds.
+   */
+  TASK_STALLED,
+  /**
+   * A producer was blocked on a full bounded database queue, a: ordinal of
+   * the priority, b: time it was blocked in nanoseconds. Recorded when the
+   * producer gets room in the queue.
+   */
+  QUEUE_FULL,
+  /**
+   * The un-routed records were queried for publishing, a: records found, no
+   * b.
+   */
+  UNROUTED_QUERIED,
+  /**
+   * A page of persons was added to the list window, a: rows in the page, b:
+   * rows in the window.
+   */
+  PAGE_LOADED,
+  /** Search results were shown in the list, a: results, no b. */
+  SEARCH_SHOWN
+}
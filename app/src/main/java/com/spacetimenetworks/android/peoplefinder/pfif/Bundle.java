@@ -0,0 +1,371 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.pfif;
+
+import com.spacetimenetworks.android.peoplefinder.database.DataModel;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * <p> The bundle file format for carrying records between disconnected
+ * networks, and its binary encoding. A bundle holds the persons with their
+ * notes, as in {@link DataModel.SerializablePerson}, and their photos. </p>
+ * <p/> <p> The file starts with a fixed size header that gives the location
+ * of the index at the end of the file. Between them are the batches, each a
+ * deflated block of persons and their notes, and after each batch the photos
+ * of its persons as they are. The index lists the batches, then the record
+ * IDs of the persons and notes of each batch in batch order with the
+ * location of the photo, so a reader can find the records it already has
+ * without decoding the batches. All numbers are big endian: </p>
+ * <pre>
+ * header:  magic, version, batches, persons, notes, photos (int),
+ *          index offset, index length (long)
+ * batch:   deflate( persons (int), { person, note count (varint),
+ *          { note } } )
+ * index:   { offset (long), length, raw length, persons (int) } per batch,
+ *          { person ID, note count (varint), { note ID },
+ *          photo offset (long, -1 if none), photo length (int) } per person
+ * </pre>
+ * <p> A record is a bit mask (varint) of the fields that are present,
+ * followed by the present fields in the order of {@link #PERSON_TYPES} or
+ * {@link #NOTE_TYPES}. Strings are a varint byte length and UTF-8, numbers
+ * are varints and booleans single bytes. </p>
+ *
+ * @author teemuk
+ */
+final class Bundle {
+  private Bundle() {}
+
+  //==========================================================================//
+  // Constants
+  //==========================================================================//
+  /** File name extension of bundles. */
+  static final String EXTENSION = ".pfb";
+  /** First bytes of a bundle, "PFB1". */
+  static final int MAGIC = 0x50464231;
+  static final int VERSION = 1;
+  /** Size of the header in bytes. */
+  static final int HEADER_SIZE = 6 * 4 + 2 * 8;
+  /** Size of an index entry of a batch in bytes. */
+  static final int BATCH_INFO_SIZE = 8 + 3 * 4;
+
+  /**
+   * Types of the fields of a person in the order of the {@link
+   * DataModel.Person} constructor: S for string, L for number.
+   */
+  static final String PERSON_TYPES = "SLLSSSSLSSSSSSSSLSSSSSSSS";
+  /** Types of the fields of a note, B for boolean. */
+  static final String NOTE_TYPES = "SSSLSSSLBSSSSSS";
+
+  private static final Charset UTF_8 = Charset.forName( "UTF-8" );
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Header and index
+  //==========================================================================//
+  /** The header of a bundle. */
+  static final class Header {
+    int batches;
+    int persons;
+    int notes;
+    int photos;
+    long indexOffset;
+    long indexLength;
+
+    void write( ByteBuffer out ) {
+      out.putInt( MAGIC );
+      out.putInt( VERSION );
+      out.putInt( this.batches );
+      out.putInt( this.persons );
+      out.putInt( this.notes );
+      out.putInt( this.photos );
+      out.putLong( this.indexOffset );
+      out.putLong( this.indexLength );
+    }
+
+    static Header read( ByteBuffer in ) throws IOException {
+      if ( in.remaining() < HEADER_SIZE || in.getInt() != MAGIC ) {
+        throw new IOException( "Not a bundle file." );
+      }
+      int version = in.getInt();
+      if ( version != VERSION ) {
+        throw new IOException( "Unsupported bundle version " + version + "." );
+      }
+
+      Header header = new Header();
+      header.batches = in.getInt();
+      header.persons = in.getInt();
+      header.notes = in.getInt();
+      header.photos = in.getInt();
+      header.indexOffset = in.getLong();
+      header.indexLength = in.getLong();
+      return header;
+    }
+  }
+
+  /** Index entry of a batch. */
+  static final class BatchInfo {
+    /** Offset of the deflated batch in the file. */
+    final long offset;
+    /** Length of the deflated batch. */
+    final int length;
+    /** Length of the batch once inflated. */
+    final int rawLength;
+    /** Number of persons in the batch. */
+    final int persons;
+
+    BatchInfo( long offset, int length, int rawLength, int persons ) {
+      this.offset = offset;
+      this.length = length;
+      this.rawLength = rawLength;
+      this.persons = persons;
+    }
+
+    void write( DataOutput out ) throws IOException {
+      out.writeLong( this.offset );
+      out.writeInt( this.length );
+      out.writeInt( this.rawLength );
+      out.writeInt( this.persons );
+    }
+
+    static BatchInfo read( ByteBuffer in ) {
+      return new BatchInfo( in.getLong(), in.getInt(), in.getInt(),
+          in.getInt() );
+    }
+  }
+
+  /** Index entry of a person. */
+  static final class Entry {
+    final String personID;
+    final String[] noteIDs;
+    /** Offset of the photo in the file, or -1 if there is none. */
+    final long photoOffset;
+    final int photoLength;
+
+    Entry( String personID, String[] noteIDs, long photoOffset,
+           int photoLength ) {
+      this.personID = personID;
+      this.noteIDs = noteIDs;
+      this.photoOffset = photoOffset;
+      this.photoLength = photoLength;
+    }
+
+    static void write( DataOutput out, String personID,
+                       List<DataModel.Note> notes, long photoOffset,
+                       int photoLength ) throws IOException {
+      writeString( out, personID );
+      writeVarLong( out, notes.size() );
+      for ( DataModel.Note note : notes ) {
+        writeString( out, note.metadata.recordID );
+      }
+      out.writeLong( photoOffset );
+      out.writeInt( photoLength );
+    }
+
+    static Entry read( ByteBuffer in ) {
+      String personID = readString( in );
+      String[] noteIDs = new String[ ( int ) readVarLong( in ) ];
+      for ( int i = 0; i < noteIDs.length; i++ ) {
+        noteIDs[ i ] = readString( in );
+      }
+      return new Entry( personID, noteIDs, in.getLong(), in.getInt() );
+    }
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Records
+  //==========================================================================//
+  static void writePerson( DataOutput out, DataModel.Person person )
+      throws IOException {
+    DataModel.Person.Metadata metadata = person.metadata;
+    DataModel.Person.Identity identity = person.identity;
+    writeValues( out, PERSON_TYPES, new Object[]{
+        metadata.recordID,
+        metadata.entryDate,
+        metadata.expiryDate,
+        metadata.authorName,
+        metadata.authorEmail,
+        metadata.authorPhone,
+        metadata.sourceName,
+        metadata.sourceDate,
+        metadata.sourceUrl,
+        identity.name.fullName,
+        identity.name.givenName,
+        identity.name.familyName,
+        identity.name.alternateNames,
+        identity.description,
+        identity.sex,
+        identity.dateOfBirth,
+        identity.age,
+        identity.home.street,
+        identity.home.neighborhood,
+        identity.home.city,
+        identity.home.state,
+        identity.home.zip,
+        identity.home.country,
+        identity.photoUrl,
+        identity.profileUrls } );
+  }
+
+  static DataModel.Person readPerson( ByteBuffer in ) {
+    Object[] v = readValues( in, PERSON_TYPES );
+    return new DataModel.Person(
+        ( String ) v[ 0 ], ( Long ) v[ 1 ], ( Long ) v[ 2 ],
+        ( String ) v[ 3 ], ( String ) v[ 4 ], ( String ) v[ 5 ],
+        ( String ) v[ 6 ], ( Long ) v[ 7 ], ( String ) v[ 8 ],
+        ( String ) v[ 9 ], ( String ) v[ 10 ], ( String ) v[ 11 ],
+        ( String ) v[ 12 ], ( String ) v[ 13 ], ( String ) v[ 14 ],
+        ( String ) v[ 15 ], ( Long ) v[ 16 ], ( String ) v[ 17 ],
+        ( String ) v[ 18 ], ( String ) v[ 19 ], ( String ) v[ 20 ],
+        ( String ) v[ 21 ], ( String ) v[ 22 ], ( String ) v[ 23 ],
+        ( String ) v[ 24 ] );
+  }
+
+  static void writeNote( DataOutput out, DataModel.Note note )
+      throws IOException {
+    DataModel.Note.Metadata metadata = note.metadata;
+    DataModel.Note.Status status = note.status;
+    writeValues( out, NOTE_TYPES, new Object[]{
+        metadata.recordID,
+        metadata.personID,
+        metadata.linkedPersonID,
+        metadata.entryDate,
+        metadata.authorName,
+        metadata.authorEmail,
+        metadata.authorPhone,
+        metadata.sourceDate,
+        status.authorMadeContact,
+        status.status,
+        status.emailOfFoundPerson,
+        status.phoneOfFoundPerson,
+        status.lastKnownLocation,
+        status.text,
+        status.photoUrl } );
+  }
+
+  static DataModel.Note readNote( ByteBuffer in ) {
+    Object[] v = readValues( in, NOTE_TYPES );
+    return new DataModel.Note(
+        ( String ) v[ 0 ], ( String ) v[ 1 ], ( String ) v[ 2 ],
+        ( Long ) v[ 3 ], ( String ) v[ 4 ], ( String ) v[ 5 ],
+        ( String ) v[ 6 ], ( Long ) v[ 7 ], ( Boolean ) v[ 8 ],
+        ( String ) v[ 9 ], ( String ) v[ 10 ], ( String ) v[ 11 ],
+        ( String ) v[ 12 ], ( String ) v[ 13 ], ( String ) v[ 14 ] );
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Encoding
+  //==========================================================================//
+  static void writeVarLong( DataOutput out, long value ) throws IOException {
+    while ( ( value & ~0x7FL ) != 0 ) {
+      out.writeByte( ( int ) ( ( value & 0x7F ) | 0x80 ) );
+      value >>>= 7;
+    }
+    out.writeByte( ( int ) value );
+  }
+
+  static long readVarLong( ByteBuffer in ) {
+    long value = 0;
+    for ( int shift = 0; ; shift += 7 ) {
+      byte b = in.get();
+      value |= ( long ) ( b & 0x7F ) << shift;
+      if ( ( b & 0x80 ) == 0 ) {
+        return value;
+      }
+    }
+  }
+
+  static void writeString( DataOutput out, String value ) throws IOException {
+    byte[] bytes = value.getBytes( UTF_8 );
+    writeVarLong( out, bytes.length );
+    out.write( bytes );
+  }
+
+  static String readString( ByteBuffer in ) {
+    int length = ( int ) readVarLong( in );
+    String value;
+    if ( in.hasArray() ) {
+      value = new String( in.array(), in.arrayOffset() + in.position(),
+          length, UTF_8 );
+      in.position( in.position() + length );
+    } else {
+      byte[] bytes = new byte[ length ];
+      in.get( bytes );
+      value = new String( bytes, UTF_8 );
+    }
+    return value;
+  }
+
+  private static void writeValues( DataOutput out, String types,
+                                   Object[] values ) throws IOException {
+    long present = 0;
+    for ( int i = 0; i < values.length; i++ ) {
+      if ( values[ i ] != null ) {
+        present |= 1L << i;
+      }
+    }
+    writeVarLong( out, present );
+
+    for ( int i = 0; i < values.length; i++ ) {
+      if ( values[ i ] == null ) {
+        continue;
+      }
+      switch ( types.charAt( i ) ) {
+        case 'S':
+          writeString( out, ( String ) values[ i ] );
+          break;
+        case 'L':
+          writeVarLong( out, ( Long ) values[ i ] );
+          break;
+        default:
+          out.writeByte( ( ( Boolean ) values[ i ] ) ? ( 1 ) : ( 0 ) );
+      }
+    }
+  }
+
+  private static Object[] readValues( ByteBuffer in, String types ) {
+    long present = readVarLong( in );
+    Object[] values = new Object[ types.length() ];
+    for ( int i = 0; i < values.length; i++ ) {
+      if ( ( present & ( 1L << i ) ) == 0 ) {
+        continue;
+      }
+      switch ( types.charAt( i ) ) {
+        case 'S':
+          values[ i ] = readString( in );
+          break;
+        case 'L':
+          values[ i ] = readVarLong( in );
+          break;
+        default:
+          values[ i ] = ( in.get() != 0 );
+      }
+    }
+    return values;
+  }
+  //==========================================================================//
+}
@@ -0,0 +1,323 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.pfif;
+
+import com.spacetimenetworks.android.peoplefinder.database.DataModel;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * <p> Writes a bundle file batch by batch, see {@link Bundle} for the
+ * format. The index is spooled into a temporary file while the batches are
+ * written and appended at the end, so memory use doesn't depend on the size
+ * of the bundle. The bundle is written into a temporary file that replaces
+ * the target only in {@link #finish}, closing the output before that
+ * deletes the partial files. </p> <p/> <p> Doesn't depend on Android, so
+ * bundles can also be written on a plain JVM, e.g., from generated data.
+ * </p>
+ *
+ * @author teemuk
+ */
+public final class BundleOutput
+    implements Closeable {
+  //==========================================================================//
+  // Constants
+  //==========================================================================//
+  private static final String TMP_SUFFIX = ".tmp";
+  private static final String INDEX_SUFFIX = ".idx";
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Instance vars
+  //==========================================================================//
+  private final File target;
+  private final File tmp;
+  private final File spool;
+  private final FileOutputStream file;
+  private final CountingOutputStream counter;
+  private final DataOutputStream out;
+  private final DataOutputStream index;
+
+  private final Bundle.Header header = new Bundle.Header();
+  private final List<Bundle.BatchInfo> batches = new ArrayList<>();
+  private final Deflater deflater = new Deflater( Deflater.BEST_SPEED );
+  private final ByteArrayOutputStream raw
+      = new ByteArrayOutputStream( 256 * 1024 );
+  private final ByteArrayOutputStream deflated
+      = new ByteArrayOutputStream( 64 * 1024 );
+  private boolean closed = false;
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // API
+  //==========================================================================//
+  /**
+   * Starts writing a bundle.
+   *
+   * @param target
+   *     bundle file to write, replaced if it exists once finished
+   * @throws IOException
+   *     if the temporary files can't be created
+   */
+  public BundleOutput( File target )
+      throws IOException {
+    this.target = target;
+    this.tmp = new File( target.getPath() + TMP_SUFFIX );
+    this.spool = new File( target.getPath() + INDEX_SUFFIX + TMP_SUFFIX );
+
+    this.file = new FileOutputStream( this.tmp );
+    this.counter = new CountingOutputStream(
+        new BufferedOutputStream( this.file, 64 * 1024 ) );
+    this.out = new DataOutputStream( this.counter );
+    DataOutputStream index = null;
+    try {
+      this.out.write( new byte[ Bundle.HEADER_SIZE ] );
+      index = new DataOutputStream( new BufferedOutputStream(
+          new FileOutputStream( this.spool ), 64 * 1024 ) );
+    } catch ( IOException e ) {
+      this.file.close();
+      this.tmp.delete();
+      throw e;
+    }
+    this.index = index;
+  }
+
+  /**
+   * Writes a batch of persons with their notes and photos. Every note must
+   * belong to one of the persons, and notes of a person are kept in the
+   * given order.
+   *
+   * @param persons
+   *     persons of the batch, photos are read from their photo paths
+   * @param notes
+   *     notes of the persons
+   * @throws IOException
+   *     if writing fails
+   */
+  public void writeBatch( List<DataModel.LocalPerson> persons,
+                          List<DataModel.LocalNote> notes )
+      throws IOException {
+    Map<String, List<DataModel.Note>> notesByPerson = groupByPerson( notes );
+
+    // Batch
+    this.raw.reset();
+    DataOutputStream batch = new DataOutputStream( this.raw );
+    batch.writeInt( persons.size() );
+    for ( DataModel.LocalPerson person : persons ) {
+      List<DataModel.Note> personNotes = notesOf( notesByPerson,
+          person.person.metadata.recordID );
+      Bundle.writePerson( batch, person.person );
+      Bundle.writeVarLong( batch, personNotes.size() );
+      for ( DataModel.Note note : personNotes ) {
+        Bundle.writeNote( batch, note );
+      }
+      this.header.notes += personNotes.size();
+    }
+    batch.flush();
+
+    this.deflater.reset();
+    this.deflated.reset();
+    DeflaterOutputStream deflating = new DeflaterOutputStream( this.deflated,
+        this.deflater, 64 * 1024 );
+    this.raw.writeTo( deflating );
+    deflating.finish();
+
+    this.batches.add( new Bundle.BatchInfo( this.counter.count,
+        this.deflated.size(), this.raw.size(), persons.size() ) );
+    this.deflated.writeTo( this.out );
+
+    // Photos after the batch
+    for ( DataModel.LocalPerson person : persons ) {
+      String personID = person.person.metadata.recordID;
+      File photo = ( person.photoPath == null )
+          ? ( null ) : ( new File( person.photoPath ) );
+      long photoOffset = -1;
+      int photoLength = 0;
+      if ( photo != null && photo.isFile() ) {
+        photoOffset = this.counter.count;
+        try ( InputStream in = new FileInputStream( photo ) ) {
+          photoLength = ( int ) copy( in, this.out );
+        }
+        this.header.photos++;
+      }
+      Bundle.Entry.write( this.index, personID,
+          notesOf( notesByPerson, personID ), photoOffset, photoLength );
+    }
+
+    this.header.persons += persons.size();
+  }
+
+  /**
+   * Writes the index and the header, and moves the bundle in place of the
+   * target.
+   *
+   * @throws IOException
+   *     if writing fails
+   */
+  public void finish()
+      throws IOException {
+    // Index
+    this.index.close();
+    this.header.batches = this.batches.size();
+    this.header.indexOffset = this.counter.count;
+    for ( Bundle.BatchInfo batch : this.batches ) {
+      batch.write( this.out );
+    }
+    try ( InputStream in = new BufferedInputStream(
+        new FileInputStream( this.spool ), 64 * 1024 ) ) {
+      copy( in, this.out );
+    }
+    this.out.flush();
+    this.header.indexLength = this.counter.count - this.header.indexOffset;
+
+    // Header, now that the index location is known
+    ByteBuffer buffer = ByteBuffer.allocate( Bundle.HEADER_SIZE );
+    this.header.write( buffer );
+    buffer.flip();
+    while ( buffer.hasRemaining() ) {
+      this.file.getChannel().write( buffer, buffer.position() );
+    }
+    this.file.close();
+
+    if ( !this.tmp.renameTo( this.target ) ) {
+      throw new IOException( "Couldn't rename " + this.tmp + " to "
+                             + this.target + "." );
+    }
+    this.close();
+  }
+
+  /** Releases the files, deleting the partial bundle if not finished. */
+  @Override
+  public void close() {
+    if ( this.closed ) {
+      return;
+    }
+    this.closed = true;
+
+    this.deflater.end();
+    closeQuietly( this.index );
+    closeQuietly( this.file );
+    this.spool.delete();
+    this.tmp.delete();
+  }
+
+  /** Returns the number of persons written so far. */
+  public int getPersons() {
+    return this.header.persons;
+  }
+
+  /** Returns the number of notes written so far. */
+  public int getNotes() {
+    return this.header.notes;
+  }
+
+  /** Returns the number of photos written so far. */
+  public int getPhotos() {
+    return this.header.photos;
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Private
+  //==========================================================================//
+  private static Map<String, List<DataModel.Note>> groupByPerson(
+      List<DataModel.LocalNote> notes ) {
+    Map<String, List<DataModel.Note>> byPerson = new HashMap<>();
+    for ( DataModel.LocalNote note : notes ) {
+      String personID = note.note.metadata.personID;
+      List<DataModel.Note> personNotes = byPerson.get( personID );
+      if ( personNotes == null ) {
+        personNotes = new ArrayList<>( 4 );
+        byPerson.put( personID, personNotes );
+      }
+      personNotes.add( note.note );
+    }
+    return byPerson;
+  }
+
+  private static List<DataModel.Note> notesOf(
+      Map<String, List<DataModel.Note>> byPerson, String personID ) {
+    List<DataModel.Note> notes = byPerson.get( personID );
+    return ( notes == null ) ? ( Collections.<DataModel.Note>emptyList() )
+                             : ( notes );
+  }
+
+  private static long copy( InputStream in, OutputStream out )
+      throws IOException {
+    byte[] buffer = new byte[ 16 * 1024 ];
+    long total = 0;
+    int n;
+    while ( ( n = in.read( buffer ) ) > 0 ) {
+      out.write( buffer, 0, n );
+      total += n;
+    }
+    return total;
+  }
+
+  private static void closeQuietly( Closeable closeable ) {
+    try {
+      closeable.close();
+    } catch ( IOException e ) { /* Ignore, can't recover. */ }
+  }
+
+  /** Keeps track of the offset in the file. */
+  private static final class CountingOutputStream
+      extends FilterOutputStream {
+    long count = 0;
+
+    CountingOutputStream( OutputStream out ) {
+      super( out );
+    }
+
+    @Override
+    public void write( int b ) throws IOException {
+      this.out.write( b );
+      this.count++;
+    }
+
+    @Override
+    public void write( byte[] buffer, int offset, int length )
+        throws IOException {
+      this.out.write( buffer, offset, length );
+      this.count += length;
+    }
+  }
+  //==========================================================================//
+}
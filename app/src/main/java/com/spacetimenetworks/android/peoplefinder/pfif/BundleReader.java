@@ -0,0 +1,485 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.pfif;
+
+import android.util.Log;
+
+import com.spacetimenetworks.android.peoplefinder.database.DataModel;
+import com.spacetimenetworks.android.peoplefinder.database.DatabaseController;
+import com.spacetimenetworks.android.peoplefinder.database.LiveQuery;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * <p> Reads a bundle file written by {@link BundleWriter} into the database,
+ * see {@link Bundle} for the format. The file is memory mapped rather than
+ * read through streams. </p> <p/> <p> One thread walks the index a batch at
+ * a time and asks the database which of the batch's records it already has.
+ * Batches with nothing new are skipped without decoding them. The others are
+ * inflated and decoded by a pool of threads, which also write the photos of
+ * the new persons into the photo directory, and one thread inserts the new
+ * records batch by batch through {@link DatabaseController#insertBatch}.
+ * Since records that exist are skipped, an interrupted read can simply be
+ * started again. </p>
+ *
+ * @author teemuk
+ */
+public final class BundleReader
+    implements Transfer {
+  private static final String TAG = BundleReader.class.getSimpleName();
+
+  //==========================================================================//
+  // Constants
+  //==========================================================================//
+  /** Maximum number of threads decoding batches. */
+  private static final int MAX_DECODERS = 4;
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Instance vars
+  //==========================================================================//
+  private final DatabaseController db;
+  private final File source;
+  /** Directory for the photos, or {@code null} to skip them. */
+  private final File picDir;
+  /** Whether read records are published to the network. */
+  private final boolean publish;
+  private final PfifImporter.Listener listener;
+
+  private final ExecutorService decoders;
+  /** Batches being decoded, in file order. */
+  private final BlockingQueue<Pending> pending;
+
+  private volatile boolean cancelled = false;
+  private volatile boolean started = false;
+
+  // Progress, written by the inserting thread
+  private volatile long recordsRead;
+  private volatile long personsInserted;
+  private volatile long notesInserted;
+  private volatile long bytesRead;
+  private long startTime;
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // API
+  //==========================================================================//
+  /**
+   * Creates a new reader.
+   *
+   * @param db
+   *     database to insert into
+   * @param source
+   *     bundle file to read
+   * @param picDir
+   *     directory to write the photos into, or {@code null} to skip them
+   * @param publish
+   *     whether the records are published to the network like new records,
+   *     otherwise they are marked as routed
+   * @param listener
+   *     listener for the progress, invoked from the reader threads
+   */
+  public BundleReader( DatabaseController db, File source, File picDir,
+                       boolean publish, PfifImporter.Listener listener ) {
+    this.db = db;
+    this.source = source;
+    this.picDir = picDir;
+    this.publish = publish;
+    this.listener = listener;
+
+    int threads = Math.max( 1, Math.min( MAX_DECODERS,
+        Runtime.getRuntime().availableProcessors() - 1 ) );
+    final AtomicInteger threadCount = new AtomicInteger();
+    this.decoders = Executors.newFixedThreadPool( threads,
+        task -> new Thread( task,
+            "bundle-decode-" + threadCount.incrementAndGet() ) );
+    this.pending = new ArrayBlockingQueue<>( 2 * threads );
+  }
+
+  @Override
+  public synchronized void start() {
+    if ( this.started ) {
+      throw new IllegalStateException( "Bundle already started." );
+    }
+    this.started = true;
+    this.startTime = System.currentTimeMillis();
+
+    new Thread( this::readIndex, "bundle-index" ).start();
+    new Thread( this::insert, "bundle-insert" ).start();
+  }
+
+  /** Stops reading after the batch that is being inserted. */
+  @Override
+  public void cancel() {
+    this.cancelled = true;
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Index
+  //==========================================================================//
+  /**
+   * Walks the index, skipping batches whose records all exist, and submits
+   * the other batches for decoding.
+   */
+  private void readIndex() {
+    Exception error = null;
+    long records = 0;
+    // The mapped buffers stay valid after the file is closed
+    try ( RandomAccessFile file = new RandomAccessFile( this.source, "r" ) ) {
+      FileChannel channel = file.getChannel();
+      Bundle.Header header = Bundle.Header.read( channel.map(
+          FileChannel.MapMode.READ_ONLY, 0, Bundle.HEADER_SIZE ) );
+      ByteBuffer index = channel.map( FileChannel.MapMode.READ_ONLY,
+          header.indexOffset, header.indexLength );
+      ByteBuffer batches = index.duplicate();
+      index.position( header.batches * Bundle.BATCH_INFO_SIZE );
+
+      for ( int b = 0; b < header.batches && !this.cancelled; b++ ) {
+        Bundle.BatchInfo batch = Bundle.BatchInfo.read( batches );
+        List<Bundle.Entry> entries = new ArrayList<>( batch.persons );
+        List<String> personIDs = new ArrayList<>( batch.persons );
+        List<String> noteIDs = new ArrayList<>();
+        for ( int i = 0; i < batch.persons; i++ ) {
+          Bundle.Entry entry = Bundle.Entry.read( index );
+          entries.add( entry );
+          personIDs.add( entry.personID );
+          Collections.addAll( noteIDs, entry.noteIDs );
+        }
+        records += personIDs.size() + noteIDs.size();
+
+        // Skip the batch if there is nothing new in it
+        final Set<String> existingPersons
+            = this.findExisting( LiveQuery.Table.PERSON, personIDs );
+        final Set<String> existingNotes
+            = this.findExisting( LiveQuery.Table.NOTE, noteIDs );
+        Future<Decoded> decoded = null;
+        if ( existingPersons.size() < personIDs.size()
+             || existingNotes.size() < noteIDs.size() ) {
+          final ByteBuffer data = channel.map( FileChannel.MapMode.READ_ONLY,
+              batch.offset, batch.length );
+          final ByteBuffer[] photos = new ByteBuffer[ entries.size() ];
+          for ( int i = 0; i < photos.length; i++ ) {
+            Bundle.Entry entry = entries.get( i );
+            if ( entry.photoOffset >= 0
+                 && !existingPersons.contains( entry.personID ) ) {
+              photos[ i ] = channel.map( FileChannel.MapMode.READ_ONLY,
+                  entry.photoOffset, entry.photoLength );
+            }
+          }
+          decoded = this.decoders.submit(
+              () -> this.decode( batch, data, photos, existingPersons,
+                  existingNotes ) );
+        }
+        this.enqueue( new Pending( decoded, records,
+            batch.offset + batch.length ) );
+      }
+    } catch ( IOException | RuntimeException e ) {
+      error = e;
+    } catch ( InterruptedException e ) {
+      error = new CancellationException( "Bundle interrupted." );
+    }
+
+    // Tell the inserting thread that there are no more batches
+    try {
+      this.enqueue( Pending.end( error ) );
+    } catch ( InterruptedException e ) {
+      Log.w( TAG, "Interrupted while ending bundle." );
+    }
+  }
+
+  private Set<String> findExisting( LiveQuery.Table table,
+                                    List<String> recordIDs )
+      throws InterruptedException {
+    if ( recordIDs.isEmpty() ) {
+      return Collections.emptySet();
+    }
+
+    BlockingQueue<Set<String>> result = new ArrayBlockingQueue<>( 1 );
+    this.db.findExistingRecordIDs( table, recordIDs, result::offer );
+    Set<String> existing;
+    while ( ( existing = result.poll( 100, TimeUnit.MILLISECONDS ) ) == null ) {
+      if ( this.cancelled ) {
+        throw new InterruptedException();
+      }
+    }
+    return existing;
+  }
+
+  /** Waits for room in the queue unless reading is cancelled. */
+  private void enqueue( Pending batch ) throws InterruptedException {
+    while ( !this.pending.offer( batch, 100, TimeUnit.MILLISECONDS ) ) {
+      if ( this.cancelled && !batch.end ) {
+        throw new InterruptedException();
+      }
+    }
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Decoding
+  //==========================================================================//
+  /**
+   * Inflates and decodes a batch, keeping only the new records, and writes
+   * the photos of the new persons.
+   */
+  private Decoded decode( Bundle.BatchInfo batch, ByteBuffer data,
+                          ByteBuffer[] photos, Set<String> existingPersons,
+                          Set<String> existingNotes )
+      throws IOException, DataFormatException {
+    // Inflate
+    byte[] input = new byte[ batch.length ];
+    data.get( input );
+    byte[] raw = new byte[ batch.rawLength ];
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput( input );
+      int n = 0;
+      while ( n < raw.length && !inflater.finished() ) {
+        int read = inflater.inflate( raw, n, raw.length - n );
+        if ( read == 0 && inflater.needsInput() ) {
+          break;
+        }
+        n += read;
+      }
+      if ( n != raw.length ) {
+        throw new IOException( "Truncated batch at " + batch.offset + "." );
+      }
+    } finally {
+      inflater.end();
+    }
+
+    // Decode
+    boolean routed = !this.publish;
+    ByteBuffer in = ByteBuffer.wrap( raw );
+    int persons = in.getInt();
+    Decoded decoded = new Decoded( persons );
+    for ( int i = 0; i < persons; i++ ) {
+      DataModel.Person person = Bundle.readPerson( in );
+      String personID = person.metadata.recordID;
+      if ( !existingPersons.contains( personID ) ) {
+        String photoPath = this.writePhoto( personID, photos[ i ] );
+        decoded.persons.add(
+            new DataModel.LocalPerson( person, photoPath, routed ) );
+      }
+
+      int notes = ( int ) Bundle.readVarLong( in );
+      for ( int j = 0; j < notes; j++ ) {
+        DataModel.Note note = Bundle.readNote( in );
+        if ( !existingNotes.contains( note.metadata.recordID ) ) {
+          decoded.notes.add( new DataModel.LocalNote( note, null, routed ) );
+        }
+      }
+    }
+    return decoded;
+  }
+
+  /**
+   * Writes the photo of a person into the photo directory, named by the
+   * record ID like photos received from the network.
+   *
+   * @return path of the photo or {@code null} if there is none
+   */
+  private String writePhoto( String personID, ByteBuffer photo )
+      throws IOException {
+    if ( this.picDir == null || photo == null ) {
+      return null;
+    }
+
+    File to = new File( this.picDir, personID );
+    File dir = to.getParentFile();
+    if ( !dir.isDirectory() && !dir.mkdirs() ) {
+      Log.d( TAG, "Failed to create directory for pics '" +
+                  dir.getAbsolutePath() + "'." );
+      return null;
+    }
+
+    try ( FileOutputStream out = new FileOutputStream( to ) ) {
+      while ( photo.hasRemaining() ) {
+        out.getChannel().write( photo );
+      }
+    }
+    return to.getAbsolutePath();
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Inserting
+  //==========================================================================//
+  /** Inserts the decoded batches in file order. */
+  private void insert() {
+    Exception error = null;
+    try {
+      while ( true ) {
+        Pending batch = this.pending.take();
+        if ( batch.end ) {
+          error = batch.error;
+          break;
+        }
+        if ( this.cancelled ) {
+          error = new CancellationException( "Bundle cancelled." );
+          break;
+        }
+
+        if ( batch.decoded != null ) {
+          this.insert( batch.decoded.get() );
+        }
+        this.recordsRead = batch.recordsEnd;
+        this.bytesRead = batch.bytesEnd;
+
+        this.listener.onProgress( this.progress() );
+      }
+    } catch ( InterruptedException e ) {
+      error = new CancellationException( "Bundle interrupted." );
+    } catch ( ExecutionException e ) {
+      error = ( e.getCause() instanceof Exception )
+          ? ( ( Exception ) e.getCause() ) : ( e );
+    } catch ( IOException | RuntimeException e ) {
+      // E.g., the database rejecting the batch after it was shut down
+      error = e;
+    } finally {
+      // Unblock the index thread if it is still running
+      this.cancelled = this.cancelled || error != null;
+      this.pending.clear();
+      this.decoders.shutdownNow();
+    }
+
+    if ( error == null && this.cancelled ) {
+      error = new CancellationException( "Bundle cancelled." );
+    }
+    PfifImporter.Progress progress = this.progress();
+    if ( error == null ) {
+      Log.i( TAG, "Read " + this.source + ": " + progress );
+      this.listener.onFinished( progress );
+    } else {
+      Log.e( TAG, "Reading " + this.source + " failed: " + progress, error );
+      this.listener.onFailed( progress, error );
+    }
+  }
+
+  /**
+   * Inserts a batch and waits for the transaction to finish. Stops waiting
+   * if the bundle is cancelled or the database is shut down, in which case
+   * the batch may never run.
+   */
+  private void insert( Decoded records )
+      throws InterruptedException, IOException {
+    final CountDownLatch done = new CountDownLatch( 1 );
+    final boolean[] success = new boolean[ 1 ];
+    this.db.insertBatch( records.persons, records.notes,
+        DatabaseController.Priority.BACKGROUND_INGEST,
+        ( committed, persons, notes ) -> {
+          success[ 0 ] = committed;
+          this.personsInserted += persons;
+          this.notesInserted += notes;
+          done.countDown();
+        } );
+    while ( !done.await( 100, TimeUnit.MILLISECONDS ) ) {
+      if ( this.cancelled ) {
+        throw new CancellationException( "Bundle cancelled." );
+      }
+      if ( this.db.isShutDown() ) {
+        throw new IOException( "Database shut down during import." );
+      }
+    }
+
+    if ( !success[ 0 ] ) {
+      throw new IOException( "Database transaction failed." );
+    }
+  }
+
+  private PfifImporter.Progress progress() {
+    return new PfifImporter.Progress( this.recordsRead, this.personsInserted,
+        this.notesInserted, 0, this.bytesRead, this.source.length(),
+        System.currentTimeMillis() - this.startTime );
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Private classes
+  //==========================================================================//
+  /** A batch handed from the index thread to the inserting thread. */
+  private static final class Pending {
+    /** The decoding, {@code null} if the batch is skipped. */
+    final Future<Decoded> decoded;
+    /** Number of records in the bundle up to this batch. */
+    final long recordsEnd;
+    /** Offset of the end of the batch in the file. */
+    final long bytesEnd;
+    /** Whether this marks the end of the bundle. */
+    final boolean end;
+    /** Error at the end of the bundle, if any. */
+    final Exception error;
+
+    Pending( Future<Decoded> decoded, long recordsEnd, long bytesEnd ) {
+      this( decoded, recordsEnd, bytesEnd, false, null );
+    }
+
+    private Pending( Future<Decoded> decoded, long recordsEnd,
+                     long bytesEnd, boolean end, Exception error ) {
+      this.decoded = decoded;
+      this.recordsEnd = recordsEnd;
+      this.bytesEnd = bytesEnd;
+      this.end = end;
+      this.error = error;
+    }
+
+    static Pending end( Exception error ) {
+      return new Pending( null, -1, -1, true, error );
+    }
+  }
+
+  /** The new records of a batch. */
+  private static final class Decoded {
+    final List<DataModel.LocalPerson> persons;
+    final List<DataModel.LocalNote> notes;
+
+    Decoded( int size ) {
+      this.persons = new ArrayList<>( size );
+      this.notes = new ArrayList<>();
+    }
+  }
+  //==========================================================================//
+}
@@ -0,0 +1,216 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.pfif;
+
+import android.util.Log;
+
+import com.spacetimenetworks.android.peoplefinder.database.DataModel;
+import com.spacetimenetworks.android.peoplefinder.database.DatabaseController;
+import com.spacetimenetworks.android.peoplefinder.database.Projection;
+import com.spacetimenetworks.android.peoplefinder.database.RecordFilter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p> Writes the records of the database and their photos into a bundle
+ * file, see {@link Bundle} for the format. The persons are read a chunk at a
+ * time with {@link DatabaseController#scanRecords}, together with their notes,
+ * and each chunk becomes a batch of the bundle written by {@link
+ * BundleOutput}. </p> <p/> <p> The filter selects the persons, and every
+ * note of a selected person is written. </p>
+ *
+ * @author teemuk
+ */
+public final class BundleWriter
+    implements Transfer {
+  private static final String TAG = BundleWriter.class.getSimpleName();
+
+  //==========================================================================//
+  // Constants
+  //==========================================================================//
+  /** Number of persons in a batch. */
+  public static final int BATCH_SIZE = 500;
+  /** Queued in place of the rows of a query that failed. */
+  private static final List<Object> FAILED = new ArrayList<>( 0 );
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Instance vars
+  //==========================================================================//
+  private final DatabaseController db;
+  private final File target;
+  private final RecordFilter filter;
+  private final PfifExporter.Listener listener;
+
+  private volatile boolean cancelled = false;
+  private boolean started = false;
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // API
+  //==========================================================================//
+  /**
+   * Creates a new writer.
+   *
+   * @param db
+   *     database to read from
+   * @param target
+   *     bundle file to write, replaced if it exists
+   * @param filter
+   *     filter for the persons
+   * @param listener
+   *     listener for the progress, invoked from the writer thread
+   */
+  public BundleWriter( DatabaseController db, File target,
+                       RecordFilter filter, PfifExporter.Listener listener ) {
+    this.db = db;
+    this.target = target;
+    this.filter = filter;
+    this.listener = listener;
+  }
+
+  /**
+   * Returns whether a file is a bundle, judging by its name.
+   *
+   * @param file
+   *     the file
+   *
+   * @return {@code true} if the file name has the bundle extension
+   */
+  public static boolean isBundle( File file ) {
+    return file.getName().toLowerCase().endsWith( Bundle.EXTENSION );
+  }
+
+  @Override
+  public synchronized void start() {
+    if ( this.started ) {
+      throw new IllegalStateException( "Bundle already started." );
+    }
+    this.started = true;
+
+    new Thread( this::write, "bundle-write" ).start();
+  }
+
+  /** Stops writing and deletes the partial files. */
+  @Override
+  public void cancel() {
+    this.cancelled = true;
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Private
+  //==========================================================================//
+  private void write() {
+    long start = System.currentTimeMillis();
+
+    Exception error = null;
+    int persons = 0;
+    int notes = 0;
+    int photos = 0;
+    try ( BundleOutput bundle = new BundleOutput( this.target ) ) {
+      this.writeBatches( bundle );
+      bundle.finish();
+      persons = bundle.getPersons();
+      notes = bundle.getNotes();
+      photos = bundle.getPhotos();
+    } catch ( IOException | RuntimeException e ) {
+      error = e;
+    } catch ( InterruptedException e ) {
+      error = new CancellationException( "Bundle interrupted." );
+    }
+
+    if ( error == null ) {
+      Log.i( TAG, "Wrote " + persons + " persons, " + notes
+                  + " notes and " + photos + " photos ("
+                  + this.filter + ") to " + this.target + " in "
+                  + ( System.currentTimeMillis() - start ) + " ms." );
+      this.listener.onFinished( persons, notes );
+    } else {
+      Log.e( TAG, "Writing bundle " + this.target + " failed.", error );
+      this.listener.onFailed( error );
+    }
+  }
+
+  private void writeBatches( BundleOutput bundle )
+      throws IOException, InterruptedException {
+    String after = null;
+    while ( true ) {
+      final String from = after;
+      List<DataModel.LocalPerson> persons = this.await(
+          callback -> this.db.scanRecords( Projection.PERSON_RECORD,
+              this.filter, from, BATCH_SIZE, callback ) );
+      if ( persons.isEmpty() ) {
+        return;
+      }
+      final String last
+          = persons.get( persons.size() - 1 ).person.metadata.recordID;
+      List<DataModel.LocalNote> notes = this.await(
+          callback -> this.db.scanNotesForPersons( Projection.NOTE_RECORD,
+              from, last, callback ) );
+
+      bundle.writeBatch( persons, notes );
+      this.listener.onProgress( bundle.getPersons(), bundle.getNotes() );
+
+      if ( persons.size() < BATCH_SIZE ) {
+        return;
+      }
+      after = last;
+    }
+  }
+
+  /**
+   * Runs a query and waits for its result unless cancelled.
+   *
+   * @throws IOException
+   *     if the query failed
+   */
+  @SuppressWarnings( "unchecked" )
+  private <T> List<T> await( Query<T> query )
+      throws IOException, InterruptedException {
+    final BlockingQueue<List<?>> result = new ArrayBlockingQueue<>( 1 );
+    query.run(
+        rows -> result.offer( ( rows != null ) ? ( rows ) : ( FAILED ) ) );
+
+    List<?> rows;
+    while ( ( rows = result.poll( 100, TimeUnit.MILLISECONDS ) ) == null ) {
+      if ( this.cancelled ) {
+        throw new CancellationException( "Bundle cancelled." );
+      }
+    }
+    if ( rows == FAILED ) {
+      throw new IOException( "Reading the database failed." );
+    }
+    return ( List<T> ) rows;
+  }
+
+  private interface Query<T> {
+    void run( DatabaseController.ProjectionListQueryFinished<T> callback );
+  }
+  //==========================================================================//
+}
@@ -0,0 +1,153 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.pfif;
+
+import com.spacetimenetworks.android.peoplefinder.database.DataModel;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p> A batch of PFIF records converted into database records, committed in
+ * one transaction by {@link PfifImporter}. A {@link Reader} cuts a file into
+ * batches of {@link #SIZE} records, which are then converted off the
+ * reading thread with {@link #convert}. </p> <p/> <p> Unlike the importer,
+ * this doesn't depend on Android, so the JVM tools measure the import
+ * through the same code. </p>
+ *
+ * @author teemuk
+ */
+public final class ImportBatch {
+
+  /** Number of records in a batch, except for the last one of a file. */
+  public static final int SIZE = 1000;
+
+  /** The valid persons of the batch. */
+  public final List<DataModel.LocalPerson> persons;
+  /** The valid notes of the batch. */
+  public final List<DataModel.LocalNote> notes;
+  /** Records without the required IDs, which were skipped. */
+  public final int invalid;
+
+  private ImportBatch( List<DataModel.LocalPerson> persons,
+                       List<DataModel.LocalNote> notes, int invalid ) {
+    this.persons = persons;
+    this.notes = notes;
+    this.invalid = invalid;
+  }
+
+  /**
+   * Converts raw records into database records. Can be called from any
+   * thread.
+   *
+   * @param records
+   *     the records to convert
+   * @param routed
+   *     whether to mark the records as already routed
+   *
+   * @return the converted batch
+   */
+  static ImportBatch convert( List<Pfif.RawRecord> records, boolean routed ) {
+    SimpleDateFormat dates = Pfif.newDateFormat();
+    List<DataModel.LocalPerson> persons = new ArrayList<>( records.size() );
+    List<DataModel.LocalNote> notes = new ArrayList<>();
+    int invalid = 0;
+    for ( Pfif.RawRecord record : records ) {
+      if ( record.note ) {
+        DataModel.LocalNote note
+            = Pfif.toNote( record.values, dates, routed );
+        if ( note != null ) notes.add( note );
+        else invalid++;
+      } else {
+        DataModel.LocalPerson person
+            = Pfif.toPerson( record.values, dates, routed );
+        if ( person != null ) persons.add( person );
+        else invalid++;
+      }
+    }
+    return new ImportBatch( persons, notes, invalid );
+  }
+
+  /** Reads the records of a file a batch at a time. */
+  public static final class Reader
+      implements Closeable {
+    private final RecordReader records;
+
+    Reader( RecordReader records ) {
+      this.records = records;
+    }
+
+    /**
+     * Creates a reader for a PFIF CSV file.
+     *
+     * @param in
+     *     the file contents
+     *
+     * @return the reader
+     *
+     * @throws IOException
+     *     if reading the header fails
+     */
+    public static Reader csv( InputStream in ) throws IOException {
+      return new Reader( new PfifCsvReader( in ) );
+    }
+
+    /**
+     * Reads the records of the next batch without converting them.
+     *
+     * @return up to {@link #SIZE} records, or {@code null} at the end
+     *
+     * @throws IOException
+     *     if reading fails or the file is malformed
+     */
+    List<Pfif.RawRecord> read() throws IOException {
+      List<Pfif.RawRecord> batch = new ArrayList<>( SIZE );
+      Pfif.RawRecord record;
+      while ( batch.size() < SIZE
+              && ( record = this.records.next() ) != null ) {
+        batch.add( record );
+      }
+      return ( batch.isEmpty() ) ? ( null ) : ( batch );
+    }
+
+    /**
+     * Reads and converts the next batch.
+     *
+     * @param routed
+     *     whether to mark the records as already routed
+     *
+     * @return the batch, or {@code null} at the end
+     *
+     * @throws IOException
+     *     if reading fails or the file is malformed
+     */
+    public ImportBatch next( boolean routed ) throws IOException {
+      List<Pfif.RawRecord> records = this.read();
+      return ( records == null ) ? ( null ) : ( convert( records, routed ) );
+    }
+
+    @Override
+    public void close() throws IOException {
+      this.records.close();
+    }
+  }
+}
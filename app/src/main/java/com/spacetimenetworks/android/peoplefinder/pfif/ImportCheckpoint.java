@@ -0,0 +1,137 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.pfif;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * <p> Remembers how many records of a source file have been committed, so
+ * that an interrupted import can continue where it left off. The checkpoint
+ * only applies to the same file, identified by its path, size and
+ * modification time. </p> <p/> <p> The checkpoint is written to a temporary
+ * file that is then renamed over the old one, so a crash while saving leaves
+ * the previous checkpoint intact. </p>
+ *
+ * @author teemuk
+ */
+final class ImportCheckpoint {
+  private static final String TAG = ImportCheckpoint.class.getSimpleName();
+
+  private static final String KEY_PATH = "path";
+  private static final String KEY_LENGTH = "length";
+  private static final String KEY_MODIFIED = "modified";
+  private static final String KEY_RECORDS = "records";
+
+  //==========================================================================//
+  // Instance vars
+  //==========================================================================//
+  private final File file;
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // API
+  //==========================================================================//
+  ImportCheckpoint( File file ) {
+    this.file = file;
+  }
+
+  /**
+   * Returns the number of records of the source that have been committed.
+   *
+   * @param source
+   *     the file being imported
+   *
+   * @return number of committed records, 0 if there is no checkpoint for
+   * the file
+   */
+  long load( File source ) {
+    if ( !this.file.exists() ) {
+      return 0;
+    }
+
+    Properties properties = new Properties();
+    try ( InputStream in = new FileInputStream( this.file ) ) {
+      properties.load( in );
+    } catch ( IOException e ) {
+      Log.w( TAG, "Cannot read import checkpoint, starting over.", e );
+      return 0;
+    }
+
+    if ( !source.getAbsolutePath().equals( properties.getProperty( KEY_PATH ) )
+         || !String.valueOf( source.length() ).equals(
+        properties.getProperty( KEY_LENGTH ) )
+         || !String.valueOf( source.lastModified() ).equals(
+        properties.getProperty( KEY_MODIFIED ) ) ) {
+      // Checkpoint of another file or the file has changed
+      return 0;
+    }
+
+    try {
+      return Long.parseLong( properties.getProperty( KEY_RECORDS, "0" ) );
+    } catch ( NumberFormatException e ) {
+      return 0;
+    }
+  }
+
+  /**
+   * Records that the given number of records of the source have been
+   * committed.
+   *
+   * @param source
+   *     the file being imported
+   * @param records
+   *     number of records from the start of the file that are committed
+   *
+   * @throws IOException
+   *     if the checkpoint cannot be written
+   */
+  void save( File source, long records ) throws IOException {
+    Properties properties = new Properties();
+    properties.setProperty( KEY_PATH, source.getAbsolutePath() );
+    properties.setProperty( KEY_LENGTH, String.valueOf( source.length() ) );
+    properties.setProperty( KEY_MODIFIED,
+        String.valueOf( source.lastModified() ) );
+    properties.setProperty( KEY_RECORDS, String.valueOf( records ) );
+
+    File tmp = new File( this.file.getPath() + ".tmp" );
+    try ( OutputStream out = new FileOutputStream( tmp ) ) {
+      properties.store( out, null );
+    }
+    if ( !tmp.renameTo( this.file ) ) {
+      throw new IOException( "Cannot write import checkpoint "
+                             + this.file + "." );
+    }
+  }
+
+  /** Removes the checkpoint after the import has finished. */
+  void clear() {
+    if ( this.file.exists() && !this.file.delete() ) {
+      Log.w( TAG, "Cannot remove import checkpoint " + this.file + "." );
+    }
+  }
+  //==========================================================================//
+}
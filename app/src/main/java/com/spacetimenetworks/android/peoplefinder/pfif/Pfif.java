@@ -0,0 +1,367 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.pfif;
+
+import com.spacetimenetworks.android.peoplefinder.database.DataModel;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * <p> Field names of the Person Finder Interchange Format 1.4 and the mapping
+ * between PFIF records and the {@link DataModel} classes. </p> <p/> <p> A
+ * record read from a file is held as a {@link RawRecord}, i.e., the field
+ * values as strings in the order of {@link #PERSON_FIELDS} or {@link
+ * #NOTE_FIELDS}, until it is converted into a person or a note. Records are
+ * written from the same string values. </p>
+ *
+ * @author teemuk
+ */
+final class Pfif {
+  private Pfif() {}
+
+  //==========================================================================//
+  // Constants
+  //==========================================================================//
+  /** Namespace of PFIF 1.4 documents. */
+  static final String NAMESPACE = "http://zesty.ca/pfif/1.4";
+
+  static final String ELEMENT_ROOT = "pfif";
+  static final String ELEMENT_PERSON = "person";
+  static final String ELEMENT_NOTE = "note";
+
+  /** Fields of a person record, in PFIF order. */
+  static final String[] PERSON_FIELDS = {
+      "person_record_id",
+      "entry_date",
+      "expiry_date",
+      "author_name",
+      "author_email",
+      "author_phone",
+      "source_name",
+      "source_date",
+      "source_url",
+      "full_name",
+      "given_name",
+      "family_name",
+      "alternate_names",
+      "description",
+      "sex",
+      "date_of_birth",
+      "age",
+      "home_street",
+      "home_neighborhood",
+      "home_city",
+      "home_state",
+      "home_postal_code",
+      "home_country",
+      "photo_url",
+      "profile_urls" };
+
+  /** Fields of a note record, in PFIF order. */
+  static final String[] NOTE_FIELDS = {
+      "note_record_id",
+      "person_record_id",
+      "linked_person_record_id",
+      "entry_date",
+      "author_name",
+      "author_email",
+      "author_phone",
+      "source_date",
+      "author_made_contact",
+      "status",
+      "email_of_found_person",
+      "phone_of_found_person",
+      "last_known_location",
+      "text",
+      "photo_url" };
+
+  /** Index of the person record ID in the note fields. */
+  static final int NOTE_PERSON_ID = 1;
+
+  /** Format of PFIF dates, always in UTC. */
+  private static final String DATE_PATTERN = "yyyy-MM-dd'T'HH:mm:ss'Z'";
+
+  private static final Map<String, Integer> PERSON_INDEXES
+      = indexes( PERSON_FIELDS );
+  private static final Map<String, Integer> NOTE_INDEXES
+      = indexes( NOTE_FIELDS );
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Records
+  //==========================================================================//
+  /** Field values of a person or a note as read from a file. */
+  static final class RawRecord {
+    /** Whether this is a note, otherwise a person. */
+    final boolean note;
+    /** Values in the order of the person or note fields. */
+    final String[] values;
+
+    RawRecord( boolean note ) {
+      this.note = note;
+      this.values = new String[ note
+          ? ( NOTE_FIELDS.length ) : ( PERSON_FIELDS.length ) ];
+    }
+  }
+
+  /**
+   * Returns the index of a field in the values of a record.
+   *
+   * @param note
+   *     whether the record is a note
+   * @param field
+   *     the field name
+   *
+   * @return index of the field or -1 if the record has no such field
+   */
+  static int indexOf( boolean note, String field ) {
+    Integer index = ( note ? NOTE_INDEXES : PERSON_INDEXES ).get( field );
+    return ( index == null ) ? ( -1 ) : ( index );
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Conversion
+  //==========================================================================//
+  /**
+   * Returns a date format for PFIF dates. The format isn't thread safe, so
+   * each thread needs its own.
+   */
+  static SimpleDateFormat newDateFormat() {
+    SimpleDateFormat format = new SimpleDateFormat( DATE_PATTERN, Locale.US );
+    format.setTimeZone( TimeZone.getTimeZone( "UTC" ) );
+    return format;
+  }
+
+  /**
+   * Converts a raw person record.
+   *
+   * @param values
+   *     values in the order of {@link #PERSON_FIELDS}
+   * @param dates
+   *     format for parsing dates
+   * @param routed
+   *     whether to mark the person as already routed
+   *
+   * @return the person or {@code null} if the record has no ID
+   */
+  static DataModel.LocalPerson toPerson( String[] values,
+                                         SimpleDateFormat dates,
+                                         boolean routed ) {
+    if ( isEmpty( values[ 0 ] ) ) {
+      return null;
+    }
+
+    DataModel.Person person = new DataModel.Person(
+        values[ 0 ],                       // record ID
+        parseDate( values[ 1 ], dates ),   // entry date
+        parseDate( values[ 2 ], dates ),   // expiry date
+        values[ 3 ],                       // author name
+        values[ 4 ],                       // author email
+        values[ 5 ],                       // author phone
+        values[ 6 ],                       // source name
+        parseDate( values[ 7 ], dates ),   // source date
+        values[ 8 ],                       // source URL
+        values[ 9 ],                       // full name
+        values[ 10 ],                      // given name
+        values[ 11 ],                      // family name
+        values[ 12 ],                      // alternate names
+        values[ 13 ],                      // description
+        values[ 14 ],                      // sex
+        values[ 15 ],                      // date of birth
+        parseAge( values[ 16 ] ),          // age
+        values[ 17 ],                      // home street
+        values[ 18 ],                      // home neighborhood
+        values[ 19 ],                      // home city
+        values[ 20 ],                      // home state
+        values[ 21 ],                      // home zip
+        values[ 22 ],                      // home country
+        values[ 23 ],                      // photo url
+        values[ 24 ]                       // profile urls
+    );
+    return new DataModel.LocalPerson( person, null, routed );
+  }
+
+  /**
+   * Converts a raw note record.
+   *
+   * @param values
+   *     values in the order of {@link #NOTE_FIELDS}
+   * @param dates
+   *     format for parsing dates
+   * @param routed
+   *     whether to mark the note as already routed
+   *
+   * @return the note or {@code null} if the record has no ID or person ID
+   */
+  static DataModel.LocalNote toNote( String[] values,
+                                     SimpleDateFormat dates,
+                                     boolean routed ) {
+    if ( isEmpty( values[ 0 ] ) || isEmpty( values[ NOTE_PERSON_ID ] ) ) {
+      return null;
+    }
+
+    DataModel.Note note = new DataModel.Note(
+        values[ 0 ],                       // record ID
+        values[ 1 ],                       // person ID
+        values[ 2 ],                       // linked person ID
+        parseDate( values[ 3 ], dates ),   // entry date
+        values[ 4 ],                       // author name
+        values[ 5 ],                       // author email
+        values[ 6 ],                       // author phone
+        parseDate( values[ 7 ], dates ),   // source date
+        "true".equalsIgnoreCase( values[ 8 ] ), // made contact
+        values[ 9 ],                       // status
+        values[ 10 ],                      // person email
+        values[ 11 ],                      // person phone
+        values[ 12 ],                      // last location
+        values[ 13 ],                      // text
+        values[ 14 ]                       // photo url
+    );
+    return new DataModel.LocalNote( note, null, routed );
+  }
+
+  /**
+   * Parses a PFIF date.
+   *
+   * @return seconds since the epoch, or {@code null} if the date is missing
+   * or malformed
+   */
+  static Long parseDate( String value, SimpleDateFormat dates ) {
+    if ( isEmpty( value ) ) {
+      return null;
+    }
+    try {
+      return dates.parse( value ).getTime() / 1000;
+    } catch ( ParseException e ) {
+      return null;
+    }
+  }
+
+  /**
+   * Returns the values of a person in the order of {@link #PERSON_FIELDS}.
+   * Dates are formatted with the given format, missing values are
+   * {@code null}.
+   */
+  static String[] valuesOf( DataModel.Person person, SimpleDateFormat dates ) {
+    return new String[]{
+        person.metadata.recordID,
+        formatDate( person.metadata.entryDate, dates ),
+        formatDate( person.metadata.expiryDate, dates ),
+        person.metadata.authorName,
+        person.metadata.authorEmail,
+        person.metadata.authorPhone,
+        person.metadata.sourceName,
+        formatDate( person.metadata.sourceDate, dates ),
+        person.metadata.sourceUrl,
+        person.identity.name.fullName,
+        person.identity.name.givenName,
+        person.identity.name.familyName,
+        person.identity.name.alternateNames,
+        person.identity.description,
+        person.identity.sex,
+        person.identity.dateOfBirth,
+        ( person.identity.age == null || person.identity.age <= 0 )
+            ? ( null ) : ( person.identity.age.toString() ),
+        person.identity.home.street,
+        person.identity.home.neighborhood,
+        person.identity.home.city,
+        person.identity.home.state,
+        person.identity.home.zip,
+        person.identity.home.country,
+        person.identity.photoUrl,
+        person.identity.profileUrls };
+  }
+
+  /**
+   * Returns the values of a note in the order of {@link #NOTE_FIELDS}, like
+   * {@link #valuesOf(DataModel.Person, SimpleDateFormat)}.
+   */
+  static String[] valuesOf( DataModel.Note note, SimpleDateFormat dates ) {
+    return new String[]{
+        note.metadata.recordID,
+        note.metadata.personID,
+        note.metadata.linkedPersonID,
+        formatDate( note.metadata.entryDate, dates ),
+        note.metadata.authorName,
+        note.metadata.authorEmail,
+        note.metadata.authorPhone,
+        formatDate( note.metadata.sourceDate, dates ),
+        ( note.status.authorMadeContact != null
+          && note.status.authorMadeContact ) ? ( "true" ) : ( "false" ),
+        note.status.status,
+        note.status.emailOfFoundPerson,
+        note.status.phoneOfFoundPerson,
+        note.status.lastKnownLocation,
+        note.status.text,
+        note.status.photoUrl };
+  }
+
+  /**
+   * Formats seconds since the epoch as a PFIF date.
+   *
+   * @return the date or {@code null} if there is none
+   */
+  static String formatDate( Long seconds, SimpleDateFormat dates ) {
+    return ( seconds == null || seconds <= 0 )
+        ? ( null ) : ( dates.format( new Date( seconds * 1000 ) ) );
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Private
+  //==========================================================================//
+  /**
+   * PFIF allows an age range such as "30-40", which is stored as its lower
+   * bound.
+   */
+  private static Long parseAge( String value ) {
+    if ( isEmpty( value ) ) {
+      return null;
+    }
+    int end = value.indexOf( '-' );
+    try {
+      return Long.parseLong(
+          ( end > 0 ) ? ( value.substring( 0, end ).trim() ) : ( value.trim() ) );
+    } catch ( NumberFormatException e ) {
+      return null;
+    }
+  }
+
+  private static boolean isEmpty( String s ) {
+    return s == null || s.length() == 0;
+  }
+
+  private static Map<String, Integer> indexes( String[] fields ) {
+    Map<String, Integer> indexes = new HashMap<>( fields.length * 2 );
+    for ( int i = 0; i < fields.length; i++ ) {
+      indexes.put( fields[ i ], i );
+    }
+    return indexes;
+  }
+  //==========================================================================//
+}
@@ -0,0 +1,158 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.pfif;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p> Reads records from a PFIF CSV file. The first row names the fields of
+ * the columns using the PFIF field names, and a file holds either persons or
+ * notes, which is told apart by the {@code note_record_id} column. Columns
+ * that aren't PFIF fields are ignored. </p> <p/> <p> Values follow RFC 4180,
+ * i.e., they can be quoted with double quotes, in which case they can contain
+ * commas, line breaks and doubled quotes. </p>
+ *
+ * @author teemuk
+ */
+final class PfifCsvReader
+    implements RecordReader {
+
+  //==========================================================================//
+  // Instance vars
+  //==========================================================================//
+  private final Reader in;
+  /** Whether the file holds notes. */
+  private final boolean notes;
+  /** Field index of each column, or -1 for unknown columns. */
+  private final int[] fieldIndexes;
+
+  private final List<String> row = new ArrayList<>();
+  private final StringBuilder value = new StringBuilder();
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // API
+  //==========================================================================//
+  PfifCsvReader( InputStream in ) throws IOException {
+    this.in = new BufferedReader(
+        new InputStreamReader( in, Charset.forName( "UTF-8" ) ), 64 * 1024 );
+
+    // Header
+    if ( !this.readRow() ) {
+      throw new IOException( "Empty PFIF CSV file." );
+    }
+    // Drop a byte order mark
+    if ( this.row.get( 0 ).startsWith( "\uFEFF" ) ) {
+      this.row.set( 0, this.row.get( 0 ).substring( 1 ) );
+    }
+    this.notes = this.row.contains( Pfif.NOTE_FIELDS[ 0 ] );
+    this.fieldIndexes = new int[ this.row.size() ];
+    for ( int i = 0; i < this.fieldIndexes.length; i++ ) {
+      this.fieldIndexes[ i ]
+          = Pfif.indexOf( this.notes, this.row.get( i ).trim() );
+    }
+  }
+
+  @Override
+  public Pfif.RawRecord next() throws IOException {
+    while ( this.readRow() ) {
+      // Skip blank lines
+      if ( this.row.size() == 1 && this.row.get( 0 ).length() == 0 ) {
+        continue;
+      }
+
+      Pfif.RawRecord record = new Pfif.RawRecord( this.notes );
+      int columns = Math.min( this.row.size(), this.fieldIndexes.length );
+      for ( int i = 0; i < columns; i++ ) {
+        String value = this.row.get( i );
+        if ( this.fieldIndexes[ i ] >= 0 && value.length() > 0 ) {
+          record.values[ this.fieldIndexes[ i ] ] = value;
+        }
+      }
+      return record;
+    }
+    return null;
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.in.close();
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Private
+  //==========================================================================//
+  /**
+   * Reads the values of the next row into {@link #row}.
+   *
+   * @return {@code false} at the end of the file
+   */
+  private boolean readRow() throws IOException {
+    this.row.clear();
+    this.value.setLength( 0 );
+
+    int c = this.in.read();
+    if ( c < 0 ) {
+      return false;
+    }
+
+    boolean quoted = false;
+    for ( ; c >= 0; c = this.in.read() ) {
+      if ( quoted ) {
+        if ( c == '"' ) {
+          this.in.mark( 1 );
+          if ( this.in.read() == '"' ) {
+            // Doubled quote
+            this.value.append( '"' );
+          } else {
+            this.in.reset();
+            quoted = false;
+          }
+        } else {
+          this.value.append( ( char ) c );
+        }
+      } else if ( c == '"' ) {
+        quoted = true;
+      } else if ( c == ',' ) {
+        this.row.add( this.value.toString() );
+        this.value.setLength( 0 );
+      } else if ( c == '\n' ) {
+        break;
+      } else if ( c != '\r' ) {
+        this.value.append( ( char ) c );
+      }
+    }
+    if ( quoted ) {
+      throw new IOException( "Unterminated quoted value in PFIF CSV." );
+    }
+
+    this.row.add( this.value.toString() );
+    return true;
+  }
+  //==========================================================================//
+}
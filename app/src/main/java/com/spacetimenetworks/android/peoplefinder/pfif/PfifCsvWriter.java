@@ -0,0 +1,146 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.pfif;
+
+import com.spacetimenetworks.android.peoplefinder.database.DataModel;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+
+/**
+ * Writes records as PFIF CSV. A CSV file holds either persons or notes, so
+ * the writer takes a stream for each, and each starts with a header row of
+ * the PFIF field names. Values are quoted as in RFC 4180 when needed, and
+ * missing values are empty. Public for the JVM tools, which write test
+ * files with it.
+ *
+ * @author teemuk
+ */
+public final class PfifCsvWriter
+    implements RecordWriter {
+  private final Writer persons;
+  private final Writer notes;
+  /** Date format of the records written with the model overloads. */
+  private SimpleDateFormat dates;
+
+  public PfifCsvWriter( OutputStream persons, OutputStream notes )
+      throws IOException {
+    this.persons = open( persons );
+    this.notes = open( notes );
+    writeRow( this.persons, Pfif.PERSON_FIELDS );
+    writeRow( this.notes, Pfif.NOTE_FIELDS );
+  }
+
+  @Override
+  public void writePerson( String[] values ) throws IOException {
+    writeRow( this.persons, values );
+  }
+
+  @Override
+  public void writeNote( String[] values ) throws IOException {
+    writeRow( this.notes, values );
+  }
+
+  /**
+   * Writes a person of the data model.
+   *
+   * @param person
+   *     the person
+   *
+   * @throws IOException
+   *     if writing fails
+   */
+  public void writePerson( DataModel.Person person ) throws IOException {
+    this.writePerson( Pfif.valuesOf( person, this.dates() ) );
+  }
+
+  /**
+   * Writes a note of the data model.
+   *
+   * @param note
+   *     the note
+   *
+   * @throws IOException
+   *     if writing fails
+   */
+  public void writeNote( DataModel.Note note ) throws IOException {
+    this.writeNote( Pfif.valuesOf( note, this.dates() ) );
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      this.persons.close();
+    } finally {
+      this.notes.close();
+    }
+  }
+
+  private SimpleDateFormat dates() {
+    if ( this.dates == null ) {
+      this.dates = Pfif.newDateFormat();
+    }
+    return this.dates;
+  }
+
+  private static Writer open( OutputStream out ) {
+    return new BufferedWriter(
+        new OutputStreamWriter( out, Charset.forName( "UTF-8" ) ), 64 * 1024 );
+  }
+
+  private static void writeRow( Writer out, String[] values )
+      throws IOException {
+    for ( int i = 0; i < values.length; i++ ) {
+      if ( i > 0 ) {
+        out.write( ',' );
+      }
+      if ( values[ i ] != null ) {
+        writeValue( out, values[ i ] );
+      }
+    }
+    out.write( "\r\n" );
+  }
+
+  private static void writeValue( Writer out, String value )
+      throws IOException {
+    boolean quote = false;
+    for ( int i = 0; i < value.length() && !quote; i++ ) {
+      char c = value.charAt( i );
+      quote = ( c == ',' || c == '"' || c == '\r' || c == '\n' );
+    }
+    if ( !quote ) {
+      out.write( value );
+      return;
+    }
+
+    out.write( '"' );
+    for ( int i = 0; i < value.length(); i++ ) {
+      char c = value.charAt( i );
+      if ( c == '"' ) {
+        out.write( '"' );
+      }
+      out.write( c );
+    }
+    out.write( '"' );
+  }
+}
@@ -0,0 +1,341 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.pfif;
+
+import android.util.Log;
+
+import com.spacetimenetworks.android.peoplefinder.database.DataModel;
+import com.spacetimenetworks.android.peoplefinder.database.DatabaseController;
+import com.spacetimenetworks.android.peoplefinder.database.Projection;
+import com.spacetimenetworks.android.peoplefinder.database.RecordFilter;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * <p> Exports the records of the database, or the subset passing a {@link
+ * RecordFilter}, into a PFIF file, e.g., to carry them to a disconnected
+ * network on a USB stick. The file is written as CSV if its name ends in
+ * {@code .csv} and as XML otherwise, and it is gzipped if the name ends in
+ * {@code .gz}. A CSV export writes the notes into a second file, see {@link
+ * #notesFileFor}. </p> <p/> <p> The table is read in record ID order a chunk
+ * at a time with {@link DatabaseController#scanRecords}, and the next chunk
+ * is read while the previous one is written, so memory use doesn't depend on
+ * the size of the database. The records are written into a temporary file
+ * that replaces the target only when the export succeeds. </p>
+ *
+ * @author teemuk
+ */
+public final class PfifExporter
+    implements Transfer {
+  private static final String TAG = PfifExporter.class.getSimpleName();
+
+  //==========================================================================//
+  // Constants
+  //==========================================================================//
+  /** Number of records read from the database at a time. */
+  public static final int CHUNK_SIZE = 500;
+  /** Suffix of the temporary files written during the export. */
+  private static final String TMP_SUFFIX = ".tmp";
+  /** Queued in place of a chunk whose query failed. */
+  private static final List<Object> FAILED = new ArrayList<>( 0 );
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Instance vars
+  //==========================================================================//
+  private final DatabaseController db;
+  private final File target;
+  private final RecordFilter filter;
+  private final Listener listener;
+
+  private final SimpleDateFormat dates = Pfif.newDateFormat();
+
+  private volatile boolean cancelled = false;
+  private boolean started = false;
+
+  private long persons = 0;
+  private long notes = 0;
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // API
+  //==========================================================================//
+  /**
+   * Creates a new exporter.
+   *
+   * @param db
+   *     database to export from
+   * @param target
+   *     file to write, replaced if it exists
+   * @param filter
+   *     filter for the exported records
+   * @param listener
+   *     listener for the progress, invoked from the exporter thread
+   */
+  public PfifExporter( DatabaseController db, File target,
+                       RecordFilter filter, Listener listener ) {
+    this.db = db;
+    this.target = target;
+    this.filter = filter;
+    this.listener = listener;
+  }
+
+  /**
+   * Returns the file a CSV export writes the notes into, i.e., the target
+   * with {@code -notes} added before the {@code .csv} extension.
+   *
+   * @param target
+   *     target of the export
+   *
+   * @return the notes file, or {@code null} if the target is not CSV
+   */
+  public static File notesFileFor( File target ) {
+    String name = target.getName();
+    int extension = name.toLowerCase().lastIndexOf( ".csv" );
+    if ( extension < 0 ) {
+      return null;
+    }
+    return new File( target.getParentFile(), name.substring( 0, extension )
+                                             + "-notes"
+                                             + name.substring( extension ) );
+  }
+
+  /**
+   * Starts the export in the background. An exporter can only be started
+   * once.
+   */
+  @Override
+  public synchronized void start() {
+    if ( this.started ) {
+      throw new IllegalStateException( "Export already started." );
+    }
+    this.started = true;
+
+    new Thread( this::export, "pfif-export" ).start();
+  }
+
+  /** Stops the export and deletes the partial files. */
+  @Override
+  public void cancel() {
+    this.cancelled = true;
+  }
+
+  /** Listener for the progress of an export. */
+  public interface Listener {
+    /**
+     * A chunk of records has been written.
+     *
+     * @param persons
+     *     persons written so far
+     * @param notes
+     *     notes written so far
+     */
+    void onProgress( long persons, long notes );
+
+    /**
+     * All records have been written and the target file is complete.
+     *
+     * @param persons
+     *     persons written
+     * @param notes
+     *     notes written
+     */
+    void onFinished( long persons, long notes );
+
+    /**
+     * The export failed or was cancelled, and no file was written.
+     *
+     * @param cause
+     *     the failure, {@link CancellationException} if cancelled
+     */
+    void onFailed( Exception cause );
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Private
+  //==========================================================================//
+  private void export() {
+    long start = System.currentTimeMillis();
+    File notesTarget = notesFileFor( this.target );
+    File tmp = new File( this.target.getPath() + TMP_SUFFIX );
+    File notesTmp = ( notesTarget == null )
+        ? ( null ) : ( new File( notesTarget.getPath() + TMP_SUFFIX ) );
+
+    Exception error = null;
+    try {
+      try ( RecordWriter writer = this.open( tmp, notesTmp ) ) {
+        this.exportTable( Projection.PERSON_RECORD,
+            new TableWriter<DataModel.LocalPerson>() {
+              @Override
+              public String recordID( DataModel.LocalPerson record ) {
+                return record.person.metadata.recordID;
+              }
+
+              @Override
+              public void write( DataModel.LocalPerson record )
+                  throws IOException {
+                writer.writePerson( Pfif.valuesOf( record.person,
+                    PfifExporter.this.dates ) );
+                PfifExporter.this.persons++;
+              }
+            } );
+        this.exportTable( Projection.NOTE_RECORD,
+            new TableWriter<DataModel.LocalNote>() {
+              @Override
+              public String recordID( DataModel.LocalNote record ) {
+                return record.note.metadata.recordID;
+              }
+
+              @Override
+              public void write( DataModel.LocalNote record )
+                  throws IOException {
+                writer.writeNote( Pfif.valuesOf( record.note,
+                    PfifExporter.this.dates ) );
+                PfifExporter.this.notes++;
+              }
+            } );
+      }
+
+      // Replace the targets only once everything has been written
+      replace( tmp, this.target );
+      if ( notesTmp != null ) {
+        replace( notesTmp, notesTarget );
+      }
+    } catch ( IOException | RuntimeException e ) {
+      error = e;
+    } catch ( InterruptedException e ) {
+      error = new CancellationException( "Export interrupted." );
+    }
+
+    if ( error == null ) {
+      Log.i( TAG, "Exported " + this.persons + " persons and " + this.notes
+                  + " notes (" + this.filter + ") to " + this.target
+                  + " in " + ( System.currentTimeMillis() - start )
+                  + " ms." );
+      this.listener.onFinished( this.persons, this.notes );
+    } else {
+      Log.e( TAG, "Export to " + this.target + " failed.", error );
+      tmp.delete();
+      if ( notesTmp != null ) {
+        notesTmp.delete();
+      }
+      this.listener.onFailed( error );
+    }
+  }
+
+  private RecordWriter open( File file, File notesFile ) throws IOException {
+    if ( notesFile == null ) {
+      return new PfifXmlWriter( openStream( file ) );
+    }
+
+    OutputStream out = openStream( file );
+    try {
+      return new PfifCsvWriter( out, openStream( notesFile ) );
+    } catch ( IOException e ) {
+      out.close();
+      throw e;
+    }
+  }
+
+  private static OutputStream openStream( File file ) throws IOException {
+    OutputStream out = new FileOutputStream( file );
+    return file.getName().toLowerCase().endsWith( ".gz" + TMP_SUFFIX )
+        ? ( new GZIPOutputStream( out, 64 * 1024 ) )
+        : ( new BufferedOutputStream( out, 64 * 1024 ) );
+  }
+
+  private static void replace( File from, File to ) throws IOException {
+    if ( !from.renameTo( to ) ) {
+      throw new IOException( "Couldn't rename " + from + " to " + to + "." );
+    }
+  }
+
+  /**
+   * Writes every record of a table passing the filter. The next chunk is
+   * requested before the current one is written, so at most two chunks are
+   * in memory. Fails if a chunk can't be read, rather than taking it as the
+   * end of the table.
+   */
+  private <T> void exportTable( Projection<T> projection,
+                                TableWriter<T> writer )
+      throws IOException, InterruptedException {
+    final BlockingQueue<List<?>> chunks = new ArrayBlockingQueue<>( 1 );
+    final DatabaseController.ProjectionListQueryFinished<T> callback
+        = rows -> chunks.offer( ( rows != null ) ? ( rows ) : ( FAILED ) );
+    this.db.scanRecords( projection, this.filter, null, CHUNK_SIZE,
+        callback );
+
+    while ( true ) {
+      List<?> rows;
+      while ( ( rows = chunks.poll( 100, TimeUnit.MILLISECONDS ) ) == null ) {
+        if ( this.cancelled ) {
+          throw new CancellationException( "Export cancelled." );
+        }
+      }
+      if ( rows == FAILED ) {
+        throw new IOException( "Reading " + projection.getTable()
+                               + " from the database failed." );
+      }
+      @SuppressWarnings( "unchecked" )
+      List<T> chunk = ( List<T> ) rows;
+
+      // Read ahead while this chunk is written
+      boolean last = chunk.size() < CHUNK_SIZE;
+      if ( !last ) {
+        String lastID = writer.recordID( chunk.get( chunk.size() - 1 ) );
+        this.db.scanRecords( projection, this.filter, lastID, CHUNK_SIZE,
+            callback );
+      }
+
+      for ( T record : chunk ) {
+        writer.write( record );
+      }
+      this.listener.onProgress( this.persons, this.notes );
+
+      if ( last ) {
+        return;
+      }
+    }
+  }
+
+  /** Writes the records of one table. */
+  private interface TableWriter<T> {
+    /** Returns the record ID of a record, the key of the chunks. */
+    String recordID( T record );
+
+    /** Writes a record. */
+    void write( T record ) throws IOException;
+  }
+  //==========================================================================//
+}
@@ -0,0 +1,458 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.pfif;
+
+import android.util.Log;
+
+import com.spacetimenetworks.android.peoplefinder.database.DatabaseController;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * <p> Imports a PFIF XML or CSV file into the database, e.g., to preload a
+ * phone with the records of an area before a deployment. Files whose name
+ * ends in {@code .csv} are read as CSV, others as XML, and a {@code .gz}
+ * suffix on either is decompressed on the fly. </p> <p/> <p> The import is a
+ * pipeline: one thread streams the file and cuts the records into batches,
+ * a pool of threads converts the batches into {@link ImportBatch}es of
+ * database records, and one
+ * thread commits the converted batches in file order, each in a single
+ * transaction through {@link DatabaseController#insertBatch}. The stages are
+ * connected by bounded queues, so memory use doesn't depend on the size of
+ * the file and the parser waits when the database falls behind. </p> <p/>
+ * <p> After each committed batch, the number of records committed so far is
+ * saved to a checkpoint file. If the import is interrupted, starting it again
+ * on the same file skips the committed records. Records that already exist
+ * in the database are skipped anyway, so replaying a batch is harmless. </p>
+ *
+ * @author teemuk
+ */
+public final class PfifImporter
+    implements Transfer {
+  private static final String TAG = PfifImporter.class.getSimpleName();
+
+  //==========================================================================//
+  // Constants
+  //==========================================================================//
+  /** Number of records committed in one transaction. */
+  public static final int BATCH_SIZE = ImportBatch.SIZE;
+  /** Maximum number of threads converting records. */
+  private static final int MAX_CONVERTERS = 4;
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Instance vars
+  //==========================================================================//
+  private final DatabaseController db;
+  private final File source;
+  private final ImportCheckpoint checkpoint;
+  /** Whether imported records are published to the network. */
+  private final boolean publish;
+  private final Listener listener;
+
+  private final ExecutorService converters;
+  /** Batches being converted, in file order. */
+  private final BlockingQueue<Pending> pending;
+
+  private volatile boolean cancelled = false;
+  private volatile boolean started = false;
+
+  // Progress, written by the committing thread
+  private volatile long recordsCommitted;
+  private volatile long personsInserted;
+  private volatile long notesInserted;
+  private volatile long recordsInvalid;
+  /** Bytes of the file read so far, written by the parsing thread. */
+  private volatile long bytesRead;
+  private long startTime;
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // API
+  //==========================================================================//
+  /**
+   * Creates a new importer.
+   *
+   * @param db
+   *     database to import into
+   * @param source
+   *     PFIF file to import
+   * @param checkpointFile
+   *     file for the checkpoint of the import
+   * @param publish
+   *     whether the imported records are published to the network like new
+   *     records, otherwise they are marked as routed
+   * @param listener
+   *     listener for the progress, invoked from the importer threads
+   */
+  public PfifImporter( DatabaseController db, File source,
+                       File checkpointFile, boolean publish,
+                       Listener listener ) {
+    this.db = db;
+    this.source = source;
+    this.checkpoint = new ImportCheckpoint( checkpointFile );
+    this.publish = publish;
+    this.listener = listener;
+
+    int threads = Math.max( 1, Math.min( MAX_CONVERTERS,
+        Runtime.getRuntime().availableProcessors() - 1 ) );
+    final AtomicInteger threadCount = new AtomicInteger();
+    this.converters = Executors.newFixedThreadPool( threads,
+        task -> new Thread( task,
+            "pfif-import-convert-" + threadCount.incrementAndGet() ) );
+    this.pending = new ArrayBlockingQueue<>( 2 * threads );
+  }
+
+  /**
+   * Starts the import in the background. An importer can only be started
+   * once.
+   */
+  @Override
+  public synchronized void start() {
+    if ( this.started ) {
+      throw new IllegalStateException( "Import already started." );
+    }
+    this.started = true;
+    this.startTime = System.currentTimeMillis();
+
+    new Thread( this::parse, "pfif-import-parse" ).start();
+    new Thread( this::commit, "pfif-import-commit" ).start();
+  }
+
+  /**
+   * Stops the import after the batch that is being committed. The
+   * checkpoint is kept, so the import can be resumed later.
+   */
+  @Override
+  public void cancel() {
+    this.cancelled = true;
+  }
+
+  /** Progress of an import. */
+  public static final class Progress {
+    /** Records committed from the start of the file, including skipped. */
+    public final long records;
+    /** New persons inserted into the database. */
+    public final long persons;
+    /** New notes inserted into the database. */
+    public final long notes;
+    /** Records without the required IDs, which were skipped. */
+    public final long invalid;
+    /** Bytes of the file read. */
+    public final long bytesRead;
+    /** Size of the file in bytes. */
+    public final long totalBytes;
+    /** Time since the import started in ms. */
+    public final long elapsedMs;
+
+    Progress( long records, long persons, long notes, long invalid,
+              long bytesRead, long totalBytes, long elapsedMs ) {
+      this.records = records;
+      this.persons = persons;
+      this.notes = notes;
+      this.invalid = invalid;
+      this.bytesRead = bytesRead;
+      this.totalBytes = totalBytes;
+      this.elapsedMs = elapsedMs;
+    }
+
+    @Override
+    public String toString() {
+      return this.records + " records (" + this.persons + " new persons, "
+             + this.notes + " new notes, " + this.invalid + " invalid), "
+             + this.bytesRead + "/" + this.totalBytes + " bytes in "
+             + this.elapsedMs + " ms";
+    }
+  }
+
+  /** Listener for the progress of an import. */
+  public interface Listener {
+    /**
+     * A batch has been committed.
+     *
+     * @param progress
+     *     progress so far
+     */
+    void onProgress( Progress progress );
+
+    /**
+     * All records have been imported.
+     *
+     * @param progress
+     *     final progress
+     */
+    void onFinished( Progress progress );
+
+    /**
+     * The import failed or was cancelled. The records committed so far stay
+     * in the database and the import can be resumed.
+     *
+     * @param progress
+     *     progress up to the failure
+     * @param cause
+     *     the failure, {@link CancellationException} if cancelled
+     */
+    void onFailed( Progress progress, Exception cause );
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Parsing
+  //==========================================================================//
+  /**
+   * Streams the file, skipping the records committed before, and submits
+   * batches of records for conversion.
+   */
+  private void parse() {
+    Exception error = null;
+    long skip = this.checkpoint.load( this.source );
+    if ( skip > 0 ) {
+      Log.i( TAG, "Resuming import of " + this.source + " after " + skip +
+                  " records." );
+    }
+
+    try ( ImportBatch.Reader reader = new ImportBatch.Reader( this.open() ) ) {
+      long index = 0;
+      List<Pfif.RawRecord> batch;
+      while ( !this.cancelled && ( batch = reader.read() ) != null ) {
+        long start = index;
+        index += batch.size();
+        if ( index <= skip ) {
+          continue;
+        }
+        if ( start < skip ) {
+          batch = batch.subList( ( int ) ( skip - start ), batch.size() );
+        }
+        this.submit( batch, index );
+      }
+    } catch ( IOException | RuntimeException e ) {
+      error = e;
+    } catch ( InterruptedException e ) {
+      error = new CancellationException( "Import interrupted." );
+    }
+
+    // Tell the committing thread that there are no more batches
+    try {
+      this.enqueue( new Pending( null, -1, error ) );
+    } catch ( InterruptedException e ) {
+      Log.w( TAG, "Interrupted while ending import." );
+    }
+  }
+
+  private RecordReader open() throws IOException {
+    InputStream in = new CountingInputStream(
+        new FileInputStream( this.source ) );
+    String name = this.source.getName().toLowerCase();
+    if ( name.endsWith( ".gz" ) ) {
+      in = new GZIPInputStream( in, 64 * 1024 );
+      name = name.substring( 0, name.length() - 3 );
+    } else {
+      in = new BufferedInputStream( in, 64 * 1024 );
+    }
+
+    return name.endsWith( ".csv" )
+        ? ( new PfifCsvReader( in ) ) : ( new PfifXmlReader( in ) );
+  }
+
+  private void submit( final List<Pfif.RawRecord> batch, long recordsEnd )
+      throws InterruptedException {
+    final boolean routed = !this.publish;
+    Future<ImportBatch> converted = this.converters.submit(
+        () -> ImportBatch.convert( batch, routed ) );
+    this.enqueue( new Pending( converted, recordsEnd, null ) );
+  }
+
+  /** Waits for room in the queue unless the import is cancelled. */
+  private void enqueue( Pending batch ) throws InterruptedException {
+    while ( !this.pending.offer( batch, 100, TimeUnit.MILLISECONDS ) ) {
+      if ( this.cancelled && batch.converted != null ) {
+        throw new InterruptedException();
+      }
+    }
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Committing
+  //==========================================================================//
+  /** Commits the converted batches in file order. */
+  private void commit() {
+    Exception error = null;
+    try {
+      while ( true ) {
+        Pending batch = this.pending.take();
+        if ( batch.converted == null ) {
+          // End of the file
+          error = batch.error;
+          break;
+        }
+        if ( this.cancelled ) {
+          error = new CancellationException( "Import cancelled." );
+          break;
+        }
+
+        ImportBatch records = batch.converted.get();
+        this.insert( records );
+        this.recordsCommitted = batch.recordsEnd;
+        this.recordsInvalid += records.invalid;
+        this.checkpoint.save( this.source, batch.recordsEnd );
+
+        this.listener.onProgress( this.progress() );
+      }
+    } catch ( InterruptedException e ) {
+      error = new CancellationException( "Import interrupted." );
+    } catch ( ExecutionException e ) {
+      error = ( e.getCause() instanceof Exception )
+          ? ( ( Exception ) e.getCause() ) : ( e );
+    } catch ( IOException | RuntimeException e ) {
+      // E.g., the database rejecting the batch after it was shut down
+      error = e;
+    } finally {
+      // Unblock the parser if it is still running
+      this.cancelled = this.cancelled || error != null;
+      this.pending.clear();
+      this.converters.shutdownNow();
+    }
+
+    if ( error == null && this.cancelled ) {
+      error = new CancellationException( "Import cancelled." );
+    }
+    Progress progress = this.progress();
+    if ( error == null ) {
+      this.checkpoint.clear();
+      Log.i( TAG, "Imported " + this.source + ": " + progress );
+      this.listener.onFinished( progress );
+    } else {
+      Log.e( TAG, "Import of " + this.source + " failed: " + progress, error );
+      this.listener.onFailed( progress, error );
+    }
+  }
+
+  /**
+   * Inserts a batch and waits for the transaction to finish. Stops waiting
+   * if the import is cancelled or the database is shut down, in which case
+   * the batch may never run.
+   */
+  private void insert( ImportBatch records )
+      throws InterruptedException, IOException {
+    final CountDownLatch done = new CountDownLatch( 1 );
+    final boolean[] success = new boolean[ 1 ];
+    this.db.insertBatch( records.persons, records.notes,
+        DatabaseController.Priority.BACKGROUND_INGEST,
+        ( committed, persons, notes ) -> {
+          success[ 0 ] = committed;
+          this.personsInserted += persons;
+          this.notesInserted += notes;
+          done.countDown();
+        } );
+    while ( !done.await( 100, TimeUnit.MILLISECONDS ) ) {
+      if ( this.cancelled ) {
+        throw new CancellationException( "Import cancelled." );
+      }
+      if ( this.db.isShutDown() ) {
+        throw new IOException( "Database shut down during import." );
+      }
+    }
+
+    if ( !success[ 0 ] ) {
+      throw new IOException( "Database transaction failed." );
+    }
+  }
+
+  private Progress progress() {
+    return new Progress( this.recordsCommitted, this.personsInserted,
+        this.notesInserted, this.recordsInvalid, this.bytesRead,
+        this.source.length(), System.currentTimeMillis() - this.startTime );
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Private classes
+  //==========================================================================//
+  /** A batch handed from the parser to the committing thread. */
+  private static final class Pending {
+    /** The conversion, {@code null} for the end of the file. */
+    final Future<ImportBatch> converted;
+    /** Number of records from the start of the file up to this batch. */
+    final long recordsEnd;
+    /** Parse error at the end of the file, if any. */
+    final Exception error;
+
+    Pending( Future<ImportBatch> converted, long recordsEnd,
+             Exception error ) {
+      this.converted = converted;
+      this.recordsEnd = recordsEnd;
+      this.error = error;
+    }
+  }
+
+  /** Counts the bytes read from the file for progress reports. */
+  private final class CountingInputStream
+      extends FilterInputStream {
+    private long count = 0;
+
+    CountingInputStream( InputStream in ) {
+      super( in );
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if ( b >= 0 ) bytesRead = ++this.count;
+      return b;
+    }
+
+    @Override
+    public int read( byte[] buffer, int offset, int length )
+        throws IOException {
+      int n = super.read( buffer, offset, length );
+      if ( n > 0 ) bytesRead = ( this.count += n );
+      return n;
+    }
+
+    @Override
+    public long skip( long n ) throws IOException {
+      long skipped = super.skip( n );
+      bytesRead = ( this.count += skipped );
+      return skipped;
+    }
+  }
+  //==========================================================================//
+}
@@ -0,0 +1,159 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.pfif;
+
+import android.util.Xml;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * <p> Reads records from a PFIF XML document with a pull parser. Persons and
+ * notes may appear at the top level or notes may be nested in their person,
+ * in which case the person record ID of the note defaults to that of the
+ * person. </p> <p/> <p> Nested notes are returned as soon as they end, and
+ * the person after all of its notes. Unknown elements are skipped. </p>
+ *
+ * @author teemuk
+ */
+final class PfifXmlReader
+    implements RecordReader {
+
+  //==========================================================================//
+  // Instance vars
+  //==========================================================================//
+  private final InputStream in;
+  private final XmlPullParser parser;
+
+  /** Person being read and the depth of its element. */
+  private Pfif.RawRecord person;
+  private int personDepth;
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // API
+  //==========================================================================//
+  PfifXmlReader( InputStream in ) throws IOException {
+    this.in = in;
+    this.parser = Xml.newPullParser();
+    try {
+      this.parser.setFeature( XmlPullParser.FEATURE_PROCESS_NAMESPACES, true );
+      this.parser.setInput( in, null );
+    } catch ( XmlPullParserException e ) {
+      throw new IOException( "Cannot read PFIF XML.", e );
+    }
+  }
+
+  @Override
+  public Pfif.RawRecord next() throws IOException {
+    try {
+      int event;
+      while ( ( event = this.parser.next() ) != XmlPullParser.END_DOCUMENT ) {
+        if ( event == XmlPullParser.START_TAG ) {
+          String name = this.parser.getName();
+          if ( Pfif.ELEMENT_NOTE.equals( name ) ) {
+            return this.readNote();
+          } else if ( Pfif.ELEMENT_PERSON.equals( name ) ) {
+            this.person = new Pfif.RawRecord( false );
+            this.personDepth = this.parser.getDepth();
+          } else if ( this.person != null
+                      && this.parser.getDepth() == this.personDepth + 1 ) {
+            this.readField( this.person );
+          }
+        } else if ( event == XmlPullParser.END_TAG && this.person != null
+                    && this.parser.getDepth() == this.personDepth ) {
+          Pfif.RawRecord record = this.person;
+          this.person = null;
+          return record;
+        }
+      }
+      return null;
+    } catch ( XmlPullParserException e ) {
+      throw new IOException( "Malformed PFIF XML on line "
+                             + this.parser.getLineNumber() + ".", e );
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.in.close();
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Private
+  //==========================================================================//
+  /** Reads a note, the parser is at the start of the note element. */
+  private Pfif.RawRecord readNote()
+      throws IOException, XmlPullParserException {
+    Pfif.RawRecord note = new Pfif.RawRecord( true );
+    int depth = this.parser.getDepth();
+
+    int event;
+    while ( ( event = this.parser.next() ) != XmlPullParser.END_DOCUMENT ) {
+      if ( event == XmlPullParser.START_TAG ) {
+        this.readField( note );
+      } else if ( event == XmlPullParser.END_TAG
+                  && this.parser.getDepth() == depth ) {
+        break;
+      }
+    }
+
+    // Nested notes belong to the enclosing person
+    if ( note.values[ Pfif.NOTE_PERSON_ID ] == null && this.person != null ) {
+      note.values[ Pfif.NOTE_PERSON_ID ] = this.person.values[ 0 ];
+    }
+    return note;
+  }
+
+  /**
+   * Reads a field of a record, the parser is at the start of the field
+   * element and is left at its end.
+   */
+  private void readField( Pfif.RawRecord record )
+      throws IOException, XmlPullParserException {
+    int index = Pfif.indexOf( record.note, this.parser.getName() );
+    if ( index < 0 ) {
+      this.skip();
+      return;
+    }
+    String value = this.parser.nextText().trim();
+    record.values[ index ] = ( value.length() > 0 ) ? ( value ) : ( null );
+  }
+
+  /** Skips the element the parser is at, including its children. */
+  private void skip() throws IOException, XmlPullParserException {
+    int depth = 1;
+    while ( depth > 0 ) {
+      int event = this.parser.next();
+      if ( event == XmlPullParser.START_TAG ) {
+        depth++;
+      } else if ( event == XmlPullParser.END_TAG ) {
+        depth--;
+      } else if ( event == XmlPullParser.END_DOCUMENT ) {
+        return;
+      }
+    }
+  }
+  //==========================================================================//
+}
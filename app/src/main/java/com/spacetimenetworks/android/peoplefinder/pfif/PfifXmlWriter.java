@@ -0,0 +1,83 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.pfif;
+
+import android.util.Xml;
+
+import org.xmlpull.v1.XmlSerializer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes records as a PFIF 1.4 XML document. Notes are written as top-level
+ * elements after the persons, each with the record ID of its person, so
+ * persons and notes can be written in separate passes. Missing values are
+ * left out.
+ *
+ * @author teemuk
+ */
+final class PfifXmlWriter
+    implements RecordWriter {
+  private static final String PREFIX = "pfif";
+
+  private final OutputStream out;
+  private final XmlSerializer serializer;
+
+  PfifXmlWriter( OutputStream out ) throws IOException {
+    this.out = out;
+    this.serializer = Xml.newSerializer();
+    this.serializer.setOutput( out, "UTF-8" );
+    this.serializer.startDocument( "UTF-8", null );
+    this.serializer.setPrefix( PREFIX, Pfif.NAMESPACE );
+    this.serializer.startTag( Pfif.NAMESPACE, Pfif.ELEMENT_ROOT );
+  }
+
+  @Override
+  public void writePerson( String[] values ) throws IOException {
+    this.write( Pfif.ELEMENT_PERSON, Pfif.PERSON_FIELDS, values );
+  }
+
+  @Override
+  public void writeNote( String[] values ) throws IOException {
+    this.write( Pfif.ELEMENT_NOTE, Pfif.NOTE_FIELDS, values );
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      this.serializer.endTag( Pfif.NAMESPACE, Pfif.ELEMENT_ROOT );
+      this.serializer.endDocument();
+    } finally {
+      this.out.close();
+    }
+  }
+
+  private void write( String element, String[] fields, String[] values )
+      throws IOException {
+    this.serializer.startTag( Pfif.NAMESPACE, element );
+    for ( int i = 0; i < fields.length; i++ ) {
+      if ( values[ i ] != null ) {
+        this.serializer.startTag( Pfif.NAMESPACE, fields[ i ] );
+        this.serializer.text( values[ i ] );
+        this.serializer.endTag( Pfif.NAMESPACE, fields[ i ] );
+      }
+    }
+    this.serializer.endTag( Pfif.NAMESPACE, element );
+  }
+}
@@ -0,0 +1,40 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.pfif;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Reads PFIF records one at a time from a stream, without holding more than
+ * the current record in memory.
+ *
+ * @author teemuk
+ */
+interface RecordReader
+    extends Closeable {
+  /**
+   * Reads the next record.
+   *
+   * @return the next record or {@code null} at the end of the stream
+   *
+   * @throws IOException
+   *     if reading fails or the stream is malformed
+   */
+  Pfif.RawRecord next() throws IOException;
+}
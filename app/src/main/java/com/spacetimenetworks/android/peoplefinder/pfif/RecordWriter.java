@@ -0,0 +1,54 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.pfif;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Writes PFIF records one at a time to a stream. Closing the writer finishes
+ * the document and closes the stream.
+ *
+ * @author teemuk
+ */
+interface RecordWriter
+    extends Closeable {
+  /**
+   * Writes a person.
+   *
+   * @param values
+   *     values in the order of {@link Pfif#PERSON_FIELDS}, {@code null} for
+   *     missing values
+   *
+   * @throws IOException
+   *     if writing fails
+   */
+  void writePerson( String[] values ) throws IOException;
+
+  /**
+   * Writes a note.
+   *
+   * @param values
+   *     values in the order of {@link Pfif#NOTE_FIELDS}, {@code null} for
+   *     missing values
+   *
+   * @throws IOException
+   *     if writing fails
+   */
+  void writeNote( String[] values ) throws IOException;
+}
@@ -0,0 +1,167 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.router;
+
+import android.util.Log;
+
+import fi.tkk.netlab.dtn.scampi.applib.ApiException;
+import fi.tkk.netlab.dtn.scampi.applib.AppLib;
+import fi.tkk.netlab.dtn.scampi.applib.AppLibLifecycleListener;
+import fi.tkk.netlab.dtn.scampi.applib.MessageReceivedCallback;
+import fi.tkk.netlab.dtn.scampi.applib.SCAMPIMessage;
+import fi.tkk.netlab.dtn.scampi.applib.impl.message.ContentType;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * {@link Router} that connects to the SCAMPI router of the Liberouter app
+ * through {@link AppLib}. Adapts the AppLib states, listeners and messages
+ * to the types of {@link Router}. A received message has its binary fields
+ * read into buffers before it's passed on.
+ *
+ * @author teemuk
+ */
+public class AppLibRouter
+    implements Router {
+  private static final String TAG = AppLibRouter.class.getSimpleName();
+
+  private final AppLib appLib;
+
+  /** Creates a router on top of a new AppLib instance. */
+  public AppLibRouter() {
+    this( new AppLib() );
+  }
+
+  /**
+   * Creates a router on top of an AppLib instance.
+   *
+   * @param appLib
+   *     the AppLib, not yet started
+   */
+  public AppLibRouter( AppLib appLib ) {
+    this.appLib = appLib;
+  }
+
+  @Override
+  public void addLifecycleListener( final LifecycleListener listener ) {
+    this.appLib.addLifecycleListener( new AppLibLifecycleListener() {
+      @Override
+      public void onConnected( String scampiId ) {
+        listener.onConnected( scampiId );
+      }
+
+      @Override
+      public void onDisconnected() {
+        listener.onDisconnected();
+      }
+
+      @Override
+      public void onConnectFailed() {
+        listener.onConnectFailed();
+      }
+
+      @Override
+      public void onStopped() {
+        listener.onStopped();
+      }
+    } );
+  }
+
+  @Override
+  public void subscribe( String service, final MessageListener listener )
+      throws InterruptedException {
+    this.appLib.addMessageReceivedCallback( service,
+        new MessageReceivedCallback() {
+          @Override
+          public void messageReceived( SCAMPIMessage message,
+                                       String service ) {
+            RouterMessage received;
+            try {
+              received = fromScampi( message );
+            } catch ( IOException | ApiException e ) {
+              Log.e( TAG, "Couldn't read SCAMPI message ("
+                          + e.getMessage() + ").", e );
+              return;
+            }
+            listener.messageReceived( received, service );
+          }
+        } );
+    this.appLib.subscribe( service );
+  }
+
+  @Override
+  public void publish( RouterMessage message, String service )
+      throws InterruptedException {
+    this.appLib.publish( toScampi( message ), service );
+  }
+
+  @Override
+  public void start() {
+    this.appLib.start();
+  }
+
+  @Override
+  public void connect() {
+    this.appLib.connect();
+  }
+
+  @Override
+  public void stop() {
+    this.appLib.stop();
+  }
+
+  @Override
+  public State getLifecycleState() {
+    // The states match one to one
+    return State.valueOf( this.appLib.getLifecycleState().name() );
+  }
+
+
+  //==========================================================================//
+  // Private
+  //==========================================================================//
+  private static SCAMPIMessage toScampi( RouterMessage message ) {
+    SCAMPIMessage scampi = new SCAMPIMessage( message.getAppTag() );
+    scampi.setLifetime( message.getLifetime() );
+    for ( Map.Entry<String, Object> field
+        : message.getFields().entrySet() ) {
+      if ( field.getValue() instanceof File ) {
+        scampi.putBinary( field.getKey(), ( File ) field.getValue() );
+      } else {
+        scampi.putBinary( field.getKey(), ( byte[] ) field.getValue() );
+      }
+    }
+    return scampi;
+  }
+
+  private static RouterMessage fromScampi( SCAMPIMessage scampi )
+      throws IOException, ApiException {
+    RouterMessage message = new RouterMessage( scampi.getAppTag(),
+        scampi.getLifetime() );
+    for ( ContentType content : scampi.getContent() ) {
+      if ( scampi.hasBinary( content.name ) ) {
+        message.putBinary( content.name,
+            scampi.getBinaryBuffer( content.name ) );
+      }
+    }
+    return message;
+  }
+  //==========================================================================//
+}
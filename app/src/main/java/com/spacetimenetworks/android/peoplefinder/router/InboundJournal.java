@@ -0,0 +1,246 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.router;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p> Journal of the raw records received from the router, with the time
+ * each message arrived. A journal recorded in the field can be replayed
+ * with {@link JournalReplayer} to reproduce the same traffic in the lab.
+ * </p> <p/> <p> The file starts with a magic number and the wall clock time
+ * the journal was started in milliseconds. Each entry then holds the
+ * milliseconds since the previous entry as a variable length integer, the
+ * AppTag of the message, the length of the records as a variable length
+ * integer and the serialized records. Arrival times are taken from a
+ * monotonic clock, so they don't jump with the wall clock. </p> <p/> <p>
+ * Doesn't depend on Android, so that journals can be replayed on a plain
+ * JVM. </p>
+ *
+ * @author teemuk
+ */
+public final class InboundJournal {
+  private InboundJournal() {}
+
+  //==========================================================================//
+  // Constants
+  //==========================================================================//
+  /** Magic number at the start of a journal file, "PFJ1". */
+  public static final int MAGIC = 0x50464a31;
+  private static final int BUFFER_SIZE = 64 * 1024;
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // API
+  //==========================================================================//
+  /** An entry read from a journal. */
+  public static final class Entry {
+    /** Arrival time in milliseconds since the epoch. */
+    public final long time;
+    /** AppTag of the message, i.e., the person record ID. */
+    public final String appTag;
+    /** Serialized records of the message. */
+    public final byte[] payload;
+
+    public Entry( long time, String appTag, byte[] payload ) {
+      this.time = time;
+      this.appTag = appTag;
+      this.payload = payload;
+    }
+  }
+
+  /**
+   * Appends entries to a new journal file. Every entry is flushed to the
+   * file as it is written, so that a journal survives the app being killed.
+   * Thread safe.
+   */
+  public static final class Writer
+      implements Closeable {
+    private final DataOutputStream out;
+    private final long startTime;
+    private final long startNanos;
+    private long lastTime;
+    private long bytes;
+
+    /**
+     * Creates a new journal, replacing any existing file.
+     *
+     * @param file
+     *     the journal file
+     * @throws IOException
+     *     if the file can't be created
+     */
+    public Writer( File file )
+        throws IOException {
+      this.out = new DataOutputStream( new BufferedOutputStream(
+          new FileOutputStream( file ), BUFFER_SIZE ) );
+      this.startTime = System.currentTimeMillis();
+      this.startNanos = System.nanoTime();
+      this.lastTime = this.startTime;
+
+      this.out.writeInt( MAGIC );
+      this.out.writeLong( this.startTime );
+      this.out.flush();
+    }
+
+    /**
+     * Appends the records of a message that arrived now.
+     *
+     * @param appTag
+     *     AppTag of the message
+     * @param payload
+     *     serialized records of the message
+     * @throws IOException
+     *     if writing fails
+     */
+    public synchronized void append( String appTag, byte[] payload )
+        throws IOException {
+      long time = this.startTime + TimeUnit.NANOSECONDS.toMillis(
+          System.nanoTime() - this.startNanos );
+
+      writeVarLong( this.out, time - this.lastTime );
+      this.out.writeUTF( ( appTag != null ) ? ( appTag ) : ( "" ) );
+      writeVarLong( this.out, payload.length );
+      this.out.write( payload );
+      this.out.flush();
+
+      this.lastTime = time;
+      this.bytes += payload.length;
+    }
+
+    /** Returns the number of record bytes written to the journal. */
+    public synchronized long getBytes() {
+      return this.bytes;
+    }
+
+    @Override
+    public synchronized void close()
+        throws IOException {
+      this.out.close();
+    }
+  }
+
+  /**
+   * Reads the entries of a journal in the order they were written. A
+   * truncated entry at the end, e.g., from the app being killed while
+   * writing, is treated as the end of the journal.
+   */
+  public static final class Reader
+      implements Closeable {
+    private final DataInputStream in;
+    /** Wall clock time the journal was started at. */
+    public final long startTime;
+    private long lastTime;
+
+    /**
+     * Opens a journal.
+     *
+     * @param file
+     *     the journal file
+     * @throws IOException
+     *     if the file can't be read or isn't a journal
+     */
+    public Reader( File file )
+        throws IOException {
+      this.in = new DataInputStream( new BufferedInputStream(
+          new FileInputStream( file ), BUFFER_SIZE ) );
+      try {
+        if ( this.in.readInt() != MAGIC ) {
+          throw new IOException( "Not a journal file '"
+                                 + file.getAbsolutePath() + "'." );
+        }
+        this.startTime = this.in.readLong();
+      } catch ( IOException e ) {
+        this.in.close();
+        throw e;
+      }
+      this.lastTime = this.startTime;
+    }
+
+    /**
+     * Reads the next entry.
+     *
+     * @return the entry, or {@code null} at the end of the journal
+     * @throws IOException
+     *     if reading fails
+     */
+    public Entry next()
+        throws IOException {
+      try {
+        long time = this.lastTime + readVarLong( this.in );
+        String appTag = this.in.readUTF();
+        long length = readVarLong( this.in );
+        if ( length > Integer.MAX_VALUE ) {
+          throw new IOException( "Invalid entry length " + length + "." );
+        }
+        byte[] payload = new byte[ ( int ) length ];
+        this.in.readFully( payload );
+
+        this.lastTime = time;
+        return new Entry( time, appTag, payload );
+      } catch ( EOFException e ) {
+        return null;
+      }
+    }
+
+    @Override
+    public void close()
+        throws IOException {
+      this.in.close();
+    }
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Private
+  //==========================================================================//
+  private static void writeVarLong( DataOutputStream out, long value )
+      throws IOException {
+    while ( ( value & ~0x7fL ) != 0 ) {
+      out.writeByte( ( int ) ( ( value & 0x7f ) | 0x80 ) );
+      value >>>= 7;
+    }
+    out.writeByte( ( int ) value );
+  }
+
+  private static long readVarLong( DataInputStream in )
+      throws IOException {
+    long value = 0;
+    for ( int shift = 0; shift < 64; shift += 7 ) {
+      int b = in.readUnsignedByte();
+      value |= ( long ) ( b & 0x7f ) << shift;
+      if ( ( b & 0x80 ) == 0 ) {
+        return value;
+      }
+    }
+    throw new IOException( "Invalid variable length integer." );
+  }
+  //==========================================================================//
+}
@@ -0,0 +1,150 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.router;
+
+import com.spacetimenetworks.android.peoplefinder.RecordMessages;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p> Replays an {@link InboundJournal} into the inbound message handling of
+ * the app. Each entry is turned back into a message with the same AppTag
+ * and records, and passed to a {@link Router.MessageListener} as if the
+ * router had delivered it. </p> <p/> <p> Entries are delivered with the
+ * same spacing as they arrived, divided by the speed factor. A speed of 0
+ * delivers them as fast as the callback takes them. Messages are delivered
+ * from the calling thread one at a time, like the router does, so a slow
+ * callback delays the following messages. The replay reports how far
+ * behind the schedule it fell. </p>
+ *
+ * @author teemuk
+ */
+public final class JournalReplayer {
+
+  //==========================================================================//
+  // Instance vars
+  //==========================================================================//
+  private final File journal;
+  private final double speed;
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // API
+  //==========================================================================//
+  /**
+   * Creates a replayer.
+   *
+   * @param journal
+   *     the journal file
+   * @param speed
+   *     speed factor relative to the original traffic, or 0 for no delays
+   */
+  public JournalReplayer( File journal, double speed ) {
+    if ( speed < 0 ) {
+      throw new IllegalArgumentException( "Negative speed " + speed + "." );
+    }
+    this.journal = journal;
+    this.speed = speed;
+  }
+
+  /**
+   * Delivers every entry of the journal to the callback. Returns early if
+   * the thread is interrupted.
+   *
+   * @param callback
+   *     callback receiving the messages
+   * @return statistics of the replay
+   * @throws IOException
+   *     if the journal can't be read
+   */
+  public Result replay( Router.MessageListener callback )
+      throws IOException {
+    long start = System.nanoTime();
+    long firstTime = -1;
+    int messages = 0;
+    long bytes = 0;
+    long maxLag = 0;
+
+    InboundJournal.Reader reader = new InboundJournal.Reader( this.journal );
+    try {
+      InboundJournal.Entry entry;
+      while ( ( entry = reader.next() ) != null ) {
+        if ( firstTime == -1 ) {
+          firstTime = entry.time;
+        }
+
+        // Wait until the scheduled time, or note how late we are
+        if ( this.speed > 0 ) {
+          long due = start + ( long ) ( TimeUnit.MILLISECONDS.toNanos(
+              entry.time - firstTime ) / this.speed );
+          long wait = due - System.nanoTime();
+          if ( wait > 0 ) {
+            try {
+              TimeUnit.NANOSECONDS.sleep( wait );
+            } catch ( InterruptedException e ) {
+              Thread.currentThread().interrupt();
+              break;
+            }
+          } else {
+            maxLag = Math.max( maxLag, -wait );
+          }
+        } else if ( Thread.currentThread().isInterrupted() ) {
+          break;
+        }
+
+        RouterMessage msg = new RouterMessage( entry.appTag,
+            RecordMessages.LIFETIME );
+        msg.putBinary( RecordMessages.RECORDS_FIELD, entry.payload );
+        callback.messageReceived( msg, RecordMessages.SERVICE );
+
+        messages++;
+        bytes += entry.payload.length;
+      }
+    } finally {
+      reader.close();
+    }
+
+    return new Result( messages, bytes, System.nanoTime() - start, maxLag );
+  }
+
+  /** Statistics of a replay. */
+  public static final class Result {
+    /** Number of messages delivered. */
+    public final int messages;
+    /** Number of record bytes delivered. */
+    public final long bytes;
+    /** Duration of the replay in nanoseconds. */
+    public final long elapsed;
+    /**
+     * Longest time a message was delivered after its scheduled time, in
+     * nanoseconds. Always 0 when replaying without delays.
+     */
+    public final long maxLag;
+
+    public Result( int messages, long bytes, long elapsed, long maxLag ) {
+      this.messages = messages;
+      this.bytes = bytes;
+      this.elapsed = elapsed;
+      this.maxLag = maxLag;
+    }
+  }
+  //==========================================================================//
+}
@@ -0,0 +1,139 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.router;
+
+/**
+ * <p> The connection of the app to a router, i.e., the parts of the SCAMPI
+ * AppLib that {@code AppLibService} uses. {@link AppLibRouter} connects to
+ * the Liberouter app on the device, other implementations can stand in for
+ * it, e.g., to run nodes in a simulation. </p> <p/> <p> The lifecycle follows
+ * the {@link State states}: a new router is {@link #start started}, then
+ * {@link #connect connected}, and the listeners are told when the connection
+ * comes up or goes down. Received messages are passed to the listeners on
+ * the thread of the router. </p>
+ *
+ * @author teemuk
+ */
+public interface Router {
+
+  /**
+   * Adds a listener for the connection state.
+   *
+   * @param listener
+   *     the listener
+   */
+  void addLifecycleListener( LifecycleListener listener );
+
+  /**
+   * Subscribes to a service. Messages published to the service are passed
+   * to the listener.
+   *
+   * @param service
+   *     name of the service
+   * @param listener
+   *     listener for the received messages
+   * @throws InterruptedException
+   *     if interrupted while waiting to send the subscription
+   */
+  void subscribe( String service, MessageListener listener )
+      throws InterruptedException;
+
+  /**
+   * Publishes a message to a service. A message replaces earlier messages
+   * with the same AppTag.
+   *
+   * @param message
+   *     the message
+   * @param service
+   *     name of the service
+   * @throws InterruptedException
+   *     if interrupted while waiting to send the message
+   */
+  void publish( RouterMessage message, String service )
+      throws InterruptedException;
+
+  /** Starts the router, it can then be connected. */
+  void start();
+
+  /** Starts connecting, the listeners are told when it is done. */
+  void connect();
+
+  /** Stops the router for good. */
+  void stop();
+
+  /**
+   * Returns the lifecycle state.
+   *
+   * @return the state
+   */
+  State getLifecycleState();
+
+
+  //==========================================================================//
+  // Types
+  //==========================================================================//
+  /** Lifecycle states of a router. */
+  enum State {
+    /** Created, not yet started. */
+    NEW,
+    /** Started and not connected, can be connected. */
+    IDLE,
+    /** Connecting. */
+    CONNECTING,
+    /** Connected, messages can be published. */
+    CONNECTED,
+    /** Stopping. */
+    STOPPING,
+    /** Stopped for good. */
+    TERMINATED
+  }
+
+  /** Listener for the connection state of a router. */
+  interface LifecycleListener {
+    /**
+     * Called when the router has connected.
+     *
+     * @param routerId
+     *     ID of the router
+     */
+    void onConnected( String routerId );
+
+    /** Called when the connection to the router is lost. */
+    void onDisconnected();
+
+    /** Called when connecting to the router fails. */
+    void onConnectFailed();
+
+    /** Called when the router has stopped. */
+    void onStopped();
+  }
+
+  /** Listener for the messages of a subscribed service. */
+  interface MessageListener {
+    /**
+     * Called when a message is received.
+     *
+     * @param message
+     *     the message
+     * @param service
+     *     name of the service the message was published to
+     */
+    void messageReceived( RouterMessage message, String service );
+  }
+  //==========================================================================//
+}
@@ -0,0 +1,212 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.router;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p> A message published to or received from a {@link Router}. The message
+ * has an AppTag, which identifies it in the router, a lifetime, and named
+ * binary fields. A field holds either a buffer or a file, a file is only
+ * read when the message is sent or the field is read. </p> <p/> <p> The
+ * message isn't thread safe, fill it in before publishing it. </p>
+ *
+ * @author teemuk
+ */
+public final class RouterMessage {
+
+  //==========================================================================//
+  // Instance vars
+  //==========================================================================//
+  private final String appTag;
+  private final long lifetime;
+  /** The fields, either {@code byte[]} or {@link File}. */
+  private final Map<String, Object> fields = new LinkedHashMap<>();
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // API
+  //==========================================================================//
+  /**
+   * Creates an empty message.
+   *
+   * @param appTag
+   *     AppTag of the message
+   * @param lifetime
+   *     lifetime of the message in seconds
+   */
+  public RouterMessage( String appTag, long lifetime ) {
+    this.appTag = appTag;
+    this.lifetime = lifetime;
+  }
+
+  /** Returns the AppTag of the message. */
+  public String getAppTag() {
+    return this.appTag;
+  }
+
+  /** Returns the lifetime of the message in seconds. */
+  public long getLifetime() {
+    return this.lifetime;
+  }
+
+  /**
+   * Sets a field to a buffer.
+   *
+   * @param name
+   *     name of the field
+   * @param buffer
+   *     contents of the field, not copied
+   */
+  public void putBinary( String name, byte[] buffer ) {
+    this.fields.put( name, buffer );
+  }
+
+  /**
+   * Sets a field to the contents of a file.
+   *
+   * @param name
+   *     name of the field
+   * @param file
+   *     file to read the field from
+   */
+  public void putBinary( String name, File file ) {
+    this.fields.put( name, file );
+  }
+
+  /**
+   * Returns whether the message has a field.
+   *
+   * @param name
+   *     name of the field
+   * @return {@code true} if the message has the field
+   */
+  public boolean hasBinary( String name ) {
+    return this.fields.containsKey( name );
+  }
+
+  /**
+   * Opens a stream to read a field.
+   *
+   * @param name
+   *     name of the field
+   * @return stream of the contents, to be closed by the caller
+   * @throws IOException
+   *     if the message has no such field or the file can't be opened
+   */
+  public InputStream getBinary( String name )
+      throws IOException {
+    Object field = this.field( name );
+    return ( field instanceof File )
+        ? ( new FileInputStream( ( File ) field ) )
+        : ( new ByteArrayInputStream( ( byte[] ) field ) );
+  }
+
+  /**
+   * Returns the contents of a field as a buffer. A buffer field is returned
+   * as is, without copying.
+   *
+   * @param name
+   *     name of the field
+   * @return the contents
+   * @throws IOException
+   *     if the message has no such field or the file can't be read
+   */
+  public byte[] getBinaryBuffer( String name )
+      throws IOException {
+    Object field = this.field( name );
+    if ( field instanceof byte[] ) {
+      return ( byte[] ) field;
+    }
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream(
+        ( int ) ( ( File ) field ).length() );
+    InputStream in = new FileInputStream( ( File ) field );
+    try {
+      byte[] buffer = new byte[ 8192 ];
+      int read;
+      while ( ( read = in.read( buffer ) ) >= 0 ) {
+        out.write( buffer, 0, read );
+      }
+    } finally {
+      in.close();
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Returns the size of a field.
+   *
+   * @param name
+   *     name of the field
+   * @return size in bytes
+   * @throws IOException
+   *     if the message has no such field
+   */
+  public long getBinarySize( String name )
+      throws IOException {
+    return size( this.field( name ) );
+  }
+
+  /** Returns the total size of the fields in bytes. */
+  public long getSize() {
+    long size = 0;
+    for ( Object field : this.fields.values() ) {
+      size += size( field );
+    }
+    return size;
+  }
+
+  /**
+   * Returns the fields, either {@code byte[]} or {@link File}, in the order
+   * they were put.
+   */
+  Map<String, Object> getFields() {
+    return Collections.unmodifiableMap( this.fields );
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Private
+  //==========================================================================//
+  private Object field( String name )
+      throws IOException {
+    Object field = this.fields.get( name );
+    if ( field == null ) {
+      throw new IOException( "No field '" + name + "' in message." );
+    }
+    return field;
+  }
+
+  private static long size( Object field ) {
+    return ( field instanceof File )
+        ? ( ( ( File ) field ).length() )
+        : ( ( ( byte[] ) field ).length );
+  }
+  //==========================================================================//
+}
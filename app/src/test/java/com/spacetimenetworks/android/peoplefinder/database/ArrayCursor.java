@@ -0,0 +1,311 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.database;
+
+import android.content.ContentResolver;
+import android.database.CharArrayBuffer;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.database.DataSetObserver;
+import android.net.Uri;
+import android.os.Bundle;
+
+import java.util.Arrays;
+
+/**
+ * Read only {@link Cursor} over rows held in arrays, for reading query
+ * results in local unit tests where the framework cursors are stubs. Values
+ * are strings, longs or {@code null}.
+ *
+ * @author teemuk
+ */
+@SuppressWarnings( "deprecation" )
+final class ArrayCursor
+    implements Cursor {
+
+  //==========================================================================//
+  // Instance vars
+  //==========================================================================//
+  private final String[] columns;
+  private final Object[][] rows;
+  private int position = -1;
+  private boolean closed = false;
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // API
+  //==========================================================================//
+  ArrayCursor( String[] columns, Object[]... rows ) {
+    this.columns = columns;
+    this.rows = rows;
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Position
+  //==========================================================================//
+  @Override
+  public int getCount() {
+    return this.rows.length;
+  }
+
+  @Override
+  public int getPosition() {
+    return this.position;
+  }
+
+  @Override
+  public boolean move( int offset ) {
+    return this.moveToPosition( this.position + offset );
+  }
+
+  @Override
+  public boolean moveToPosition( int position ) {
+    this.position = Math.max( -1, Math.min( this.rows.length, position ) );
+    return ( this.position >= 0 && this.position < this.rows.length );
+  }
+
+  @Override
+  public boolean moveToFirst() {
+    return this.moveToPosition( 0 );
+  }
+
+  @Override
+  public boolean moveToLast() {
+    return this.moveToPosition( this.rows.length - 1 );
+  }
+
+  @Override
+  public boolean moveToNext() {
+    return this.move( 1 );
+  }
+
+  @Override
+  public boolean moveToPrevious() {
+    return this.move( -1 );
+  }
+
+  @Override
+  public boolean isFirst() {
+    return ( this.rows.length > 0 && this.position == 0 );
+  }
+
+  @Override
+  public boolean isLast() {
+    return ( this.rows.length > 0 && this.position == this.rows.length - 1 );
+  }
+
+  @Override
+  public boolean isBeforeFirst() {
+    return ( this.rows.length == 0 || this.position == -1 );
+  }
+
+  @Override
+  public boolean isAfterLast() {
+    return ( this.rows.length == 0 || this.position == this.rows.length );
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Columns
+  //==========================================================================//
+  @Override
+  public int getColumnIndex( String name ) {
+    return Arrays.asList( this.columns ).indexOf( name );
+  }
+
+  @Override
+  public int getColumnIndexOrThrow( String name ) {
+    int index = this.getColumnIndex( name );
+    if ( index < 0 ) {
+      throw new IllegalArgumentException( "No column '" + name + "'." );
+    }
+    return index;
+  }
+
+  @Override
+  public String getColumnName( int column ) {
+    return this.columns[ column ];
+  }
+
+  @Override
+  public String[] getColumnNames() {
+    return this.columns.clone();
+  }
+
+  @Override
+  public int getColumnCount() {
+    return this.columns.length;
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Values
+  //==========================================================================//
+  @Override
+  public byte[] getBlob( int column ) {
+    throw new UnsupportedOperationException( "No blobs." );
+  }
+
+  @Override
+  public String getString( int column ) {
+    Object value = this.value( column );
+    return ( value == null ) ? ( null ) : ( value.toString() );
+  }
+
+  @Override
+  public void copyStringToBuffer( int column, CharArrayBuffer buffer ) {
+    String value = this.getString( column );
+    if ( value == null ) {
+      buffer.sizeCopied = 0;
+      return;
+    }
+    if ( buffer.data == null || buffer.data.length < value.length() ) {
+      buffer.data = value.toCharArray();
+    } else {
+      value.getChars( 0, value.length(), buffer.data, 0 );
+    }
+    buffer.sizeCopied = value.length();
+  }
+
+  @Override
+  public short getShort( int column ) {
+    return ( short ) this.getLong( column );
+  }
+
+  @Override
+  public int getInt( int column ) {
+    return ( int ) this.getLong( column );
+  }
+
+  @Override
+  public long getLong( int column ) {
+    Object value = this.value( column );
+    return ( value == null ) ? ( 0 ) : ( ( Number ) value ).longValue();
+  }
+
+  @Override
+  public float getFloat( int column ) {
+    return this.getLong( column );
+  }
+
+  @Override
+  public double getDouble( int column ) {
+    return this.getLong( column );
+  }
+
+  @Override
+  public int getType( int column ) {
+    Object value = this.value( column );
+    if ( value == null ) {
+      return FIELD_TYPE_NULL;
+    }
+    return ( value instanceof Number )
+        ? ( FIELD_TYPE_INTEGER ) : ( FIELD_TYPE_STRING );
+  }
+
+  @Override
+  public boolean isNull( int column ) {
+    return ( this.value( column ) == null );
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Life cycle and observers, not supported
+  //==========================================================================//
+  @Override
+  public void deactivate() {
+  }
+
+  @Override
+  public boolean requery() {
+    return false;
+  }
+
+  @Override
+  public void close() {
+    this.closed = true;
+  }
+
+  @Override
+  public boolean isClosed() {
+    return this.closed;
+  }
+
+  @Override
+  public void registerContentObserver( ContentObserver observer ) {
+  }
+
+  @Override
+  public void unregisterContentObserver( ContentObserver observer ) {
+  }
+
+  @Override
+  public void registerDataSetObserver( DataSetObserver observer ) {
+  }
+
+  @Override
+  public void unregisterDataSetObserver( DataSetObserver observer ) {
+  }
+
+  @Override
+  public void setNotificationUri( ContentResolver resolver, Uri uri ) {
+  }
+
+  @Override
+  public Uri getNotificationUri() {
+    return null;
+  }
+
+  @Override
+  public boolean getWantsAllOnMoveCalls() {
+    return false;
+  }
+
+  @Override
+  public void setExtras( Bundle extras ) {
+  }
+
+  @Override
+  public Bundle getExtras() {
+    return Bundle.EMPTY;
+  }
+
+  @Override
+  public Bundle respond( Bundle extras ) {
+    return Bundle.EMPTY;
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Private
+  //==========================================================================//
+  private Object value( int column ) {
+    if ( this.position < 0 || this.position >= this.rows.length ) {
+      throw new IllegalStateException( "Not on a row: " + this.position );
+    }
+    return this.rows[ this.position ][ column ];
+  }
+  //==========================================================================//
+}
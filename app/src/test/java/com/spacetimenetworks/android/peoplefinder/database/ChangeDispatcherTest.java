@@ -0,0 +1,257 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.database;
+
+import com.spacetimenetworks.android.peoplefinder.metrics.LatencyHistogram;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the conflation and capacity of the queues of
+ * {@link ChangeDispatcher}. The listeners run on an executor that the test
+ * steps by hand.
+ *
+ * @author teemuk
+ */
+public class ChangeDispatcherTest {
+
+  private static final int CAPACITY = 3;
+
+  private ChangeDispatcher<Recorder, String> dispatcher;
+  private LatencyHistogram latency;
+  private final ManualExecutor executor = new ManualExecutor();
+
+  @Before
+  public void setUp() {
+    this.latency = new LatencyHistogram( "test" );
+    this.dispatcher = new ChangeDispatcher<>( "test", CAPACITY,
+        ( listener, id, value ) -> listener.changes.add( id + ":" + value ),
+        this.latency );
+  }
+
+  //==========================================================================//
+  // Conflation
+  //==========================================================================//
+  @Test
+  public void deliversPendingChangesAsOneBatch() {
+    Recorder listener = this.listen();
+    this.dispatcher.dispatch( "a", 1, "a1" );
+    this.dispatcher.dispatch( "b", 2, "b1" );
+
+    assertEquals( 1, this.executor.tasks.size() );
+    this.executor.runAll();
+    assertEquals( Arrays.asList( "1:a1", "2:b1" ), listener.changes );
+    assertEquals( 2, this.latency.getCount() );
+  }
+
+  @Test
+  public void conflatesARecordToItsLatestChange() {
+    Recorder listener = this.listen();
+    this.dispatcher.dispatch( "a", 1, "a1" );
+    this.dispatcher.dispatch( "b", 2, "b1" );
+    this.dispatcher.dispatch( "a", 3, "a2" );
+
+    this.executor.runAll();
+    assertEquals( Arrays.asList( "2:b1", "3:a2" ), listener.changes );
+  }
+
+  @Test
+  public void deliversChangesMadeDuringABatchInTheNext() {
+    Recorder listener = this.listen();
+    this.dispatcher.dispatch( "a", 1, "a1" );
+    this.executor.runAll();
+    this.dispatcher.dispatch( "a", 2, "a2" );
+
+    assertEquals( 1, this.executor.tasks.size() );
+    this.executor.runAll();
+    assertEquals( Arrays.asList( "1:a1", "2:a2" ), listener.changes );
+  }
+
+  @Test
+  public void schedulesTheNextBatchOnlyAfterDelivery() {
+    this.dispatcher = new ChangeDispatcher<>( "test", CAPACITY,
+        ( listener, id, value ) -> {
+          listener.changes.add( id + ":" + value );
+          if ( id == 1 ) {
+            this.dispatcher.dispatch( "b", 2, "b1" );
+            listener.changes.add( "queued:" + this.executor.tasks.size() );
+          }
+        }, this.latency );
+    Recorder listener = this.listen();
+    this.dispatcher.dispatch( "a", 1, "a1" );
+
+    this.executor.runAll();
+    assertEquals( Arrays.asList( "1:a1", "queued:0", "2:b1" ),
+        listener.changes );
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Capacity
+  //==========================================================================//
+  @Test
+  public void dropsTheOldestChangesOverCapacity() {
+    Recorder listener = this.listen();
+    for ( int i = 1; i <= CAPACITY + 2; i++ ) {
+      this.dispatcher.dispatch( "r" + i, i, "v" + i );
+    }
+
+    this.executor.runAll();
+    assertEquals( Arrays.asList( "3:v3", "4:v4", "5:v5" ),
+        listener.changes );
+  }
+
+  @Test
+  public void conflatesBeforeDroppingAnything() {
+    Recorder listener = this.listen();
+    for ( int i = 1; i <= 10; i++ ) {
+      this.dispatcher.dispatch( "r" + ( i % CAPACITY ), i, "v" + i );
+    }
+
+    this.executor.runAll();
+    assertEquals( Arrays.asList( "8:v8", "9:v9", "10:v10" ),
+        listener.changes );
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Listeners
+  //==========================================================================//
+  @Test
+  public void keepsAQueuePerListener() {
+    Recorder slow = this.listen();
+    Recorder fast = new Recorder();
+    ManualExecutor fastExecutor = new ManualExecutor();
+    this.dispatcher.addListener( fast, fastExecutor );
+
+    this.dispatcher.dispatch( "a", 1, "a1" );
+    fastExecutor.runAll();
+    this.dispatcher.dispatch( "a", 2, "a2" );
+    fastExecutor.runAll();
+
+    assertEquals( Arrays.asList( "1:a1", "2:a2" ), fast.changes );
+    this.executor.runAll();
+    assertEquals( Collections.singletonList( "2:a2" ), slow.changes );
+  }
+
+  @Test
+  public void addsAListenerOnlyOnce() {
+    Recorder listener = this.listen();
+    this.dispatcher.addListener( listener );
+    this.dispatcher.dispatch( "a", 1, "a1" );
+
+    this.executor.runAll();
+    assertEquals( Collections.singletonList( "1:a1" ), listener.changes );
+  }
+
+  @Test
+  public void dropsPendingChangesOfARemovedListener() {
+    Recorder listener = this.listen();
+    this.dispatcher.dispatch( "a", 1, "a1" );
+    this.dispatcher.removeListener( listener );
+    this.dispatcher.dispatch( "b", 2, "b1" );
+
+    this.executor.runAll();
+    assertTrue( listener.changes.isEmpty() );
+  }
+
+  @Test
+  public void keepsDeliveringAfterAFailedListener() {
+    ChangeDispatcher<Recorder, String> failing = new ChangeDispatcher<>(
+        "test", CAPACITY, ( listener, id, record ) -> {
+          if ( id == 1 ) {
+            throw new IllegalStateException( "Failing on purpose." );
+          }
+          listener.changes.add( record );
+        }, this.latency );
+    Recorder listener = new Recorder();
+    failing.addListener( listener, this.executor );
+
+    failing.dispatch( "a", 1, "a1" );
+    failing.dispatch( "b", 2, "b1" );
+    this.executor.runAll();
+    assertEquals( Collections.singletonList( "b1" ), listener.changes );
+  }
+
+  @Test
+  public void deliversOnItsOwnThreadByDefault() throws InterruptedException {
+    CountDownLatch delivered = new CountDownLatch( 1 );
+    final Thread[] thread = new Thread[ 1 ];
+    ChangeDispatcher<CountDownLatch, String> dispatcher
+        = new ChangeDispatcher<>( "test", CAPACITY, ( listener, id, r ) -> {
+          thread[ 0 ] = Thread.currentThread();
+          listener.countDown();
+        }, this.latency );
+    dispatcher.addListener( delivered );
+
+    dispatcher.dispatch( "a", 1, "a1" );
+    assertTrue( delivered.await( 5, TimeUnit.SECONDS ) );
+    assertTrue( thread[ 0 ] != Thread.currentThread() );
+    dispatcher.shutdown();
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Private
+  //==========================================================================//
+  private Recorder listen() {
+    Recorder listener = new Recorder();
+    this.dispatcher.addListener( listener, this.executor );
+    return listener;
+  }
+
+  /** Listener that records the changes delivered to it. */
+  private static final class Recorder {
+    final List<String> changes = new ArrayList<>();
+  }
+
+  /** Queues the tasks until told to run them on the calling thread. */
+  private static final class ManualExecutor
+      implements Executor {
+    final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+
+    @Override
+    public void execute( Runnable task ) {
+      this.tasks.addLast( task );
+    }
+
+    void runAll() {
+      Runnable task;
+      while ( ( task = this.tasks.pollFirst() ) != null ) {
+        task.run();
+      }
+    }
+  }
+  //==========================================================================//
+}
@@ -0,0 +1,156 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.database;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Reads notes column by column with {@link NoteColumns} from an
+ * {@link ArrayCursor}.
+ *
+ * @author teemuk
+ */
+public class NoteColumnsTest {
+
+  @Test
+  public void readsEveryColumn() {
+    NoteColumns notes = NoteColumns.read( new ArrayCursor(
+        NoteColumns.COLUMNS,
+        note( "n1", 1600000000L, "Anna", "believed_alive", "Camp 3", "Hi" ),
+        note( "n2", null, null, null, null, null ) ) );
+
+    assertEquals( 2, notes.size() );
+    assertEquals( "n1", notes.getRecordID( 0 ) );
+    assertEquals( 1600000000L, notes.getEntryDate( 0 ) );
+    assertEquals( "Anna", notes.getAuthorName( 0 ) );
+    assertEquals( "believed_alive", notes.getStatus( 0 ) );
+    assertEquals( "Camp 3", notes.getLastKnownLocation( 0 ) );
+    assertEquals( "Hi", notes.getText( 0 ) );
+    assertEquals( 2, notes.getTextLength( 0 ) );
+
+    assertEquals( "n2", notes.getRecordID( 1 ) );
+    assertEquals( NoteColumns.NO_DATE, notes.getEntryDate( 1 ) );
+    assertNull( notes.getAuthorName( 1 ) );
+    assertNull( notes.getStatus( 1 ) );
+    assertNull( notes.getLastKnownLocation( 1 ) );
+    assertNull( notes.getText( 1 ) );
+    assertNull( notes.getTextPrefix( 1, 10 ) );
+    assertEquals( -1, notes.getTextLength( 1 ) );
+  }
+
+  @Test
+  public void sharesRepeatedValuesAcrossRows() {
+    NoteColumns notes = NoteColumns.read( new ArrayCursor(
+        NoteColumns.COLUMNS,
+        note( "n1", 1L, new String( "Anna" ), new String( "is_note_author" ),
+            null, "a" ),
+        note( "n2", 2L, new String( "Anna" ), new String( "is_note_author" ),
+            null, "b" ) ) );
+
+    assertSame( notes.getAuthorName( 0 ), notes.getAuthorName( 1 ) );
+    assertSame( notes.getStatus( 0 ), notes.getStatus( 1 ) );
+  }
+
+  @Test
+  public void createsEachTextOnce() {
+    NoteColumns notes = NoteColumns.read( new ArrayCursor(
+        NoteColumns.COLUMNS,
+        note( "n1", 1L, null, null, null, "First" ),
+        note( "n2", 2L, null, null, null, "" ),
+        note( "n3", 3L, null, null, null, "Third" ) ) );
+
+    String text = notes.getText( 0 );
+    assertEquals( "First", text );
+    assertSame( text, notes.getText( 0 ) );
+    assertEquals( "", notes.getText( 1 ) );
+    assertEquals( 0, notes.getTextLength( 1 ) );
+    assertEquals( "Third", notes.getText( 2 ) );
+  }
+
+  @Test
+  public void cutsPrefixesWithoutCreatingTheText() {
+    NoteColumns notes = NoteColumns.read( new ArrayCursor(
+        NoteColumns.COLUMNS,
+        note( "n1", 1L, null, null, null, "Short" ),
+        note( "n2", 2L, null, null, null, "A longer text" ) ) );
+
+    assertEquals( "Short", notes.getTextPrefix( 0, 10 ) );
+    assertEquals( "A longer", notes.getTextPrefix( 1, 8 ) );
+    assertEquals( "A longer text", notes.getTextPrefix( 1, 13 ) );
+
+    // Once created, the prefix is cut from the text
+    String text = notes.getText( 1 );
+    assertEquals( "A lo", notes.getTextPrefix( 1, 4 ) );
+    assertSame( text, notes.getTextPrefix( 1, 100 ) );
+  }
+
+  @Test
+  public void growsTheSharedCharactersForLongTexts() {
+    StringBuilder longText = new StringBuilder();
+    for ( int i = 0; i < 1000; i++ ) {
+      longText.append( ( char ) ( 'a' + i % 26 ) );
+    }
+    NoteColumns notes = NoteColumns.read( new ArrayCursor(
+        NoteColumns.COLUMNS,
+        note( "n1", 1L, null, null, null, "Before" ),
+        note( "n2", 2L, null, null, null, longText.toString() ),
+        note( "n3", 3L, null, null, null, "After" ) ) );
+
+    assertEquals( "Before", notes.getText( 0 ) );
+    assertEquals( longText.toString(), notes.getText( 1 ) );
+    assertEquals( "After", notes.getText( 2 ) );
+  }
+
+  @Test
+  public void leavesTheCursorWhereItWas() {
+    ArrayCursor cursor = new ArrayCursor( NoteColumns.COLUMNS,
+        note( "n1", 1L, null, null, null, null ),
+        note( "n2", 2L, null, null, null, null ) );
+    cursor.moveToPosition( 1 );
+
+    NoteColumns.read( cursor );
+    assertEquals( 1, cursor.getPosition() );
+    assertFalse( cursor.isClosed() );
+  }
+
+  @Test
+  public void readsNoCursorAsEmpty() {
+    assertEquals( 0, NoteColumns.read( null ).size() );
+    assertEquals( 0, NoteColumns.read(
+        new ArrayCursor( NoteColumns.COLUMNS ) ).size() );
+  }
+
+  @Test( expected = IllegalArgumentException.class )
+  public void rejectsACursorWithoutTheColumns() {
+    NoteColumns.read( new ArrayCursor( new String[]{ "note_record_id" },
+        new Object[]{ "n1" } ) );
+  }
+
+  /** Returns a row with the values in the order of the columns. */
+  private static Object[] note( String recordID, Long entryDate,
+                                String authorName, String status,
+                                String location, String text ) {
+    return new Object[]{
+        recordID, entryDate, authorName, status, location, text };
+  }
+}
@@ -0,0 +1,236 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.database;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the order in which {@link PriorityTaskScheduler} runs tasks, that
+ * lower priorities don't starve and that bounded queues push back.
+ *
+ * @author teemuk
+ */
+public class PriorityTaskSchedulerTest {
+
+  private static final DatabaseController.Priority WRITE
+      = DatabaseController.Priority.INTERACTIVE_WRITE;
+  private static final DatabaseController.Priority INGEST
+      = DatabaseController.Priority.BACKGROUND_INGEST;
+  private static final DatabaseController.Priority MAINTENANCE
+      = DatabaseController.Priority.MAINTENANCE;
+
+  private PriorityTaskScheduler scheduler;
+  /** Names of the tasks in the order they ran. */
+  private final List<String> ran
+      = Collections.synchronizedList( new ArrayList<String>() );
+  /** Holds the worker until released. */
+  private final CountDownLatch gate = new CountDownLatch( 1 );
+
+  @Before
+  public void setUp() {
+    this.scheduler = new PriorityTaskScheduler( "test", stalled -> { } );
+    this.scheduler.submitFirst( () -> await( this.gate ) );
+  }
+
+  @After
+  public void tearDown() {
+    this.gate.countDown();
+    this.scheduler.shutdownNow();
+  }
+
+  //==========================================================================//
+  // Ordering
+  //==========================================================================//
+  @Test
+  public void runsHigherPrioritiesFirstAndEqualOnesInOrder()
+      throws InterruptedException {
+    this.submit( MAINTENANCE, "m", 0 );
+    this.submit( INGEST, "i1", 0 );
+    this.submit( WRITE, "w1", 0 );
+    this.submit( INGEST, "i2", 0 );
+    this.submit( WRITE, "w2", 0 );
+
+    this.runAll( 5 );
+    assertEquals( Arrays.asList( "w1", "w2", "i1", "i2", "m" ), this.ran );
+  }
+
+  @Test
+  public void runsUrgentTasksBeforeQueuedOnes() throws InterruptedException {
+    this.submit( WRITE, "w", 0 );
+    this.scheduler.submitFirst( () -> this.ran.add( "u" ) );
+
+    this.runAll( 2 );
+    assertEquals( Arrays.asList( "u", "w" ), this.ran );
+  }
+
+  @Test
+  public void keepsRunningAfterAFailedTask() throws InterruptedException {
+    this.scheduler.submit( WRITE, () -> {
+      throw new IllegalStateException( "Failing on purpose." );
+    } );
+    this.submit( WRITE, "w", 0 );
+
+    this.runAll( 1 );
+    assertEquals( Collections.singletonList( "w" ), this.ran );
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Starvation
+  //==========================================================================//
+  @Test
+  public void runsAnOverdueLowerPriorityAheadOfABusyHigherOne()
+      throws InterruptedException {
+    int writes = 60;
+    long start = System.nanoTime();
+    final long[] waited = new long[ 1 ];
+    this.scheduler.submit( INGEST, () -> {
+      waited[ 0 ] = System.nanoTime() - start;
+      this.ran.add( "i" );
+    } );
+    for ( int i = 0; i < writes; i++ ) {
+      this.submit( WRITE, "w", 10 );
+    }
+
+    this.runAll( writes + 1 );
+    int index = this.ran.indexOf( "i" );
+    assertTrue( "Ran at " + index, index > 0 && index < writes );
+    assertTrue( TimeUnit.NANOSECONDS.toMillis( waited[ 0 ] )
+                >= INGEST.maxWaitMs );
+  }
+
+  @Test
+  public void runsOneOverdueTaskPerMaximumWait()
+      throws InterruptedException {
+    int writes = 60;
+    for ( int i = 0; i < 3; i++ ) {
+      this.submit( INGEST, "i", 0 );
+    }
+    for ( int i = 0; i < writes; i++ ) {
+      this.submit( WRITE, "w", 10 );
+    }
+
+    this.runAll( writes + 3 );
+    int lastWrite = this.ran.lastIndexOf( "w" );
+    assertTrue( this.ran.indexOf( "i" ) < lastWrite );
+    for ( int i = 1; i < lastWrite; i++ ) {
+      assertTrue( "Ran together at " + i,
+          !( "i".equals( this.ran.get( i - 1 ) )
+             && "i".equals( this.ran.get( i ) ) ) );
+    }
+    assertEquals( "w", this.ran.get( 0 ) );
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Bounded queues
+  //==========================================================================//
+  @Test
+  public void blocksTheProducerOnAFullQueue() throws InterruptedException {
+    int capacity = INGEST.getCapacity();
+    for ( int i = 0; i < capacity; i++ ) {
+      this.submit( INGEST, "i", 0 );
+    }
+    assertEquals( capacity, this.scheduler.getQueueSize( INGEST ) );
+
+    Thread producer = new Thread( () -> this.submit( INGEST, "last", 0 ) );
+    producer.start();
+    long deadline = System.currentTimeMillis() + 5000;
+    while ( producer.getState() != Thread.State.WAITING ) {
+      assertTrue( "Producer didn't block.",
+          producer.isAlive() && System.currentTimeMillis() < deadline );
+      Thread.sleep( 1 );
+    }
+    assertEquals( capacity, this.scheduler.getQueueSize( INGEST ) );
+
+    this.runAll( capacity + 1 );
+    producer.join( 5000 );
+    assertEquals( "last", this.ran.get( capacity ) );
+  }
+
+  @Test
+  public void rejectsTasksAfterShutdown() {
+    this.scheduler.shutdownNow();
+    try {
+      this.submit( WRITE, "w", 0 );
+      fail( "Accepted a task after shutdown." );
+    } catch ( RejectedExecutionException e ) {
+      // Expected
+    }
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Private
+  //==========================================================================//
+  /** Submits a task that sleeps the given time and then records its name. */
+  private void submit( DatabaseController.Priority priority, String name,
+                       long sleepMs ) {
+    this.scheduler.submit( priority, () -> {
+      if ( sleepMs > 0 ) {
+        sleep( sleepMs );
+      }
+      this.ran.add( name );
+    } );
+  }
+
+  /** Releases the worker and waits until the given number of tasks ran. */
+  private void runAll( int tasks ) throws InterruptedException {
+    this.gate.countDown();
+    long deadline = System.currentTimeMillis() + 10000;
+    while ( this.ran.size() < tasks ) {
+      assertTrue( "Ran only " + this.ran,
+          System.currentTimeMillis() < deadline );
+      Thread.sleep( 5 );
+    }
+  }
+
+  private static void await( CountDownLatch latch ) {
+    try {
+      latch.await();
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static void sleep( long millis ) {
+    try {
+      Thread.sleep( millis );
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+    }
+  }
+  //==========================================================================//
+}
@@ -0,0 +1,107 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.database;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks that {@link StringPool} shares one instance per distinct value.
+ *
+ * @author teemuk
+ */
+public class StringPoolTest {
+
+  private static final String[] COLUMNS = { "value" };
+
+  @Test
+  public void sharesTheFirstInstanceOfEachValue() {
+    ArrayCursor cursor = new ArrayCursor( COLUMNS,
+        row( new String( "believed_alive" ) ),
+        row( new String( "believed_missing" ) ),
+        row( new String( "believed_alive" ) ) );
+    StringPool pool = new StringPool();
+
+    String first = get( pool, cursor, 0 );
+    String other = get( pool, cursor, 1 );
+    String again = get( pool, cursor, 2 );
+
+    assertEquals( "believed_alive", first );
+    assertEquals( "believed_missing", other );
+    assertSame( first, again );
+  }
+
+  @Test
+  public void returnsNullForNull() {
+    ArrayCursor cursor = new ArrayCursor( COLUMNS, row( null ), row( "" ) );
+    StringPool pool = new StringPool();
+
+    assertNull( get( pool, cursor, 0 ) );
+    assertEquals( "", get( pool, cursor, 1 ) );
+  }
+
+  @Test
+  public void tellsApartValuesWithTheSameHash() {
+    assertEquals( "Aa".hashCode(), "BB".hashCode() );
+    ArrayCursor cursor = new ArrayCursor( COLUMNS,
+        row( "Aa" ), row( "BB" ), row( "Aa" ), row( "BB" ) );
+    StringPool pool = new StringPool();
+
+    String aa = get( pool, cursor, 0 );
+    String bb = get( pool, cursor, 1 );
+    assertEquals( "Aa", aa );
+    assertEquals( "BB", bb );
+    assertSame( aa, get( pool, cursor, 2 ) );
+    assertSame( bb, get( pool, cursor, 3 ) );
+  }
+
+  @Test
+  public void keepsTheInstancesWhenGrowing() {
+    int values = 1000;
+    Object[][] rows = new Object[ values * 2 ][];
+    for ( int i = 0; i < values; i++ ) {
+      rows[ i ] = row( "author " + i );
+      rows[ values + i ] = row( "author " + i );
+    }
+    ArrayCursor cursor = new ArrayCursor( COLUMNS, rows );
+    StringPool pool = new StringPool();
+
+    String[] first = new String[ values ];
+    for ( int i = 0; i < values; i++ ) {
+      first[ i ] = get( pool, cursor, i );
+      assertEquals( "author " + i, first[ i ] );
+    }
+    for ( int i = 0; i < values; i++ ) {
+      assertSame( first[ i ], get( pool, cursor, values + i ) );
+    }
+    assertNotSame( first[ 0 ], first[ 1 ] );
+  }
+
+  private static Object[] row( String value ) {
+    return new Object[]{ value };
+  }
+
+  private static String get( StringPool pool, ArrayCursor cursor, int row ) {
+    cursor.moveToPosition( row );
+    return pool.get( cursor, 0 );
+  }
+}
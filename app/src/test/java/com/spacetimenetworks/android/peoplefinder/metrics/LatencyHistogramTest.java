@@ -0,0 +1,165 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.metrics;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the bucket bounds and percentiles of {@link LatencyHistogram}.
+ *
+ * @author teemuk
+ */
+public class LatencyHistogramTest {
+
+  private static final long US = TimeUnit.MICROSECONDS.toNanos( 1 );
+
+  //==========================================================================//
+  // Bucket bounds
+  //==========================================================================//
+  @Test
+  public void keepsSmallLatenciesExact() {
+    for ( long micros = 0; micros < LatencyHistogram.SUB_BUCKETS; micros++ ) {
+      // A larger sample keeps the bound from being clamped to the max
+      LatencyHistogram histogram = new LatencyHistogram( "test" );
+      histogram.record( micros * US );
+      histogram.record( 1000 * US );
+
+      assertEquals( micros + 1, histogram.getPercentileMicros( 50 ) );
+    }
+  }
+
+  @Test
+  public void boundsEveryLatencyWithinAnEighth() {
+    Random random = new Random( 42 );
+    for ( int i = 0; i < 100000; i++ ) {
+      long micros = ( i < 70000 )
+          ? ( LatencyHistogram.SUB_BUCKETS + i )
+          : ( 1 + ( random.nextLong() >>> 29 ) );
+      LatencyHistogram histogram = new LatencyHistogram( "test" );
+      histogram.record( micros * US );
+      histogram.record( Long.MAX_VALUE );
+
+      long bound = histogram.getPercentileMicros( 50 );
+      assertTrue( micros + " <= " + bound,
+          micros < bound && bound <= micros + micros / 8 + 1 );
+    }
+  }
+
+  @Test
+  public void putsNeighbouringLatenciesInTheSameOrNextBucket() {
+    for ( long micros = 1; micros < ( 1L << 20 ); micros++ ) {
+      long bound = boundOf( micros );
+      long next = boundOf( micros + 1 );
+      assertTrue( micros + ": " + bound + " > " + next,
+          next == bound || ( micros + 1 == bound && next > bound ) );
+    }
+  }
+
+  @Test
+  public void clampsTheOverflowBucketToTheMax() {
+    long micros = 1L << 40;
+    LatencyHistogram histogram = new LatencyHistogram( "test" );
+    histogram.record( micros * US );
+
+    assertEquals( micros, histogram.getPercentileMicros( 50 ) );
+    assertEquals( micros, histogram.getPercentileMicros( 100 ) );
+    assertEquals( micros, histogram.getMaxMicros() );
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Percentiles
+  //==========================================================================//
+  @Test
+  public void estimatesPercentilesOfAUniformDistribution() {
+    LatencyHistogram histogram = new LatencyHistogram( "test" );
+    for ( long micros = 1; micros <= 10000; micros++ ) {
+      histogram.record( micros * US );
+    }
+
+    assertEquals( 10000, histogram.getCount() );
+    assertEquals( 5000, histogram.getMeanMicros() );
+    assertEquals( 10000, histogram.getMaxMicros() );
+    assertBound( 5000, histogram.getPercentileMicros( 50 ) );
+    assertBound( 9000, histogram.getPercentileMicros( 90 ) );
+    assertBound( 9900, histogram.getPercentileMicros( 99 ) );
+    assertEquals( 10000, histogram.getPercentileMicros( 100 ) );
+  }
+
+  @Test
+  public void findsTheTailBehindManyFastSamples() {
+    LatencyHistogram histogram = new LatencyHistogram( "test" );
+    for ( int i = 0; i < 990; i++ ) {
+      histogram.record( 100 * US );
+    }
+    for ( int i = 0; i < 10; i++ ) {
+      histogram.record( 50000 * US );
+    }
+
+    assertBound( 100, histogram.getPercentileMicros( 50 ) );
+    assertBound( 100, histogram.getPercentileMicros( 99 ) );
+    assertEquals( 50000, histogram.getPercentileMicros( 99.9 ) );
+  }
+
+  @Test
+  public void reportsZeroWithoutSamples() {
+    LatencyHistogram histogram = new LatencyHistogram( "test" );
+
+    assertEquals( 0, histogram.getCount() );
+    assertEquals( 0, histogram.getMeanMicros() );
+    assertEquals( 0, histogram.getMaxMicros() );
+    assertEquals( 0, histogram.getPercentileMicros( 99 ) );
+  }
+
+  @Test
+  public void countsNegativeLatenciesAsZero() {
+    LatencyHistogram histogram = new LatencyHistogram( "test" );
+    histogram.record( -5 * US );
+
+    assertEquals( 1, histogram.getCount() );
+    assertEquals( 0, histogram.getMaxMicros() );
+    assertEquals( 0, histogram.getPercentileMicros( 100 ) );
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Private
+  //==========================================================================//
+  /** Returns the upper bound of the bucket the latency is counted in. */
+  private static long boundOf( long micros ) {
+    LatencyHistogram histogram = new LatencyHistogram( "test" );
+    histogram.record( micros * US );
+    histogram.record( Long.MAX_VALUE );
+    return histogram.getPercentileMicros( 50 );
+  }
+
+  /** Asserts that the bound is above the value by at most an eighth. */
+  private static void assertBound( long micros, long bound ) {
+    assertTrue( micros + " <= " + bound,
+        micros <= bound && bound <= micros + micros / 8 + 1 );
+  }
+  //==========================================================================//
+}
@@ -0,0 +1,146 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.metrics;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Records events into the global {@link TraceBuffer} and reads them back
+ * from its dump. Every test checks only the events it recorded itself.
+ *
+ * @author teemuk
+ */
+public class TraceBufferTest {
+
+  /** Columns of an event line in the dump. */
+  private static final int SEQ = 0;
+  private static final int THREAD = 2;
+  private static final int EVENT = 3;
+  private static final int A = 4;
+  private static final int B = 5;
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  @After
+  public void tearDown() {
+    TraceBuffer.setEnabled( false );
+  }
+
+  @Test
+  public void keepsTheLatestEventsInOrderWhenWrappingAround()
+      throws IOException {
+    TraceBuffer.setEnabled( true );
+    int extra = 10;
+    for ( int i = 0; i < TraceBuffer.CAPACITY + extra; i++ ) {
+      TraceBuffer.record( TraceEvent.TASK_RUN, i, 42 );
+    }
+
+    List<String[]> events = this.dump();
+    assertEquals( TraceBuffer.CAPACITY, events.size() );
+    long seq = Long.parseLong( events.get( 0 )[ SEQ ] );
+    for ( int i = 0; i < events.size(); i++ ) {
+      String[] event = events.get( i );
+      assertEquals( seq + i, Long.parseLong( event[ SEQ ] ) );
+      assertEquals( "TASK_RUN", event[ EVENT ] );
+      assertEquals( extra + i, Long.parseLong( event[ A ] ) );
+      assertEquals( "42", event[ B ] );
+    }
+  }
+
+  @Test
+  public void recordsTheEventAndThread() throws IOException {
+    TraceBuffer.setEnabled( true );
+    TraceBuffer.record( TraceEvent.QUEUE_FULL, 2, 1000 );
+    TraceBuffer.record( TraceEvent.MESSAGE_RECEIVED );
+
+    List<String[]> events = this.dump();
+    String[] full = events.get( events.size() - 2 );
+    assertEquals( "QUEUE_FULL", full[ EVENT ] );
+    assertEquals( "2", full[ A ] );
+    assertEquals( "1000", full[ B ] );
+    assertEquals( String.valueOf( Thread.currentThread().getId() ),
+        full[ THREAD ] );
+
+    String[] received = events.get( events.size() - 1 );
+    assertEquals( "MESSAGE_RECEIVED", received[ EVENT ] );
+    assertEquals( "0", received[ A ] );
+    assertEquals( "0", received[ B ] );
+  }
+
+  @Test
+  public void dropsEventsWhileDisabled() throws IOException {
+    TraceBuffer.setEnabled( true );
+    TraceBuffer.record( TraceEvent.MESSAGE_HANDLED, 1, 1 );
+    TraceBuffer.setEnabled( false );
+    assertFalse( TraceBuffer.isEnabled() );
+    TraceBuffer.record( TraceEvent.MESSAGE_HANDLED, 2, 2 );
+
+    List<String[]> events = this.dump();
+    String[] last = events.get( events.size() - 1 );
+    assertEquals( "MESSAGE_HANDLED", last[ EVENT ] );
+    assertEquals( "1", last[ A ] );
+  }
+
+  @Test
+  public void resolvesNamesInTheDump() throws IOException {
+    int index = TraceBuffer.indexOf( "ScanTask" );
+    assertEquals( index, TraceBuffer.indexOf( "ScanTask" ) );
+    assertTrue( TraceBuffer.indexOf( "InsertTask" ) != index );
+
+    File file = this.folder.newFile();
+    TraceBuffer.writeTo( file );
+    assertTrue( read( file ).contains( "# name " + index + " ScanTask" ) );
+  }
+
+  //==========================================================================//
+  // Private
+  //==========================================================================//
+  /** Dumps the buffer and returns the columns of the event lines. */
+  private List<String[]> dump() throws IOException {
+    File file = this.folder.newFile();
+    TraceBuffer.writeTo( file );
+
+    List<String[]> events = new ArrayList<>();
+    for ( String line : read( file ) ) {
+      if ( !line.startsWith( "#" ) ) {
+        events.add( line.split( "\t" ) );
+      }
+    }
+    return events;
+  }
+
+  private static List<String> read( File file ) throws IOException {
+    return Files.readAllLines( file.toPath(), Charset.forName( "UTF-8" ) );
+  }
+  //==========================================================================//
+}
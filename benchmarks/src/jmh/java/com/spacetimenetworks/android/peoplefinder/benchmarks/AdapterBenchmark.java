@@ -0,0 +1,221 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.benchmarks;
+
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+
+import com.spacetimenetworks.android.peoplefinder.BetterListAdapter;
+import com.spacetimenetworks.android.peoplefinder.database.DataModel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p> The work the list adapter does for one scrolled frame of the notes
+ * list: the list view asks for the count, and for the item and its ID of
+ * every visible row before binding it. Compares the item access of {@link
+ * BetterListAdapter}, an immutable snapshot array behind a volatile
+ * reference with IDs hashed from the record ID, to the earlier one, a list
+ * behind a lock with the hash code of the item as the ID. </p> <p/> <p> The
+ * adapter is the one of the app, compiled from its sources and run against
+ * the Android framework classes of Robolectric's {@code android-all}. The
+ * earlier adapter only survives in the history, so its item access is
+ * copied here. The {@code alone} benchmarks scroll without anything else
+ * going on, in the grouped ones another thread swaps in a reloaded list
+ * every few microseconds, like results arriving from the database while
+ * the user scrolls. </p>
+ *
+ * @author teemuk
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+public class AdapterBenchmark {
+  /** Rows visible on a phone screen. */
+  static final int VISIBLE_ROWS = 12;
+  /** CPU work between reloads, roughly 5 us. */
+  static final long RELOAD_TOKENS = 2000;
+
+  /** Persons whose notes are in the list. */
+  @Param( { "1000" } )
+  public int persons;
+
+  private List<DataModel.LocalNote> reloaded;
+  private LockedAdapter locked;
+  private NotesAdapter snapshot;
+  /** First visible row, moved down a row every frame. */
+  private int first;
+
+  @Setup
+  public void setup()
+      throws IOException {
+    List<DataModel.LocalNote> notes = Datasets.generate( this.persons ).notes;
+    this.reloaded = new ArrayList<>( notes );
+    this.locked = new LockedAdapter( notes );
+    this.snapshot = new NotesAdapter( notes );
+  }
+
+  //==========================================================================//
+  // Scrolling alone
+  //==========================================================================//
+  @Benchmark
+  public long lockedAlone() {
+    return this.scroll( this.locked );
+  }
+
+  @Benchmark
+  public long snapshotAlone() {
+    return this.scroll( this.snapshot );
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Scrolling while reloading
+  //==========================================================================//
+  @Benchmark
+  @Group( "lockedReloading" )
+  @GroupThreads( 1 )
+  public long lockedScroll() {
+    return this.scroll( this.locked );
+  }
+
+  @Benchmark
+  @Group( "lockedReloading" )
+  @GroupThreads( 1 )
+  public void lockedReload() {
+    Blackhole.consumeCPU( RELOAD_TOKENS );
+    this.locked.setItems( this.reloaded );
+  }
+
+  @Benchmark
+  @Group( "snapshotReloading" )
+  @GroupThreads( 1 )
+  public long snapshotScroll() {
+    return this.scroll( this.snapshot );
+  }
+
+  @Benchmark
+  @Group( "snapshotReloading" )
+  @GroupThreads( 1 )
+  public void snapshotReload() {
+    Blackhole.consumeCPU( RELOAD_TOKENS );
+    this.snapshot.setItems( this.reloaded );
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Private
+  //==========================================================================//
+  /** What the list view asks of the adapter for one frame. */
+  private long scroll( BaseAdapter adapter ) {
+    int count = adapter.getCount();
+    this.first = ( this.first + 1 ) % ( count - VISIBLE_ROWS );
+
+    long ids = 0;
+    for ( int row = this.first; row < this.first + VISIBLE_ROWS; row++ ) {
+      ids += adapter.getItemId( row );
+      ids += adapter.getItem( row ).hashCode();
+    }
+    return ids;
+  }
+
+  /** The adapter of the app, keyed by the note record ID. */
+  private static final class NotesAdapter
+      extends BetterListAdapter<DataModel.LocalNote, Void> {
+    NotesAdapter( List<DataModel.LocalNote> items ) {
+      super( null, 0, items );
+    }
+
+    @Override
+    protected Void createViewHolder( View layout ) {
+      return null;
+    }
+
+    @Override
+    protected void bindView( Void holder, DataModel.LocalNote item ) {
+    }
+
+    @Override
+    protected String getItemKey( DataModel.LocalNote item ) {
+      return item.note.metadata.recordID;
+    }
+  }
+
+  /** Item access of the adapter before the snapshots. */
+  private static final class LockedAdapter
+      extends BaseAdapter {
+    private final Object itemsLock = new Object();
+    private List<DataModel.LocalNote> items;
+
+    LockedAdapter( List<DataModel.LocalNote> items ) {
+      this.items = items;
+    }
+
+    void setItems( List<DataModel.LocalNote> items ) {
+      synchronized ( this.itemsLock ) {
+        this.items = items;
+      }
+      super.notifyDataSetChanged();
+    }
+
+    @Override
+    public int getCount() {
+      synchronized ( this.itemsLock ) {
+        return this.items.size();
+      }
+    }
+
+    @Override
+    public Object getItem( int position ) {
+      synchronized ( this.itemsLock ) {
+        return this.items.get( position );
+      }
+    }
+
+    @Override
+    public long getItemId( int position ) {
+      synchronized ( this.itemsLock ) {
+        return this.items.get( position ).hashCode();
+      }
+    }
+
+    @Override
+    public View getView( int position, View convertView, ViewGroup parent ) {
+      return null;
+    }
+  }
+  //==========================================================================//
+}
@@ -0,0 +1,77 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.benchmarks;
+
+import com.spacetimenetworks.android.peoplefinder.database.DataModel;
+import com.spacetimenetworks.android.peoplefinder.tools.DatasetGenerator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Synthetic datasets for the benchmarks, from {@link DatasetGenerator} with
+ * a fixed seed so that results are comparable between runs.
+ *
+ * @author teemuk
+ */
+final class Datasets {
+  /** Seed of every benchmark dataset. */
+  static final long SEED = 1;
+
+  final List<DataModel.LocalPerson> persons;
+  final List<DataModel.LocalNote> notes;
+
+  private Datasets( List<DataModel.LocalPerson> persons,
+                    List<DataModel.LocalNote> notes ) {
+    this.persons = persons;
+    this.notes = notes;
+  }
+
+  /**
+   * Generates a dataset in memory, without photos.
+   *
+   * @param persons
+   *     number of persons
+   * @return the persons and their notes
+   */
+  static Datasets generate( int persons )
+      throws IOException {
+    final List<DataModel.LocalPerson> personRows = new ArrayList<>( persons );
+    final List<DataModel.LocalNote> noteRows = new ArrayList<>();
+    new DatasetGenerator( SEED, persons, 0, null ).generate(
+        ( chunkPersons, chunkNotes ) -> {
+          personRows.addAll( chunkPersons );
+          noteRows.addAll( chunkNotes );
+        } );
+    return new Datasets( personRows, noteRows );
+  }
+
+  /**
+   * Generates persons with their notes, as carried in messages.
+   *
+   * @param persons
+   *     number of persons
+   * @return the records
+   */
+  static List<DataModel.SerializablePerson> records( int persons )
+      throws IOException {
+    return new DatasetGenerator( SEED, persons, 0, null )
+        .records( 0, persons );
+  }
+}
@@ -0,0 +1,96 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.benchmarks;
+
+import com.spacetimenetworks.android.peoplefinder.database.DataModel;
+import com.spacetimenetworks.android.peoplefinder.database.JdbcPeopleStore;
+import com.spacetimenetworks.android.peoplefinder.database.PeopleStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p> Insert throughput into an empty database. Each invocation inserts all
+ * of the records, either in one transaction like a PFIF import or bundle, or
+ * one record per transaction like records received one message at a time.
+ * </p> <p/> <p> The size is a parameter, e.g., {@code -p persons=100000} on
+ * the JMH command line. </p>
+ *
+ * @author teemuk
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.SingleShotTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+public class InsertBenchmark {
+  /** Persons inserted per invocation, with their generated notes. */
+  @Param( { "1000", "10000" } )
+  public int persons;
+
+  private List<DataModel.LocalPerson> personRows;
+  private List<DataModel.LocalNote> noteRows;
+  private PeopleStore store;
+
+  @Setup( Level.Trial )
+  public void createRecords()
+      throws IOException {
+    Datasets dataset = Datasets.generate( this.persons );
+    this.personRows = dataset.persons;
+    this.noteRows = dataset.notes;
+  }
+
+  @Setup( Level.Invocation )
+  public void openStore()
+      throws SQLException {
+    this.store = JdbcPeopleStore.open( "jdbc:sqlite::memory:" );
+  }
+
+  @TearDown( Level.Invocation )
+  public void closeStore() {
+    this.store.close();
+  }
+
+  @Benchmark
+  public PeopleStore.BatchResult insertBatch() {
+    return this.store.insertBatch( this.personRows, this.noteRows );
+  }
+
+  @Benchmark
+  public long insertEach() {
+    long last = 0;
+    for ( DataModel.LocalPerson person : this.personRows ) {
+      last = this.store.insertPerson( person );
+    }
+    for ( DataModel.LocalNote note : this.noteRows ) {
+      last = this.store.insertNote( note );
+    }
+    return last;
+  }
+}
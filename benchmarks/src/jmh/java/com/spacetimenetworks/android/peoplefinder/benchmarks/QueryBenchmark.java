@@ -0,0 +1,115 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.benchmarks;
+
+import com.spacetimenetworks.android.peoplefinder.database.DataModel;
+import com.spacetimenetworks.android.peoplefinder.database.JdbcPeopleStore;
+import com.spacetimenetworks.android.peoplefinder.database.PeopleStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p> Person list queries on a populated database: reading pages of the
+ * list, which maps the rows into {@link DataModel.PersonName}s, and the name
+ * search. </p> <p/> <p> The queries run through {@link JdbcPeopleStore}, so
+ * the row mapping measured is the JDBC one rather than the Cursor one of the
+ * app, but the SQL is the same. </p>
+ *
+ * @author teemuk
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+public class QueryBenchmark {
+  /** Persons in the database. */
+  @Param( { "1000", "10000", "100000" } )
+  public int persons;
+
+  private PeopleStore store;
+  private DataModel.PersonName middle;
+
+  @Setup
+  public void setup()
+      throws IOException, SQLException {
+    Datasets dataset = Datasets.generate( this.persons );
+    this.store = JdbcPeopleStore.open( "jdbc:sqlite::memory:" );
+    this.store.insertBatch( dataset.persons, dataset.notes );
+
+    // Key in the middle of the list for the keyset pages
+    DataModel.PersonsPage page = this.store.findPersonsPage( null,
+        PeopleStore.PageDirection.AFTER, this.persons / 2 );
+    this.middle = page.names.get( page.names.size() - 1 );
+  }
+
+  @TearDown
+  public void tearDown() {
+    this.store.close();
+  }
+
+  @Benchmark
+  public DataModel.PersonsPage firstPage() {
+    return this.store.findPersonsPage( null,
+        PeopleStore.PageDirection.AFTER, 50 );
+  }
+
+  @Benchmark
+  public DataModel.PersonsPage pageAfter() {
+    return this.store.findPersonsPage( this.middle,
+        PeopleStore.PageDirection.AFTER, 50 );
+  }
+
+  @Benchmark
+  public DataModel.PersonsPage pageBefore() {
+    return this.store.findPersonsPage( this.middle,
+        PeopleStore.PageDirection.BEFORE, 50 );
+  }
+
+  /** Search matching many persons, stops at the limit. */
+  @Benchmark
+  public List<DataModel.PersonName> searchCommon() {
+    return this.store.searchPersons( "a", 100 );
+  }
+
+  /** Search in a non-Latin script, matching a few percent of the names. */
+  @Benchmark
+  public List<DataModel.PersonName> searchNative() {
+    return this.store.searchPersons( "田中", 100 );
+  }
+
+  /**
+   * Search matching no one, has to scan every name. The worst case of the
+   * search, linear in the number of persons.
+   */
+  @Benchmark
+  public List<DataModel.PersonName> searchMissing() {
+    return this.store.searchPersons( "xyzzy", 100 );
+  }
+}
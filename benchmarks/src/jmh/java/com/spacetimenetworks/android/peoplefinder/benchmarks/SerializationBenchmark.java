@@ -0,0 +1,94 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.benchmarks;
+
+import com.spacetimenetworks.android.peoplefinder.RecordMessages;
+import com.spacetimenetworks.android.peoplefinder.database.DataModel;
+import com.spacetimenetworks.android.peoplefinder.router.RouterMessage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding of the {@link DataModel.SerializablePerson} records
+ * that are carried in the messages, and building the messages. Each
+ * operation takes the next record of a generated dataset, so the number of
+ * notes per record follows the distribution of the generator.
+ *
+ * @author teemuk
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+public class SerializationBenchmark {
+  /** Number of distinct records cycled through. */
+  @Param( { "1000" } )
+  public int records;
+
+  private List<DataModel.SerializablePerson> dataset;
+  private byte[][] encoded;
+  private int next = 0;
+
+  @Setup
+  public void setup()
+      throws IOException {
+    this.dataset = Datasets.records( this.records );
+    this.encoded = new byte[ this.records ][];
+    for ( int i = 0; i < this.records; i++ ) {
+      this.encoded[ i ] = RecordMessages.encode( this.dataset.get( i ) );
+    }
+  }
+
+  @Benchmark
+  public byte[] encode()
+      throws IOException {
+    return RecordMessages.encode( this.dataset.get( this.next() ) );
+  }
+
+  @Benchmark
+  public DataModel.SerializablePerson decode()
+      throws IOException {
+    return RecordMessages.decode(
+        new ByteArrayInputStream( this.encoded[ this.next() ] ) );
+  }
+
+  /** Same as {@code AppLibService.createMessage} for a record without photo. */
+  @Benchmark
+  public RouterMessage createMessage()
+      throws IOException {
+    return RecordMessages.create(
+        this.dataset.get( this.next() ), null, RecordMessages.LIFETIME );
+  }
+
+  private int next() {
+    int index = this.next;
+    this.next = ( index + 1 == this.records ) ? ( 0 ) : ( index + 1 );
+    return index;
+  }
+}
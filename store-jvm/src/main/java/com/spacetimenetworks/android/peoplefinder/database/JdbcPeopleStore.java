@@ -0,0 +1,349 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.database;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p> {@link PeopleStore} on top of JDBC, for running the app's queries on a
+ * plain JVM. Runs the same SQL as {@link SQLitePeopleStore}, so it is meant
+ * for an SQLite driver such as {@code org.xerial:sqlite-jdbc}. </p> <p/> <p>
+ * SQL failures are thrown as {@link IllegalStateException}s. </p>
+ *
+ * @author teemuk
+ */
+public class JdbcPeopleStore
+    implements PeopleStore {
+
+  //==========================================================================//
+  // Instance vars
+  //==========================================================================//
+  private final Connection connection;
+  /** Prepared inserts, created on first use. */
+  private PreparedStatement personInsert;
+  private PreparedStatement noteInsert;
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // API
+  //==========================================================================//
+  /**
+   * Opens a database and creates the schema of {@link DatabaseModel} in it
+   * if it is new.
+   *
+   * @param url
+   *     JDBC URL of the database, e.g., {@code jdbc:sqlite::memory:}
+   * @return the store
+   * @throws SQLException
+   *     if the database can't be opened
+   */
+  public static JdbcPeopleStore open( String url )
+      throws SQLException {
+    Connection connection = DriverManager.getConnection( url );
+    try {
+      createSchema( connection );
+    } catch ( SQLException e ) {
+      connection.close();
+      throw e;
+    }
+    return new JdbcPeopleStore( connection );
+  }
+
+  /**
+   * Creates a store on top of an open connection to a database with the
+   * schema of {@link DatabaseModel}.
+   *
+   * @param connection
+   *     the connection
+   */
+  public JdbcPeopleStore( Connection connection ) {
+    this.connection = connection;
+  }
+
+  @Override
+  public long insertPerson( DataModel.LocalPerson person ) {
+    try {
+      if ( this.personInsert == null ) {
+        this.personInsert = this.connection.prepareStatement(
+            DatabaseModel.SQL_INSERT_PERSON );
+      }
+      return this.insert( this.personInsert,
+          StoreQueries.personValues( person ) );
+    } catch ( SQLException e ) {
+      throw new IllegalStateException( "Inserting a person failed.", e );
+    }
+  }
+
+  @Override
+  public long insertNote( DataModel.LocalNote note ) {
+    try {
+      if ( this.noteInsert == null ) {
+        this.noteInsert = this.connection.prepareStatement(
+            DatabaseModel.SQL_INSERT_NOTE );
+      }
+      return this.insert( this.noteInsert, StoreQueries.noteValues( note ) );
+    } catch ( SQLException e ) {
+      throw new IllegalStateException( "Inserting a note failed.", e );
+    }
+  }
+
+  @Override
+  public BatchResult insertBatch( List<DataModel.LocalPerson> persons,
+                                  List<DataModel.LocalNote> notes ) {
+    long[] personRowIDs = new long[ persons.size() ];
+    long[] noteRowIDs = new long[ notes.size() ];
+
+    boolean committed = false;
+    try {
+      this.connection.setAutoCommit( false );
+      for ( int i = 0; i < personRowIDs.length; i++ ) {
+        personRowIDs[ i ] = this.insertPerson( persons.get( i ) );
+      }
+      for ( int i = 0; i < noteRowIDs.length; i++ ) {
+        noteRowIDs[ i ] = this.insertNote( notes.get( i ) );
+      }
+      this.connection.commit();
+      committed = true;
+    } catch ( SQLException e ) {
+      throw new IllegalStateException( "Inserting a batch failed.", e );
+    } finally {
+      this.endTransaction( committed );
+    }
+
+    return new BatchResult( personRowIDs, noteRowIDs );
+  }
+
+  @Override
+  public DataModel.PersonsPage findPersonsPage( DataModel.PersonName from,
+                                                PageDirection direction,
+                                                int limit ) {
+    try ( PreparedStatement statement = this.connection.prepareStatement(
+        StoreQueries.pageQuery( from, direction, limit ) ) ) {
+      ResultSet rows = query( statement, StoreQueries.pageArgs( from ) );
+      return StoreQueries.toPage( readNames( rows, true ),
+          StoreQueries.isBackwards( from, direction ), limit );
+    } catch ( SQLException e ) {
+      throw new IllegalStateException( "Reading a page failed.", e );
+    }
+  }
+
+  @Override
+  public List<DataModel.PersonName> searchPersons( String text, int limit ) {
+    try ( PreparedStatement statement = this.connection.prepareStatement(
+        StoreQueries.searchQuery( limit ) ) ) {
+      ResultSet rows = query( statement,
+          new String[]{ StoreQueries.likePattern( text ) } );
+      return readNames( rows, false );
+    } catch ( SQLException e ) {
+      throw new IllegalStateException( "Searching failed.", e );
+    }
+  }
+
+  @Override
+  public int countNotesForPerson( String personID ) {
+    try ( PreparedStatement statement = this.connection.prepareStatement(
+        DatabaseModel.SQL_COUNT_NOTES_FOR_PERSON ) ) {
+      ResultSet rows = query( statement, new String[]{ personID } );
+      return ( rows.next() ) ? ( rows.getInt( 1 ) ) : ( 0 );
+    } catch ( SQLException e ) {
+      throw new IllegalStateException( "Counting notes failed.", e );
+    }
+  }
+
+  @Override
+  public Set<String> findExistingPersonIDs( List<String> recordIDs ) {
+    return this.findExisting( false, recordIDs );
+  }
+
+  @Override
+  public Set<String> findExistingNoteIDs( List<String> recordIDs ) {
+    return this.findExisting( true, recordIDs );
+  }
+
+  @Override
+  public void close() {
+    try {
+      if ( this.personInsert != null ) this.personInsert.close();
+      if ( this.noteInsert != null ) this.noteInsert.close();
+      this.connection.close();
+    } catch ( SQLException e ) {
+      throw new IllegalStateException( "Closing the database failed.", e );
+    }
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Private
+  //==========================================================================//
+  /**
+   * Creates the tables and indices unless the database already has them, and
+   * stores the schema version like {@code SQLiteOpenHelper} does.
+   */
+  private static void createSchema( Connection connection )
+      throws SQLException {
+    try ( Statement statement = connection.createStatement() ) {
+      int version;
+      try ( ResultSet rows = statement.executeQuery(
+          "PRAGMA user_version" ) ) {
+        version = ( rows.next() ) ? ( rows.getInt( 1 ) ) : ( 0 );
+      }
+      if ( version != 0 ) {
+        return;
+      }
+
+      statement.executeUpdate( DatabaseModel.SQL_CREATE_PERSON_TABLE );
+      statement.executeUpdate( DatabaseModel.SQL_CREATE_NOTE_TABLE );
+      statement.executeUpdate( DatabaseModel.SQL_CREATE_PERSON_NAME_INDEX );
+      statement.executeUpdate( DatabaseModel.SQL_CREATE_NOTE_PERSON_INDEX );
+      statement.executeUpdate(
+          "PRAGMA user_version = " + DatabaseModel.DB_VERSION );
+    }
+  }
+
+  /**
+   * Binds the values and runs an insert.
+   *
+   * @return row ID of the new row, or -1 if the conflict clause ignored it
+   */
+  private long insert( PreparedStatement statement, Object[] values )
+      throws SQLException {
+    statement.clearParameters();
+    for ( int i = 0; i < values.length; i++ ) {
+      Object value = values[ i ];
+      if ( value == null ) {
+        statement.setNull( i + 1, Types.NULL );
+      } else if ( value instanceof Long ) {
+        statement.setLong( i + 1, ( Long ) value );
+      } else {
+        statement.setString( i + 1, value.toString() );
+      }
+    }
+
+    if ( statement.executeUpdate() == 0 ) {
+      return -1;
+    }
+    try ( Statement rowID = this.connection.createStatement();
+          ResultSet rows = rowID.executeQuery( "SELECT last_insert_rowid()" ) ) {
+      return ( rows.next() ) ? ( rows.getLong( 1 ) ) : ( -1 );
+    }
+  }
+
+  /** Restores auto commit, rolling back first if the batch didn't commit. */
+  private void endTransaction( boolean committed ) {
+    try {
+      if ( !committed ) {
+        this.connection.rollback();
+      }
+      this.connection.setAutoCommit( true );
+    } catch ( SQLException e ) {
+      throw new IllegalStateException( "Ending a transaction failed.", e );
+    }
+  }
+
+  /** Looks up which record IDs exist, in chunks like the Android store. */
+  private Set<String> findExisting( boolean notes, List<String> recordIDs ) {
+    Set<String> existing = new HashSet<>();
+    for ( int start = 0; start < recordIDs.size();
+          start += DatabaseModel.MAX_BOUND_IDS ) {
+      int end = Math.min( recordIDs.size(),
+          start + DatabaseModel.MAX_BOUND_IDS );
+      String[] args = recordIDs.subList( start, end )
+          .toArray( new String[ 0 ] );
+
+      try ( PreparedStatement statement = this.connection.prepareStatement(
+          StoreQueries.existingIDsQuery( notes, args.length ) ) ) {
+        ResultSet rows = query( statement, args );
+        while ( rows.next() ) {
+          existing.add( rows.getString( 1 ) );
+        }
+      } catch ( SQLException e ) {
+        throw new IllegalStateException( "Reading record IDs failed.", e );
+      }
+    }
+    return existing;
+  }
+
+  /**
+   * Binds the arguments and runs a query. The result set is closed with the
+   * statement.
+   *
+   * @param args
+   *     the arguments, or {@code null} for none like in {@code rawQuery}
+   */
+  private static ResultSet query( PreparedStatement statement, String[] args )
+      throws SQLException {
+    int count = ( args == null ) ? ( 0 ) : ( args.length );
+    for ( int i = 0; i < count; i++ ) {
+      statement.setString( i + 1, args[ i ] );
+    }
+    return statement.executeQuery();
+  }
+
+  /**
+   * Reads persons from the rows of a person search or a page query. Missing
+   * entry dates read as 0, like from a cursor.
+   *
+   * @param givenName
+   *     whether the rows have the given name in the fifth column
+   */
+  private static List<DataModel.PersonName> readNames( ResultSet rows,
+                                                       boolean givenName )
+      throws SQLException {
+    List<DataModel.PersonName> items = new ArrayList<>();
+
+    // Share the statuses, there are only a handful of distinct ones
+    Map<String, String> statuses = new HashMap<>();
+    while ( rows.next() ) {
+      // Pull out the fields
+      String id = rows.getString( 1 );
+      String fullName = rows.getString( 2 );
+      String status = rows.getString( 3 );
+      if ( status != null ) {
+        String shared = statuses.get( status );
+        if ( shared == null ) {
+          statuses.put( status, status );
+        } else {
+          status = shared;
+        }
+      }
+      long entryDate = rows.getLong( 4 );
+      String name = ( givenName ) ? ( rows.getString( 5 ) ) : ( null );
+
+      // Create a new item
+      items.add( new DataModel.PersonName( id, fullName, status, entryDate,
+          name ) );
+    }
+
+    return items;
+  }
+  //==========================================================================//
+}
@@ -0,0 +1,276 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.database;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the queries of the app against an in-memory SQLite database through
+ * {@link JdbcPeopleStore}.
+ *
+ * @author teemuk
+ */
+public class JdbcPeopleStoreTest {
+
+  /** Record IDs of {@link #insertNames} in list order. */
+  private static final List<String> LIST_ORDER = Arrays.asList(
+      "n1", "n2", "n3", "a1", "a2", "a3", "b1", "c1" );
+
+  private JdbcPeopleStore store;
+
+  @Before
+  public void setUp() throws SQLException {
+    this.store = JdbcPeopleStore.open( "jdbc:sqlite::memory:" );
+  }
+
+  @After
+  public void tearDown() {
+    this.store.close();
+  }
+
+  //==========================================================================//
+  // Paging
+  //==========================================================================//
+  @Test
+  public void pagesForwardThroughNullAndDuplicateNames() {
+    this.insertNames();
+
+    List<String> ids = new ArrayList<>();
+    DataModel.PersonsPage page = this.store.findPersonsPage( null,
+        PeopleStore.PageDirection.AFTER, 2 );
+    while ( true ) {
+      ids.addAll( recordIDs( page ) );
+      if ( page.reachedEnd ) {
+        break;
+      }
+      page = this.store.findPersonsPage( last( page ),
+          PeopleStore.PageDirection.AFTER, 2 );
+    }
+
+    assertEquals( LIST_ORDER, ids );
+  }
+
+  @Test
+  public void pagesBackwardThroughNullAndDuplicateNames() {
+    this.insertNames();
+    DataModel.PersonName end = this.store.findPersonsPage( null,
+        PeopleStore.PageDirection.AFTER, 100 ).names.get( 7 );
+
+    List<String> ids = new ArrayList<>( Collections.singletonList( "c1" ) );
+    DataModel.PersonsPage page = this.store.findPersonsPage( end,
+        PeopleStore.PageDirection.BEFORE, 3 );
+    while ( true ) {
+      ids.addAll( 0, recordIDs( page ) );
+      if ( page.reachedEnd ) {
+        break;
+      }
+      page = this.store.findPersonsPage( page.names.get( 0 ),
+          PeopleStore.PageDirection.BEFORE, 3 );
+    }
+
+    assertEquals( LIST_ORDER, ids );
+  }
+
+  @Test
+  public void pageStartingAtIncludesTheKey() {
+    this.insertNames();
+    List<DataModel.PersonName> all = this.store.findPersonsPage( null,
+        PeopleStore.PageDirection.AFTER, 100 ).names;
+
+    // Within the NULL names, and within a duplicate name
+    assertEquals( Arrays.asList( "n2", "n3", "a1" ), recordIDs(
+        this.store.findPersonsPage( all.get( 1 ),
+            PeopleStore.PageDirection.STARTING_AT, 3 ) ) );
+    assertEquals( Arrays.asList( "a2", "a3", "b1" ), recordIDs(
+        this.store.findPersonsPage( all.get( 4 ),
+            PeopleStore.PageDirection.STARTING_AT, 3 ) ) );
+  }
+
+  @Test
+  public void pageShowsTheStatusOfTheLatestNote() {
+    this.store.insertPerson( person( "p1", "Anna" ) );
+    this.store.insertNote( note( "x1", "p1", 100L, "believed_alive" ) );
+    this.store.insertNote( note( "x2", "p1", 200L, "is_note_author" ) );
+
+    DataModel.PersonsPage page = this.store.findPersonsPage( null,
+        PeopleStore.PageDirection.AFTER, 10 );
+
+    assertEquals( "is_note_author", page.names.get( 0 ).status );
+    assertEquals( 2, this.store.countNotesForPerson( "p1" ) );
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Inserts
+  //==========================================================================//
+  @Test
+  public void insertBatchIgnoresExistingRecordIDs() {
+    this.store.insertPerson( person( "p1", "Anna" ) );
+    this.store.insertNote( note( "x1", "p1", 100L, null ) );
+
+    PeopleStore.BatchResult result = this.store.insertBatch(
+        Arrays.asList( person( "p1", "Changed" ), person( "p2", "Bob" ) ),
+        Arrays.asList( note( "x1", "p1", 300L, null ),
+            note( "x2", "p2", 300L, null ) ) );
+
+    assertEquals( -1, result.personRowIDs[ 0 ] );
+    assertTrue( result.personRowIDs[ 1 ] > 0 );
+    assertEquals( -1, result.noteRowIDs[ 0 ] );
+    assertTrue( result.noteRowIDs[ 1 ] > 0 );
+
+    // The existing records were left as they were
+    DataModel.PersonsPage page = this.store.findPersonsPage( null,
+        PeopleStore.PageDirection.AFTER, 10 );
+    assertEquals( "Anna Test", page.names.get( 0 ).fullName );
+    assertEquals( 1, this.store.countNotesForPerson( "p1" ) );
+    assertEquals( 1, this.store.countNotesForPerson( "p2" ) );
+    assertEquals( new HashSet<>( Arrays.asList( "x1", "x2" ) ),
+        this.store.findExistingNoteIDs( Arrays.asList( "x1", "x2", "x3" ) ) );
+  }
+
+  @Test
+  public void findsExistingRecordIDsPastTheBindLimit() {
+    List<String> ids = new ArrayList<>();
+    List<DataModel.LocalPerson> persons = new ArrayList<>();
+    for ( int i = 0; i < DatabaseModel.MAX_BOUND_IDS + 10; i++ ) {
+      ids.add( "p" + i );
+      if ( i % 2 == 0 ) {
+        persons.add( person( "p" + i, "Name" + i ) );
+      }
+    }
+    ids.add( "missing" );
+    this.store.insertBatch( persons,
+        Collections.<DataModel.LocalNote>emptyList() );
+
+    assertEquals( persons.size(),
+        this.store.findExistingPersonIDs( ids ).size() );
+    assertTrue( this.store.findExistingPersonIDs( ids ).contains( "p0" ) );
+    assertFalse( this.store.findExistingPersonIDs( ids ).contains( "p1" ) );
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Search and schema
+  //==========================================================================//
+  @Test
+  public void searchMatchesWildcardsLiterally() {
+    this.store.insertPerson( person( "p1", "50%" ) );
+    this.store.insertPerson( person( "p2", "500" ) );
+    this.store.insertPerson( person( "p3", "a_b" ) );
+    this.store.insertPerson( person( "p4", "axb" ) );
+
+    assertEquals( Collections.singletonList( "p1" ),
+        ids( this.store.searchPersons( "0%", 10 ) ) );
+    assertEquals( Collections.singletonList( "p3" ),
+        ids( this.store.searchPersons( "a_", 10 ) ) );
+    assertEquals( 4, this.store.searchPersons( "", 10 ).size() );
+  }
+
+  @Test
+  public void reopensAnExistingDatabase() throws IOException, SQLException {
+    File file = File.createTempFile( "people", ".db" );
+    try {
+      JdbcPeopleStore first = JdbcPeopleStore.open(
+          "jdbc:sqlite:" + file.getPath() );
+      first.insertPerson( person( "p1", "Anna" ) );
+      first.close();
+
+      JdbcPeopleStore second = JdbcPeopleStore.open(
+          "jdbc:sqlite:" + file.getPath() );
+      assertEquals( 1, second.findExistingPersonIDs(
+          Collections.singletonList( "p1" ) ).size() );
+      second.close();
+    } finally {
+      file.delete();
+    }
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Private
+  //==========================================================================//
+  /** Inserts persons sorting into {@link #LIST_ORDER}, out of order. */
+  private void insertNames() {
+    this.store.insertBatch( Arrays.asList(
+        person( "c1", "Carl" ),
+        person( "a2", "Anna" ),
+        person( "n3", null ),
+        person( "b1", "Bob" ),
+        person( "a1", "Anna" ),
+        person( "n1", null ),
+        person( "a3", "Anna" ),
+        person( "n2", null ) ),
+        Collections.<DataModel.LocalNote>emptyList() );
+  }
+
+  private static DataModel.LocalPerson person( String recordID,
+                                               String givenName ) {
+    String fullName = ( givenName == null )
+        ? ( "Unknown" ) : ( givenName + " Test" );
+    return new DataModel.LocalPerson(
+        new DataModel.Person( recordID, 1000L, null, "author", null, null,
+            null, null, null, fullName, givenName, "Test", null, null, null,
+            null, null, null, null, "Helsinki", null, null, null, null,
+            null ),
+        null, false );
+  }
+
+  private static DataModel.LocalNote note( String recordID, String personID,
+                                           Long entryDate, String status ) {
+    return new DataModel.LocalNote(
+        new DataModel.Note( recordID, personID, null, entryDate, "author",
+            null, null, null, false, status, null, null, null, "text",
+            null ),
+        null, false );
+  }
+
+  private static DataModel.PersonName last( DataModel.PersonsPage page ) {
+    return page.names.get( page.names.size() - 1 );
+  }
+
+  private static List<String> recordIDs( DataModel.PersonsPage page ) {
+    return ids( page.names );
+  }
+
+  private static List<String> ids( List<DataModel.PersonName> names ) {
+    List<String> ids = new ArrayList<>( names.size() );
+    for ( DataModel.PersonName name : names ) {
+      ids.add( name.recordID );
+    }
+    return ids;
+  }
+  //==========================================================================//
+}
@@ -0,0 +1,554 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.tools;
+
+import com.spacetimenetworks.android.peoplefinder.RecordMessages;
+import com.spacetimenetworks.android.peoplefinder.database.DataModel;
+import com.spacetimenetworks.android.peoplefinder.database.JdbcPeopleStore;
+import com.spacetimenetworks.android.peoplefinder.database.PeopleStore;
+import com.spacetimenetworks.android.peoplefinder.pfif.BundleOutput;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * <p> Generates synthetic persons and notes at disaster scale, for
+ * benchmarks and load tests. The records are deterministic: a record only
+ * depends on the seed and its index, so the same seed gives the same
+ * dataset however it is written, and any record can be generated on its
+ * own. </p> <p/> <p> The dataset models: </p>
+ * <ul>
+ * <li> Notes per person following a Zipf distribution, so most persons have
+ * a note or two and a few have very many. Every person has at least one
+ * note. </li>
+ * <li> Names in several languages and scripts, see {@link SyntheticNames}.
+ * </li>
+ * <li> Statuses of the notes of a person changing over time, e.g., from
+ * information sought to believed missing to found alive. </li>
+ * <li> Duplicate records of a person entered again by someone else, with
+ * the name of the earlier record and their first note linking to it with
+ * {@code linked_person_record_id}. </li>
+ * <li> Photos of a fraction of the persons, optionally as local files. </li>
+ * </ul>
+ * <p> Records are generated {@link #CHUNK_SIZE} persons at a time, so the
+ * size of the dataset isn't limited by memory. </p>
+ *
+ * @author teemuk
+ */
+public final class DatasetGenerator {
+
+  //==========================================================================//
+  // Constants
+  //==========================================================================//
+  /** Number of persons handed to a sink at a time. */
+  public static final int CHUNK_SIZE = 1000;
+  /** Maximum number of notes of a person. */
+  public static final int MAX_NOTES = 200;
+  /**
+   * Exponent of the Zipf distribution of the notes per person. Rank k is k
+   * notes, so with 2 about 61% of the persons have one note and 15% two.
+   */
+  public static final double ZIPF_EXPONENT = 2;
+  /** Fraction of the persons that duplicate an earlier record. */
+  public static final double DUPLICATE_FRACTION = 0.02;
+  /** Duplicates are of one of this many persons before them. */
+  private static final int DUPLICATE_WINDOW = 1000;
+  /** Start of the disaster, in seconds since the epoch (2011-03-11). */
+  public static final long START_DATE = 1299821760L;
+  /** Persons are entered within this many seconds of the start. */
+  private static final long ENTRY_PERIOD = 30L * 24 * 60 * 60;
+  /** Mean time between the notes of a person in seconds. */
+  private static final long MEAN_NOTE_GAP = 12L * 60 * 60;
+  /** Records expire a year after they are entered. */
+  private static final long EXPIRY = 365L * 24 * 60 * 60;
+
+  private static final String DOMAIN = "synthetic.example.org";
+
+  /** PFIF 1.4 note statuses, the states of the status chain. */
+  static final String[] STATUSES = {
+      "information_sought", "believed_missing", "believed_alive",
+      "is_note_author", "believed_dead"
+  };
+  /** Probabilities of the status of the first note of a person. */
+  private static final double[] FIRST_STATUS = { 0.6, 0.25, 0.05, 0.1, 0 };
+  /** Probabilities of the next status after each status. */
+  private static final double[][] NEXT_STATUS = {
+      // information_sought
+      { 0.3, 0.4, 0.2, 0.05, 0.05 },
+      // believed_missing
+      { 0.15, 0.4, 0.35, 0, 0.1 },
+      // believed_alive
+      { 0, 0.05, 0.8, 0.15, 0 },
+      // is_note_author
+      { 0, 0, 0.5, 0.5, 0 },
+      // believed_dead
+      { 0, 0.1, 0, 0, 0.9 }
+  };
+
+  private static final String[] SHELTERS = {
+      "City hall", "Elementary school gym", "Red Cross tent",
+      "Community center", "Temple", "Sports arena"
+  };
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Instance vars
+  //==========================================================================//
+  private final long seed;
+  private final int persons;
+  private final double photoFraction;
+  private final File photoDir;
+  /** Cumulative distribution of the number of notes of a person. */
+  private final double[] noteCounts;
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // API
+  //==========================================================================//
+  /**
+   * Creates a new generator.
+   *
+   * @param seed
+   *     seed of the dataset
+   * @param persons
+   *     number of persons in the dataset
+   * @param photoFraction
+   *     fraction of persons that have a photo, between 0 and 1
+   * @param photoDir
+   *     directory to write the photos into, or {@code null} to only set
+   *     the photo URLs
+   */
+  public DatasetGenerator( long seed, int persons, double photoFraction,
+                           File photoDir ) {
+    this.seed = seed;
+    this.persons = persons;
+    this.photoFraction = photoFraction;
+    this.photoDir = photoDir;
+    this.noteCounts = zipf( MAX_NOTES, ZIPF_EXPONENT );
+  }
+
+  /**
+   * Generates the whole dataset into a sink, {@link #CHUNK_SIZE} persons at
+   * a time.
+   *
+   * @param sink
+   *     where to write the records
+   * @throws IOException
+   *     if writing to the sink or writing a photo fails
+   */
+  public void generate( Sink sink )
+      throws IOException {
+    for ( int from = 0; from < this.persons; from += CHUNK_SIZE ) {
+      int count = Math.min( CHUNK_SIZE, this.persons - from );
+      List<DataModel.LocalPerson> persons = new ArrayList<>( count );
+      List<DataModel.LocalNote> notes = new ArrayList<>( 4 * count );
+      for ( int i = from; i < from + count; i++ ) {
+        DataModel.SerializablePerson record = this.record( i );
+        persons.add( new DataModel.LocalPerson( record.person,
+            this.photoPath( i ), false ) );
+        for ( DataModel.Note note : record.notes ) {
+          notes.add( new DataModel.LocalNote( note, null, false ) );
+        }
+      }
+      sink.write( persons, notes );
+    }
+  }
+
+  /**
+   * Generates one person and its notes. Writes the photo of the person if
+   * it has one and there is a photo directory.
+   *
+   * @param index
+   *     index of the person, from 0 to the number of persons
+   * @return the person and its notes
+   * @throws IOException
+   *     if writing the photo fails
+   */
+  public DataModel.SerializablePerson record( int index )
+      throws IOException {
+    Random random = new Random( mix( this.seed, index ) );
+    int original = duplicateOf( random, index );
+    Random names = ( original < 0 )
+        ? ( random ) : ( this.nameRandom( original ) );
+    DataModel.Person person = this.person( random, names, index );
+    int noteCount = 1 + sample( this.noteCounts, random );
+    LinkedList<DataModel.Note> notes = new LinkedList<>();
+    long date = person.metadata.entryDate;
+    int status = -1;
+    for ( int i = 0; i < noteCount; i++ ) {
+      date += exponential( random, MEAN_NOTE_GAP );
+      status = sample( cumulative( ( status < 0 )
+          ? ( FIRST_STATUS ) : ( NEXT_STATUS[ status ] ) ), random );
+      // The first note of a duplicate links it to the earlier record
+      String linked = ( i == 0 && original >= 0 )
+          ? ( personID( original ) ) : ( null );
+      notes.add( this.note( random, person, index, i, date, status,
+          linked ) );
+    }
+    return new DataModel.SerializablePerson( person, notes );
+  }
+
+  /**
+   * Generates a range of persons with their notes.
+   *
+   * @param from
+   *     index of the first person
+   * @param count
+   *     number of persons
+   * @return the persons with their notes
+   * @throws IOException
+   *     if writing a photo fails
+   */
+  public List<DataModel.SerializablePerson> records( int from, int count )
+      throws IOException {
+    List<DataModel.SerializablePerson> records = new ArrayList<>( count );
+    for ( int i = from; i < from + count; i++ ) {
+      records.add( this.record( i ) );
+    }
+    return records;
+  }
+
+  /** Returns the record ID of the person with the given index. */
+  public static String personID( int index ) {
+    return DOMAIN + "/person." + index;
+  }
+
+  /** Receives the generated records. */
+  public interface Sink {
+    /**
+     * Writes a chunk of records.
+     *
+     * @param persons
+     *     the persons
+     * @param notes
+     *     the notes of the persons, in order by person and entry date
+     * @throws IOException
+     *     if writing fails
+     */
+    void write( List<DataModel.LocalPerson> persons,
+                List<DataModel.LocalNote> notes ) throws IOException;
+  }
+
+  /** Returns a sink that inserts each chunk in one transaction. */
+  public static Sink toStore( final PeopleStore store ) {
+    return ( persons, notes ) -> store.insertBatch( persons, notes );
+  }
+
+  /** Returns a sink that writes each chunk as a batch of the bundle. */
+  public static Sink toBundle( final BundleOutput bundle ) {
+    return bundle::writeBatch;
+  }
+
+  /**
+   * Returns a sink that writes each person and its notes into its own file,
+   * encoded as in the messages between the nodes. The files are numbered
+   * in the order of the persons.
+   */
+  public static Sink toMessages( final File dir ) {
+    return new Sink() {
+      private int count = 0;
+
+      @Override
+      public void write( List<DataModel.LocalPerson> persons,
+                         List<DataModel.LocalNote> notes )
+          throws IOException {
+        Map<String, LinkedList<DataModel.Note>> byPerson = new HashMap<>();
+        for ( DataModel.LocalNote note : notes ) {
+          LinkedList<DataModel.Note> personNotes
+              = byPerson.get( note.note.metadata.personID );
+          if ( personNotes == null ) {
+            personNotes = new LinkedList<>();
+            byPerson.put( note.note.metadata.personID, personNotes );
+          }
+          personNotes.add( note.note );
+        }
+
+        for ( DataModel.LocalPerson person : persons ) {
+          LinkedList<DataModel.Note> personNotes
+              = byPerson.get( person.person.metadata.recordID );
+          byte[] encoded = RecordMessages.encode(
+              new DataModel.SerializablePerson( person.person,
+                  ( personNotes == null )
+                      ? ( new LinkedList<DataModel.Note>() )
+                      : ( personNotes ) ) );
+          File file = new File( dir, this.count++ + ".msg" );
+          try ( OutputStream out = new FileOutputStream( file ) ) {
+            out.write( encoded );
+          }
+        }
+      }
+    };
+  }
+
+  /**
+   * Writes a dataset from the command line:
+   * <pre>
+   * DatasetGenerator [--seed N] [--persons N] [--photos FRACTION]
+   *                  [--photo-dir DIR]
+   *                  (--store JDBC_URL | --bundle FILE | --messages DIR)
+   * </pre>
+   */
+  public static void main( String[] args )
+      throws IOException, SQLException {
+    long seed = 1;
+    int persons = 1000;
+    double photos = 0.1;
+    File photoDir = null;
+    String store = null;
+    File bundle = null;
+    File messages = null;
+    for ( int i = 0; i + 1 < args.length; i += 2 ) {
+      String value = args[ i + 1 ];
+      switch ( args[ i ] ) {
+        case "--seed": seed = Long.parseLong( value ); break;
+        case "--persons": persons = Integer.parseInt( value ); break;
+        case "--photos": photos = Double.parseDouble( value ); break;
+        case "--photo-dir": photoDir = new File( value ); break;
+        case "--store": store = value; break;
+        case "--bundle": bundle = new File( value ); break;
+        case "--messages": messages = new File( value ); break;
+        default:
+          throw new IllegalArgumentException( "Unknown option " + args[ i ] );
+      }
+    }
+    if ( photoDir != null && !photoDir.isDirectory() && !photoDir.mkdirs() ) {
+      throw new IOException( "Couldn't create " + photoDir + "." );
+    }
+
+    long start = System.currentTimeMillis();
+    DatasetGenerator generator
+        = new DatasetGenerator( seed, persons, photos, photoDir );
+    if ( store != null ) {
+      PeopleStore peopleStore = JdbcPeopleStore.open( store );
+      try {
+        generator.generate( toStore( peopleStore ) );
+      } finally {
+        peopleStore.close();
+      }
+    } else if ( bundle != null ) {
+      try ( BundleOutput output = new BundleOutput( bundle ) ) {
+        generator.generate( toBundle( output ) );
+        output.finish();
+      }
+    } else if ( messages != null ) {
+      if ( !messages.isDirectory() && !messages.mkdirs() ) {
+        throw new IOException( "Couldn't create " + messages + "." );
+      }
+      generator.generate( toMessages( messages ) );
+    } else {
+      throw new IllegalArgumentException(
+          "One of --store, --bundle or --messages is required." );
+    }
+    System.out.println( "Generated " + persons + " persons with seed " + seed
+                        + " in " + ( System.currentTimeMillis() - start )
+                        + " ms." );
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Private
+  //==========================================================================//
+  /**
+   * Draws the index of the earlier person that the person with the given
+   * index duplicates, or -1 if it isn't a duplicate. This is the first draw
+   * from the random numbers of a person, the names are drawn next.
+   */
+  private static int duplicateOf( Random random, int index ) {
+    if ( index == 0 || random.nextDouble() >= DUPLICATE_FRACTION ) {
+      return -1;
+    }
+    int window = Math.min( index, DUPLICATE_WINDOW );
+    return index - 1 - random.nextInt( window );
+  }
+
+  /**
+   * Returns the random numbers that the names of a person are drawn from,
+   * i.e., those of the original record if the person is a duplicate.
+   */
+  private Random nameRandom( int index ) {
+    Random random = new Random( mix( this.seed, index ) );
+    int original = duplicateOf( random, index );
+    return ( original < 0 ) ? ( random ) : ( this.nameRandom( original ) );
+  }
+
+  /**
+   * Generates a person, with the names drawn from {@code names} and the
+   * rest from {@code random}. They are the same unless the person is a
+   * duplicate.
+   */
+  private DataModel.Person person( Random random, Random names, int index )
+      throws IOException {
+    SyntheticNames language = SyntheticNames.pick( names );
+    boolean nativeScript = language.hasNativeScript() && names.nextBoolean();
+    int given = names.nextInt( language.givenNameCount() );
+    int family = names.nextInt( language.familyNameCount() );
+    String givenName = language.givenName( given, nativeScript );
+    String familyName = language.familyName( family, nativeScript );
+    String fullName = language.fullName( givenName, familyName, nativeScript );
+    String alternateNames = ( nativeScript )
+        ? ( language.fullName( language.givenName( given, false ),
+            language.familyName( family, false ), false ) )
+        : ( null );
+
+    // Entered over the first weeks, most in the first days
+    long entryDate = START_DATE
+        + Math.min( ENTRY_PERIOD, exponential( random, ENTRY_PERIOD / 6 ) );
+    boolean photo = random.nextDouble() < this.photoFraction;
+    if ( photo ) {
+      this.writePhoto( index );
+    }
+
+    return new DataModel.Person(
+        // Metadata
+        personID( index ), entryDate, entryDate + EXPIRY,
+        "Reporter " + random.nextInt( 500 ), null,
+        null, DOMAIN,
+        entryDate, null,
+        // Identity
+        fullName, givenName,
+        familyName, alternateNames,
+        null, null, null,
+        ( random.nextInt( 4 ) == 0 ) ? ( null )
+                                     : ( ( long ) random.nextInt( 95 ) ),
+        null, null, language.city( random ),
+        language.state, null, language.country,
+        ( photo ) ? ( "http://" + DOMAIN + "/photo/" + index + ".jpg" )
+                  : ( null ),
+        null );
+  }
+
+  private DataModel.Note note( Random random, DataModel.Person person,
+                               int personIndex, int index, long date,
+                               int status, String linkedPersonID ) {
+    String statusName = STATUSES[ status ];
+    boolean contact = "is_note_author".equals( statusName )
+                      || ( "believed_alive".equals( statusName )
+                           && random.nextBoolean() );
+    String location = ( status == 1 || status == 4 )
+        ? ( null ) : ( SHELTERS[ random.nextInt( SHELTERS.length ) ] );
+
+    return new DataModel.Note(
+        // Metadata
+        DOMAIN + "/note." + personIndex + "." + index,
+        person.metadata.recordID,
+        linkedPersonID, date,
+        "Searcher " + random.nextInt( 2000 ), null,
+        null, date,
+        // Status
+        contact, statusName,
+        null, null,
+        location, "Note " + ( index + 1 ) + " about "
+                  + person.identity.name.fullName + ".",
+        null );
+  }
+
+  private String photoPath( int index ) {
+    if ( this.photoDir == null ) {
+      return null;
+    }
+    File photo = new File( this.photoDir, index + ".jpg" );
+    return ( photo.isFile() ) ? ( photo.getPath() ) : ( null );
+  }
+
+  /**
+   * Writes a placeholder photo of random bytes, sized like a small JPEG.
+   * Existing photos are kept, they have the same content. The bytes come
+   * from their own random numbers so that the rest of the record is the
+   * same whether or not the photo is written.
+   */
+  private void writePhoto( int index )
+      throws IOException {
+    if ( this.photoDir == null ) {
+      return;
+    }
+    File photo = new File( this.photoDir, index + ".jpg" );
+    if ( photo.isFile() ) {
+      return;
+    }
+    Random random = new Random( ~mix( this.seed, index ) );
+    byte[] bytes = new byte[ 4096 + random.nextInt( 12 * 1024 ) ];
+    random.nextBytes( bytes );
+    try ( OutputStream out = new FileOutputStream( photo ) ) {
+      out.write( bytes );
+    }
+  }
+
+  /** Returns the cumulative Zipf distribution of ranks 1 to n, for 0..n-1. */
+  private static double[] zipf( int n, double exponent ) {
+    double[] weights = new double[ n ];
+    for ( int k = 0; k < n; k++ ) {
+      weights[ k ] = 1 / Math.pow( k + 1, exponent );
+    }
+    return cumulative( weights );
+  }
+
+  /** Returns the normalized cumulative sums of the weights. */
+  private static double[] cumulative( double[] weights ) {
+    double[] sums = new double[ weights.length ];
+    double total = 0;
+    for ( int i = 0; i < weights.length; i++ ) {
+      total += weights[ i ];
+      sums[ i ] = total;
+    }
+    for ( int i = 0; i < sums.length; i++ ) {
+      sums[ i ] /= total;
+    }
+    return sums;
+  }
+
+  /** Picks an index from a cumulative distribution. */
+  private static int sample( double[] cumulative, Random random ) {
+    double p = random.nextDouble();
+    int low = 0;
+    int high = cumulative.length - 1;
+    while ( low < high ) {
+      int middle = ( low + high ) >>> 1;
+      if ( cumulative[ middle ] > p ) {
+        high = middle;
+      } else {
+        low = middle + 1;
+      }
+    }
+    return low;
+  }
+
+  private static long exponential( Random random, long mean ) {
+    return ( long ) ( -Math.log( 1 - random.nextDouble() ) * mean );
+  }
+
+  /** Seed of the random numbers of one record, from the dataset seed. */
+  private static long mix( long seed, int index ) {
+    long z = seed * 0x9E3779B97F4A7C15L + index;
+    z = ( z ^ ( z >>> 30 ) ) * 0xBF58476D1CE4E5B9L;
+    z = ( z ^ ( z >>> 27 ) ) * 0x94D049BB133111EBL;
+    return z ^ ( z >>> 31 );
+  }
+  //==========================================================================//
+}
@@ -0,0 +1,201 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.tools;
+
+import com.spacetimenetworks.android.peoplefinder.database.DataModel;
+import com.spacetimenetworks.android.peoplefinder.database.JdbcPeopleStore;
+import com.spacetimenetworks.android.peoplefinder.database.PeopleStore;
+import com.spacetimenetworks.android.peoplefinder.pfif.ImportBatch;
+import com.spacetimenetworks.android.peoplefinder.pfif.PfifCsvWriter;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p> Measures the throughput of a PFIF CSV import on a plain JVM. A
+ * synthetic dataset is exported into a persons and a notes file, which are
+ * then imported into a store through the stages of {@code PfifImporter}:
+ * the files are read and converted an {@link ImportBatch} at a time with
+ * the code of the importer, and each batch is inserted in one
+ * transaction. </p>
+ * <pre>
+ * ImportThroughput [--persons N] [--seed S] [--store JDBC_URL] [--dir DIR]
+ * </pre>
+ * <p> The default store is a new SQLite database file, like on a phone, and
+ * the files are written into a temporary directory unless one is given. The
+ * stages run one after another here, so the time of each is reported;
+ * {@code PfifImporter} overlaps the reading and converting with the
+ * inserts, so its rate is bound by the slower of the two. </p>
+ *
+ * @author teemuk
+ */
+public final class ImportThroughput {
+  private ImportThroughput() {}
+
+  public static void main( String[] args )
+      throws IOException, SQLException {
+    long seed = 1;
+    int persons = 100000;
+    String url = null;
+    File dir = null;
+    for ( int i = 0; i + 1 < args.length; i += 2 ) {
+      String value = args[ i + 1 ];
+      switch ( args[ i ] ) {
+        case "--persons": persons = Integer.parseInt( value ); break;
+        case "--seed": seed = Long.parseLong( value ); break;
+        case "--store": url = value; break;
+        case "--dir": dir = new File( value ); break;
+        default:
+          throw new IllegalArgumentException( "Unknown option " + args[ i ] );
+      }
+    }
+    boolean temporary = ( dir == null );
+    if ( temporary ) {
+      dir = Files.createTempDirectory( "pfif-import" ).toFile();
+    } else if ( !dir.isDirectory() && !dir.mkdirs() ) {
+      throw new IOException( "Couldn't create " + dir + "." );
+    }
+    File personsFile = new File( dir, "persons.csv" );
+    File notesFile = new File( dir, "notes.csv" );
+    File database = new File( dir, "people.db" );
+    if ( url == null ) {
+      url = "jdbc:sqlite:" + database.getAbsolutePath();
+    }
+
+    try {
+      long start = System.nanoTime();
+      long records = export( new DatasetGenerator( seed, persons, 0, null ),
+          personsFile, notesFile );
+      System.out.println( "Exported " + records + " records ("
+                          + ( personsFile.length() + notesFile.length() )
+                          + " bytes) in " + millisSince( start ) + " ms." );
+
+      Stages stages = new Stages();
+      PeopleStore store = JdbcPeopleStore.open( url );
+      try {
+        start = System.nanoTime();
+        stages.run( personsFile, store );
+        stages.run( notesFile, store );
+      } finally {
+        store.close();
+      }
+      long millis = Math.max( 1, millisSince( start ) );
+
+      System.out.println( "Imported " + stages.records + " records ("
+                          + stages.persons + " persons, " + stages.notes
+                          + " notes, " + stages.invalid + " invalid) in "
+                          + millis + " ms, "
+                          + ( stages.records * 1000L / millis )
+                          + " records/s." );
+      System.out.println( "Reading and converting: "
+                          + rate( stages.records, stages.parseNanos )
+                          + ", inserting: "
+                          + rate( stages.records, stages.insertNanos )
+                          + "." );
+    } finally {
+      if ( temporary ) {
+        for ( File file : new File[]{ personsFile, notesFile, database } ) {
+          Files.deleteIfExists( file.toPath() );
+        }
+        Files.deleteIfExists( dir.toPath() );
+      }
+    }
+  }
+
+  //==========================================================================//
+  // Private
+  //==========================================================================//
+  /** Writes the dataset as PFIF CSV and returns the number of records. */
+  private static long export( DatasetGenerator generator, File persons,
+                              File notes ) throws IOException {
+    final long[] records = new long[ 1 ];
+    try ( PfifCsvWriter writer = new PfifCsvWriter(
+        new FileOutputStream( persons ), new FileOutputStream( notes ) ) ) {
+      generator.generate( ( chunkPersons, chunkNotes ) -> {
+        for ( DataModel.LocalPerson person : chunkPersons ) {
+          writer.writePerson( person.person );
+        }
+        for ( DataModel.LocalNote note : chunkNotes ) {
+          writer.writeNote( note.note );
+        }
+        records[ 0 ] += chunkPersons.size() + chunkNotes.size();
+      } );
+    }
+    return records[ 0 ];
+  }
+
+  /** The import stages with their counts and times. */
+  private static final class Stages {
+    long records;
+    long persons;
+    long notes;
+    long invalid;
+    long parseNanos;
+    long insertNanos;
+
+    /** Imports a file, one batch at a time. */
+    void run( File file, PeopleStore store ) throws IOException {
+      try ( ImportBatch.Reader reader = ImportBatch.Reader.csv(
+          new BufferedInputStream( new FileInputStream( file ),
+              64 * 1024 ) ) ) {
+        while ( true ) {
+          long start = System.nanoTime();
+          ImportBatch batch = reader.next( true );
+          this.parseNanos += System.nanoTime() - start;
+          if ( batch == null ) {
+            break;
+          }
+          this.records += batch.persons.size() + batch.notes.size()
+                          + batch.invalid;
+          this.invalid += batch.invalid;
+
+          start = System.nanoTime();
+          PeopleStore.BatchResult result
+              = store.insertBatch( batch.persons, batch.notes );
+          this.insertNanos += System.nanoTime() - start;
+          this.persons += inserted( result.personRowIDs );
+          this.notes += inserted( result.noteRowIDs );
+        }
+      }
+    }
+  }
+
+  private static int inserted( long[] rowIDs ) {
+    int count = 0;
+    for ( long rowID : rowIDs ) {
+      if ( rowID != -1 ) count++;
+    }
+    return count;
+  }
+
+  private static long millisSince( long startNanos ) {
+    return TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - startNanos );
+  }
+
+  private static String rate( long records, long nanos ) {
+    long millis = Math.max( 1, TimeUnit.NANOSECONDS.toMillis( nanos ) );
+    return millis + " ms, " + ( records * 1000L / millis ) + " records/s";
+  }
+  //==========================================================================//
+}
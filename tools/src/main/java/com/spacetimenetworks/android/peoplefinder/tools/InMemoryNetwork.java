@@ -0,0 +1,323 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.tools;
+
+import com.spacetimenetworks.android.peoplefinder.router.Router;
+import com.spacetimenetworks.android.peoplefinder.router.RouterMessage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p> In-memory stand-in for a network of SCAMPI routers, for running
+ * several app nodes in one JVM. Each node gets a {@link Router} from {@link
+ * #createRouter}. </p> <p/> <p> A published message is sent to every other
+ * connected node over its own link, which has a fixed latency and
+ * bandwidth: a message arrives after the latency once the messages ahead of
+ * it on the link have been sent. Like the real routers, the network keeps
+ * the latest message of each AppTag, so a newer message replaces older ones
+ * that haven't yet arrived, and nodes that connect later receive the kept
+ * messages. Messages aren't delivered back to the node that published
+ * them. </p> <p/> <p> Each node receives its messages on its own thread, in
+ * the order they arrive. </p>
+ *
+ * @author teemuk
+ */
+public final class InMemoryNetwork {
+
+  //==========================================================================//
+  // Instance vars
+  //==========================================================================//
+  private final long latencyNanos;
+  private final long bytesPerSecond;
+  /** Times the arrivals. */
+  private final ScheduledExecutorService clock;
+  private final List<Node> nodes = new CopyOnWriteArrayList<>();
+  /** Latest message of each service and AppTag. */
+  private final Map<String, Map<String, Published>> kept = new HashMap<>();
+
+  private final AtomicLong bytesTransferred = new AtomicLong();
+  private final AtomicLong messagesDelivered = new AtomicLong();
+  private final AtomicLong messagesReplaced = new AtomicLong();
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // API
+  //==========================================================================//
+  /**
+   * Creates a new network.
+   *
+   * @param latencyMillis
+   *     latency of each link
+   * @param bytesPerSecond
+   *     bandwidth of each link, or 0 for unlimited
+   */
+  public InMemoryNetwork( long latencyMillis, long bytesPerSecond ) {
+    this.latencyNanos = TimeUnit.MILLISECONDS.toNanos( latencyMillis );
+    this.bytesPerSecond = bytesPerSecond;
+    this.clock = Executors.newSingleThreadScheduledExecutor(
+        r -> new Thread( r, "network-clock" ) );
+  }
+
+  /**
+   * Creates the router of a new node.
+   *
+   * @param id
+   *     ID of the node, reported to {@link
+   *     Router.LifecycleListener#onConnected}
+   * @return the router, not yet started
+   */
+  public Router createRouter( String id ) {
+    Node node = new Node( id );
+    this.nodes.add( node );
+    return node;
+  }
+
+  /** Returns the bytes sent over all links, counting replaced messages. */
+  public long getBytesTransferred() {
+    return this.bytesTransferred.get();
+  }
+
+  /** Returns the number of messages passed to the nodes. */
+  public long getMessagesDelivered() {
+    return this.messagesDelivered.get();
+  }
+
+  /** Returns the number of messages dropped for a newer one in transit. */
+  public long getMessagesReplaced() {
+    return this.messagesReplaced.get();
+  }
+
+  /** Stops the network and every router in it. */
+  public void shutdown() {
+    for ( Node node : this.nodes ) {
+      node.stop();
+    }
+    this.clock.shutdownNow();
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Private
+  //==========================================================================//
+  private void publish( Node source, RouterMessage message, String service ) {
+    Published published;
+    synchronized ( this.kept ) {
+      Map<String, Published> messages = this.kept.get( service );
+      if ( messages == null ) {
+        messages = new HashMap<>();
+        this.kept.put( service, messages );
+      }
+      published = new Published( source, message, service,
+          message.getSize() );
+      messages.put( message.getAppTag(), published );
+    }
+
+    for ( Node node : this.nodes ) {
+      if ( node != source ) {
+        this.send( published, node );
+      }
+    }
+  }
+
+  /** Sends the kept messages to a node that has just connected. */
+  private void sendKept( Node node ) {
+    List<Published> messages = new ArrayList<>();
+    synchronized ( this.kept ) {
+      for ( Map<String, Published> service : this.kept.values() ) {
+        messages.addAll( service.values() );
+      }
+    }
+    for ( Published published : messages ) {
+      if ( published.source != node ) {
+        this.send( published, node );
+      }
+    }
+  }
+
+  /** Schedules the arrival of a message at a node, after the link delay. */
+  private void send( final Published published, final Node node ) {
+    if ( !node.isConnected() ) {
+      return;
+    }
+
+    long now = System.nanoTime();
+    long arrival;
+    synchronized ( node ) {
+      long start = Math.max( now, node.linkFreeAt );
+      long transmission = ( this.bytesPerSecond <= 0 ) ? ( 0 )
+          : ( published.size * 1000000000L / this.bytesPerSecond );
+      node.linkFreeAt = start + transmission;
+      arrival = node.linkFreeAt + this.latencyNanos;
+    }
+    this.bytesTransferred.addAndGet( published.size );
+
+    this.clock.schedule( () -> this.arrive( published, node ),
+        arrival - now, TimeUnit.NANOSECONDS );
+  }
+
+  private void arrive( Published published, Node node ) {
+    // Drop it if a newer message with the same AppTag came out meanwhile
+    synchronized ( this.kept ) {
+      Map<String, Published> messages = this.kept.get( published.service );
+      if ( messages.get( published.message.getAppTag() ) != published ) {
+        this.messagesReplaced.incrementAndGet();
+        return;
+      }
+    }
+    node.deliver( published.message, published.service );
+  }
+
+  private static final class Published {
+    final Node source;
+    final RouterMessage message;
+    final String service;
+    final long size;
+
+    Published( Node source, RouterMessage message, String service,
+               long size ) {
+      this.source = source;
+      this.message = message;
+      this.service = service;
+      this.size = size;
+    }
+  }
+
+  /** The router of a node. */
+  private final class Node
+      implements Router {
+    private final String id;
+    private final List<LifecycleListener> listeners
+        = new CopyOnWriteArrayList<>();
+    private final Map<String, List<MessageListener>> callbacks
+        = new HashMap<>();
+    /** Runs the callbacks of the node. */
+    private final ExecutorService thread;
+    private volatile State state = State.NEW;
+    /** When the incoming link is done sending the queued messages (ns). */
+    long linkFreeAt;
+
+    Node( String id ) {
+      this.id = id;
+      this.thread = Executors.newSingleThreadExecutor(
+          r -> new Thread( r, "router-" + id ) );
+    }
+
+    @Override
+    public void addLifecycleListener( LifecycleListener listener ) {
+      this.listeners.add( listener );
+    }
+
+    @Override
+    public void subscribe( String service, MessageListener callback ) {
+      synchronized ( this.callbacks ) {
+        List<MessageListener> list = this.callbacks.get( service );
+        if ( list == null ) {
+          list = new CopyOnWriteArrayList<>();
+          this.callbacks.put( service, list );
+        }
+        list.add( callback );
+      }
+    }
+
+    @Override
+    public void publish( RouterMessage message, String service ) {
+      if ( !this.isConnected() ) {
+        throw new IllegalStateException( "Router " + this.id
+                                         + " isn't connected." );
+      }
+      InMemoryNetwork.this.publish( this, message, service );
+    }
+
+    @Override
+    public void start() {
+      if ( this.state == State.NEW ) {
+        this.state = State.IDLE;
+      }
+    }
+
+    @Override
+    public void connect() {
+      if ( this.state != State.IDLE ) {
+        return;
+      }
+      this.state = State.CONNECTED;
+      this.thread.execute( () -> {
+        for ( LifecycleListener listener : this.listeners ) {
+          listener.onConnected( this.id );
+        }
+      } );
+      InMemoryNetwork.this.sendKept( this );
+    }
+
+    @Override
+    public void stop() {
+      if ( this.state == State.TERMINATED ) {
+        return;
+      }
+      this.state = State.TERMINATED;
+      this.thread.execute( () -> {
+        for ( LifecycleListener listener : this.listeners ) {
+          listener.onStopped();
+        }
+      } );
+      this.thread.shutdown();
+    }
+
+    @Override
+    public State getLifecycleState() {
+      return this.state;
+    }
+
+    boolean isConnected() {
+      return ( this.state == State.CONNECTED );
+    }
+
+    void deliver( final RouterMessage message, final String service ) {
+      if ( !this.isConnected() ) {
+        return;
+      }
+      List<MessageListener> list;
+      synchronized ( this.callbacks ) {
+        list = this.callbacks.get( service );
+      }
+      if ( list == null ) {
+        return;
+      }
+
+      final List<MessageListener> subscribers = list;
+      this.thread.execute( () -> {
+        for ( MessageListener callback : subscribers ) {
+          callback.messageReceived( message, service );
+        }
+        InMemoryNetwork.this.messagesDelivered.incrementAndGet();
+      } );
+    }
+  }
+  //==========================================================================//
+}
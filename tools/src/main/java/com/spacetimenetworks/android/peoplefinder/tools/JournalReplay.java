@@ -0,0 +1,107 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.tools;
+
+import com.spacetimenetworks.android.peoplefinder.RecordMessages;
+import com.spacetimenetworks.android.peoplefinder.database.DataModel;
+import com.spacetimenetworks.android.peoplefinder.database.JdbcPeopleStore;
+import com.spacetimenetworks.android.peoplefinder.database.PeopleStore;
+import com.spacetimenetworks.android.peoplefinder.router.InboundJournal;
+import com.spacetimenetworks.android.peoplefinder.router.JournalReplayer;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p> Replays an {@link InboundJournal} recorded by the app into a store,
+ * decoding and inserting the records like the app does for messages from
+ * the router: </p>
+ * <pre>
+ * JournalReplay --journal FILE [--speed X] [--store JDBC_URL]
+ * </pre>
+ * <p> The speed is relative to the original traffic, 0 replays as fast as
+ * the store takes the records. The default store is an in-memory SQLite
+ * database. Reports the ingest rate and how far behind the original
+ * schedule the ingest fell. </p>
+ *
+ * @author teemuk
+ */
+public final class JournalReplay {
+  private JournalReplay() {}
+
+  public static void main( String[] args )
+      throws IOException, SQLException {
+    String journal = null;
+    double speed = 1;
+    String url = "jdbc:sqlite::memory:";
+    for ( int i = 0; i + 1 < args.length; i += 2 ) {
+      String value = args[ i + 1 ];
+      switch ( args[ i ] ) {
+        case "--journal": journal = value; break;
+        case "--speed": speed = Double.parseDouble( value ); break;
+        case "--store": url = value; break;
+        default:
+          throw new IllegalArgumentException( "Unknown option " + args[ i ] );
+      }
+    }
+    if ( journal == null ) {
+      throw new IllegalArgumentException( "No --journal given." );
+    }
+
+    final PeopleStore store = JdbcPeopleStore.open( url );
+    final int[] counts = new int[ 3 ]; // Persons, notes, failures
+    JournalReplayer.Result result;
+    try {
+      result = new JournalReplayer( new File( journal ), speed ).replay(
+          ( message, service ) -> {
+            try {
+              DataModel.SerializablePerson record
+                  = RecordMessages.read( message );
+              if ( store.insertPerson( new DataModel.LocalPerson(
+                  record.person, null, true ) ) != -1 ) {
+                counts[ 0 ]++;
+              }
+              for ( DataModel.Note note : record.notes ) {
+                if ( store.insertNote( new DataModel.LocalNote(
+                    note, null, true ) ) != -1 ) {
+                  counts[ 1 ]++;
+                }
+              }
+            } catch ( Exception e ) {
+              counts[ 2 ]++;
+            }
+          } );
+    } finally {
+      store.close();
+    }
+
+    long millis = Math.max( 1,
+        TimeUnit.NANOSECONDS.toMillis( result.elapsed ) );
+    System.out.println( "Replayed " + result.messages + " messages ("
+                        + result.bytes + " bytes) in " + millis + " ms, "
+                        + ( result.messages * 1000L / millis )
+                        + " messages/s." );
+    System.out.println( "New persons: " + counts[ 0 ] + ", new notes: "
+                        + counts[ 1 ] + ", failures: " + counts[ 2 ] + "." );
+    System.out.println( "Max lag behind the original schedule: "
+                        + TimeUnit.NANOSECONDS.toMillis( result.maxLag )
+                        + " ms." );
+  }
+}
@@ -0,0 +1,131 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.tools;
+
+import com.spacetimenetworks.android.peoplefinder.database.DataModel;
+import com.spacetimenetworks.android.peoplefinder.database.JdbcPeopleStore;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p> Runs several app nodes in one JVM on an {@link InMemoryNetwork} and
+ * measures how the records spread: </p>
+ * <pre>
+ * RouterSimulation [--nodes N] [--persons N] [--seed N]
+ *                  [--latency MS] [--bandwidth BYTES_PER_S] [--timeout S]
+ * </pre>
+ * <p> The persons of a generated dataset are entered on the nodes in turns,
+ * all at once. The simulation reports the time until every node has every
+ * person, the bytes sent over the links and the CPU time the nodes used per
+ * record they stored. Each node has its own in-memory SQLite database. </p>
+ *
+ * @author teemuk
+ */
+public final class RouterSimulation {
+  private RouterSimulation() {}
+
+  public static void main( String[] args )
+      throws IOException, InterruptedException, SQLException {
+    int nodeCount = 4;
+    int persons = 1000;
+    long seed = 1;
+    long latency = 50;
+    long bandwidth = 1000000;
+    long timeout = 600;
+    for ( int i = 0; i + 1 < args.length; i += 2 ) {
+      String value = args[ i + 1 ];
+      switch ( args[ i ] ) {
+        case "--nodes": nodeCount = Integer.parseInt( value ); break;
+        case "--persons": persons = Integer.parseInt( value ); break;
+        case "--seed": seed = Long.parseLong( value ); break;
+        case "--latency": latency = Long.parseLong( value ); break;
+        case "--bandwidth": bandwidth = Long.parseLong( value ); break;
+        case "--timeout": timeout = Long.parseLong( value ); break;
+        default:
+          throw new IllegalArgumentException( "Unknown option " + args[ i ] );
+      }
+    }
+
+    // Nodes
+    InMemoryNetwork network = new InMemoryNetwork( latency, bandwidth );
+    CountDownLatch converged = new CountDownLatch( nodeCount );
+    List<SimulatedNode> nodes = new ArrayList<>( nodeCount );
+    for ( int i = 0; i < nodeCount; i++ ) {
+      String id = Integer.toString( i );
+      SimulatedNode node = new SimulatedNode( id, network.createRouter( id ),
+          JdbcPeopleStore.open( "jdbc:sqlite::memory:" ), persons, converged );
+      node.start();
+      nodes.add( node );
+    }
+
+    // Records, entered on the nodes in turns
+    DatasetGenerator generator
+        = new DatasetGenerator( seed, persons, 0, null );
+    List<List<DataModel.SerializablePerson>> entered
+        = new ArrayList<>( nodeCount );
+    for ( int i = 0; i < nodeCount; i++ ) {
+      entered.add( new ArrayList<DataModel.SerializablePerson>() );
+    }
+    for ( int i = 0; i < persons; i++ ) {
+      entered.get( i % nodeCount ).add( generator.record( i ) );
+    }
+
+    // Run until every node has every person
+    long start = System.nanoTime();
+    for ( int i = 0; i < nodeCount; i++ ) {
+      nodes.get( i ).enter( entered.get( i ) );
+    }
+    boolean done = converged.await( timeout, TimeUnit.SECONDS );
+    long elapsed = System.nanoTime() - start;
+
+    // Report
+    long cpu = 0;
+    int failures = 0;
+    for ( SimulatedNode node : nodes ) {
+      cpu += node.getCpuTime();
+      failures += node.getFailures();
+      System.out.println( "Node " + node.id + ": " + node.getPersons()
+                          + " persons" );
+    }
+    long stored = ( long ) persons * nodeCount;
+    System.out.println( ( ( done ) ? ( "Converged" ) : ( "Timed out" ) )
+                        + " in " + TimeUnit.NANOSECONDS.toMillis( elapsed )
+                        + " ms with " + nodeCount + " nodes and " + persons
+                        + " persons." );
+    System.out.println( "Bytes transferred: "
+                        + network.getBytesTransferred() + ", messages "
+                        + "delivered: " + network.getMessagesDelivered()
+                        + ", replaced in transit: "
+                        + network.getMessagesReplaced() + "." );
+    System.out.println( "CPU per record: " + ( cpu / stored / 1000 )
+                        + " us, failures: " + failures + "." );
+
+    for ( SimulatedNode node : nodes ) {
+      node.stop();
+    }
+    network.shutdown();
+    if ( !done ) {
+      System.exit( 1 );
+    }
+  }
+}
@@ -0,0 +1,160 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.tools;
+
+import com.spacetimenetworks.android.peoplefinder.RecordMessages;
+import com.spacetimenetworks.android.peoplefinder.database.DataModel;
+import com.spacetimenetworks.android.peoplefinder.database.PeopleStore;
+import com.spacetimenetworks.android.peoplefinder.router.Router;
+import com.spacetimenetworks.android.peoplefinder.router.RouterMessage;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p> One app node of a {@link RouterSimulation}: a store and a router,
+ * with the inbound and outbound message handling of {@code AppLibService}.
+ * Records entered on the node are stored and published, received records
+ * are decoded and stored. </p> <p/> <p> All work of the node runs on its
+ * own thread, so that the CPU time spent per record can be measured. </p>
+ *
+ * @author teemuk
+ */
+final class SimulatedNode
+    implements Router.MessageListener {
+
+  //==========================================================================//
+  // Instance vars
+  //==========================================================================//
+  final String id;
+  private final Router router;
+  private final PeopleStore store;
+  /** Counted down once the node has every person. */
+  private final CountDownLatch converged;
+  private final int expectedPersons;
+
+  private final ExecutorService worker;
+  private volatile Thread workerThread;
+  private final AtomicInteger persons = new AtomicInteger();
+  private final AtomicInteger failures = new AtomicInteger();
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // API
+  //==========================================================================//
+  SimulatedNode( String id, Router router, PeopleStore store,
+                 int expectedPersons, CountDownLatch converged ) {
+    this.id = id;
+    this.router = router;
+    this.store = store;
+    this.expectedPersons = expectedPersons;
+    this.converged = converged;
+    this.worker = Executors.newSingleThreadExecutor( r -> {
+      Thread thread = new Thread( r, "node-" + id );
+      this.workerThread = thread;
+      return thread;
+    } );
+  }
+
+  /** Subscribes to the records and connects the router. */
+  void start()
+      throws InterruptedException {
+    this.router.subscribe( RecordMessages.SERVICE, this );
+    this.router.start();
+    this.router.connect();
+  }
+
+  /** Stores records as if entered on the node, and publishes them. */
+  void enter( final List<DataModel.SerializablePerson> records ) {
+    this.worker.execute( () -> {
+      for ( DataModel.SerializablePerson record : records ) {
+        this.insert( record, false );
+        try {
+          this.router.publish( RecordMessages.create( record, null,
+              RecordMessages.LIFETIME ), RecordMessages.SERVICE );
+        } catch ( Exception e ) {
+          this.failures.incrementAndGet();
+        }
+      }
+    } );
+  }
+
+  @Override
+  public void messageReceived( final RouterMessage message,
+                               String service ) {
+    this.worker.execute( () -> {
+      try {
+        this.insert( RecordMessages.read( message ), true );
+      } catch ( Exception e ) {
+        this.failures.incrementAndGet();
+      }
+    } );
+  }
+
+  /** Returns the number of persons in the store of the node. */
+  int getPersons() {
+    return this.persons.get();
+  }
+
+  /** Returns the number of records that couldn't be published or read. */
+  int getFailures() {
+    return this.failures.get();
+  }
+
+  /** Returns the CPU time used by the node thread in nanoseconds. */
+  long getCpuTime() {
+    Thread thread = this.workerThread;
+    return ( thread == null ) ? ( 0 )
+        : ( ManagementFactory.getThreadMXBean()
+                .getThreadCpuTime( thread.getId() ) );
+  }
+
+  /** Stops the router, waits for the queued work and closes the store. */
+  void stop()
+      throws InterruptedException {
+    this.router.stop();
+    this.worker.shutdown();
+    this.worker.awaitTermination( 1, TimeUnit.MINUTES );
+    this.store.close();
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Private
+  //==========================================================================//
+  private void insert( DataModel.SerializablePerson record, boolean routed ) {
+    long rowID = this.store.insertPerson(
+        new DataModel.LocalPerson( record.person, null, routed ) );
+    for ( DataModel.Note note : record.notes ) {
+      this.store.insertNote( new DataModel.LocalNote( note, null, routed ) );
+    }
+
+    if ( rowID != -1
+         && this.persons.incrementAndGet() == this.expectedPersons ) {
+      this.converged.countDown();
+    }
+  }
+  //==========================================================================//
+}
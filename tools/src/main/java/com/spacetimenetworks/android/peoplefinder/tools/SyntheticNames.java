@@ -0,0 +1,194 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.tools;
+
+import java.util.Random;
+
+/**
+ * <p> Names and places for {@link DatasetGenerator}, grouped by language so
+ * that a person gets a consistent name, home city and country. Names in
+ * languages with their own script are given both in the script and
+ * romanized, in matching positions. </p> <p/> <p> The languages are weighted
+ * roughly like the population of a large disaster area with international
+ * residents and aid workers. </p>
+ *
+ * @author teemuk
+ */
+final class SyntheticNames {
+
+  //==========================================================================//
+  // Languages
+  //==========================================================================//
+  static final SyntheticNames JAPANESE = new SyntheticNames( 40, true,
+      new String[]{ "Haruto", "Yui", "Sota", "Aoi", "Hiroshi", "Keiko",
+          "Takashi", "Yoko" },
+      new String[]{ "陽翔", "結衣", "蒼太", "葵", "博", "恵子", "隆", "洋子" },
+      new String[]{ "Sato", "Suzuki", "Takahashi", "Tanaka", "Watanabe",
+          "Ito" },
+      new String[]{ "佐藤", "鈴木", "高橋", "田中", "渡辺", "伊藤" },
+      new String[]{ "Sendai", "Ishinomaki", "Kesennuma", "Natori" },
+      "Miyagi", "JP" );
+  static final SyntheticNames CHINESE = new SyntheticNames( 10, true,
+      new String[]{ "Wei", "Fang", "Min", "Jing", "Lei" },
+      new String[]{ "伟", "芳", "敏", "静", "磊" },
+      new String[]{ "Wang", "Li", "Zhang", "Liu", "Chen" },
+      new String[]{ "王", "李", "张", "刘", "陈" },
+      new String[]{ "Chengdu", "Mianyang", "Deyang" },
+      "Sichuan", "CN" );
+  static final SyntheticNames SPANISH = new SyntheticNames( 10, false,
+      new String[]{ "José", "María", "Lucía", "Carlos", "Javier", "Sofía" },
+      null,
+      new String[]{ "García", "Fernández", "López", "Martínez", "Núñez" },
+      null,
+      new String[]{ "Valparaíso", "Concepción", "Talca" },
+      "Maule", "CL" );
+  static final SyntheticNames ARABIC = new SyntheticNames( 10, false,
+      new String[]{ "Ahmed", "Fatima", "Omar", "Layla", "Yusuf" },
+      new String[]{ "أحمد", "فاطمة", "عمر", "ليلى", "يوسف" },
+      new String[]{ "Haddad", "Khalil", "Mansour", "Nasser" },
+      new String[]{ "حداد", "خليل", "منصور", "ناصر" },
+      new String[]{ "Beirut", "Tripoli", "Sidon" },
+      "Beirut", "LB" );
+  static final SyntheticNames HINDI = new SyntheticNames( 10, false,
+      new String[]{ "Aarav", "Priya", "Rohan", "Ananya", "Vikram" },
+      new String[]{ "आरव", "प्रिया", "रोहन", "अनन्या", "विक्रम" },
+      new String[]{ "Sharma", "Patel", "Singh", "Gupta" },
+      new String[]{ "शर्मा", "पटेल", "सिंह", "गुप्ता" },
+      new String[]{ "Bhuj", "Ahmedabad", "Rajkot" },
+      "Gujarat", "IN" );
+  static final SyntheticNames RUSSIAN = new SyntheticNames( 5, false,
+      new String[]{ "Ivan", "Olga", "Dmitri", "Anna" },
+      new String[]{ "Иван", "Ольга", "Дмитрий", "Анна" },
+      new String[]{ "Kim", "Lee", "Tsoi", "Pak" },
+      new String[]{ "Ким", "Ли", "Цой", "Пак" },
+      new String[]{ "Yuzhno-Sakhalinsk", "Kholmsk" },
+      "Sakhalin", "RU" );
+  static final SyntheticNames FINNISH = new SyntheticNames( 5, false,
+      new String[]{ "Teemu", "Aino", "Juha", "Sanna", "Mikko" },
+      null,
+      new String[]{ "Kärkkäinen", "Virtanen", "Korhonen", "Nieminen" },
+      null,
+      new String[]{ "Tampere", "Espoo" },
+      "Uusimaa", "FI" );
+  static final SyntheticNames SWAHILI = new SyntheticNames( 10, false,
+      new String[]{ "Amani", "Zawadi", "Baraka", "Neema", "Juma" },
+      null,
+      new String[]{ "Mwangi", "Otieno", "Wanjiru", "Kamau" },
+      null,
+      new String[]{ "Mombasa", "Malindi", "Kilifi" },
+      "Coast", "KE" );
+
+  private static final SyntheticNames[] ALL = {
+      JAPANESE, CHINESE, SPANISH, ARABIC, HINDI, RUSSIAN, FINNISH, SWAHILI
+  };
+  private static final int TOTAL_WEIGHT;
+
+  static {
+    int total = 0;
+    for ( SyntheticNames names : ALL ) {
+      total += names.weight;
+    }
+    TOTAL_WEIGHT = total;
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Instance vars
+  //==========================================================================//
+  private final int weight;
+  /** Whether the family name comes first in the full name. */
+  final boolean familyFirst;
+  private final String[] givenNames;
+  private final String[] nativeGivenNames;
+  private final String[] familyNames;
+  private final String[] nativeFamilyNames;
+  private final String[] cities;
+  final String state;
+  final String country;
+  //==========================================================================//
+
+
+  private SyntheticNames( int weight, boolean familyFirst,
+                          String[] givenNames, String[] nativeGivenNames,
+                          String[] familyNames, String[] nativeFamilyNames,
+                          String[] cities, String state, String country ) {
+    this.weight = weight;
+    this.familyFirst = familyFirst;
+    this.givenNames = givenNames;
+    this.nativeGivenNames = nativeGivenNames;
+    this.familyNames = familyNames;
+    this.nativeFamilyNames = nativeFamilyNames;
+    this.cities = cities;
+    this.state = state;
+    this.country = country;
+  }
+
+  //==========================================================================//
+  // API
+  //==========================================================================//
+  /** Picks a language by weight. */
+  static SyntheticNames pick( Random random ) {
+    int n = random.nextInt( TOTAL_WEIGHT );
+    for ( SyntheticNames names : ALL ) {
+      n -= names.weight;
+      if ( n < 0 ) {
+        return names;
+      }
+    }
+    return ALL[ ALL.length - 1 ];
+  }
+
+  /** Whether the language has names in its own script. */
+  boolean hasNativeScript() {
+    return ( this.nativeGivenNames != null );
+  }
+
+  int givenNameCount() {
+    return this.givenNames.length;
+  }
+
+  int familyNameCount() {
+    return this.familyNames.length;
+  }
+
+  String givenName( int index, boolean nativeScript ) {
+    return ( nativeScript ) ? ( this.nativeGivenNames[ index ] )
+                            : ( this.givenNames[ index ] );
+  }
+
+  String familyName( int index, boolean nativeScript ) {
+    return ( nativeScript ) ? ( this.nativeFamilyNames[ index ] )
+                            : ( this.familyNames[ index ] );
+  }
+
+  /**
+   * Joins the names in the order of the language. Names in CJK scripts are
+   * written without a space.
+   */
+  String fullName( String given, String family, boolean nativeScript ) {
+    String separator = ( nativeScript && this.familyFirst ) ? ( "" ) : ( " " );
+    return ( this.familyFirst ) ? ( family + separator + given )
+                                : ( given + separator + family );
+  }
+
+  String city( Random random ) {
+    return this.cities[ random.nextInt( this.cities.length ) ];
+  }
+  //==========================================================================//
+}
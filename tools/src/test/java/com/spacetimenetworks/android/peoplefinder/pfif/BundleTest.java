@@ -0,0 +1,240 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.pfif;
+
+import com.spacetimenetworks.android.peoplefinder.database.DataModel;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Round trips records, numbers and the index through the binary encoding of
+ * {@link Bundle}.
+ *
+ * @author teemuk
+ */
+public class BundleTest {
+
+  //==========================================================================//
+  // Records
+  //==========================================================================//
+  @Test
+  public void roundTripsAPersonWithEveryField() throws IOException {
+    DataModel.Person person = new DataModel.Person(
+        "example.org/p1", 1600000000L, 1700000000L,
+        "Author", "author@example.org", "+358 1", "Source", 1500000000L,
+        "http://example.org/p1", "Anna Äijälä", "Anna", "Äijälä", "Ann",
+        "Red coat", "female", "1980-01-01", 41L, "Street 1", "Center",
+        "Helsinki", "Uusimaa", "00100", "FI", "http://example.org/p1.jpg",
+        "http://example.org/anna" );
+
+    byte[] bytes = encode( person );
+    DataModel.Person read = Bundle.readPerson( ByteBuffer.wrap( bytes ) );
+
+    assertEquals( "example.org/p1", read.metadata.recordID );
+    assertEquals( Long.valueOf( 1600000000L ), read.metadata.entryDate );
+    assertEquals( "Anna Äijälä", read.identity.name.fullName );
+    assertEquals( Long.valueOf( 41L ), read.identity.age );
+    assertEquals( "http://example.org/anna", read.identity.profileUrls );
+    assertArrayEquals( bytes, encode( read ) );
+  }
+
+  @Test
+  public void roundTripsMissingFieldsAsNull() throws IOException {
+    DataModel.Person person = new DataModel.Person(
+        "example.org/p2", 0L, null, null, null, null, null, null, null,
+        "Bob", null, null, null, "", null, null, null, null, null, null,
+        null, null, null, null, null );
+
+    byte[] bytes = encode( person );
+    DataModel.Person read = Bundle.readPerson( ByteBuffer.wrap( bytes ) );
+
+    assertEquals( Long.valueOf( 0L ), read.metadata.entryDate );
+    assertNull( read.metadata.expiryDate );
+    assertNull( read.identity.name.givenName );
+    assertEquals( "", read.identity.description );
+    assertNull( read.identity.age );
+    assertArrayEquals( bytes, encode( read ) );
+  }
+
+  @Test
+  public void roundTripsNotesAndTheirBooleans() throws IOException {
+    DataModel.Note found = note( "example.org/n1", Boolean.TRUE );
+    DataModel.Note unknown = note( "example.org/n2", null );
+    DataModel.Note missing = note( "example.org/n3", Boolean.FALSE );
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream( bytes );
+    Bundle.writeNote( out, found );
+    Bundle.writeNote( out, unknown );
+    Bundle.writeNote( out, missing );
+    ByteBuffer in = ByteBuffer.wrap( bytes.toByteArray() );
+
+    DataModel.Note read = Bundle.readNote( in );
+    assertEquals( "example.org/n1", read.metadata.recordID );
+    assertEquals( "example.org/p1", read.metadata.personID );
+    assertEquals( Boolean.TRUE, read.status.authorMadeContact );
+    assertEquals( "Found, \"safe\"", read.status.text );
+    assertNull( Bundle.readNote( in ).status.authorMadeContact );
+    assertEquals( Boolean.FALSE,
+        Bundle.readNote( in ).status.authorMadeContact );
+    assertFalse( in.hasRemaining() );
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Encoding
+  //==========================================================================//
+  @Test
+  public void roundTripsVarLongsAtTheByteBoundaries() throws IOException {
+    long[] values = { 0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE,
+                      1L << 56, Long.MAX_VALUE, -1 };
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream( bytes );
+    for ( long value : values ) {
+      Bundle.writeVarLong( out, value );
+    }
+    ByteBuffer in = ByteBuffer.wrap( bytes.toByteArray() );
+
+    for ( long value : values ) {
+      assertEquals( value, Bundle.readVarLong( in ) );
+    }
+    assertFalse( in.hasRemaining() );
+    // One byte per seven bits
+    assertEquals( 1 + 1 + 1 + 2 + 2 + 3 + 5 + 9 + 9 + 10,
+        bytes.size() );
+  }
+
+  @Test
+  public void readsStringsFromDirectBuffers() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream( bytes );
+    Bundle.writeString( out, "äö €" );
+    Bundle.writeString( out, "" );
+
+    ByteBuffer in = ByteBuffer.allocateDirect( bytes.size() );
+    in.put( bytes.toByteArray() );
+    in.flip();
+
+    assertEquals( "äö €", Bundle.readString( in ) );
+    assertEquals( "", Bundle.readString( in ) );
+    assertFalse( in.hasRemaining() );
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Header and index
+  //==========================================================================//
+  @Test
+  public void roundTripsTheHeader() throws IOException {
+    Bundle.Header header = new Bundle.Header();
+    header.batches = 3;
+    header.persons = 1000;
+    header.notes = 2500;
+    header.photos = 7;
+    header.indexOffset = 5L << 32;
+    header.indexLength = 12345;
+
+    ByteBuffer buffer = ByteBuffer.allocate( Bundle.HEADER_SIZE );
+    header.write( buffer );
+    assertFalse( buffer.hasRemaining() );
+    buffer.flip();
+
+    Bundle.Header read = Bundle.Header.read( buffer );
+    assertEquals( 3, read.batches );
+    assertEquals( 1000, read.persons );
+    assertEquals( 2500, read.notes );
+    assertEquals( 7, read.photos );
+    assertEquals( 5L << 32, read.indexOffset );
+    assertEquals( 12345, read.indexLength );
+  }
+
+  @Test( expected = IOException.class )
+  public void rejectsAFileThatIsNotABundle() throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate( Bundle.HEADER_SIZE );
+    buffer.putInt( 0x504b0304 );
+    buffer.rewind();
+    Bundle.Header.read( buffer );
+  }
+
+  @Test
+  public void roundTripsTheIndex() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream( bytes );
+    new Bundle.BatchInfo( Bundle.HEADER_SIZE, 100, 400, 2 ).write( out );
+    Bundle.Entry.write( out, "example.org/p1",
+        Arrays.asList( note( "example.org/n1", null ),
+                       note( "example.org/n2", null ) ), 500L, 42 );
+    Bundle.Entry.write( out, "example.org/p2",
+        Collections.<DataModel.Note>emptyList(), -1, 0 );
+    ByteBuffer in = ByteBuffer.wrap( bytes.toByteArray() );
+
+    Bundle.BatchInfo batch = Bundle.BatchInfo.read( in );
+    assertEquals( Bundle.HEADER_SIZE, batch.offset );
+    assertEquals( 100, batch.length );
+    assertEquals( 400, batch.rawLength );
+    assertEquals( 2, batch.persons );
+
+    Bundle.Entry first = Bundle.Entry.read( in );
+    assertEquals( "example.org/p1", first.personID );
+    assertArrayEquals( new String[]{ "example.org/n1", "example.org/n2" },
+        first.noteIDs );
+    assertEquals( 500L, first.photoOffset );
+    assertEquals( 42, first.photoLength );
+
+    Bundle.Entry second = Bundle.Entry.read( in );
+    assertEquals( 0, second.noteIDs.length );
+    assertTrue( second.photoOffset < 0 );
+    assertFalse( in.hasRemaining() );
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Private
+  //==========================================================================//
+  private static byte[] encode( DataModel.Person person ) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    Bundle.writePerson( new DataOutputStream( bytes ), person );
+    return bytes.toByteArray();
+  }
+
+  private static DataModel.Note note( String recordID,
+                                      Boolean authorMadeContact ) {
+    return new DataModel.Note(
+        recordID, "example.org/p1", null, 1600000000L, "Author", null,
+        null, null, authorMadeContact, "believed_alive", null, null,
+        "Camp 3", "Found, \"safe\"", null );
+  }
+  //==========================================================================//
+}
@@ -0,0 +1,185 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.pfif;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the RFC 4180 quoting of {@link PfifCsvReader} on hand written files
+ * and on files written by {@link PfifCsvWriter}.
+ *
+ * @author teemuk
+ */
+public class PfifCsvReaderTest {
+
+  private static final Charset UTF_8 = Charset.forName( "UTF-8" );
+  private static final int FULL_NAME = Pfif.indexOf( false, "full_name" );
+  private static final int DESCRIPTION
+      = Pfif.indexOf( false, "description" );
+  private static final int TEXT = Pfif.indexOf( true, "text" );
+
+  //==========================================================================//
+  // Reading
+  //==========================================================================//
+  @Test
+  public void readsQuotedCommasQuotesAndLineBreaks() throws IOException {
+    PfifCsvReader reader = open(
+        "person_record_id,full_name,description\r\n"
+        + "p1,\"Smith, Anna\",\"Said \"\"hi\"\"\"\r\n"
+        + "p2,Bob,\"two\r\nlines\"\r\n" );
+
+    Pfif.RawRecord first = reader.next();
+    assertFalse( first.note );
+    assertEquals( "p1", first.values[ 0 ] );
+    assertEquals( "Smith, Anna", first.values[ FULL_NAME ] );
+    assertEquals( "Said \"hi\"", first.values[ DESCRIPTION ] );
+
+    Pfif.RawRecord second = reader.next();
+    assertEquals( "Bob", second.values[ FULL_NAME ] );
+    assertEquals( "two\r\nlines", second.values[ DESCRIPTION ] );
+
+    assertNull( reader.next() );
+    reader.close();
+  }
+
+  @Test
+  public void readsEmptyAndMissingValuesAsNull() throws IOException {
+    PfifCsvReader reader = open(
+        "person_record_id,full_name,description\n"
+        + "p1,,\"\"\n"
+        + "p2\n" );
+
+    Pfif.RawRecord first = reader.next();
+    assertEquals( "p1", first.values[ 0 ] );
+    assertNull( first.values[ FULL_NAME ] );
+    assertNull( first.values[ DESCRIPTION ] );
+
+    Pfif.RawRecord second = reader.next();
+    assertEquals( "p2", second.values[ 0 ] );
+    assertNull( second.values[ FULL_NAME ] );
+
+    assertNull( reader.next() );
+    reader.close();
+  }
+
+  @Test
+  public void skipsBlankLinesUnknownColumnsAndTheByteOrderMark()
+      throws IOException {
+    PfifCsvReader reader = open(
+        "\uFEFFperson_record_id,shoe_size,full_name\n"
+        + "\n"
+        + "p1,42,Anna\n" );
+
+    Pfif.RawRecord record = reader.next();
+    assertEquals( "p1", record.values[ 0 ] );
+    assertEquals( "Anna", record.values[ FULL_NAME ] );
+    for ( int i = 0; i < record.values.length; i++ ) {
+      assertTrue( i == 0 || i == FULL_NAME || record.values[ i ] == null );
+    }
+
+    assertNull( reader.next() );
+    reader.close();
+  }
+
+  @Test
+  public void tellsNotesByTheNoteRecordIDColumn() throws IOException {
+    PfifCsvReader reader = open(
+        "note_record_id,person_record_id,text\n"
+        + "n1,p1,\"Found, safe\"\n" );
+
+    Pfif.RawRecord record = reader.next();
+    assertTrue( record.note );
+    assertEquals( "n1", record.values[ 0 ] );
+    assertEquals( "p1", record.values[ Pfif.NOTE_PERSON_ID ] );
+    assertEquals( "Found, safe", record.values[ TEXT ] );
+    reader.close();
+  }
+
+  @Test( expected = IOException.class )
+  public void rejectsAnUnterminatedQuotedValue() throws IOException {
+    PfifCsvReader reader = open(
+        "person_record_id,full_name\n"
+        + "p1,\"Anna\n" );
+    reader.next();
+  }
+
+  @Test( expected = IOException.class )
+  public void rejectsAnEmptyFile() throws IOException {
+    open( "" );
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Round trip
+  //==========================================================================//
+  @Test
+  public void readsBackWhatTheWriterWrote() throws IOException {
+    String[] person = new String[ Pfif.PERSON_FIELDS.length ];
+    person[ 0 ] = "example.org/p1";
+    person[ FULL_NAME ] = "\"Anna\", Smith";
+    person[ DESCRIPTION ] = "Line one\nline two,\r\nand äö";
+    String[] note = new String[ Pfif.NOTE_FIELDS.length ];
+    note[ 0 ] = "example.org/n1";
+    note[ Pfif.NOTE_PERSON_ID ] = "example.org/p1";
+    note[ TEXT ] = "\"\"";
+
+    ByteArrayOutputStream persons = new ByteArrayOutputStream();
+    ByteArrayOutputStream notes = new ByteArrayOutputStream();
+    PfifCsvWriter writer = new PfifCsvWriter( persons, notes );
+    writer.writePerson( person );
+    writer.writeNote( note );
+    writer.close();
+
+    PfifCsvReader personReader = new PfifCsvReader(
+        new ByteArrayInputStream( persons.toByteArray() ) );
+    assertArrayEquals( person, personReader.next().values );
+    assertNull( personReader.next() );
+    personReader.close();
+
+    PfifCsvReader noteReader = new PfifCsvReader(
+        new ByteArrayInputStream( notes.toByteArray() ) );
+    Pfif.RawRecord record = noteReader.next();
+    assertTrue( record.note );
+    assertArrayEquals( note, record.values );
+    assertNull( noteReader.next() );
+    noteReader.close();
+  }
+  //==========================================================================//
+
+
+  //==========================================================================//
+  // Private
+  //==========================================================================//
+  private static PfifCsvReader open( String csv ) throws IOException {
+    return new PfifCsvReader( new ByteArrayInputStream(
+        csv.getBytes( UTF_8 ) ) );
+  }
+  //==========================================================================//
+}
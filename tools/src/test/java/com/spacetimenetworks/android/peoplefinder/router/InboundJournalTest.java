@@ -0,0 +1,135 @@
+/*
+    Liberouter People Finder
+    Copyright (C) 2021 Teemu Kärkkäinen
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as
+    published by the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.spacetimenetworks.android.peoplefinder.router;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Writes journals with {@link InboundJournal.Writer} and reads them back
+ * with {@link InboundJournal.Reader}.
+ *
+ * @author teemuk
+ */
+public class InboundJournalTest {
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void readsBackTheEntriesInOrder() throws IOException {
+    File file = this.folder.newFile();
+    byte[] large = new byte[ 200 * 1024 ];
+    for ( int i = 0; i < large.length; i++ ) {
+      large[ i ] = ( byte ) i;
+    }
+
+    long before = System.currentTimeMillis();
+    InboundJournal.Writer writer = new InboundJournal.Writer( file );
+    writer.append( "example.org/p1", new byte[]{ 1, 2, 3 } );
+    writer.append( null, new byte[ 0 ] );
+    writer.append( "example.org/ä", large );
+    assertEquals( 3 + large.length, writer.getBytes() );
+    writer.close();
+    long after = System.currentTimeMillis();
+
+    InboundJournal.Reader reader = new InboundJournal.Reader( file );
+    assertTrue( reader.startTime >= before && reader.startTime <= after );
+
+    InboundJournal.Entry first = reader.next();
+    assertEquals( "example.org/p1", first.appTag );
+    assertArrayEquals( new byte[]{ 1, 2, 3 }, first.payload );
+    assertTrue( first.time >= reader.startTime );
+
+    InboundJournal.Entry second = reader.next();
+    assertEquals( "", second.appTag );
+    assertEquals( 0, second.payload.length );
+    assertTrue( second.time >= first.time );
+
+    InboundJournal.Entry third = reader.next();
+    assertEquals( "example.org/ä", third.appTag );
+    assertArrayEquals( large, third.payload );
+    assertTrue( third.time >= second.time && third.time <= after );
+
+    assertNull( reader.next() );
+    reader.close();
+  }
+
+  @Test
+  public void endsAtATruncatedEntry() throws IOException {
+    File file = this.folder.newFile();
+    InboundJournal.Writer writer = new InboundJournal.Writer( file );
+    writer.append( "example.org/p1", new byte[]{ 1, 2, 3 } );
+    long complete = file.length();
+    writer.append( "example.org/p2", new byte[ 100 ] );
+    writer.close();
+
+    // Cut the second entry at every point, as if the app was killed while
+    // writing it
+    for ( long length = complete; length < file.length(); length++ ) {
+      File truncated = this.folder.newFile();
+      copy( file, truncated, length );
+
+      InboundJournal.Reader reader = new InboundJournal.Reader( truncated );
+      assertEquals( "example.org/p1", reader.next().appTag );
+      assertNull( "Cut at " + length, reader.next() );
+      reader.close();
+    }
+  }
+
+  @Test
+  public void readsAnEmptyJournal() throws IOException {
+    File file = this.folder.newFile();
+    new InboundJournal.Writer( file ).close();
+
+    InboundJournal.Reader reader = new InboundJournal.Reader( file );
+    assertNull( reader.next() );
+    reader.close();
+  }
+
+  @Test( expected = IOException.class )
+  public void rejectsAFileThatIsNotAJournal() throws IOException {
+    File file = this.folder.newFile();
+    try ( FileOutputStream out = new FileOutputStream( file ) ) {
+      out.write( "PK\u0003\u0004 not a journal".getBytes( "UTF-8" ) );
+    }
+    new InboundJournal.Reader( file );
+  }
+
+  private static void copy( File from, File to, long length )
+      throws IOException {
+    byte[] bytes = new byte[ ( int ) length ];
+    try ( RandomAccessFile in = new RandomAccessFile( from, "r" ) ) {
+      in.readFully( bytes );
+    }
+    try ( FileOutputStream out = new FileOutputStream( to ) ) {
+      out.write( bytes );
+    }
+  }
+}